@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kantenkugel.kanzebot.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * {@link FlightEvents} backed by Java Flight Recorder.<br>
+ * Only loaded reflectively by {@link FlightEvents#get()}, as this class can't be loaded on VMs without {@code jdk.jfr}.
+ */
+public class JfrEvents extends FlightEvents {
+
+    @Name("kanzebot.Dispatch")
+    @Label("Command Dispatch")
+    @Category("KanzeBot")
+    static class DispatchEvent extends Event {
+        @Label("Command")
+        String key;
+        @Label("Guild Id")
+        String guildId;
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("kanzebot.Parse")
+    @Label("Argument Parsing")
+    @Category("KanzeBot")
+    static class ParseEvent extends Event {
+        @Label("Grammar")
+        String grammar;
+        @Label("Input Length")
+        int inputLength;
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("kanzebot.ConfigIO")
+    @Label("Config I/O")
+    @Category("KanzeBot")
+    static class ConfigIOEvent extends Event {
+        @Label("Operation")
+        String operation;
+        @Label("File")
+        String file;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("kanzebot.AddonPhase")
+    @Label("Addon Lifecycle")
+    @Category("KanzeBot")
+    static class AddonPhaseEvent extends Event {
+        @Label("Addon")
+        String addon;
+        @Label("Phase")
+        String phase;
+        @Label("Success")
+        boolean success;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    @Override
+    public Object beginDispatch() {
+        return begin(new DispatchEvent());
+    }
+
+    @Override
+    public void endDispatch(Object token, String key, String guildId, Outcome outcome) {
+        if(token == null)
+            return;
+        DispatchEvent event = (DispatchEvent) token;
+        event.end();
+        if(event.shouldCommit()) {
+            event.key = key;
+            event.guildId = guildId;
+            event.outcome = outcome.name();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void rejected(String key, String guildId) {
+        DispatchEvent event = new DispatchEvent();
+        if(event.shouldCommit()) {
+            event.key = key;
+            event.guildId = guildId;
+            event.outcome = Outcome.REJECTED.name();
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginParse() {
+        return begin(new ParseEvent());
+    }
+
+    @Override
+    public void endParse(Object token, String grammar, int inputLength, boolean success) {
+        if(token == null)
+            return;
+        ParseEvent event = (ParseEvent) token;
+        event.end();
+        if(event.shouldCommit()) {
+            event.grammar = grammar;
+            event.inputLength = inputLength;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginConfigIO() {
+        return begin(new ConfigIOEvent());
+    }
+
+    @Override
+    public void endConfigIO(Object token, ConfigOperation operation, String file, long bytes, boolean success) {
+        if(token == null)
+            return;
+        ConfigIOEvent event = (ConfigIOEvent) token;
+        event.end();
+        if(event.shouldCommit()) {
+            event.operation = operation.name();
+            event.file = file;
+            event.bytes = bytes;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginAddonPhase() {
+        return begin(new AddonPhaseEvent());
+    }
+
+    @Override
+    public void endAddonPhase(Object token, String addon, AddonPhase phase, boolean success) {
+        if(token == null)
+            return;
+        AddonPhaseEvent event = (AddonPhaseEvent) token;
+        event.end();
+        if(event.shouldCommit()) {
+            event.addon = addon;
+            event.phase = phase.name();
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts the event if it is enabled in any running recording.
+     * Disabled events are not handed out, so they can be dropped right away.
+     */
+    private static Event begin(Event event) {
+        if(!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+}
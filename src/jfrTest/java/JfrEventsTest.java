@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.kantenkugel.kanzebot.core.jfr.FlightEvents;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class JfrEventsTest {
+    @Test
+    public void testCommitted() throws Exception {
+        FlightEvents events = FlightEvents.get();
+        assumeTrue("Flight Recorder is not available", events.isAvailable());
+        File file = File.createTempFile("flight", ".jfr");
+        try(Recording recording = new Recording()) {
+            recording.enable("kanzebot.ConfigIO").withoutThreshold();
+            recording.enable("kanzebot.Dispatch").withoutThreshold();
+            recording.disable("kanzebot.Parse");
+            recording.start();
+            Object token = events.beginConfigIO();
+            assertNotNull("Enabled event was not started", token);
+            events.endConfigIO(token, FlightEvents.ConfigOperation.SAVE, "test.cfg", 42, true);
+            events.rejected("ping", "10");
+            //disabled events are not handed out
+            assertNull(events.beginParse());
+            recording.stop();
+            recording.dump(file.toPath());
+
+            List<RecordedEvent> recorded = RecordingFile.readAllEvents(file.toPath()).stream()
+                    .filter(event -> event.getEventType().getName().startsWith("kanzebot."))
+                    .collect(Collectors.toList());
+            assertEquals(2, recorded.size());
+            RecordedEvent configIO = find(recorded, "kanzebot.ConfigIO");
+            assertEquals("SAVE", configIO.getString("operation"));
+            assertEquals("test.cfg", configIO.getString("file"));
+            assertEquals(42, configIO.getLong("bytes"));
+            assertTrue(configIO.getBoolean("success"));
+            RecordedEvent rejected = find(recorded, "kanzebot.Dispatch");
+            assertEquals("ping", rejected.getString("key"));
+            assertEquals("REJECTED", rejected.getString("outcome"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name)).findFirst()
+                .orElseThrow(() -> new AssertionError("No " + name + " event recorded"));
+    }
+}
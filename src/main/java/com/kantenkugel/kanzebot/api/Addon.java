@@ -41,6 +41,18 @@ public interface Addon {
      */
     int getConfigVersion();
 
+    /**
+     * Returns the identifiers of all Addons this Addon depends on.
+     * Dependencies are guaranteed to be initialized and loaded before this Addon.
+     * Addons without (transitive) dependencies on each other are initialized and loaded in parallel.
+     *
+     * @return
+     *      The identifiers of the required Addons (empty by default)
+     */
+    default String[] getDependencies() {
+        return new String[0];
+    }
+
     /**
      * This method is called once the Jar-file containing the Addon is read/loaded
      *
@@ -18,11 +18,18 @@ package com.kantenkugel.kanzebot.api;
 
 import com.kantenkugel.kanzebot.api.command.Command;
 import com.kantenkugel.kanzebot.api.config.AddonConfig;
+import com.kantenkugel.kanzebot.api.config.GlobalConfigListener;
 import com.kantenkugel.kanzebot.api.config.GuildConfig;
+import com.kantenkugel.kanzebot.api.event.BatchHandler;
+import com.kantenkugel.kanzebot.api.event.EventHandler;
 import com.kantenkugel.kanzebot.api.group.Group;
 import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.events.Event;
 import net.dv8tion.jda.hooks.EventListener;
 
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
 /**
  * This class requires all neccessary hooks to create/get entities.
  */
@@ -97,7 +104,9 @@ public interface KanzeHook {
     boolean removeGroup(Group group);
 
     /**
-     * Registers a custom Event-listener which listens to all JDA-Events
+     * Registers a custom Event-listener which listens to all JDA-Events.<br>
+     * If only some types of Events are of interest, {@link #subscribe(Class, EventHandler, String...)} should be used instead,
+     * as Events nobody subscribed to are not dispatched at all.
      *
      * @param listener
      *      The JDA-Listener to register
@@ -111,4 +120,81 @@ public interface KanzeHook {
      *      The JDA-Listener to un-register
      */
     void unRegisterJDAListener(EventListener listener);
+
+    /**
+     * Subscribes to a specific type of JDA-Event (including all of its subtypes).<br>
+     * If guild-ids are given, only Events of these Guilds are delivered. Events without a Guild (eg. private messages)
+     * are then filtered out as well.
+     *
+     * @param eventType
+     *      The class of the Events of interest (eg. {@code GuildMessageReceivedEvent.class})
+     * @param handler
+     *      The handler called for every matching Event
+     * @param guildIds
+     *      Optional ids of the Guilds whose Events should be delivered. If none are given, Events of all Guilds are delivered.
+     * @param <T>
+     *      The type of the Events
+     * @throws IllegalArgumentException
+     *      If guild-ids are given for an Event-type that never belongs to a Guild
+     *      (see {@link com.kantenkugel.kanzebot.api.event.EventKeys#isGuildResolvable(Class)})
+     */
+    <T extends Event> void subscribe(Class<T> eventType, EventHandler<? super T> handler, String... guildIds);
+
+    /**
+     * Subscribes to a specific type of JDA-Event in coalescing mode. Events are collapsed by the key returned by
+     * the key-extractor (eg. {@link com.kantenkugel.kanzebot.api.event.EventKeys#byUserAndGuild()}), only the latest Event per key is kept.
+     * Once the window after the first Event elapsed, all kept Events are delivered as a single batch.<br>
+     * This is meant for high-volume Events (eg. presence-updates, typing) where only the latest state matters.
+     *
+     * @param eventType
+     *      The class of the Events of interest
+     * @param keyExtractor
+     *      Returns the key Events are collapsed by
+     * @param window
+     *      The time Events are collected for before being delivered
+     * @param unit
+     *      The unit of the window
+     * @param handler
+     *      The handler called for every batch
+     * @param guildIds
+     *      Optional ids of the Guilds whose Events should be delivered. If none are given, Events of all Guilds are delivered.
+     * @param <T>
+     *      The type of the Events
+     * @throws IllegalArgumentException
+     *      If guild-ids are given for an Event-type that never belongs to a Guild
+     */
+    <T extends Event> void subscribeCoalesced(Class<T> eventType, Function<? super T, ?> keyExtractor, long window, TimeUnit unit,
+                                              BatchHandler<T> handler, String... guildIds);
+
+    /**
+     * Removes all subscriptions of given handler
+     *
+     * @param handler
+     *      The handler previously passed to {@link #subscribe(Class, EventHandler, String...)}
+     */
+    void unsubscribe(EventHandler<?> handler);
+
+    /**
+     * Removes all coalesced subscriptions of given handler
+     *
+     * @param handler
+     *      The handler previously passed to {@link #subscribeCoalesced(Class, Function, long, TimeUnit, BatchHandler, String...)}
+     */
+    void unsubscribeCoalesced(BatchHandler<?> handler);
+
+    /**
+     * Registers a listener that gets notified once the {@link com.kantenkugel.kanzebot.api.config.GlobalConfig GlobalConfig} was reloaded
+     *
+     * @param listener
+     *      The listener to register
+     */
+    void registerGlobalConfigListener(GlobalConfigListener listener);
+
+    /**
+     * Un-Registers a listener previously registered via {@link #registerGlobalConfigListener(GlobalConfigListener)}
+     *
+     * @param listener
+     *      The listener to un-register
+     */
+    void unRegisterGlobalConfigListener(GlobalConfigListener listener);
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api;
+
+import net.dv8tion.jda.events.Event;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an {@link Addon} to be activated lazily.<br>
+ * Instead of initializing and loading the Addon on startup, only lightweight stubs for the declared commands and
+ * Event-types are registered. The Addon is initialized and loaded the first time one of them is used.
+ * The declared commands and Event-types should therefore match what the Addon registers in {@link Addon#load(KanzeHook)}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface LazyActivation {
+
+    /**
+     * The keys of all commands the Addon registers
+     */
+    String[] commands() default {};
+
+    /**
+     * The Event-types the Addon subscribes to
+     */
+    Class<? extends Event>[] events() default {};
+
+    /**
+     * Minutes without any command or Event after which the Addon is unloaded again (0 to keep it loaded)
+     */
+    int idleUnloadMinutes() default 0;
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the services the bot provides to the API (eg. the {@link com.kantenkugel.kanzebot.api.config.GlobalConfig GlobalConfig}).<br>
+ * It is populated once by the bot on startup and then {@link #freeze() frozen}.
+ * API-accessors like {@link com.kantenkugel.kanzebot.api.config.GlobalConfig#getInstance()} invoke a {@link #accessor(Class) handle}
+ * kept in a {@code static final} field. Freezing binds it to the service as a constant, so later calls are constant loads
+ * the JIT can inline. Before that, the handle throws.
+ */
+public final class Services {
+    private static final Map<Class<?>, Object> SERVICES = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, MutableCallSite> ACCESSORS = new ConcurrentHashMap<>();
+    private static final MethodHandle UNAVAILABLE;
+    private static volatile boolean frozen = false;
+
+    static {
+        try {
+            UNAVAILABLE = MethodHandles.lookup().findStatic(Services.class, "unavailable", MethodType.methodType(Object.class, Class.class));
+        } catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Services() {
+    }
+
+    /**
+     * Registers the implementation of a service. Only used by the bot itself during startup.
+     *
+     * @param type
+     *      The service-type
+     * @param service
+     *      The implementation
+     * @param <T>
+     *      The service-type
+     * @throws IllegalStateException
+     *      If the registry is already frozen or a service of this type was already registered
+     */
+    public static synchronized <T> void register(Class<T> type, T service) {
+        if(frozen)
+            throw new IllegalStateException("Services are frozen, " + type.getName() + " has to be registered on startup");
+        if(service == null)
+            throw new IllegalArgumentException("Service must not be null");
+        if(SERVICES.putIfAbsent(type, service) != null)
+            throw new IllegalStateException("A service of type " + type.getName() + " is already registered");
+    }
+
+    /**
+     * Prevents any further registration
+     */
+    public static synchronized void freeze() {
+        frozen = true;
+        ACCESSORS.forEach(Services::bind);
+        MutableCallSite.syncAll(ACCESSORS.values().toArray(new MutableCallSite[0]));
+    }
+
+    /**
+     * Returns a handle of type {@code ()T} returning the implementation of a service.
+     * Once the registry is {@link #freeze() frozen}, the handle returns the service as a constant.
+     * Before that (or if no implementation was registered), it throws an {@link IllegalStateException}.<br>
+     * Meant to be stored in a {@code static final} field and called with {@link MethodHandle#invokeExact(Object...) invokeExact}.
+     *
+     * @param type
+     *      The service-type
+     * @return
+     *      The accessor-handle
+     */
+    public static synchronized MethodHandle accessor(Class<?> type) {
+        return ACCESSORS.computeIfAbsent(type, key -> {
+            MutableCallSite site = new MutableCallSite(MethodType.methodType(key));
+            bind(key, site);
+            return site;
+        }).dynamicInvoker();
+    }
+
+    /**
+     * Empties and unfreezes the registry, so every test can start from scratch.
+     * Accessor-handles throw again until the registry is frozen again.
+     */
+    static synchronized void reset() {
+        SERVICES.clear();
+        frozen = false;
+        ACCESSORS.forEach(Services::bind);
+        MutableCallSite.syncAll(ACCESSORS.values().toArray(new MutableCallSite[0]));
+    }
+
+    private static void bind(Class<?> type, MutableCallSite site) {
+        Object service = frozen ? SERVICES.get(type) : null;
+        MethodHandle target = service == null ? MethodHandles.insertArguments(UNAVAILABLE, 0, type) : MethodHandles.constant(type, service);
+        site.setTarget(target.asType(site.type()));
+    }
+
+    private static Object unavailable(Class<?> type) {
+        throw new IllegalStateException(frozen
+                ? "No service of type " + type.getName() + " registered"
+                : "Services are not available before the bot started, " + type.getName() + " was requested too early");
+    }
+
+    public static boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Returns the implementation of a service
+     *
+     * @param type
+     *      The service-type
+     * @param <T>
+     *      The service-type
+     * @return
+     *      The implementation or <i>null</i> if none was registered
+     */
+    public static <T> T get(Class<T> type) {
+        return type.cast(SERVICES.get(type));
+    }
+
+    /**
+     * Returns the implementation of a service, failing if there is none
+     *
+     * @param type
+     *      The service-type
+     * @param <T>
+     *      The service-type
+     * @return
+     *      The implementation
+     * @throws IllegalStateException
+     *      If no implementation was registered (yet)
+     */
+    public static <T> T require(Class<T> type) {
+        T service = get(type);
+        if(service == null)
+            throw new IllegalStateException("No service of type " + type.getName() + " registered (yet)");
+        return service;
+    }
+}
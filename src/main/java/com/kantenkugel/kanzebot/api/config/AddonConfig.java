@@ -209,6 +209,16 @@ public interface AddonConfig {
      */
     void deleteSet(String key);
 
+    /**
+     * Binds a schema to this configuration.
+     * All declared keys are read once (missing ones are written with their default and comment),
+     * reads afterwards are served from an immutable {@link ConfigSnapshot} instead of this configuration
+     *
+     * @param schema the schema declaring all keys with their types, defaults and comments
+     * @return the bound configuration holding the current snapshot
+     */
+    SchemaConfig bind(ConfigSchema schema);
+
     /**
      * Returns whether this configuration has changed in memory, and is out of date with the file
      *
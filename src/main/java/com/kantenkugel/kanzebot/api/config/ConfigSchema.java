@@ -0,0 +1,403 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Declares all keys (with type, default value and comment) an Addon wants to read from its {@link AddonConfig}.<br>
+ * The keys are declared once (preferably as static fields of the Addon) and are then bound via {@link AddonConfig#bind(ConfigSchema)}.
+ * All reads afterwards go through an immutable {@link ConfigSnapshot} and don't touch the underlying config-file.<br><br>
+ *
+ * <b>Note:</b> once a schema was bound, no further keys can be declared.
+ *
+ * @see SchemaConfig
+ */
+public final class ConfigSchema {
+    private final List<Key> keys = new ArrayList<>();
+
+    private int intSlots = 0;
+    private int floatSlots = 0;
+    private int booleanSlots = 0;
+    private int objectSlots = 0;
+
+    private volatile boolean frozen = false;
+
+    /**
+     * Declares a new integer key
+     *
+     * @param key
+     *      The key of the integer value
+     * @param defaultValue
+     *      The value used if the key doesn't exist in the configuration
+     * @param comment
+     *      The comment written above the entry, or null
+     * @return
+     *      The typed key used to read the value from a {@link ConfigSnapshot}
+     */
+    public synchronized IntKey addInteger(String key, int defaultValue, String comment) {
+        checkDeclarable(Type.INTEGER, key);
+        return add(new IntKey(this, key, comment, intSlots++, defaultValue));
+    }
+
+    /**
+     * Declares a new float key
+     *
+     * @param key
+     *      The key of the float value
+     * @param defaultValue
+     *      The value used if the key doesn't exist in the configuration
+     * @param comment
+     *      The comment written above the entry, or null
+     * @return
+     *      The typed key used to read the value from a {@link ConfigSnapshot}
+     */
+    public synchronized FloatKey addFloat(String key, float defaultValue, String comment) {
+        checkDeclarable(Type.FLOAT, key);
+        return add(new FloatKey(this, key, comment, floatSlots++, defaultValue));
+    }
+
+    /**
+     * Declares a new boolean key
+     *
+     * @param key
+     *      The key of the boolean value
+     * @param defaultValue
+     *      The value used if the key doesn't exist in the configuration
+     * @param comment
+     *      The comment written above the entry, or null
+     * @return
+     *      The typed key used to read the value from a {@link ConfigSnapshot}
+     */
+    public synchronized BooleanKey addBoolean(String key, boolean defaultValue, String comment) {
+        checkDeclarable(Type.BOOLEAN, key);
+        return add(new BooleanKey(this, key, comment, booleanSlots++, defaultValue));
+    }
+
+    /**
+     * Declares a new String key
+     *
+     * @param key
+     *      The key of the String value
+     * @param defaultValue
+     *      The value used if the key doesn't exist in the configuration
+     * @param comment
+     *      The comment written above the entry, or null
+     * @return
+     *      The typed key used to read the value from a {@link ConfigSnapshot}
+     */
+    public synchronized StringKey addString(String key, String defaultValue, String comment) {
+        checkDeclarable(Type.STRING, key);
+        return add(new StringKey(this, key, comment, objectSlots++, defaultValue));
+    }
+
+    /**
+     * Declares a new enum key.
+     * The possible values of the enum get appended to the comment automatically.
+     *
+     * @param key
+     *      The key of the enum value
+     * @param defaultValue
+     *      The value used if the key doesn't exist in the configuration (or holds a invalid value)
+     * @param comment
+     *      The comment written above the entry, or null
+     * @param <T>
+     *      The Enum
+     * @return
+     *      The typed key used to read the value from a {@link ConfigSnapshot}
+     */
+    public synchronized <T extends Enum<T>> EnumKey<T> addEnum(String key, T defaultValue, String comment) {
+        checkDeclarable(Type.ENUM, key);
+        return add(new EnumKey<>(this, key, comment, objectSlots++, defaultValue));
+    }
+
+    /**
+     * Declares a new String-list key
+     *
+     * @param key
+     *      The key of the String-list
+     * @param defaultValue
+     *      The list used if the key doesn't exist in the configuration
+     * @param comment
+     *      The comment written above the entry, or null
+     * @return
+     *      The typed key used to read the value from a {@link ConfigSnapshot}
+     */
+    public synchronized ListKey addList(String key, List<String> defaultValue, String comment) {
+        checkDeclarable(Type.LIST, key);
+        return add(new ListKey(this, key, comment, objectSlots++, Collections.unmodifiableList(new ArrayList<>(defaultValue))));
+    }
+
+    /**
+     * Declares a new String-set key
+     *
+     * @param key
+     *      The key of the String-set
+     * @param defaultValue
+     *      The set used if the key doesn't exist in the configuration
+     * @param comment
+     *      The comment written above the entry, or null
+     * @return
+     *      The typed key used to read the value from a {@link ConfigSnapshot}
+     */
+    public synchronized SetKey addSet(String key, Set<String> defaultValue, String comment) {
+        checkDeclarable(Type.SET, key);
+        return add(new SetKey(this, key, comment, objectSlots++, Collections.unmodifiableSet(new LinkedHashSet<>(defaultValue))));
+    }
+
+    /**
+     * Returns all declared keys in order of declaration
+     *
+     * @return
+     *      Unmodifiable list of all declared keys
+     */
+    public List<Key> getKeys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Returns whether or not this schema was already bound and therefore can't get any more keys declared
+     *
+     * @return
+     *      true if this schema is frozen
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Prevents any further keys from being declared.
+     * This is called automatically once the schema is bound to a config.
+     */
+    public synchronized void freeze() {
+        frozen = true;
+    }
+
+    int getIntSlots() {
+        return intSlots;
+    }
+
+    int getFloatSlots() {
+        return floatSlots;
+    }
+
+    int getBooleanSlots() {
+        return booleanSlots;
+    }
+
+    int getObjectSlots() {
+        return objectSlots;
+    }
+
+    private <T extends Key> T add(T key) {
+        keys.add(key);
+        return key;
+    }
+
+    private void checkDeclarable(Type type, String key) {
+        if(frozen)
+            throw new IllegalStateException("Can't declare keys on a schema that was already bound");
+        if(key == null || key.isEmpty())
+            throw new IllegalArgumentException("Key may not be empty");
+        String storeKey = type.getPrefix() + key;
+        for(Key existing : keys) {
+            if(existing.getStoreKey().equals(storeKey))
+                throw new IllegalArgumentException("Key " + key + " was already declared");
+        }
+    }
+
+    /**
+     * The type of a declared key.
+     * The prefix is the same the type-specific getters of {@link AddonConfig} use, so both can be used on the same file.
+     */
+    public enum Type {
+        INTEGER("I_"), FLOAT("F_"), BOOLEAN("B_"), STRING("S_"), ENUM("E_"), LIST("L_"), SET("T_");
+
+        private final String prefix;
+
+        Type(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+
+    /**
+     * A single key declared in a {@link ConfigSchema}.
+     * Instances are only created by the schema and can only be used with snapshots of the same schema.
+     */
+    public static abstract class Key {
+        private final ConfigSchema schema;
+        private final Type type;
+        private final String name;
+        private final String storeKey;
+        private final String comment;
+        private final int slot;
+
+        private Key(ConfigSchema schema, Type type, String name, String comment, int slot) {
+            this.schema = schema;
+            this.type = type;
+            this.name = name;
+            this.storeKey = type.getPrefix() + name;
+            this.comment = comment;
+            this.slot = slot;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the key as it is stored in the config-file (including the type-prefix)
+         *
+         * @return
+         *      The key used in the config-file
+         */
+        public String getStoreKey() {
+            return storeKey;
+        }
+
+        public String getComment() {
+            return comment;
+        }
+
+        final int getSlot() {
+            return slot;
+        }
+
+        final ConfigSchema getSchema() {
+            return schema;
+        }
+
+        @Override
+        public String toString() {
+            return storeKey;
+        }
+    }
+
+    public static final class IntKey extends Key {
+        private final int defaultValue;
+
+        private IntKey(ConfigSchema schema, String name, String comment, int slot, int defaultValue) {
+            super(schema, Type.INTEGER, name, comment, slot);
+            this.defaultValue = defaultValue;
+        }
+
+        public int getDefault() {
+            return defaultValue;
+        }
+    }
+
+    public static final class FloatKey extends Key {
+        private final float defaultValue;
+
+        private FloatKey(ConfigSchema schema, String name, String comment, int slot, float defaultValue) {
+            super(schema, Type.FLOAT, name, comment, slot);
+            this.defaultValue = defaultValue;
+        }
+
+        public float getDefault() {
+            return defaultValue;
+        }
+    }
+
+    public static final class BooleanKey extends Key {
+        private final boolean defaultValue;
+
+        private BooleanKey(ConfigSchema schema, String name, String comment, int slot, boolean defaultValue) {
+            super(schema, Type.BOOLEAN, name, comment, slot);
+            this.defaultValue = defaultValue;
+        }
+
+        public boolean getDefault() {
+            return defaultValue;
+        }
+    }
+
+    public static final class StringKey extends Key {
+        private final String defaultValue;
+
+        private StringKey(ConfigSchema schema, String name, String comment, int slot, String defaultValue) {
+            super(schema, Type.STRING, name, comment, slot);
+            this.defaultValue = defaultValue;
+        }
+
+        public String getDefault() {
+            return defaultValue;
+        }
+    }
+
+    public static final class EnumKey<T extends Enum<T>> extends Key {
+        private final T defaultValue;
+
+        private EnumKey(ConfigSchema schema, String name, String comment, int slot, T defaultValue) {
+            super(schema, Type.ENUM, name, enumComment(comment, defaultValue), slot);
+            this.defaultValue = defaultValue;
+        }
+
+        public T getDefault() {
+            return defaultValue;
+        }
+
+        public Class<T> getEnumClass() {
+            return defaultValue.getDeclaringClass();
+        }
+
+        private static String enumComment(String comment, Enum<?> defaultValue) {
+            String header = Arrays.toString(defaultValue.getDeclaringClass().getEnumConstants());
+            return comment == null ? header : comment + " " + header;
+        }
+    }
+
+    public static final class ListKey extends Key {
+        private final List<String> defaultValue;
+
+        private ListKey(ConfigSchema schema, String name, String comment, int slot, List<String> defaultValue) {
+            super(schema, Type.LIST, name, comment, slot);
+            this.defaultValue = defaultValue;
+        }
+
+        public List<String> getDefault() {
+            return defaultValue;
+        }
+    }
+
+    public static final class SetKey extends Key {
+        private final Set<String> defaultValue;
+
+        private SetKey(ConfigSchema schema, String name, String comment, int slot, Set<String> defaultValue) {
+            super(schema, Type.SET, name, comment, slot);
+            this.defaultValue = defaultValue;
+        }
+
+        public Set<String> getDefault() {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.config;
+
+import com.kantenkugel.kanzebot.api.config.ConfigSchema.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable, already converted view of all keys declared in a {@link ConfigSchema}.<br>
+ * Reading from a snapshot is a plain array access and never touches the underlying config-file,
+ * so it is safe (and cheap) to be used on every message.<br><br>
+ *
+ * Snapshots are never modified. Writing to a {@link SchemaConfig} (or reloading it) creates a new snapshot,
+ * so code holding a snapshot always sees a consistent set of values.
+ */
+public final class ConfigSnapshot {
+    private final ConfigSchema schema;
+    private final int[] ints;
+    private final float[] floats;
+    private final boolean[] booleans;
+    private final Object[] objects;
+
+    private ConfigSnapshot(ConfigSchema schema, int[] ints, float[] floats, boolean[] booleans, Object[] objects) {
+        this.schema = schema;
+        this.ints = ints;
+        this.floats = floats;
+        this.booleans = booleans;
+        this.objects = objects;
+    }
+
+    /**
+     * Creates a new Builder with all slots set to the defaults declared in the given schema
+     *
+     * @param schema
+     *      The schema to create the snapshot for
+     * @return
+     *      A new Builder
+     */
+    public static Builder builder(ConfigSchema schema) {
+        return new Builder(schema);
+    }
+
+    public ConfigSchema getSchema() {
+        return schema;
+    }
+
+    public int getInteger(IntKey key) {
+        return ints[checked(key)];
+    }
+
+    public float getFloat(FloatKey key) {
+        return floats[checked(key)];
+    }
+
+    public boolean getBoolean(BooleanKey key) {
+        return booleans[checked(key)];
+    }
+
+    public String getString(StringKey key) {
+        return (String) objects[checked(key)];
+    }
+
+    public <T extends Enum<T>> T getEnum(EnumKey<T> key) {
+        return key.getEnumClass().cast(objects[checked(key)]);
+    }
+
+    /**
+     * Returns the (unmodifiable) String-list stored for given key
+     *
+     * @param key
+     *      The declared key
+     * @return
+     *      The unmodifiable String-list
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getList(ListKey key) {
+        return (List<String>) objects[checked(key)];
+    }
+
+    /**
+     * Returns the (unmodifiable) String-set stored for given key
+     *
+     * @param key
+     *      The declared key
+     * @return
+     *      The unmodifiable String-set
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> getSet(SetKey key) {
+        return (Set<String>) objects[checked(key)];
+    }
+
+    /**
+     * Returns the value of given key boxed into its Object type (used for generic access like saving/listing)
+     *
+     * @param key
+     *      The declared key
+     * @return
+     *      The (boxed) value
+     */
+    public Object get(Key key) {
+        int slot = checked(key);
+        switch(key.getType()) {
+            case INTEGER:
+                return ints[slot];
+            case FLOAT:
+                return floats[slot];
+            case BOOLEAN:
+                return booleans[slot];
+            default:
+                return objects[slot];
+        }
+    }
+
+    /**
+     * Creates a new Builder pre-filled with the values of this snapshot (used for copy-on-write updates)
+     *
+     * @return
+     *      A new Builder
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    private int checked(Key key) {
+        if(key.getSchema() != schema)
+            throw new IllegalArgumentException("Key " + key + " was not declared in the schema of this snapshot");
+        return key.getSlot();
+    }
+
+    /**
+     * Used to create new {@link ConfigSnapshot ConfigSnapshots}.
+     * Not thread-safe, every writer should use its own instance.
+     */
+    public static final class Builder {
+        private final ConfigSchema schema;
+        private final int[] ints;
+        private final float[] floats;
+        private final boolean[] booleans;
+        private final Object[] objects;
+
+        private Builder(ConfigSchema schema) {
+            this.schema = schema;
+            this.ints = new int[schema.getIntSlots()];
+            this.floats = new float[schema.getFloatSlots()];
+            this.booleans = new boolean[schema.getBooleanSlots()];
+            this.objects = new Object[schema.getObjectSlots()];
+            for(Key key : schema.getKeys()) {
+                switch(key.getType()) {
+                    case INTEGER:
+                        ints[key.getSlot()] = ((IntKey) key).getDefault();
+                        break;
+                    case FLOAT:
+                        floats[key.getSlot()] = ((FloatKey) key).getDefault();
+                        break;
+                    case BOOLEAN:
+                        booleans[key.getSlot()] = ((BooleanKey) key).getDefault();
+                        break;
+                    case STRING:
+                        objects[key.getSlot()] = ((StringKey) key).getDefault();
+                        break;
+                    case ENUM:
+                        objects[key.getSlot()] = ((EnumKey<?>) key).getDefault();
+                        break;
+                    case LIST:
+                        objects[key.getSlot()] = ((ListKey) key).getDefault();
+                        break;
+                    case SET:
+                        objects[key.getSlot()] = ((SetKey) key).getDefault();
+                        break;
+                }
+            }
+        }
+
+        private Builder(ConfigSnapshot base) {
+            this.schema = base.schema;
+            this.ints = base.ints.clone();
+            this.floats = base.floats.clone();
+            this.booleans = base.booleans.clone();
+            this.objects = base.objects.clone();
+        }
+
+        public Builder setInteger(IntKey key, int value) {
+            ints[checked(key)] = value;
+            return this;
+        }
+
+        public Builder setFloat(FloatKey key, float value) {
+            floats[checked(key)] = value;
+            return this;
+        }
+
+        public Builder setBoolean(BooleanKey key, boolean value) {
+            booleans[checked(key)] = value;
+            return this;
+        }
+
+        public Builder setString(StringKey key, String value) {
+            objects[checked(key)] = value;
+            return this;
+        }
+
+        public <T extends Enum<T>> Builder setEnum(EnumKey<T> key, T value) {
+            objects[checked(key)] = value;
+            return this;
+        }
+
+        public Builder setList(ListKey key, List<String> value) {
+            objects[checked(key)] = Collections.unmodifiableList(new ArrayList<>(value));
+            return this;
+        }
+
+        public Builder setSet(SetKey key, Set<String> value) {
+            objects[checked(key)] = Collections.unmodifiableSet(new LinkedHashSet<>(value));
+            return this;
+        }
+
+        public ConfigSnapshot build() {
+            return new ConfigSnapshot(schema, ints.clone(), floats.clone(), booleans.clone(), objects.clone());
+        }
+
+        private int checked(Key key) {
+            if(key.getSchema() != schema)
+                throw new IllegalArgumentException("Key " + key + " was not declared in the schema of this builder");
+            return key.getSlot();
+        }
+    }
+}
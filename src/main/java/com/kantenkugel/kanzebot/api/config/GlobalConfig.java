@@ -19,9 +19,34 @@ package com.kantenkugel.kanzebot.api.config;
 import java.util.Set;
 
 public interface GlobalConfig {
-    GlobalConfig instance = null;
+    String KEY_BOT_OWNER = "BotOwnerId";
+    String KEY_BOT_ADMINS = "BotAdmins";
+    String KEY_AUTH_MODE = "InAuthMode";
+    String KEY_AUTHED_GUILDS = "AuthedGuilds";
+
+    /**
+     * Returns the GlobalConfig of the bot.
+     * Once the {@link com.kantenkugel.kanzebot.api.Services Services} are frozen, this is a constant load.
+     *
+     * @return
+     *      The GlobalConfig
+     * @throws IllegalStateException
+     *      If called before the bot registered its services and froze the registry
+     */
     static GlobalConfig getInstance() {
-        return instance;
+        return GlobalConfigInstance.get();
+    }
+
+    /**
+     * Returns an immutable view of the current configuration.<br>
+     * The instance returned by {@link #getInstance()} always reflects the latest (possibly reloaded) configuration,
+     * so code that reads multiple values and needs them to be consistent (eg. a running command) should work on a snapshot instead.
+     *
+     * @return
+     *      Immutable snapshot of the current configuration
+     */
+    default GlobalConfig snapshot() {
+        return this;
     }
 
     /**
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.config;
+
+import java.util.Set;
+
+/**
+ * Listener that gets notified once the {@link GlobalConfig} was reloaded (after kanzebot.cfg was changed on disk).
+ * Listeners are called on the reloading thread and should return quickly.
+ */
+@FunctionalInterface
+public interface GlobalConfigListener {
+
+    /**
+     * Called after a new GlobalConfig was published. This is only called if at least one key actually changed.
+     *
+     * @param oldConfig
+     *      The immutable config that was active before the reload
+     * @param newConfig
+     *      The immutable config that is active now
+     * @param changedKeys
+     *      The keys that changed (see the KEY_ constants of {@link GlobalConfig})
+     */
+    void onChange(GlobalConfig oldConfig, GlobalConfig newConfig, Set<String> changedKeys);
+}
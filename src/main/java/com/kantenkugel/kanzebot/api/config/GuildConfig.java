@@ -17,6 +17,7 @@
 package com.kantenkugel.kanzebot.api.config;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -44,10 +45,26 @@ public interface GuildConfig {
      */
     boolean isEveryoneEscaped();
 
+    /**
+     * Returns what KanzeBot is configured to escape in this guild (default: only @everyone and @here).
+     * Everything except markdown is applied to all messages sent through {@link com.kantenkugel.kanzebot.api.util.MessageUtil MessageUtil}.
+     * @return
+     *      Combination of the ESCAPE_* flags of {@link com.kantenkugel.kanzebot.api.util.MessageUtil MessageUtil}
+     * @see com.kantenkugel.kanzebot.api.util.MessageUtil#sanitize(String, GuildConfig)
+     */
+    int getEscapePolicy();
+
+    /**
+     * Returns the locale configured for this guild (default: english), used to choose the {@link com.kantenkugel.kanzebot.api.util.MessageTemplates MessageTemplates}
+     * @return
+     *      The locale of this guild
+     */
+    Locale getLocale();
+
     /**
      * Retrieves a String from the configuration.
      * If the configuration didn't contain the given String,
-     * the default will be returned and written into the configuration. No need to call the setter
+     * the default will be returned. Lookups never write, use the setter to store the default
      *
      * @param key
      *      The key where the string is stored.
@@ -71,7 +88,7 @@ public interface GuildConfig {
     /**
      * Retrieves a boolean from the configuration.
      * If the configuration didn't contain the given boolean,
-     * the default will be returned and written into the configuration. No need to call the setter
+     * the default will be returned. Lookups never write, use the setter to store the default
      *
      * @param key
      *      The key where the boolean is stored.
@@ -95,7 +112,7 @@ public interface GuildConfig {
     /**
      * Retrieves a integer from the configuration.
      * If the configuration didn't contain the given integer,
-     * the default will be returned and written into the configuration. No need to call the setter
+     * the default will be returned. Lookups never write, use the setter to store the default
      *
      * @param key
      *      The key where the integer is stored.
@@ -119,7 +136,7 @@ public interface GuildConfig {
     /**
      * Retrieves a List from the configuration.
      * If the configuration didn't contain the given List,
-     * the default will be returned and written into the configuration. No need to call the setter
+     * the default will be returned. Lookups never write, use the setter to store the default
      *
      * @param key
      *      The key where the List is stored.
@@ -143,7 +160,7 @@ public interface GuildConfig {
     /**
      * Retrieves a Set from the configuration.
      * If the configuration didn't contain the given Set,
-     * the default will be returned and written into the configuration. No need to call the setter
+     * the default will be returned. Lookups never write, use the setter to store the default
      *
      * @param key
      *      The key where the Set is stored.
@@ -167,7 +184,7 @@ public interface GuildConfig {
     /**
      * Retrieves a Map from the configuration.
      * If the configuration didn't contain the given Map,
-     * the default will be returned and written into the configuration. No need to call the setter
+     * the default will be returned. Lookups never write, use the setter to store the default
      *
      * @param key
      *      The key where the Map is stored.
@@ -196,10 +213,50 @@ public interface GuildConfig {
      * @param key
      *      The key of the Map-entry you want to change
      * @param value
-     *      The new value of the Map-entry
+     *      The new value of the Map-entry or null to remove the entry
      */
     void updateMapEntry(String mapStoreKey, String key, String value);
 
+    /**
+     * Adds a single entry to the end of a stored List instead of writing the whole List to disk again
+     *
+     * @param listStoreKey
+     *      The key where the List is stored
+     * @param value
+     *      The value to add
+     */
+    void addListEntry(String listStoreKey, String value);
+
+    /**
+     * Removes the first occurrence of a value from a stored List instead of writing the whole List to disk again
+     *
+     * @param listStoreKey
+     *      The key where the List is stored
+     * @param value
+     *      The value to remove
+     */
+    void removeListEntry(String listStoreKey, String value);
+
+    /**
+     * Adds a single entry to a stored Set instead of writing the whole Set to disk again
+     *
+     * @param setStoreKey
+     *      The key where the Set is stored
+     * @param value
+     *      The value to add
+     */
+    void addSetEntry(String setStoreKey, String value);
+
+    /**
+     * Removes a single entry from a stored Set instead of writing the whole Set to disk again
+     *
+     * @param setStoreKey
+     *      The key where the Set is stored
+     * @param value
+     *      The value to remove
+     */
+    void removeSetEntry(String setStoreKey, String value);
+
     /**
      * Removes any variable with given key from the configuration
      *
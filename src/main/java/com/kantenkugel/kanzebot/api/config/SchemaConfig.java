@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.config;
+
+import com.kantenkugel.kanzebot.api.config.ConfigSchema.*;
+import org.apache.commons.configuration.ConfigurationException;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link ConfigSchema} bound to an {@link AddonConfig}.<br>
+ * All values are read once when binding and are then served from an immutable {@link ConfigSnapshot}.
+ * Every write (or reload) replaces the snapshot atomically.<br><br>
+ *
+ * Usage:
+ * <pre><code>
+ * private static final ConfigSchema SCHEMA = new ConfigSchema();
+ * private static final ConfigSchema.IntKey MAX_TAGS = SCHEMA.addInteger("MaxTags", 50, "Maximum amount of tags per guild");
+ *
+ * public void init(AddonConfig config) {
+ *     this.config = config.bind(SCHEMA);
+ * }
+ *
+ * //hot path
+ * int max = config.getSnapshot().getInteger(MAX_TAGS);
+ * </code></pre>
+ */
+public interface SchemaConfig {
+
+    /**
+     * Returns the schema this config was bound with
+     *
+     * @return
+     *      The bound schema
+     */
+    ConfigSchema getSchema();
+
+    /**
+     * Returns the current snapshot of all declared values.
+     * Callers that read multiple values and need them to be consistent should keep the returned snapshot instead of calling this method repeatedly.
+     *
+     * @return
+     *      The current snapshot
+     */
+    ConfigSnapshot getSnapshot();
+
+    /**
+     * Stores an integer into the configuration and publishes a new snapshot
+     *
+     * @param key
+     *      The declared key
+     * @param value
+     *      The new value
+     */
+    void setInteger(IntKey key, int value);
+
+    /**
+     * Stores a float into the configuration and publishes a new snapshot
+     *
+     * @param key
+     *      The declared key
+     * @param value
+     *      The new value
+     */
+    void setFloat(FloatKey key, float value);
+
+    /**
+     * Stores a boolean into the configuration and publishes a new snapshot
+     *
+     * @param key
+     *      The declared key
+     * @param value
+     *      The new value
+     */
+    void setBoolean(BooleanKey key, boolean value);
+
+    /**
+     * Stores a String into the configuration and publishes a new snapshot
+     *
+     * @param key
+     *      The declared key
+     * @param value
+     *      The new value
+     */
+    void setString(StringKey key, String value);
+
+    /**
+     * Stores an enum value into the configuration and publishes a new snapshot
+     *
+     * @param key
+     *      The declared key
+     * @param value
+     *      The new value
+     * @param <T>
+     *      The Enum
+     */
+    <T extends Enum<T>> void setEnum(EnumKey<T> key, T value);
+
+    /**
+     * Stores a String-list into the configuration and publishes a new snapshot
+     *
+     * @param key
+     *      The declared key
+     * @param value
+     *      The new value
+     */
+    void setList(ListKey key, List<String> value);
+
+    /**
+     * Stores a String-set into the configuration and publishes a new snapshot
+     *
+     * @param key
+     *      The declared key
+     * @param value
+     *      The new value
+     */
+    void setSet(SetKey key, Set<String> value);
+
+    /**
+     * Re-reads the underlying config-file and publishes a new snapshot
+     *
+     * @throws ConfigurationException
+     *      If the config-file could not be read
+     */
+    void reload() throws ConfigurationException;
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.event;
+
+import net.dv8tion.jda.events.Event;
+
+import java.util.List;
+
+/**
+ * Handler of a coalesced event-subscription
+ * (see {@link com.kantenkugel.kanzebot.api.KanzeHook#subscribeCoalesced(Class, java.util.function.Function, long, java.util.concurrent.TimeUnit, BatchHandler, String...)})
+ *
+ * @param <T>
+ *      The type of Event handled
+ */
+@FunctionalInterface
+public interface BatchHandler<T extends Event> {
+
+    /**
+     * Called once per coalescing-window with the latest Event of every key seen in that window
+     *
+     * @param batch
+     *      The Events, in the order their keys were first seen
+     */
+    void handle(List<T> batch);
+}
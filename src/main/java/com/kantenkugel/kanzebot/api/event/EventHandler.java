@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.event;
+
+import net.dv8tion.jda.events.Event;
+
+/**
+ * Handler of a typed event-subscription (see {@link com.kantenkugel.kanzebot.api.KanzeHook#subscribe(Class, EventHandler, String...)})
+ *
+ * @param <T>
+ *      The type of Event handled
+ */
+@FunctionalInterface
+public interface EventHandler<T extends Event> {
+
+    /**
+     * Called for every Event of the subscribed type (or a subtype) that passed the guild-filter
+     *
+     * @param event
+     *      The Event
+     */
+    void handle(T event);
+}
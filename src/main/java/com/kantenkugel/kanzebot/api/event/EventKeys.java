@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.event;
+
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.events.Event;
+import net.dv8tion.jda.events.channel.text.GenericTextChannelEvent;
+import net.dv8tion.jda.events.channel.voice.GenericVoiceChannelEvent;
+import net.dv8tion.jda.events.guild.GenericGuildEvent;
+import net.dv8tion.jda.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.events.message.guild.GenericGuildMessageEvent;
+import net.dv8tion.jda.events.user.GenericUserEvent;
+import net.dv8tion.jda.events.user.UserTypingEvent;
+import net.dv8tion.jda.events.voice.GenericVoiceEvent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Common key-extractors for coalesced event-subscriptions
+ */
+public final class EventKeys {
+    private static final List<Class<? extends Event>> GUILD_EVENTS = Arrays.asList(GenericGuildMessageEvent.class,
+            GenericGuildEvent.class, MessageReceivedEvent.class, UserTypingEvent.class, GenericTextChannelEvent.class,
+            GenericVoiceChannelEvent.class, GenericVoiceEvent.class);
+
+    private EventKeys() {
+    }
+
+    /**
+     * Coalesces Events by the User they concern
+     */
+    public static Function<GenericUserEvent, Object> byUser() {
+        return event -> event.getUser().getId();
+    }
+
+    /**
+     * Coalesces Events by the User and Guild they concern
+     * (Events without Guild are only coalesced by User)
+     */
+    public static Function<GenericUserEvent, Object> byUserAndGuild() {
+        return event -> {
+            String guildId = getGuildId(event);
+            return guildId == null ? event.getUser().getId() : event.getUser().getId() + ':' + guildId;
+        };
+    }
+
+    /**
+     * Coalesces Events by the Guild they belong to
+     */
+    public static Function<Event, Object> byGuild() {
+        return event -> {
+            String guildId = getGuildId(event);
+            return guildId == null ? "" : guildId;
+        };
+    }
+
+    /**
+     * Returns the id of the Guild an Event belongs to
+     *
+     * @param event
+     *      The Event
+     * @return
+     *      The Guild's id or <i>null</i> if the Event doesn't belong to a Guild
+     */
+    public static String getGuildId(Event event) {
+        Guild guild = null;
+        if(event instanceof GenericGuildMessageEvent)
+            guild = ((GenericGuildMessageEvent) event).getGuild();
+        else if(event instanceof GenericGuildEvent)
+            guild = ((GenericGuildEvent) event).getGuild();
+        else if(event instanceof MessageReceivedEvent && !((MessageReceivedEvent) event).isPrivate())
+            guild = ((MessageReceivedEvent) event).getTextChannel().getGuild();
+        else if(event instanceof UserTypingEvent && ((UserTypingEvent) event).getChannel() instanceof TextChannel)
+            guild = ((TextChannel) ((UserTypingEvent) event).getChannel()).getGuild();
+        else if(event instanceof GenericTextChannelEvent)
+            guild = ((GenericTextChannelEvent) event).getChannel().getGuild();
+        else if(event instanceof GenericVoiceChannelEvent)
+            guild = ((GenericVoiceChannelEvent) event).getChannel().getGuild();
+        else if(event instanceof GenericVoiceEvent)
+            guild = ((GenericVoiceEvent) event).getVoiceStatus().getGuild();
+        return guild == null ? null : guild.getId();
+    }
+
+    /**
+     * Returns whether {@link #getGuildId(Event)} can resolve the Guild of (at least some) Events of given type.
+     * This is false for Events that never belong to a Guild (eg. {@code ReadyEvent} or presence-updates).
+     *
+     * @param eventType
+     *      The type of the Events
+     * @return
+     *      true if Events of this type (or of one of its subtypes) can belong to a Guild
+     */
+    public static boolean isGuildResolvable(Class<? extends Event> eventType) {
+        for(Class<? extends Event> type : GUILD_EVENTS) {
+            if(type.isAssignableFrom(eventType) || eventType.isAssignableFrom(type))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.util;
+
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.MessageChannel;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bot's outgoing message-pipeline, registered in the {@link com.kantenkugel.kanzebot.api.Services Services}.
+ * Addons should use the helpers of {@link MessageUtil} instead of accessing this directly.
+ */
+public interface MessageSender {
+    /**
+     * Queues a message for given channel.
+     * Messages are sent in order per channel, respecting Discord's rate-limits.
+     * Short messages queued for the same channel may be merged into a single one,
+     * messages that are too long (also after escaping mentions) are split into multiple ones.
+     *
+     * @param channel
+     *      The channel to send the message to
+     * @param message
+     *      The message to send
+     */
+    void send(MessageChannel channel, String message);
+
+    /**
+     * Queues a message for given channel like {@link #send(MessageChannel, String)}, but never merges it with others.
+     *
+     * @param channel
+     *      The channel to send the message to
+     * @param message
+     *      The message to send
+     * @return
+     *      Future completing with the sent message (the last part if it had to be split) on one of the pipeline's threads
+     */
+    CompletableFuture<Message> sendAsync(MessageChannel channel, String message);
+
+    /**
+     * Edits a previously sent message
+     *
+     * @param message
+     *      The message to edit
+     * @param newContent
+     *      The new content of the message
+     * @return
+     *      Future completing with the edited message (on one of the pipeline's threads),
+     *      or failing if the new content is too long after escaping mentions
+     */
+    CompletableFuture<Message> editAsync(Message message, String newContent);
+
+    /**
+     * Deletes a message after given delay
+     *
+     * @param message
+     *      The message to delete
+     * @param delay
+     *      The delay before deleting, 0 to delete immediately
+     * @param unit
+     *      The unit of the delay
+     * @return
+     *      Future completing once the message was deleted (on one of the pipeline's threads)
+     */
+    CompletableFuture<Void> deleteAsync(Message message, long delay, TimeUnit unit);
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.util;
+
+import com.kantenkugel.kanzebot.api.Services;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Holder of the accessor-handle of the MessageSender-service (see {@link Services#accessor(Class)}).
+ * Once the {@link Services} are frozen, calls are constant loads; before that they throw an IllegalStateException.
+ */
+final class MessageSenderInstance {
+    private static final MethodHandle INSTANCE = Services.accessor(MessageSender.class);
+
+    private MessageSenderInstance() {
+    }
+
+    static MessageSender get() {
+        try {
+            return (MessageSender) INSTANCE.invokeExact();
+        } catch(RuntimeException | Error e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.util;
+
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.User;
+
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.*;
+
+/**
+ * A message with named placeholders (e.g. <code>"Welcome {user}, you are member #{count}"</code>), parsed once into segments.<br>
+ * Rendering fills in the arguments in a single pass into a presized builder:
+ * <ul>
+ *     <li>{@link User Users} and {@link TextChannel TextChannels} are inserted as mention</li>
+ *     <li>{@link Guild Guilds} by their name</li>
+ *     <li>Integral numbers are grouped following the template's locale, other numbers formatted by it</li>
+ *     <li>Everything else by its toString() (<i>null</i> as empty string)</li>
+ * </ul>
+ * Use <code>{{</code> and <code>}}</code> for literal braces.
+ * Templates are immutable and can be shared between threads.
+ *
+ * @see MessageTemplates
+ */
+public final class MessageTemplate {
+    private static final int ARGUMENT_ESTIMATE = 16;
+
+    private final String pattern;
+    private final Locale locale;
+    private final char groupingSeparator;
+    //literals[i] is followed by the argument at indices[i], the last literal has no argument
+    private final String[] literals;
+    private final int[] indices;
+    private final String[] names;
+    private final int literalLength;
+
+    private MessageTemplate(String pattern, Locale locale, List<String> literals, List<Integer> indices, List<String> names) {
+        this.pattern = pattern;
+        this.locale = locale;
+        this.groupingSeparator = DecimalFormatSymbols.getInstance(locale).getGroupingSeparator();
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.indices = new int[indices.size()];
+        for(int i = 0; i < this.indices.length; i++)
+            this.indices[i] = indices.get(i);
+        this.names = names.toArray(new String[names.size()]);
+        int length = 0;
+        for(String literal : this.literals)
+            length += literal.length();
+        this.literalLength = length;
+    }
+
+    /**
+     * Parses given pattern using the english locale
+     *
+     * @see #compile(String, Locale)
+     */
+    public static MessageTemplate compile(String pattern) {
+        return compile(pattern, Locale.ENGLISH);
+    }
+
+    /**
+     * Parses given pattern into a template
+     *
+     * @param pattern
+     *      The pattern with named placeholders in curly braces
+     * @param locale
+     *      The locale used to format numbers
+     * @return
+     *      The compiled template
+     * @throws IllegalArgumentException
+     *      If the pattern contains an unclosed or empty placeholder
+     */
+    public static MessageTemplate compile(String pattern, Locale locale) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int length = pattern.length();
+        for(int i = 0; i < length; i++) {
+            char c = pattern.charAt(i);
+            if((c == '{' || c == '}') && i + 1 < length && pattern.charAt(i + 1) == c) {
+                literal.append(c);
+                i++;
+            } else if(c == '{') {
+                int end = pattern.indexOf('}', i);
+                if(end < 0)
+                    throw new IllegalArgumentException("Unclosed placeholder at " + i + " in " + pattern);
+                String name = pattern.substring(i + 1, end).trim();
+                if(name.isEmpty())
+                    throw new IllegalArgumentException("Empty placeholder at " + i + " in " + pattern);
+                int index = names.indexOf(name);
+                if(index < 0) {
+                    index = names.size();
+                    names.add(name);
+                }
+                literals.add(literal.toString());
+                indices.add(index);
+                literal.setLength(0);
+                i = end;
+            } else {
+                literal.append(c);
+            }
+        }
+        literals.add(literal.toString());
+        return new MessageTemplate(pattern, locale, literals, indices, names);
+    }
+
+    /**
+     * Renders this template with positional arguments
+     *
+     * @param args
+     *      The arguments in order of first appearance of their placeholder (see {@link #getPlaceholders()}).
+     *      Missing arguments are rendered as empty string.
+     * @return
+     *      The rendered message
+     */
+    public String render(Object... args) {
+        StringBuilder b = new StringBuilder(literalLength + ARGUMENT_ESTIMATE * indices.length);
+        for(int i = 0; i < indices.length; i++) {
+            b.append(literals[i]);
+            int index = indices[i];
+            if(index < args.length)
+                append(b, args[index]);
+        }
+        return b.append(literals[indices.length]).toString();
+    }
+
+    /**
+     * Renders this template with named arguments
+     *
+     * @param args
+     *      The arguments by placeholder-name. Missing arguments are rendered as empty string.
+     * @return
+     *      The rendered message
+     */
+    public String render(Map<String, ?> args) {
+        Object[] positional = new Object[names.length];
+        for(int i = 0; i < names.length; i++)
+            positional[i] = args.get(names[i]);
+        return render(positional);
+    }
+
+    private void append(StringBuilder b, Object arg) {
+        if(arg == null)
+            return;
+        if(arg instanceof String)
+            b.append((String) arg);
+        else if(arg instanceof User)
+            b.append(((User) arg).getAsMention());
+        else if(arg instanceof TextChannel)
+            b.append(((TextChannel) arg).getAsMention());
+        else if(arg instanceof Guild)
+            b.append(((Guild) arg).getName());
+        else if(arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte)
+            appendGrouped(b, ((Number) arg).longValue());
+        else if(arg instanceof Number)
+            b.append(NumberFormat.getInstance(locale).format(arg));
+        else
+            b.append(arg);
+    }
+
+    private void appendGrouped(StringBuilder b, long value) {
+        if(value > -1000 && value < 1000) {
+            b.append(value);
+            return;
+        }
+        String digits = Long.toString(value);
+        int start = value < 0 ? 1 : 0;
+        b.append(digits, 0, start);
+        int count = digits.length() - start;
+        for(int i = start; i < digits.length(); i++) {
+            if(i > start && (count - (i - start)) % 3 == 0)
+                b.append(groupingSeparator);
+            b.append(digits.charAt(i));
+        }
+    }
+
+    /**
+     * Returns the names of the placeholders in order of their first appearance
+     */
+    public List<String> getPlaceholders() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
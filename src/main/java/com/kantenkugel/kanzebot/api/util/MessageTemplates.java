@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.util;
+
+import com.kantenkugel.kanzebot.api.config.GuildConfig;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+
+/**
+ * Set of {@link MessageTemplate MessageTemplates} per locale, so replies can be localised per guild
+ * (see {@link GuildConfig#getLocale()}).<br>
+ * Patterns are looked up for the exact locale, then its language and finally the default locale of this set.
+ * Each template is compiled on first use and cached per locale.
+ *
+ * <pre>{@code
+ * static final MessageTemplates TEMPLATES = new MessageTemplates(Locale.ENGLISH)
+ *         .add(Locale.ENGLISH, "welcome", "Welcome {user}!")
+ *         .add(Locale.GERMAN, "welcome", "Willkommen {user}!");
+ * ...
+ * MessageUtil.sendMessage(channel, TEMPLATES.render("welcome", guildConfig, author));
+ * }</pre>
+ */
+public final class MessageTemplates {
+    private final Locale defaultLocale;
+    private final Map<Locale, Map<String, String>> patterns = new ConcurrentHashMap<>();
+    //looks up the raw pattern of a key for a single candidate-locale if it wasn't added manually (null if there is no such source)
+    private final BiFunction<String, Locale, String> source;
+    private final ConcurrentMap<Locale, ConcurrentMap<String, MessageTemplate>> compiled = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new, empty set. Patterns have to be {@link #add(Locale, String, String) added} manually.
+     *
+     * @param defaultLocale
+     *      The locale to fall back to
+     */
+    public MessageTemplates(Locale defaultLocale) {
+        this(defaultLocale, null);
+    }
+
+    private MessageTemplates(Locale defaultLocale, BiFunction<String, Locale, String> source) {
+        this.defaultLocale = defaultLocale;
+        this.source = source;
+    }
+
+    /**
+     * Creates a set backed by properties-{@link ResourceBundle ResourceBundles}
+     * (e.g. <code>messages.properties</code>, <code>messages_de.properties</code>, ...)
+     *
+     * @param baseName
+     *      The base-name of the bundle
+     * @param loader
+     *      The ClassLoader to load the bundles from (the one of the Addon)
+     * @param defaultLocale
+     *      The locale to fall back to
+     * @return
+     *      The bundle-backed template-set
+     */
+    public static MessageTemplates fromBundle(String baseName, ClassLoader loader, Locale defaultLocale) {
+        ResourceBundle.Control control = ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_PROPERTIES);
+        return new MessageTemplates(defaultLocale, (key, locale) -> {
+            try {
+                ResourceBundle bundle = ResourceBundle.getBundle(baseName, locale, loader, control);
+                return bundle.getLocale().equals(locale) && bundle.containsKey(key) ? bundle.getString(key) : null;
+            } catch(MissingResourceException e) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Adds a pattern to this set (taking precedence over the one of a bundle)
+     *
+     * @param locale
+     *      The locale of the pattern
+     * @param key
+     *      The key of the template
+     * @param pattern
+     *      The pattern (see {@link MessageTemplate})
+     * @return
+     *      This set for chaining
+     */
+    public MessageTemplates add(Locale locale, String key, String pattern) {
+        patterns.computeIfAbsent(locale, l -> new ConcurrentHashMap<>()).put(key, pattern);
+        //already compiled templates might have used a fallback
+        compiled.clear();
+        return this;
+    }
+
+    /**
+     * Returns the template for given key and locale
+     *
+     * @param key
+     *      The key of the template
+     * @param locale
+     *      The locale to use
+     * @return
+     *      The compiled template
+     * @throws MissingResourceException
+     *      If there is no pattern for the key (not even for the default-locale)
+     */
+    public MessageTemplate get(String key, Locale locale) {
+        return compiled.computeIfAbsent(locale, l -> new ConcurrentHashMap<>())
+                .computeIfAbsent(key, k -> MessageTemplate.compile(resolve(k, locale), locale));
+    }
+
+    /**
+     * Returns the template for given key in the locale of given guild
+     *
+     * @see #get(String, Locale)
+     */
+    public MessageTemplate get(String key, GuildConfig config) {
+        return get(key, config.getLocale());
+    }
+
+    /**
+     * Renders the template for given key in the locale of given guild
+     *
+     * @param key
+     *      The key of the template
+     * @param config
+     *      The config of the guild the message is for
+     * @param args
+     *      The arguments (see {@link MessageTemplate#render(Object...)})
+     * @return
+     *      The rendered message
+     */
+    public String render(String key, GuildConfig config, Object... args) {
+        return get(key, config.getLocale()).render(args);
+    }
+
+    public Locale getDefaultLocale() {
+        return defaultLocale;
+    }
+
+    private String resolve(String key, Locale locale) {
+        for(Locale candidate : new Locale[] {locale, new Locale(locale.getLanguage()), defaultLocale, Locale.ROOT}) {
+            Map<String, String> map = patterns.get(candidate);
+            String pattern = map == null ? null : map.get(key);
+            if(pattern == null && source != null)
+                pattern = source.apply(key, candidate);
+            if(pattern != null)
+                return pattern;
+        }
+        throw new MissingResourceException("No template for " + key, MessageTemplates.class.getName(), key);
+    }
+}
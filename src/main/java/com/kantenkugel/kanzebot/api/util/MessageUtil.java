@@ -16,18 +16,49 @@
 
 package com.kantenkugel.kanzebot.api.util;
 
+import com.kantenkugel.kanzebot.api.config.GuildConfig;
+import net.dv8tion.jda.entities.Message;
 import net.dv8tion.jda.entities.MessageChannel;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
 /**
- * Contains a lot of important functions having to do with Messages
+ * Contains a lot of important functions having to do with Messages.<br>
+ * None of these block. The futures returned by the async variants complete on the bot's message-threads,
+ * so callbacks attached to them should not block either (or use the *Async methods of the future).
  */
 public class MessageUtil {
+    /**
+     * Escape-policy flag: neutralises @everyone and @here
+     */
+    public static final int ESCAPE_EVERYONE = 1;
+    /**
+     * Escape-policy flag: neutralises role-mentions (&lt;@&amp;id&gt;)
+     */
+    public static final int ESCAPE_ROLES = 1 << 1;
+    /**
+     * Escape-policy flag: neutralises user-mentions (&lt;@id&gt; and &lt;@!id&gt;)
+     */
+    public static final int ESCAPE_USERS = 1 << 2;
+    /**
+     * Escape-policy flag: escapes markdown (* _ ~ ` \).
+     * This is never applied to whole messages by the bot, only when sanitizing (user-provided) parts explicitly.
+     */
+    public static final int ESCAPE_MARKDOWN = 1 << 3;
+
+    private static final char ZERO_WIDTH_SPACE = '\u200B';
+    private static final int MAX_BUFFER = 8192;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
     private MessageUtil(){}
 
     /**
      * Sends a message to given channel
-     * following the {@link net.dv8tion.jda.entities.Guild Guild's} escapeEveryone configuration (if not PM).
+     * following the {@link net.dv8tion.jda.entities.Guild Guild's} escape-policy (except markdown, if not PM).
      * This will send the message asynchronously and will not block until the message was sent.
+     * Messages to the same channel are sent in order, short ones may get merged into a single message.
      *
      * @param channel
      *      The channel to send the message to
@@ -35,8 +66,174 @@ public class MessageUtil {
      *      The message to send
      */
     public static void sendMessage(MessageChannel channel, String message) {
-        //todo
+        MessageSenderInstance.get().send(channel, message);
+    }
+
+    /**
+     * Sanitizes given text following the escape-policy of a guild (see {@link GuildConfig#getEscapePolicy()}).
+     *
+     * @param text
+     *      The text to sanitize
+     * @param config
+     *      The config of the guild the text will be sent to
+     * @return
+     *      The sanitized text
+     */
+    public static String sanitize(String text, GuildConfig config) {
+        return sanitize(text, config.getEscapePolicy());
+    }
+
+    /**
+     * Sanitizes given text in a single pass.
+     * Mentions are neutralised by inserting a zero-width space, markdown is escaped with a backslash.
+     * If nothing had to be escaped, the input itself is returned (without allocating anything).
+     *
+     * @param text
+     *      The text to sanitize
+     * @param policy
+     *      Combination of the ESCAPE_* flags of this class
+     * @return
+     *      The sanitized text
+     */
+    public static String sanitize(String text, int policy) {
+        if(text == null || policy == 0)
+            return text;
+        int length = text.length();
+        StringBuilder out = null;
+        int copied = 0;
+        for(int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            boolean escape;
+            switch(c) {
+                case '@':
+                    escape = (policy & ESCAPE_EVERYONE) != 0 && (text.startsWith("everyone", i + 1) || text.startsWith("here", i + 1));
+                    break;
+                case '<':
+                    escape = (policy & (ESCAPE_ROLES | ESCAPE_USERS)) != 0 && isMention(text, i, policy);
+                    break;
+                case '*':
+                case '_':
+                case '~':
+                case '`':
+                case '\\':
+                    escape = (policy & ESCAPE_MARKDOWN) != 0;
+                    break;
+                default:
+                    escape = false;
+            }
+            if(!escape)
+                continue;
+            if(out == null) {
+                out = BUFFER.get();
+                out.setLength(0);
+            }
+            out.append(text, copied, i);
+            if(c == '@' || c == '<')
+                out.append(c).append(ZERO_WIDTH_SPACE);
+            else
+                out.append('\\').append(c);
+            copied = i + 1;
+        }
+        if(out == null)
+            return text;
+        String result = out.append(text, copied, length).toString();
+        if(out.capacity() > MAX_BUFFER)
+            BUFFER.remove();
+        return result;
+    }
+
+    private static boolean isMention(String text, int start, int policy) {
+        int i = start + 1;
+        if(i >= text.length() || text.charAt(i++) != '@' || i >= text.length())
+            return false;
+        int flag = ESCAPE_USERS;
+        char c = text.charAt(i);
+        if(c == '&') {
+            flag = ESCAPE_ROLES;
+            i++;
+        } else if(c == '!') {
+            i++;
+        }
+        return (policy & flag) != 0 && i < text.length() && Character.isDigit(text.charAt(i));
+    }
+
+    /**
+     * Sends a message to given channel like {@link #sendMessage(MessageChannel, String)},
+     * but provides the sent message. Messages sent this way are never merged with others.
+     *
+     * @param channel
+     *      The channel to send the message to
+     * @param message
+     *      The message to send
+     * @return
+     *      Future completing with the sent message
+     */
+    public static CompletableFuture<Message> sendMessageAsync(MessageChannel channel, String message) {
+        return MessageSenderInstance.get().sendAsync(channel, message);
+    }
+
+    /**
+     * Edits a message following the {@link net.dv8tion.jda.entities.Guild Guild's} escape-policy (except markdown, if not PM).
+     *
+     * @param message
+     *      The message to edit
+     * @param newContent
+     *      The new content of the message
+     * @return
+     *      Future completing with the edited message
+     */
+    public static CompletableFuture<Message> editMessageAsync(Message message, String newContent) {
+        return MessageSenderInstance.get().editAsync(message, newContent);
+    }
+
+    /**
+     * Deletes a message after given delay
+     *
+     * @param message
+     *      The message to delete
+     * @param delay
+     *      The delay before deleting, 0 to delete immediately
+     * @param unit
+     *      The unit of the delay
+     * @return
+     *      Future completing once the message was deleted
+     */
+    public static CompletableFuture<Void> deleteMessageAsync(Message message, long delay, TimeUnit unit) {
+        return MessageSenderInstance.get().deleteAsync(message, delay, unit);
+    }
+
+    /**
+     * Sends a message and edits it once the new content is available (e.g. "Working..." followed by the result).
+     *
+     * @param channel
+     *      The channel to send the message to
+     * @param message
+     *      The initial message
+     * @param newContent
+     *      The content to replace the initial message with once completed
+     * @return
+     *      Future completing with the edited message
+     */
+    public static CompletableFuture<Message> sendThenEdit(MessageChannel channel, String message, CompletionStage<String> newContent) {
+        return sendMessageAsync(channel, message)
+                .thenCompose(sent -> newContent.thenCompose(content -> editMessageAsync(sent, content)));
     }
 
-    //TODO: Add a lot more
+    /**
+     * Sends a message and deletes it again after given delay
+     *
+     * @param channel
+     *      The channel to send the message to
+     * @param message
+     *      The message to send
+     * @param delay
+     *      The time the message stays visible
+     * @param unit
+     *      The unit of the delay
+     * @return
+     *      Future completing once the message was deleted
+     */
+    public static CompletableFuture<Void> sendThenDeleteAfter(MessageChannel channel, String message, long delay, TimeUnit unit) {
+        return sendMessageAsync(channel, message).thenCompose(sent -> deleteMessageAsync(sent, delay, unit));
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.api.util;
+
+import net.dv8tion.jda.entities.MessageChannel;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.util.function.Consumer;
+
+/**
+ * Streams long output (listings, help-texts,...) into messages of at most {@value #LIMIT} characters.<br>
+ * Content is appended incrementally and every chunk is handed to the outgoing queue as soon as it is full,
+ * so at most one chunk is held in memory. Chunks are cut at the last line-break (or else space) near the limit.
+ * Code-blocks (```) spanning multiple chunks are closed at the end of one chunk and reopened in the next.<br>
+ * The remaining content is only sent on {@link #flush()} or {@link #close()}.
+ *
+ * <pre>{@code
+ * try(MessageWriter writer = new MessageWriter(channel)) {
+ *     for(String member : members)
+ *         writer.appendLine(member);
+ * }
+ * }</pre>
+ */
+public class MessageWriter implements Appendable, Flushable, Closeable {
+    public static final int LIMIT = 2000;
+    private static final String FENCE = "```";
+
+    private final Consumer<String> sink;
+    private final int max;
+    private final StringBuilder buffer;
+    private boolean inCode = false;
+
+    /**
+     * Creates a new MessageWriter sending its chunks to given channel (via {@link MessageUtil#sendMessage(MessageChannel, String)})
+     *
+     * @param channel
+     *      The channel to send the output to
+     */
+    public MessageWriter(MessageChannel channel) {
+        this(chunk -> MessageUtil.sendMessage(channel, chunk));
+    }
+
+    /**
+     * Creates a new MessageWriter handing its chunks to given consumer
+     *
+     * @param sink
+     *      Consumer of the finished chunks
+     */
+    public MessageWriter(Consumer<String> sink) {
+        this(sink, LIMIT);
+    }
+
+    /**
+     * Creates a new MessageWriter handing chunks of at most the given length to given consumer
+     *
+     * @param sink
+     *      Consumer of the finished chunks
+     * @param limit
+     *      The maximum length of a chunk
+     */
+    public MessageWriter(Consumer<String> sink, int limit) {
+        if(limit <= 2 * (FENCE.length() + 1))
+            throw new IllegalArgumentException("Limit too small");
+        this.sink = sink;
+        //leaves room to close and reopen a code-block
+        this.max = limit - 2 * (FENCE.length() + 1);
+        this.buffer = new StringBuilder(Math.min(limit, 256));
+    }
+
+    @Override
+    public MessageWriter append(CharSequence csq) {
+        if(csq == null)
+            csq = "null";
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public MessageWriter append(CharSequence csq, int start, int end) {
+        if(csq == null)
+            csq = "null";
+        while(start < end) {
+            int count = Math.min(end - start, max + 1 - buffer.length());
+            buffer.append(csq, start, start + count);
+            start += count;
+            if(buffer.length() > max)
+                emit();
+        }
+        return this;
+    }
+
+    @Override
+    public MessageWriter append(char c) {
+        buffer.append(c);
+        if(buffer.length() > max)
+            emit();
+        return this;
+    }
+
+    /**
+     * Appends given content followed by a line-break
+     */
+    public MessageWriter appendLine(CharSequence line) {
+        return append(line).append('\n');
+    }
+
+    /**
+     * Sends all buffered content as a chunk (even if it is not full yet)
+     */
+    @Override
+    public void flush() {
+        int length = buffer.length();
+        while(length > 0 && Character.isWhitespace(buffer.charAt(length - 1)))
+            length--;
+        String chunk = buffer.substring(0, length);
+        buffer.setLength(0);
+        if(length > 0)
+            send(chunk);
+    }
+
+    /**
+     * Sends the remaining content
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Cuts the buffer near the limit and sends the first part
+     */
+    private void emit() {
+        int cut = buffer.lastIndexOf("\n", max);
+        if(cut <= max / 2)
+            cut = buffer.lastIndexOf(" ", max);
+        int skip = 1;
+        if(cut <= max / 2) {
+            //don't split a surrogate pair
+            cut = Character.isHighSurrogate(buffer.charAt(max - 1)) ? max - 1 : max;
+            skip = 0;
+        }
+        String chunk = buffer.substring(0, cut);
+        buffer.delete(0, cut + skip);
+        send(chunk);
+    }
+
+    private void send(String chunk) {
+        for(int i = chunk.indexOf(FENCE); i >= 0; i = chunk.indexOf(FENCE, i + FENCE.length()))
+            inCode = !inCode;
+        if(inCode) {
+            chunk += '\n' + FENCE;
+            buffer.insert(0, FENCE + '\n');
+            //the reopened fence is counted again once the next chunk is sent
+            inCode = false;
+        }
+        sink.accept(chunk);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core;
+
+import com.kantenkugel.kanzebot.api.Services;
+import com.kantenkugel.kanzebot.api.command.Command;
+import com.kantenkugel.kanzebot.api.config.GlobalConfig;
+import com.kantenkugel.kanzebot.api.util.MessageSender;
+import com.kantenkugel.kanzebot.core.addon.AddonDiscovery;
+import com.kantenkugel.kanzebot.core.addon.AddonLoader;
+import com.kantenkugel.kanzebot.core.addon.ReloadCommand;
+import com.kantenkugel.kanzebot.core.command.CommandDispatcher;
+import com.kantenkugel.kanzebot.core.command.CommandRegistry;
+import com.kantenkugel.kanzebot.core.config.GlobalConfigHolder;
+import com.kantenkugel.kanzebot.core.config.guild.GuildConfigImpl;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettings;
+import com.kantenkugel.kanzebot.core.event.EventBus;
+import com.kantenkugel.kanzebot.core.group.GroupRegistry;
+import com.kantenkugel.kanzebot.core.isolation.AddonIsolation;
+import com.kantenkugel.kanzebot.core.message.BroadcastCommand;
+import com.kantenkugel.kanzebot.core.message.Broadcaster;
+import com.kantenkugel.kanzebot.core.message.MessagePipeline;
+import com.kantenkugel.kanzebot.core.message.QueueCommand;
+import com.kantenkugel.kanzebot.core.metrics.AddonMetrics;
+import com.kantenkugel.kanzebot.core.metrics.DispatchMetrics;
+import com.kantenkugel.kanzebot.core.metrics.MetricsServer;
+import com.kantenkugel.kanzebot.core.metrics.PrometheusExporter;
+import com.kantenkugel.kanzebot.core.metrics.StatsCommand;
+import com.kantenkugel.kanzebot.core.replay.MessageCapture;
+import com.kantenkugel.kanzebot.core.trace.TraceCommand;
+import com.kantenkugel.kanzebot.core.trace.Tracer;
+import net.dv8tion.jda.JDA;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Bundles the shared (Addon-independent) services of the bot
+ */
+public class KanzeCore {
+    private final GlobalConfigHolder globalConfig;
+    private final GuildSettings guildSettings;
+    private final CommandRegistry commandRegistry = new CommandRegistry();
+    private final GroupRegistry groupRegistry = new GroupRegistry(commandRegistry);
+    private final AddonMetrics metrics = new AddonMetrics();
+    private final DispatchMetrics dispatchMetrics = new DispatchMetrics();
+    private final AddonIsolation isolation = new AddonIsolation();
+    private final EventBus eventBus = new EventBus(metrics, isolation);
+    private final Tracer tracer;
+    private final CommandDispatcher commandDispatcher;
+    private final MessagePipeline messagePipeline;
+    private final Broadcaster broadcaster;
+    private MetricsServer metricsServer;
+    private MessageCapture capture;
+
+    public KanzeCore(GlobalConfigHolder globalConfig, GuildSettings guildSettings) {
+        this.globalConfig = globalConfig;
+        this.guildSettings = guildSettings;
+        this.tracer = new Tracer(globalConfig.getTraceSampleRate(), globalConfig.getSlowTraceMillis());
+        globalConfig.addListener((oldConfig, newConfig, changedKeys) ->
+                tracer.configure(globalConfig.getTraceSampleRate(), globalConfig.getSlowTraceMillis()));
+        this.commandDispatcher = new CommandDispatcher(commandRegistry, guildSettings.getHotFields(), metrics, isolation,
+                dispatchMetrics, tracer);
+        this.messagePipeline = new MessagePipeline(guildSettings.getHotFields());
+        this.broadcaster = new Broadcaster(messagePipeline, guildSettings);
+    }
+
+    /**
+     * Starts the bot on given (logged in) JDA instance:
+     * registers the services and the bot's own commands, attaches the dispatcher and event-bus,
+     * starts watching kanzebot.cfg for changes and starts the metrics-endpoint (if configured).
+     * Has to be called once on startup, before the Addons are loaded.
+     */
+    public void start(JDA jda, AddonLoader loader, AddonDiscovery discovery) {
+        registerServices();
+        if(!registerCoreCommands(loader, discovery))
+            System.err.println("Some of the core commands could not be registered due to name-conflicts");
+        attach(jda);
+        try {
+            globalConfig.startWatching();
+        } catch(IOException e) {
+            System.err.println("Could not watch the config-file for changes, it won't be reloaded");
+            e.printStackTrace();
+        }
+        startMetricsServer();
+    }
+
+    /**
+     * Stops watching the config-file, the metrics-endpoint, the message-capture and the executors of the bot.
+     * Pending messages are dropped.
+     */
+    public synchronized void shutdown() {
+        globalConfig.stopWatching();
+        if(metricsServer != null) {
+            metricsServer.stop();
+            metricsServer = null;
+        }
+        if(capture != null)
+            capture.close();
+        eventBus.shutdown();
+        isolation.shutdown();
+        messagePipeline.shutdown();
+    }
+
+    /**
+     * Registers the services provided to the API and freezes the registry. Has to be called once on startup.
+     */
+    public void registerServices() {
+        Services.register(GlobalConfig.class, globalConfig);
+        Services.register(MessageSender.class, messagePipeline);
+        Services.freeze();
+    }
+
+    /**
+     * Attaches the command-dispatcher and the event-bus of the Addons to given JDA instance
+     */
+    public void attach(JDA jda) {
+        jda.addEventListener(commandDispatcher);
+        jda.addEventListener(eventBus);
+        startCapture(jda);
+    }
+
+    /**
+     * Starts recording received messages for offline replay if a capture-file is configured
+     * (see {@link GlobalConfigHolder#getCaptureFile()})
+     */
+    private synchronized void startCapture(JDA jda) {
+        String file = globalConfig.getCaptureFile();
+        if(file.isEmpty() || capture != null)
+            return;
+        try {
+            capture = new MessageCapture(new File(file));
+            jda.addEventListener(capture);
+        } catch(IOException e) {
+            System.err.println("Could not open capture-file " + file);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts the Prometheus metrics-endpoint if a port is configured (see {@link GlobalConfigHolder#getMetricsPort()})
+     *
+     * @return
+     *      false if the endpoint is disabled
+     */
+    public synchronized boolean startMetricsServer() {
+        int port = globalConfig.getMetricsPort();
+        if(port <= 0 || metricsServer != null)
+            return false;
+        metricsServer = new MetricsServer(new PrometheusExporter(this), tracer);
+        metricsServer.start(port);
+        return true;
+    }
+
+    /**
+     * Registers all of the bot's own (owner-)commands
+     *
+     * @return
+     *      false if any of them had a name-conflict
+     */
+    public boolean registerCoreCommands(AddonLoader loader, AddonDiscovery discovery) {
+        boolean success = registerCoreCommand(new StatsCommand(globalConfig, metrics));
+        success &= registerCoreCommand(new ReloadCommand(globalConfig, loader, discovery));
+        success &= registerCoreCommand(new QueueCommand(globalConfig, messagePipeline));
+        success &= registerCoreCommand(new BroadcastCommand(globalConfig, broadcaster));
+        success &= registerCoreCommand(new TraceCommand(globalConfig, tracer));
+        return success;
+    }
+
+    /**
+     * Registers one of the bot's own commands
+     *
+     * @return
+     *      false if there was a name-conflict
+     */
+    public boolean registerCoreCommand(Command command) {
+        return commandRegistry.register(command, GuildConfigImpl.CORE_NAMESPACE);
+    }
+
+    public GlobalConfigHolder getGlobalConfig() {
+        return globalConfig;
+    }
+
+    public GuildSettings getGuildSettings() {
+        return guildSettings;
+    }
+
+    public CommandRegistry getCommandRegistry() {
+        return commandRegistry;
+    }
+
+    public GroupRegistry getGroupRegistry() {
+        return groupRegistry;
+    }
+
+    public EventBus getEventBus() {
+        return eventBus;
+    }
+
+    public AddonMetrics getMetrics() {
+        return metrics;
+    }
+
+    public DispatchMetrics getDispatchMetrics() {
+        return dispatchMetrics;
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    public AddonIsolation getIsolation() {
+        return isolation;
+    }
+
+    public MessagePipeline getMessagePipeline() {
+        return messagePipeline;
+    }
+
+    public Broadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
+    /**
+     * The capture of received messages, or null if capturing is disabled
+     */
+    public synchronized MessageCapture getCapture() {
+        return capture;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.addon;
+
+import com.kantenkugel.kanzebot.api.Addon;
+import com.kantenkugel.kanzebot.core.KanzeCore;
+import com.kantenkugel.kanzebot.core.config.ConfigImpl;
+import com.kantenkugel.kanzebot.core.jfr.FlightEvents;
+import com.kantenkugel.kanzebot.core.jfr.FlightEvents.AddonPhase;
+import org.apache.commons.configuration.ConfigurationException;
+
+import java.io.File;
+
+/**
+ * Wraps a single Addon together with its config, hook and lifecycle-state
+ */
+public class AddonContainer {
+    public enum State {
+        DISCOVERED, INITIALIZED, LOADED, UNLOADED, DESTROYED, FAILED
+    }
+
+    private final Addon addon;
+    private final String identifier;
+    private final AddonHook hook;
+    private volatile ConfigImpl config;
+    private volatile State state = State.DISCOVERED;
+    private volatile String failure;
+    private volatile boolean initialized = false;
+
+    AddonContainer(Addon addon, KanzeCore core) {
+        this(addon, core, false);
+    }
+
+    /**
+     * @param staged
+     *      Whether the registrations of the Addon should only be collected until {@link #publish()} is called
+     */
+    AddonContainer(Addon addon, KanzeCore core, boolean staged) {
+        this.addon = addon;
+        this.identifier = addon.getIdentifier();
+        this.hook = new AddonHook(this, core, staged ? AddonHook.Mode.STAGED : AddonHook.Mode.ACTIVE);
+    }
+
+    public Addon getAddon() {
+        return addon;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public ConfigImpl getConfig() {
+        return config;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * The reason this Addon failed, or null if it didn't fail
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    void readConfig(File configDir) throws ConfigurationException {
+        config = new ConfigImpl(new File(configDir, identifier + ".cfg"), "Config of Addon " + identifier, addon.getConfigVersion());
+    }
+
+    void init() throws ConfigurationException {
+        Object flight = FlightEvents.get().beginAddonPhase();
+        boolean success = false;
+        try {
+            addon.init(config);
+            initialized = true;
+            if(config.isNew() || config.hasChanged())
+                config.save();
+            success = true;
+        } finally {
+            FlightEvents.get().endAddonPhase(flight, identifier, AddonPhase.INIT, success);
+        }
+        state = State.INITIALIZED;
+    }
+
+    void load() {
+        Object flight = FlightEvents.get().beginAddonPhase();
+        boolean success = false;
+        try {
+            addon.load(hook);
+            success = true;
+        } finally {
+            FlightEvents.get().endAddonPhase(flight, identifier, AddonPhase.LOAD, success);
+        }
+        state = State.LOADED;
+    }
+
+    void unload() {
+        if(state != State.LOADED)
+            return;
+        Object flight = FlightEvents.get().beginAddonPhase();
+        boolean success = false;
+        try {
+            addon.unload();
+            success = true;
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
+        FlightEvents.get().endAddonPhase(flight, identifier, AddonPhase.UNLOAD, success);
+        hook.releaseAll();
+        state = State.UNLOADED;
+    }
+
+    void destroy() {
+        unload();
+        if(!initialized)
+            return;
+        initialized = false;
+        Object flight = FlightEvents.get().beginAddonPhase();
+        boolean success = false;
+        try {
+            addon.destroy();
+            success = true;
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
+        FlightEvents.get().endAddonPhase(flight, identifier, AddonPhase.DESTROY, success);
+        hook.releaseAll();
+        state = State.DESTROYED;
+    }
+
+    /**
+     * Publishes the registrations of a staged Addon, replacing the ones of its previous instance
+     */
+    void publish() {
+        hook.publish();
+    }
+
+    /**
+     * Unloads and destroys this Addon after it was replaced by a new instance.
+     * Its registrations were already swapped out, so they are left untouched.
+     */
+    void retire() {
+        hook.detach();
+        destroy();
+    }
+
+    void fail(String reason) {
+        failure = reason;
+        state = State.FAILED;
+    }
+}
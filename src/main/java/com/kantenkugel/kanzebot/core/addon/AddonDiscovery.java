@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.addon;
+
+import com.kantenkugel.kanzebot.api.Addon;
+import com.kantenkugel.kanzebot.api.LazyActivation;
+import com.kantenkugel.kanzebot.core.addon.AddonIndex.AddonInfo;
+import net.dv8tion.jda.events.Event;
+import org.xeustechnologies.jcl.JarClassLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the Addons inside the jars of the Addon-directory.<br>
+ * Each jar gets its own {@link JarClassLoader}. Jars that didn't change since the last startup are not scanned again,
+ * their Addons are instantiated straight from the {@link AddonIndex}. Changed jars are scanned in parallel.<br>
+ * Addons annotated with {@link LazyActivation} are handed out as {@link LazyAddon LazyAddons} and neither initialized nor loaded
+ * before their activation. Reading their identifier requires an instance though, so they are instantiated (and dropped again)
+ * whenever their jar is scanned. Jars that didn't change don't create a class-loader for them at all.
+ */
+public class AddonDiscovery {
+    public static final File ADDON_DIR = new File("addons");
+    public static final String INDEX_FILE = "addons.idx";
+
+    private final File dir;
+    private final AddonIndex index;
+    private final Map<String, File> jars = new ConcurrentHashMap<>();
+    private final List<LazyAddon> lazyAddons = new CopyOnWriteArrayList<>();
+
+    public AddonDiscovery() {
+        this(ADDON_DIR);
+    }
+
+    public AddonDiscovery(File dir) {
+        this.dir = dir;
+        this.index = AddonIndex.read(new File(dir, INDEX_FILE));
+    }
+
+    /**
+     * Returns the jar the Addon with given identifier was discovered in, or null if it is unknown
+     */
+    public File getJar(String identifier) {
+        return jars.get(identifier);
+    }
+
+    /**
+     * Returns the lazily activated Addons found by the last {@link #discover()}
+     */
+    public List<LazyAddon> getLazyAddons() {
+        return Collections.unmodifiableList(lazyAddons);
+    }
+
+    /**
+     * Discovers all Addons of all jars in the Addon-directory and updates the index.
+     * Only eagerly loaded Addons are returned, lazily activated ones are available via {@link #getLazyAddons()}.
+     * Lazy Addons of changed jars are instantiated by the scan, but that instance is never initialized or loaded.
+     */
+    public List<Addon> discover() {
+        lazyAddons.clear();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".jar"));
+        List<File> jarFiles = files == null ? Collections.emptyList() : Arrays.asList(files);
+
+        List<Addon> addons = new ArrayList<>();
+        List<File> changed = new ArrayList<>();
+        for(File jar : jarFiles) {
+            try {
+                List<AddonInfo> indexed = index.lookup(jar);
+                if(indexed == null)
+                    changed.add(jar);
+                else
+                    addons.addAll(instantiateEager(jar, indexed));
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+        }
+        addons.addAll(changed.parallelStream()
+                .map(this::scan)
+                .flatMap(List::stream)
+                .filter(addon -> !addon.getClass().isAnnotationPresent(LazyActivation.class))
+                .collect(Collectors.toList()));
+
+        index.retain(jarFiles);
+        writeIndex();
+        return addons;
+    }
+
+    /**
+     * Instantiates the Addons of a single jar with a fresh class-loader, rescanning it if it changed.
+     */
+    public List<Addon> load(File jar) {
+        List<Addon> addons;
+        try {
+            List<AddonInfo> indexed = index.lookup(jar);
+            addons = indexed == null ? scan(jar) : instantiate(jar, newClassLoader(jar), indexed);
+        } catch(IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+        writeIndex();
+        return addons;
+    }
+
+    private List<Addon> scan(File jar) {
+        JarClassLoader loader = newClassLoader(jar);
+        List<Addon> addons = new ArrayList<>();
+        List<AddonInfo> infos = new ArrayList<>();
+        for(String resource : loader.getLoadedResources().keySet()) {
+            if(!resource.endsWith(".class") || resource.endsWith("module-info.class"))
+                continue;
+            String className = resource.substring(0, resource.length() - 6).replace('/', '.');
+            Class<?> clazz;
+            try {
+                clazz = loader.loadClass(className);
+            } catch(ClassNotFoundException | LinkageError e) {
+                continue;
+            }
+            if(!Addon.class.isAssignableFrom(clazz) || clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers()))
+                continue;
+            Addon addon = newInstance(clazz);
+            if(addon == null)
+                continue;
+            addons.add(addon);
+            LazyActivation lazy = clazz.getAnnotation(LazyActivation.class);
+            AddonInfo info;
+            if(lazy == null) {
+                info = new AddonInfo(className, addon.getIdentifier(), addon.getConfigVersion());
+            } else {
+                List<String> events = new ArrayList<>();
+                for(Class<? extends Event> event : lazy.events())
+                    events.add(event.getName());
+                info = new AddonInfo(className, addon.getIdentifier(), addon.getConfigVersion(),
+                        Arrays.asList(lazy.commands()), events, lazy.idleUnloadMinutes());
+                rememberLazy(toLazyAddon(jar, info));
+            }
+            infos.add(info);
+            jars.put(addon.getIdentifier(), jar);
+        }
+        try {
+            index.update(jar, infos);
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+        return addons;
+    }
+
+    /**
+     * Instantiates the eagerly loaded Addons of an indexed jar and remembers the lazy ones
+     */
+    private List<Addon> instantiateEager(File jar, List<AddonInfo> infos) {
+        List<AddonInfo> eager = new ArrayList<>(infos.size());
+        for(AddonInfo info : infos) {
+            if(info.isLazy()) {
+                rememberLazy(toLazyAddon(jar, info));
+                jars.put(info.getIdentifier(), jar);
+            } else {
+                eager.add(info);
+            }
+        }
+        return eager.isEmpty() ? Collections.emptyList() : instantiate(jar, newClassLoader(jar), eager);
+    }
+
+    /**
+     * Adds a lazy Addon, replacing the one with the same identifier found by an earlier scan of its jar
+     */
+    private synchronized void rememberLazy(LazyAddon addon) {
+        lazyAddons.removeIf(known -> known.getIdentifier().equals(addon.getIdentifier()));
+        lazyAddons.add(addon);
+    }
+
+    @SuppressWarnings("unchecked")
+    private LazyAddon toLazyAddon(File jar, AddonInfo info) {
+        List<Class<? extends Event>> eventTypes = new ArrayList<>();
+        for(String eventClass : info.getLazyEvents()) {
+            try {
+                Class<?> type = Class.forName(eventClass, false, AddonDiscovery.class.getClassLoader());
+                if(Event.class.isAssignableFrom(type))
+                    eventTypes.add((Class<? extends Event>) type);
+            } catch(ClassNotFoundException e) {
+                System.err.println("Unknown Event-type " + eventClass + " declared by Addon " + info.getIdentifier());
+            }
+        }
+        return new LazyAddon(info.getIdentifier(), info.getLazyCommands(), eventTypes, info.getIdleUnloadMinutes(), () -> {
+            List<Addon> addons = instantiate(jar, newClassLoader(jar), Collections.singletonList(info));
+            if(addons.isEmpty())
+                throw new IllegalStateException("Could not instantiate Addon " + info.getIdentifier() + " from " + jar);
+            return addons.get(0);
+        });
+    }
+
+    private List<Addon> instantiate(File jar, JarClassLoader loader, List<AddonInfo> infos) {
+        List<Addon> addons = new ArrayList<>(infos.size());
+        for(AddonInfo info : infos) {
+            try {
+                Addon addon = newInstance(loader.loadClass(info.getClassName()));
+                if(addon != null) {
+                    addons.add(addon);
+                    jars.put(info.getIdentifier(), jar);
+                }
+            } catch(ClassNotFoundException | LinkageError e) {
+                e.printStackTrace();
+            }
+        }
+        return addons;
+    }
+
+    private static Addon newInstance(Class<?> clazz) {
+        try {
+            return (Addon) clazz.getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException | LinkageError e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static JarClassLoader newClassLoader(File jar) {
+        JarClassLoader loader = new JarClassLoader();
+        loader.add(jar.getAbsolutePath());
+        return loader;
+    }
+
+    private void writeIndex() {
+        try {
+            index.write();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.addon;
+
+import com.kantenkugel.kanzebot.api.KanzeHook;
+import com.kantenkugel.kanzebot.api.command.Command;
+import com.kantenkugel.kanzebot.api.config.AddonConfig;
+import com.kantenkugel.kanzebot.api.config.GlobalConfigListener;
+import com.kantenkugel.kanzebot.api.config.GuildConfig;
+import com.kantenkugel.kanzebot.api.event.BatchHandler;
+import com.kantenkugel.kanzebot.api.event.EventHandler;
+import com.kantenkugel.kanzebot.api.group.Group;
+import com.kantenkugel.kanzebot.core.KanzeCore;
+import com.kantenkugel.kanzebot.core.event.EventBus;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.events.Event;
+import net.dv8tion.jda.hooks.EventListener;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The KanzeHook handed to a single Addon.
+ * Keeps track of everything the Addon registered, so it can be released once the Addon is unloaded.<br><br>
+ *
+ * A hook starts either {@link Mode#ACTIVE active} (registrations are published right away) or
+ * {@link Mode#STAGED staged} (registrations are only collected until they are {@link #publish() published}
+ * in one step, replacing the ones of the previous instance of the Addon).
+ * Once the old instance is retired, its hook is {@link Mode#DETACHED detached} and ignores all further calls.
+ */
+class AddonHook implements KanzeHook {
+    enum Mode {
+        STAGED, ACTIVE, DETACHED
+    }
+
+    private final AddonContainer container;
+    private final KanzeCore core;
+    private volatile Mode mode;
+
+    private final Set<Command> commands = ConcurrentHashMap.newKeySet();
+    private final Set<Group> groups = ConcurrentHashMap.newKeySet();
+    private final Set<EventBus.Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final Set<GlobalConfigListener> configListeners = ConcurrentHashMap.newKeySet();
+
+    AddonHook(AddonContainer container, KanzeCore core, Mode mode) {
+        this.container = container;
+        this.core = core;
+        this.mode = mode;
+    }
+
+    @Override
+    public GuildConfig getGuildConfig(Guild guild) {
+        return core.getGuildSettings().getConfig(guild, container.getIdentifier());
+    }
+
+    @Override
+    public AddonConfig getConfig() {
+        return container.getConfig();
+    }
+
+    @Override
+    public synchronized boolean registerCommand(Command cmd) {
+        switch(mode) {
+            case STAGED:
+                if(!core.getCommandRegistry().isAvailable(cmd.getKey(), container.getIdentifier())
+                        || commands.stream().anyMatch(command -> command.getKey().equals(cmd.getKey())))
+                    return false;
+                break;
+            case ACTIVE:
+                if(!core.getCommandRegistry().register(cmd, container.getIdentifier()))
+                    return false;
+                break;
+            default:
+                return false;
+        }
+        commands.add(cmd);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean unRegisterCommand(Command cmd) {
+        if(mode == Mode.ACTIVE && !core.getCommandRegistry().unregister(cmd, container.getIdentifier()))
+            return false;
+        return commands.remove(cmd);
+    }
+
+    @Override
+    public Group getGroup(String name) {
+        return core.getGroupRegistry().get(name);
+    }
+
+    @Override
+    public synchronized boolean registerGroup(Group group) {
+        switch(mode) {
+            case STAGED:
+                if(!core.getGroupRegistry().isAvailable(group.getName(), container.getIdentifier())
+                        || groups.stream().anyMatch(g -> g.getName().equals(group.getName())))
+                    return false;
+                break;
+            case ACTIVE:
+                if(!core.getGroupRegistry().register(group, container.getIdentifier()))
+                    return false;
+                break;
+            default:
+                return false;
+        }
+        groups.add(group);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeGroup(Group group) {
+        if(mode == Mode.ACTIVE && !core.getGroupRegistry().unregister(group, container.getIdentifier()))
+            return false;
+        return groups.remove(group);
+    }
+
+    @Override
+    public void registerJDAListener(EventListener listener) {
+        addSubscription(EventBus.Subscription.of(container.getIdentifier(), listener));
+    }
+
+    @Override
+    public void unRegisterJDAListener(EventListener listener) {
+        removeSubscriptions(listener);
+    }
+
+    @Override
+    public <T extends Event> void subscribe(Class<T> eventType, EventHandler<? super T> handler, String... guildIds) {
+        addSubscription(EventBus.Subscription.of(container.getIdentifier(), eventType, handler, guildIds));
+    }
+
+    @Override
+    public <T extends Event> void subscribeCoalesced(Class<T> eventType, Function<? super T, ?> keyExtractor, long window, TimeUnit unit,
+                                                     BatchHandler<T> handler, String... guildIds) {
+        addSubscription(core.getEventBus().coalesced(container.getIdentifier(), eventType, keyExtractor, window, unit, handler, guildIds));
+    }
+
+    @Override
+    public void unsubscribe(EventHandler<?> handler) {
+        removeSubscriptions(handler);
+    }
+
+    @Override
+    public void unsubscribeCoalesced(BatchHandler<?> handler) {
+        removeSubscriptions(handler);
+    }
+
+    private synchronized void addSubscription(EventBus.Subscription subscription) {
+        if(mode == Mode.DETACHED)
+            return;
+        if(mode == Mode.ACTIVE)
+            core.getEventBus().add(subscription);
+        subscriptions.add(subscription);
+    }
+
+    private synchronized void removeSubscriptions(Object handle) {
+        if(mode == Mode.ACTIVE)
+            core.getEventBus().remove(handle, container.getIdentifier());
+        subscriptions.removeIf(subscription -> subscription.getHandle() == handle);
+    }
+
+    @Override
+    public synchronized void registerGlobalConfigListener(GlobalConfigListener listener) {
+        if(mode == Mode.DETACHED)
+            return;
+        if(mode == Mode.ACTIVE)
+            core.getGlobalConfig().addListener(listener);
+        configListeners.add(listener);
+    }
+
+    @Override
+    public synchronized void unRegisterGlobalConfigListener(GlobalConfigListener listener) {
+        if(mode != Mode.STAGED)
+            core.getGlobalConfig().removeListener(listener);
+        configListeners.remove(listener);
+    }
+
+    /**
+     * Publishes all staged registrations, replacing everything registered under the same identifier before.
+     * Commands and Groups are swapped together in a single step, as are the event-subscriptions.
+     */
+    synchronized void publish() {
+        if(mode != Mode.STAGED)
+            return;
+        String identifier = container.getIdentifier();
+        List<Command> conflicts = core.getCommandRegistry().swap(identifier, commands, groups);
+        for(Command conflict : conflicts) {
+            System.err.println("Command " + conflict.getKey() + " of Addon " + identifier + " was taken by another Addon during reload");
+            commands.remove(conflict);
+        }
+        core.getEventBus().swap(identifier, subscriptions);
+        groups.removeIf(group -> core.getGroupRegistry().get(group.getName()) != group);
+        configListeners.forEach(core.getGlobalConfig()::addListener);
+        mode = Mode.ACTIVE;
+    }
+
+    /**
+     * Detaches this hook after its registrations were replaced by a {@link #publish() published} successor.
+     * Only the GlobalConfig-listeners still have to be removed, everything else was swapped out already.
+     */
+    synchronized void detach() {
+        mode = Mode.DETACHED;
+        configListeners.forEach(core.getGlobalConfig()::removeListener);
+        commands.clear();
+        groups.clear();
+        subscriptions.clear();
+        configListeners.clear();
+    }
+
+    /**
+     * Releases everything the Addon registered and didn't free itself
+     */
+    synchronized void releaseAll() {
+        commands.forEach(this::unRegisterCommand);
+        groups.forEach(this::removeGroup);
+        subscriptions.forEach(subscription -> removeSubscriptions(subscription.getHandle()));
+        configListeners.forEach(this::unRegisterGlobalConfigListener);
+        commands.clear();
+        groups.clear();
+        subscriptions.clear();
+        configListeners.clear();
+    }
+}
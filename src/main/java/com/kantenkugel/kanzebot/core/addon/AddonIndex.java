@@ -0,0 +1,287 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.addon;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent index of the Addons found in each Addon-jar.<br><br>
+ *
+ * A jar is identified by its path, size and modification-time. If size or modification-time changed,
+ * the content-hash decides whether the jar really needs to be rescanned (e.g. it was only touched).<br><br>
+ *
+ * File layout (big endian, via {@link DataOutputStream}):
+ * <pre>
+ * header:  int magic, short version, int jarCount
+ * jar:     UTF path, long size, long lastModified, short hashLength, hash, int addonCount,
+ *          addonCount * (UTF className, UTF identifier, int configVersion, boolean lazy, [lazy-metadata])
+ * lazy-metadata (only if lazy): int idleUnloadMinutes, int commandCount, commandCount * UTF command,
+ *          int eventCount, eventCount * UTF eventClassName
+ * </pre>
+ */
+public class AddonIndex {
+    static final int MAGIC = 0x4B414931; //KAI1
+    static final short VERSION = 2;
+
+    private final File file;
+    private final Map<String, JarEntry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty = false;
+
+    private AddonIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the index from given file. A missing or unreadable file results in an empty index.
+     */
+    public static AddonIndex read(File file) {
+        AddonIndex index = new AddonIndex(file);
+        if(!file.exists())
+            return index;
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readShort() != VERSION) {
+                System.err.println("Ignoring Addon index " + file + " of unknown format");
+                return index;
+            }
+            int jarCount = in.readInt();
+            for(int i = 0; i < jarCount; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                byte[] hash = new byte[in.readShort()];
+                in.readFully(hash);
+                int addonCount = in.readInt();
+                List<AddonInfo> addons = new ArrayList<>(addonCount);
+                for(int j = 0; j < addonCount; j++) {
+                    String className = in.readUTF();
+                    String identifier = in.readUTF();
+                    int configVersion = in.readInt();
+                    if(in.readBoolean()) {
+                        int idleUnloadMinutes = in.readInt();
+                        addons.add(new AddonInfo(className, identifier, configVersion, readStrings(in), readStrings(in), idleUnloadMinutes));
+                    } else {
+                        addons.add(new AddonInfo(className, identifier, configVersion));
+                    }
+                }
+                index.entries.put(path, new JarEntry(path, size, lastModified, hash, addons));
+            }
+        } catch(IOException e) {
+            e.printStackTrace();
+            index.entries.clear();
+        }
+        return index;
+    }
+
+    /**
+     * Writes the index back to its file if anything changed since it was read.
+     * The file is first written to a temporary file and then moved into place.
+     */
+    public synchronized void write() throws IOException {
+        if(!dirty)
+            return;
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            List<JarEntry> jars = new ArrayList<>(entries.values());
+            out.writeInt(jars.size());
+            for(JarEntry jar : jars) {
+                out.writeUTF(jar.path);
+                out.writeLong(jar.size);
+                out.writeLong(jar.lastModified);
+                out.writeShort(jar.hash.length);
+                out.write(jar.hash);
+                out.writeInt(jar.addons.size());
+                for(AddonInfo addon : jar.addons) {
+                    out.writeUTF(addon.className);
+                    out.writeUTF(addon.identifier);
+                    out.writeInt(addon.configVersion);
+                    out.writeBoolean(addon.lazy);
+                    if(addon.lazy) {
+                        out.writeInt(addon.idleUnloadMinutes);
+                        writeStrings(out, addon.lazyCommands);
+                        writeStrings(out, addon.lazyEvents);
+                    }
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    /**
+     * Returns the indexed Addons of given jar, or null if the jar is unknown or changed since it was indexed.
+     * If only size or modification-time changed but the content-hash is still the same,
+     * the entry is updated and still returned.
+     */
+    public List<AddonInfo> lookup(File jar) throws IOException {
+        JarEntry entry = entries.get(jar.getAbsolutePath());
+        if(entry == null)
+            return null;
+        long size = jar.length();
+        long lastModified = jar.lastModified();
+        if(entry.size == size && entry.lastModified == lastModified)
+            return entry.addons;
+        byte[] hash = hash(jar);
+        if(!Arrays.equals(hash, entry.hash))
+            return null;
+        entries.put(entry.path, new JarEntry(entry.path, size, lastModified, hash, entry.addons));
+        dirty = true;
+        return entry.addons;
+    }
+
+    /**
+     * Stores the (freshly scanned) Addons of given jar
+     */
+    public void update(File jar, List<AddonInfo> addons) throws IOException {
+        String path = jar.getAbsolutePath();
+        entries.put(path, new JarEntry(path, jar.length(), jar.lastModified(), hash(jar), Collections.unmodifiableList(new ArrayList<>(addons))));
+        dirty = true;
+    }
+
+    /**
+     * Removes all jars from the index that are not part of given set of jars anymore
+     */
+    public void retain(Collection<File> jars) {
+        Set<String> paths = new HashSet<>();
+        for(File jar : jars)
+            paths.add(jar.getAbsolutePath());
+        if(entries.keySet().retainAll(paths))
+            dirty = true;
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> strings = new ArrayList<>(count);
+        for(int i = 0; i < count; i++)
+            strings.add(in.readUTF());
+        return strings;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for(String string : strings)
+            out.writeUTF(string);
+    }
+
+    private static byte[] hash(File jar) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[8192];
+        try(InputStream in = new FileInputStream(jar)) {
+            int read;
+            while((read = in.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * An Addon-implementation found in a jar
+     */
+    public static final class AddonInfo {
+        private final String className;
+        private final String identifier;
+        private final int configVersion;
+        private final boolean lazy;
+        private final List<String> lazyCommands;
+        private final List<String> lazyEvents;
+        private final int idleUnloadMinutes;
+
+        public AddonInfo(String className, String identifier, int configVersion) {
+            this.className = className;
+            this.identifier = identifier;
+            this.configVersion = configVersion;
+            this.lazy = false;
+            this.lazyCommands = Collections.emptyList();
+            this.lazyEvents = Collections.emptyList();
+            this.idleUnloadMinutes = 0;
+        }
+
+        /**
+         * Creates the info of an Addon annotated with {@link com.kantenkugel.kanzebot.api.LazyActivation LazyActivation}
+         */
+        public AddonInfo(String className, String identifier, int configVersion, List<String> lazyCommands,
+                         List<String> lazyEvents, int idleUnloadMinutes) {
+            this.className = className;
+            this.identifier = identifier;
+            this.configVersion = configVersion;
+            this.lazy = true;
+            this.lazyCommands = Collections.unmodifiableList(new ArrayList<>(lazyCommands));
+            this.lazyEvents = Collections.unmodifiableList(new ArrayList<>(lazyEvents));
+            this.idleUnloadMinutes = idleUnloadMinutes;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public int getConfigVersion() {
+            return configVersion;
+        }
+
+        public boolean isLazy() {
+            return lazy;
+        }
+
+        public List<String> getLazyCommands() {
+            return lazyCommands;
+        }
+
+        /**
+         * The class-names of the Event-types a lazy Addon declared
+         */
+        public List<String> getLazyEvents() {
+            return lazyEvents;
+        }
+
+        public int getIdleUnloadMinutes() {
+            return idleUnloadMinutes;
+        }
+    }
+
+    private static final class JarEntry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final byte[] hash;
+        private final List<AddonInfo> addons;
+
+        private JarEntry(String path, long size, long lastModified, byte[] hash, List<AddonInfo> addons) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.addons = addons;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.addon;
+
+import com.kantenkugel.kanzebot.api.Addon;
+import com.kantenkugel.kanzebot.api.command.Command;
+import com.kantenkugel.kanzebot.core.KanzeCore;
+import com.kantenkugel.kanzebot.core.command.LazyCommand;
+import com.kantenkugel.kanzebot.core.event.EventBus;
+import com.kantenkugel.kanzebot.core.isolation.IsolationSettings;
+import net.dv8tion.jda.events.Event;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Initializes and loads Addons respecting their declared {@link Addon#getDependencies() dependencies}.
+ * Addons that don't depend on each other are started in parallel on a ForkJoinPool.<br>
+ * {@link LazyAddon Lazy Addons} are only represented by stubs until they are first used.
+ */
+public class AddonLoader {
+    public static final File CONFIG_DIR = new File("addons");
+    private static final long IDLE_CHECK_SECONDS = 30;
+
+    private final KanzeCore core;
+    private final File configDir;
+    private final int parallelism;
+    private final Map<String, AddonContainer> containers = new ConcurrentHashMap<>();
+    private final ClassLoaderLeakDetector leakDetector = new ClassLoaderLeakDetector();
+    private final Map<String, LazyState> lazyAddons = new ConcurrentHashMap<>();
+    private ScheduledExecutorService idleChecker;
+
+    public AddonLoader(KanzeCore core) {
+        this(core, CONFIG_DIR, Runtime.getRuntime().availableProcessors());
+    }
+
+    public AddonLoader(KanzeCore core, File configDir, int parallelism) {
+        this.core = core;
+        this.configDir = configDir;
+        this.parallelism = parallelism;
+    }
+
+    public AddonContainer getContainer(String identifier) {
+        return containers.get(identifier);
+    }
+
+    public Collection<AddonContainer> getContainers() {
+        return Collections.unmodifiableCollection(containers.values());
+    }
+
+    public ClassLoaderLeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
+    /**
+     * Reads the configs of, initializes and loads all given Addons.
+     * An Addon is only started once all of its dependencies were loaded successfully,
+     * lazy Addons it depends on are activated beforehand.
+     * Addons with missing, failed or cyclic dependencies are marked as {@link AddonContainer.State#FAILED failed}.
+     *
+     * @param addons
+     *      The Addons to start
+     * @return
+     *      The timings of this startup
+     */
+    public StartupReport loadAll(Collection<Addon> addons) {
+        activateLazyDependencies(addons);
+        return startAll(addons);
+    }
+
+    private synchronized StartupReport startAll(Collection<Addon> addons) {
+        StartupReport report = new StartupReport();
+        Map<String, AddonContainer> batch = new LinkedHashMap<>();
+        for(Addon addon : addons) {
+            AddonContainer container = new AddonContainer(addon, core);
+            if(batch.containsKey(container.getIdentifier()) || containers.containsKey(container.getIdentifier())
+                    || lazyAddons.containsKey(container.getIdentifier())) {
+                report.newEntry(container.getIdentifier()).setFailure("Duplicate identifier");
+                continue;
+            }
+            batch.put(container.getIdentifier(), container);
+        }
+        containers.putAll(batch);
+
+        if(!configDir.exists() && !configDir.mkdirs())
+            System.err.println("Could not create Addon config directory " + configDir.getAbsolutePath());
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            Map<String, CompletableFuture<Boolean>> futures = new HashMap<>();
+            for(AddonContainer container : sort(batch, report)) {
+                StartupReport.Entry entry = report.newEntry(container.getIdentifier());
+                List<CompletableFuture<Boolean>> dependencies = new ArrayList<>();
+                for(String dependency : container.getAddon().getDependencies()) {
+                    CompletableFuture<Boolean> future = futures.get(dependency);
+                    //dependencies from earlier startups are already loaded (or failed)
+                    if(future == null)
+                        future = CompletableFuture.completedFuture(containers.get(dependency).getState() == AddonContainer.State.LOADED);
+                    dependencies.add(future);
+                }
+                CompletableFuture<Boolean> future = CompletableFuture
+                        .allOf(dependencies.toArray(new CompletableFuture[dependencies.size()]))
+                        .thenApplyAsync(v -> {
+                            for(CompletableFuture<Boolean> dependency : dependencies) {
+                                if(!dependency.join()) {
+                                    fail(container, entry, "A dependency failed to load");
+                                    return false;
+                                }
+                            }
+                            return start(container, entry);
+                        }, pool);
+                futures.put(container.getIdentifier(), future);
+            }
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[futures.size()])).join();
+        } finally {
+            pool.shutdown();
+        }
+        report.finish();
+        return report;
+    }
+
+    /**
+     * Replaces the running instances of Addons with new ones (usually created by a fresh class-loader).<br>
+     * Each new instance is initialized and loaded while the old one keeps running with its registrations staged.
+     * Only if that succeeded, the registrations of the old instance are swapped for the new ones in one step
+     * and the old instance is unloaded and destroyed afterwards; otherwise the old instance stays active.
+     * The class-loader of the old instance is then tracked by the {@link ClassLoaderLeakDetector}.<br>
+     * Running Addons depending (transitively) on a replaced one are restarted with a new instance afterwards,
+     * so they re-link against the new instance and drop everything they obtained from the old one
+     * (eg. its {@link com.kantenkugel.kanzebot.api.group.Group Groups}).<br>
+     * Addons not running yet are simply started. Lazy Addons the replacements depend on are activated beforehand.
+     *
+     * @param replacements
+     *      The new Addon-instances
+     * @return
+     *      The timings of the reload
+     */
+    public StartupReport reload(Collection<Addon> replacements) {
+        activateLazyDependencies(replacements);
+        return replaceAll(replacements);
+    }
+
+    private synchronized StartupReport replaceAll(Collection<Addon> replacements) {
+        StartupReport report = new StartupReport();
+        Set<String> requested = new HashSet<>();
+        Set<String> replaced = new HashSet<>();
+        for(Addon replacement : replacements) {
+            requested.add(replacement.getIdentifier());
+            if(replace(replacement, report.newEntry(replacement.getIdentifier())))
+                replaced.add(replacement.getIdentifier());
+        }
+        for(AddonContainer dependent : findDependents(replaced, requested)) {
+            StartupReport.Entry entry = report.newEntry(dependent.getIdentifier());
+            Addon fresh = newInstance(dependent);
+            if(fresh == null)
+                entry.setFailure("Could not create a new instance to re-link to its reloaded dependencies");
+            else
+                replace(fresh, entry);
+        }
+        report.finish();
+        return report;
+    }
+
+    /**
+     * Finds the running Addons depending (transitively) on the given ones, ordered so every Addon comes after its dependencies
+     */
+    private List<AddonContainer> findDependents(Set<String> replaced, Set<String> excluded) {
+        Set<String> affected = new HashSet<>(replaced);
+        Map<String, AddonContainer> dependents = new LinkedHashMap<>();
+        boolean found = !replaced.isEmpty();
+        while(found) {
+            found = false;
+            for(AddonContainer container : containers.values()) {
+                String identifier = container.getIdentifier();
+                if(affected.contains(identifier) || excluded.contains(identifier) || container.getState() != AddonContainer.State.LOADED)
+                    continue;
+                for(String dependency : container.getAddon().getDependencies()) {
+                    if(affected.contains(dependency)) {
+                        affected.add(identifier);
+                        dependents.put(identifier, container);
+                        found = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return sort(dependents, null);
+    }
+
+    /**
+     * Creates a new instance of a running Addon (from its own class-loader) or null if that failed
+     */
+    private Addon newInstance(AddonContainer container) {
+        LazyState lazy = lazyAddons.get(container.getIdentifier());
+        try {
+            if(lazy != null)
+                return lazy.addon.newInstance();
+            return container.getAddon().getClass().getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Registers stubs for the declared commands and Event-types of lazily activated Addons.
+     * An Addon is only instantiated, initialized and loaded once one of them is used.
+     */
+    public synchronized void registerLazy(Collection<LazyAddon> addons) {
+        for(LazyAddon addon : addons) {
+            String identifier = addon.getIdentifier();
+            if(containers.containsKey(identifier) || lazyAddons.containsKey(identifier)) {
+                System.err.println("Duplicate identifier " + identifier + ", ignoring lazy Addon");
+                continue;
+            }
+            LazyState state = new LazyState(addon);
+            lazyAddons.put(identifier, state);
+            installStubs(state);
+            if(addon.getIdleUnloadNanos() > 0 && idleChecker == null) {
+                idleChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "AddonLoader-IdleChecker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                idleChecker.scheduleWithFixedDelay(this::checkIdle, IDLE_CHECK_SECONDS, IDLE_CHECK_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Activates a lazy Addon, swapping its stubs for the real registrations. Does nothing if it is already loaded.
+     * Lazy Addons it depends on are activated (transitively) first.<br>
+     * The Addon is initialized and loaded while only holding its own activation-lock,
+     * so other Addons can be activated, reloaded and unloaded meanwhile. Only publishing it takes the loader's lock.
+     *
+     * @return
+     *      The timings of the activation, or null if the Addon was already loaded
+     * @throws IllegalStateException
+     *      If the Addon could not be loaded
+     */
+    public StartupReport activate(String identifier) {
+        return activate(identifier, new HashSet<>());
+    }
+
+    /**
+     * @param activating
+     *      The lazy Addons whose activation (transitively) requires this one, to detect cycles
+     */
+    private StartupReport activate(String identifier, Set<String> activating) {
+        LazyState state = lazyAddons.get(identifier);
+        if(state == null) {
+            if(isLoaded(identifier))
+                return null;
+            throw new IllegalStateException("Unknown lazy Addon " + identifier);
+        }
+        synchronized(state) {
+            if(isLoaded(identifier))
+                return null;
+            if(!activating.add(identifier))
+                throw new IllegalStateException("Dependency cycle while activating Addon " + identifier);
+            StartupReport report = new StartupReport();
+            StartupReport.Entry entry = report.newEntry(identifier);
+            AddonContainer container = new AddonContainer(state.addon.newInstance(), core, true);
+            for(String dependency : container.getAddon().getDependencies()) {
+                if(!activateDependency(dependency, activating)) {
+                    fail(container, entry, "Missing dependency " + dependency);
+                    break;
+                }
+            }
+            if(container.getState() == AddonContainer.State.FAILED || !start(container, entry)) {
+                container.destroy();
+                throw new IllegalStateException("Could not activate Addon " + identifier + ": " + entry.getFailure());
+            }
+            synchronized(this) {
+                //unregistered or loaded by a reload in the meantime
+                if(lazyAddons.get(identifier) != state || isLoaded(identifier)) {
+                    container.destroy();
+                    return null;
+                }
+                container.publish();
+                containers.put(identifier, container);
+                state.activated(core.getMetrics().get(identifier).getInvocations());
+            }
+            report.finish();
+            return report;
+        }
+    }
+
+    /**
+     * Activates the lazy Addons the given ones depend on, so they can be started.
+     * Must not be called while holding the loader's lock, as activating takes the lock of the lazy Addon first.
+     */
+    private void activateLazyDependencies(Collection<Addon> addons) {
+        Set<String> identifiers = new HashSet<>();
+        for(Addon addon : addons)
+            identifiers.add(addon.getIdentifier());
+        for(Addon addon : addons) {
+            for(String dependency : addon.getDependencies()) {
+                if(!identifiers.contains(dependency))
+                    activateDependency(dependency, new HashSet<>());
+            }
+        }
+    }
+
+    /**
+     * Activates a dependency if it is a lazy Addon that isn't loaded yet
+     *
+     * @return
+     *      Whether the dependency is loaded
+     */
+    private boolean activateDependency(String dependency, Set<String> activating) {
+        if(isLoaded(dependency) || !lazyAddons.containsKey(dependency))
+            return isLoaded(dependency);
+        try {
+            activate(dependency, activating);
+        } catch(IllegalStateException e) {
+            System.err.println(e.getMessage());
+        }
+        return isLoaded(dependency);
+    }
+
+    private boolean isLoaded(String identifier) {
+        AddonContainer container = containers.get(identifier);
+        return container != null && container.getState() == AddonContainer.State.LOADED;
+    }
+
+    /**
+     * Starts the new instance of an Addon. If an instance (or the stubs of a lazy Addon) is already registered,
+     * the new one is staged and swapped in once it was loaded successfully.
+     */
+    private boolean replace(Addon replacement, StartupReport.Entry entry) {
+        String identifier = replacement.getIdentifier();
+        AddonContainer old = containers.get(identifier);
+        boolean running = old != null && old.getState() == AddonContainer.State.LOADED;
+        LazyState lazy = lazyAddons.get(identifier);
+        boolean staged = running || lazy != null;
+        AddonContainer container = new AddonContainer(replacement, core, staged);
+        for(String dependency : replacement.getDependencies()) {
+            AddonContainer required = containers.get(dependency);
+            if(required == null || required.getState() != AddonContainer.State.LOADED) {
+                fail(container, entry, "Missing dependency " + dependency);
+                break;
+            }
+        }
+        if(container.getState() == AddonContainer.State.FAILED || !start(container, entry)) {
+            container.destroy();
+            if(!staged)
+                containers.put(identifier, container);
+            return false;
+        }
+        if(staged)
+            container.publish();
+        containers.put(identifier, container);
+        if(lazy != null)
+            lazy.activated(core.getMetrics().get(identifier).getInvocations());
+        if(running)
+            retire(old, replacement.getClass().getClassLoader());
+        return true;
+    }
+
+    private void retire(AddonContainer old, ClassLoader successorLoader) {
+        ClassLoader oldLoader = old.getAddon().getClass().getClassLoader();
+        old.retire();
+        if(oldLoader != successorLoader && oldLoader != AddonLoader.class.getClassLoader())
+            leakDetector.track(old.getIdentifier(), oldLoader);
+    }
+
+    /**
+     * Replaces all registrations of a lazy Addon with stubs that activate it
+     */
+    private void installStubs(LazyState state) {
+        String identifier = state.addon.getIdentifier();
+        Runnable activator = () -> activate(identifier);
+        List<Command> commands = new ArrayList<>();
+        for(String key : state.addon.getCommands())
+            commands.add(new LazyCommand(key, activator));
+        for(Command conflict : core.getCommandRegistry().swap(identifier, commands, Collections.emptyList()))
+            System.err.println("Command " + conflict.getKey() + " of lazy Addon " + identifier + " is already taken");
+        List<EventBus.Subscription> subscriptions = new ArrayList<>();
+        for(Class<? extends Event> eventType : state.addon.getEventTypes()) {
+            subscriptions.add(EventBus.Subscription.of(identifier, eventType, (Event event) -> {
+                activate(identifier);
+                core.getEventBus().redeliver(event, identifier);
+            }));
+        }
+        core.getEventBus().swap(identifier, subscriptions);
+    }
+
+    /**
+     * Unloads lazy Addons that weren't used within their idle-time and puts their stubs back in place
+     */
+    private synchronized void checkIdle() {
+        long now = System.nanoTime();
+        for(LazyState state : lazyAddons.values()) {
+            String identifier = state.addon.getIdentifier();
+            AddonContainer container = containers.get(identifier);
+            if(state.addon.getIdleUnloadNanos() == 0 || container == null || container.getState() != AddonContainer.State.LOADED
+                    || isRequired(identifier))
+                continue;
+            long invocations = core.getMetrics().get(identifier).getInvocations();
+            if(invocations != state.lastInvocations) {
+                state.activated(invocations);
+            } else if(now - state.lastUsed >= state.addon.getIdleUnloadNanos()) {
+                installStubs(state);
+                containers.remove(identifier);
+                retire(container, null);
+            }
+        }
+    }
+
+    /**
+     * Whether a loaded Addon depends on the given one
+     */
+    private boolean isRequired(String identifier) {
+        for(AddonContainer container : containers.values()) {
+            if(container.getState() == AddonContainer.State.LOADED
+                    && Arrays.asList(container.getAddon().getDependencies()).contains(identifier))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Unloads and destroys all Addons in reverse dependency-order
+     */
+    public synchronized void destroyAll() {
+        if(idleChecker != null) {
+            idleChecker.shutdown();
+            idleChecker = null;
+        }
+        for(String identifier : lazyAddons.keySet()) {
+            core.getCommandRegistry().swap(identifier, Collections.emptyList());
+            core.getEventBus().swap(identifier, Collections.emptyList());
+        }
+        lazyAddons.clear();
+        Map<String, AddonContainer> remaining = new LinkedHashMap<>(containers);
+        List<AddonContainer> order = sort(remaining, null);
+        Collections.reverse(order);
+        for(AddonContainer container : order)
+            container.destroy();
+        //failed Addons may still have been initialized
+        for(AddonContainer container : remaining.values())
+            container.destroy();
+        containers.clear();
+        leakDetector.shutdown();
+        core.getIsolation().shutdown();
+    }
+
+    private boolean start(AddonContainer container, StartupReport.Entry entry) {
+        entry.started();
+        long time = System.nanoTime();
+        try {
+            container.readConfig(configDir);
+            core.getIsolation().configure(container.getIdentifier(), IsolationSettings.read(container.getConfig()));
+            entry.setConfigNanos(System.nanoTime() - time);
+            time = System.nanoTime();
+            container.init();
+            entry.setInitNanos(System.nanoTime() - time);
+            time = System.nanoTime();
+            container.load();
+            entry.setLoadNanos(System.nanoTime() - time);
+            return true;
+        } catch(Exception e) {
+            e.printStackTrace();
+            fail(container, entry, e.toString());
+            return false;
+        }
+    }
+
+    private static void fail(AddonContainer container, StartupReport.Entry entry, String reason) {
+        container.fail(reason);
+        if(entry != null)
+            entry.setFailure(reason);
+    }
+
+    /**
+     * Orders the given Addons so every Addon comes after its dependencies (Kahn's algorithm).
+     * Addons with unknown or cyclic dependencies are failed and not part of the result.
+     */
+    private List<AddonContainer> sort(Map<String, AddonContainer> batch, StartupReport report) {
+        Map<String, Integer> inDegree = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        Deque<String> ready = new ArrayDeque<>();
+        for(AddonContainer container : batch.values()) {
+            int degree = 0;
+            for(String dependency : container.getAddon().getDependencies()) {
+                if(batch.containsKey(dependency)) {
+                    dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(container.getIdentifier());
+                    degree++;
+                } else if(!containers.containsKey(dependency)) {
+                    fail(container, report == null ? null : report.newEntry(container.getIdentifier()), "Missing dependency " + dependency);
+                    degree = -1;
+                    break;
+                }
+            }
+            if(degree == 0)
+                ready.add(container.getIdentifier());
+            else
+                inDegree.put(container.getIdentifier(), degree);
+        }
+
+        List<AddonContainer> sorted = new ArrayList<>(batch.size());
+        while(!ready.isEmpty()) {
+            String identifier = ready.poll();
+            AddonContainer container = batch.get(identifier);
+            if(container.getState() == AddonContainer.State.FAILED)
+                continue;
+            sorted.add(container);
+            for(String dependent : dependents.getOrDefault(identifier, Collections.emptyList())) {
+                Integer degree = inDegree.get(dependent);
+                if(degree == null || degree < 0)
+                    continue;
+                if(degree == 1) {
+                    inDegree.remove(dependent);
+                    ready.add(dependent);
+                } else {
+                    inDegree.put(dependent, degree - 1);
+                }
+            }
+        }
+        for(Map.Entry<String, Integer> left : inDegree.entrySet()) {
+            AddonContainer container = batch.get(left.getKey());
+            if(container.getState() != AddonContainer.State.FAILED)
+                fail(container, report == null ? null : report.newEntry(left.getKey()), "Dependency cycle or failed dependency");
+        }
+        return sorted;
+    }
+
+    private static final class LazyState {
+        private final LazyAddon addon;
+        private volatile long lastInvocations;
+        private volatile long lastUsed;
+
+        private LazyState(LazyAddon addon) {
+            this.addon = addon;
+        }
+
+        private void activated(long invocations) {
+            lastInvocations = invocations;
+            lastUsed = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.addon;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the class-loaders of reloaded Addons via phantom-references.<br>
+ * A class-loader that still wasn't collected some time after its Addon was replaced is reported as (possible) leak.
+ * Typical causes are threads or static registries outside of the Addon still referencing its classes.
+ */
+public class ClassLoaderLeakDetector implements Runnable {
+    public static final long DEFAULT_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+    private final Set<TrackedLoader> tracked = ConcurrentHashMap.newKeySet();
+    private final long graceNanos;
+    private Thread thread;
+
+    public ClassLoaderLeakDetector() {
+        this(DEFAULT_GRACE_MILLIS);
+    }
+
+    public ClassLoaderLeakDetector(long graceMillis) {
+        this.graceNanos = TimeUnit.MILLISECONDS.toNanos(graceMillis);
+    }
+
+    /**
+     * Starts tracking the class-loader of an Addon that was just replaced
+     */
+    public void track(String identifier, ClassLoader loader) {
+        tracked.add(new TrackedLoader(identifier, loader, queue));
+        synchronized(this) {
+            if(thread == null) {
+                thread = new Thread(this, "ClassLoaderLeakDetector");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Returns a description of all retired class-loaders that weren't collected within the grace-period
+     */
+    public List<String> getLeaks() {
+        drain();
+        long now = System.nanoTime();
+        List<String> leaks = new ArrayList<>();
+        for(TrackedLoader loader : tracked) {
+            if(now - loader.retiredAt > graceNanos)
+                leaks.add(loader.describe(now));
+        }
+        return leaks;
+    }
+
+    /**
+     * Number of retired class-loaders that were not collected yet
+     */
+    public int getPendingCount() {
+        drain();
+        return tracked.size();
+    }
+
+    public synchronized void shutdown() {
+        if(thread != null)
+            thread.interrupt();
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        long interval = Math.max(1, TimeUnit.NANOSECONDS.toMillis(graceNanos) / 4);
+        try {
+            while(!Thread.currentThread().isInterrupted()) {
+                Reference<? extends ClassLoader> collected = queue.remove(interval);
+                if(collected != null) {
+                    tracked.remove(collected);
+                    collected.clear();
+                }
+                long now = System.nanoTime();
+                for(TrackedLoader loader : tracked) {
+                    if(!loader.reported && now - loader.retiredAt > graceNanos) {
+                        loader.reported = true;
+                        System.err.println("Possible ClassLoader leak: " + loader.describe(now));
+                    }
+                }
+            }
+        } catch(InterruptedException ignored) {
+        }
+    }
+
+    private void drain() {
+        Reference<? extends ClassLoader> collected;
+        while((collected = queue.poll()) != null) {
+            tracked.remove(collected);
+            collected.clear();
+        }
+    }
+
+    private static final class TrackedLoader extends PhantomReference<ClassLoader> {
+        private final String identifier;
+        private final String loaderName;
+        private final long retiredAt = System.nanoTime();
+        private volatile boolean reported = false;
+
+        private TrackedLoader(String identifier, ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+            super(loader, queue);
+            this.identifier = identifier;
+            this.loaderName = loader.toString();
+        }
+
+        private String describe(long now) {
+            return "Addon " + identifier + " (" + loaderName + ") still not collected "
+                    + TimeUnit.NANOSECONDS.toSeconds(now - retiredAt) + "s after reload";
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.addon;
+
+import com.kantenkugel.kanzebot.api.Addon;
+import net.dv8tion.jda.events.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A discovered, but not yet instantiated Addon annotated with {@link com.kantenkugel.kanzebot.api.LazyActivation LazyActivation}
+ */
+public class LazyAddon {
+    private final String identifier;
+    private final List<String> commands;
+    private final List<Class<? extends Event>> eventTypes;
+    private final long idleUnloadNanos;
+    private final Supplier<Addon> factory;
+
+    public LazyAddon(String identifier, List<String> commands, List<Class<? extends Event>> eventTypes,
+                     int idleUnloadMinutes, Supplier<Addon> factory) {
+        this.identifier = identifier;
+        this.commands = Collections.unmodifiableList(new ArrayList<>(commands));
+        this.eventTypes = Collections.unmodifiableList(new ArrayList<>(eventTypes));
+        this.idleUnloadNanos = TimeUnit.MINUTES.toNanos(idleUnloadMinutes);
+        this.factory = factory;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    public List<Class<? extends Event>> getEventTypes() {
+        return eventTypes;
+    }
+
+    /**
+     * Idle-time after which the Addon is unloaded again, 0 if it should stay loaded
+     */
+    public long getIdleUnloadNanos() {
+        return idleUnloadNanos;
+    }
+
+    /**
+     * Creates a new instance of the Addon (usually with a fresh class-loader)
+     */
+    Addon newInstance() {
+        return factory.get();
+    }
+}
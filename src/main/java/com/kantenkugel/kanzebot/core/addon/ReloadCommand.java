@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.addon;
+
+import com.kantenkugel.kanzebot.api.Addon;
+import com.kantenkugel.kanzebot.api.config.GlobalConfig;
+import com.kantenkugel.kanzebot.api.util.MessageUtil;
+import com.kantenkugel.kanzebot.core.command.OwnerCommand;
+import net.dv8tion.jda.entities.MessageChannel;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Owner-command to hot-reload the Addons of a jar and to list class-loaders that leaked on earlier reloads
+ */
+public class ReloadCommand extends OwnerCommand {
+    private final AddonLoader loader;
+    private final AddonDiscovery discovery;
+
+    public ReloadCommand(GlobalConfig config, AddonLoader loader, AddonDiscovery discovery) {
+        super(config);
+        this.loader = loader;
+        this.discovery = discovery;
+    }
+
+    @Override
+    public String getKey() {
+        return "reload";
+    }
+
+    @Override
+    public String getUsage() {
+        return "reload <addon-identifier>\nreload leaks";
+    }
+
+    @Override
+    public String getHelp() {
+        return "Reloads the jar containing given Addon without restarting the bot";
+    }
+
+    @Override
+    protected boolean handle(MessageChannel channel, String args) {
+        if(args.isEmpty())
+            return false;
+        if(args.equals("leaks")) {
+            List<String> leaks = loader.getLeakDetector().getLeaks();
+            MessageUtil.sendMessage(channel, leaks.isEmpty()
+                    ? "No leaked class-loaders (" + loader.getLeakDetector().getPendingCount() + " awaiting collection)"
+                    : "```\n" + String.join("\n", leaks) + "\n```");
+            return true;
+        }
+        File jar = discovery.getJar(args);
+        if(jar == null) {
+            MessageUtil.sendMessage(channel, "Unknown Addon " + args);
+            return true;
+        }
+        List<Addon> addons = discovery.load(jar);
+        if(addons.isEmpty()) {
+            MessageUtil.sendMessage(channel, "No Addons found in " + jar.getName());
+            return true;
+        }
+        MessageUtil.sendMessage(channel, "```\n" + loader.reload(addons) + "```");
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.addon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings of a single {@link AddonLoader#loadAll(java.util.Collection) startup}, split by Addon and phase
+ */
+public class StartupReport {
+    private final List<Entry> entries = Collections.synchronizedList(new ArrayList<>());
+    private final long startNanos;
+    private volatile long endNanos;
+
+    StartupReport() {
+        this.startNanos = System.nanoTime();
+    }
+
+    Entry newEntry(String identifier) {
+        Entry entry = new Entry(identifier, startNanos);
+        entries.add(entry);
+        return entry;
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * The wall-clock time of the whole startup in nanoseconds
+     */
+    public long getTotalNanos() {
+        return endNanos - startNanos;
+    }
+
+    /**
+     * Sum of all phase-times of all Addons in nanoseconds.
+     * Compared to {@link #getTotalNanos()} this shows how much was gained by running in parallel.
+     */
+    public long getSequentialNanos() {
+        long sum = 0;
+        synchronized(entries) {
+            for(Entry entry : entries)
+                sum += entry.configNanos + entry.initNanos + entry.loadNanos;
+        }
+        return sum;
+    }
+
+    public List<Entry> getEntries() {
+        synchronized(entries) {
+            List<Entry> copy = new ArrayList<>(entries);
+            copy.sort(Comparator.comparingLong(Entry::getStartOffsetNanos));
+            return copy;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("Started %d Addons in %d ms (%d ms sequential)%n",
+                entries.size(), TimeUnit.NANOSECONDS.toMillis(getTotalNanos()), TimeUnit.NANOSECONDS.toMillis(getSequentialNanos())));
+        b.append(String.format("%-24s %8s %8s %8s %8s  %s%n", "Addon", "start", "config", "init", "load", "thread"));
+        for(Entry entry : getEntries()) {
+            b.append(String.format("%-24s %8.1f %8.1f %8.1f %8.1f  %s", entry.identifier, millis(entry.startOffsetNanos),
+                    millis(entry.configNanos), millis(entry.initNanos), millis(entry.loadNanos), entry.thread));
+            if(entry.failure != null)
+                b.append("  FAILED: ").append(entry.failure);
+            b.append(System.lineSeparator());
+        }
+        return b.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    public static final class Entry {
+        private final String identifier;
+        private final long reportStart;
+        private volatile long startOffsetNanos;
+        private volatile long configNanos, initNanos, loadNanos;
+        private volatile String thread = "-";
+        private volatile String failure;
+
+        private Entry(String identifier, long reportStart) {
+            this.identifier = identifier;
+            this.reportStart = reportStart;
+        }
+
+        void started() {
+            startOffsetNanos = System.nanoTime() - reportStart;
+            thread = Thread.currentThread().getName();
+        }
+
+        void setConfigNanos(long configNanos) {
+            this.configNanos = configNanos;
+        }
+
+        void setInitNanos(long initNanos) {
+            this.initNanos = initNanos;
+        }
+
+        void setLoadNanos(long loadNanos) {
+            this.loadNanos = loadNanos;
+        }
+
+        void setFailure(String failure) {
+            this.failure = failure;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * Time between the start of the startup and the start of this Addon in nanoseconds
+         */
+        public long getStartOffsetNanos() {
+            return startOffsetNanos;
+        }
+
+        public long getConfigNanos() {
+            return configNanos;
+        }
+
+        public long getInitNanos() {
+            return initNanos;
+        }
+
+        public long getLoadNanos() {
+            return loadNanos;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * The reason this Addon failed to start, or null if it started successfully
+         */
+        public String getFailure() {
+            return failure;
+        }
+    }
+}
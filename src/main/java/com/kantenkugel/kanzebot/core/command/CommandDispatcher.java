@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.command;
+
+import com.kantenkugel.kanzebot.api.command.ArgParser;
+import com.kantenkugel.kanzebot.api.command.Command;
+import com.kantenkugel.kanzebot.api.command.Requirement;
+import com.kantenkugel.kanzebot.api.util.MessageUtil;
+import com.kantenkugel.kanzebot.core.command.CommandRegistry.RegisteredCommand;
+import com.kantenkugel.kanzebot.core.config.guild.GuildHotFields;
+import com.kantenkugel.kanzebot.core.isolation.AddonIsolation;
+import com.kantenkugel.kanzebot.core.jfr.FlightEvents;
+import com.kantenkugel.kanzebot.core.metrics.AddonMetrics;
+import com.kantenkugel.kanzebot.core.metrics.AddonUsage;
+import com.kantenkugel.kanzebot.core.metrics.DispatchMetrics;
+import com.kantenkugel.kanzebot.core.trace.Trace;
+import com.kantenkugel.kanzebot.core.trace.Tracer;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.MessageChannel;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.events.Event;
+import net.dv8tion.jda.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.hooks.EventListener;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Listens for messages, matches the Guild's prefix and routes them to the registered {@link Command Commands}
+ */
+public class CommandDispatcher implements EventListener {
+    private final CommandRegistry registry;
+    private final GuildHotFields hotFields;
+    private final AddonMetrics metrics;
+    private final AddonIsolation isolation;
+    private final DispatchMetrics dispatchMetrics;
+    private final Tracer tracer;
+
+    public CommandDispatcher(CommandRegistry registry, GuildHotFields hotFields, AddonMetrics metrics, AddonIsolation isolation,
+                             DispatchMetrics dispatchMetrics, Tracer tracer) {
+        this.registry = registry;
+        this.hotFields = hotFields;
+        this.metrics = metrics;
+        this.isolation = isolation;
+        this.dispatchMetrics = dispatchMetrics;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        if(event instanceof MessageReceivedEvent)
+            onMessage((MessageReceivedEvent) event);
+    }
+
+    private void onMessage(MessageReceivedEvent event) {
+        long received = System.nanoTime();
+        Message message = event.getMessage();
+        if(message.getAuthor().getId().equals(event.getJDA().getSelfInfo().getId()))
+            return;
+        String content = message.getRawContent();
+        String guildId = event.isPrivate() ? null : event.getTextChannel().getGuild().getId();
+        String prefix = guildId == null ? GuildHotFields.DEFAULT.getPrefix() : hotFields.get(guildId).getPrefix();
+        if(!content.startsWith(prefix))
+            return;
+
+        int start = prefix.length();
+        int end = start;
+        while(end < content.length() && !Character.isWhitespace(content.charAt(end)))
+            end++;
+        if(end == start)
+            return;
+        String key = content.substring(start, end);
+        RegisteredCommand registered = registry.get(key);
+        if(registered == null)
+            return;
+        dispatchMetrics.recordDispatch(key);
+        String args = content.substring(end).trim();
+        Trace trace = tracer.begin(key, guildId, received);
+        if(trace != null)
+            trace.mark(Trace.Stage.PREFIX);
+
+        if(registered.getCommand() instanceof LazyCommand)
+            activate(registered, key, event, args, trace);
+        else
+            route(registered, key, event, args, trace);
+    }
+
+    private void route(RegisteredCommand registered, String key, MessageReceivedEvent event, String args, Trace trace) {
+        if(event.isPrivate())
+            handlePrivate(registered, key, event, args, trace);
+        else
+            handleGuild(registered, key, event, args, trace);
+    }
+
+    /**
+     * Loads the lazy Addon owning the command on its Bulkhead and then routes the message to the real command
+     */
+    private void activate(RegisteredCommand registered, String key, MessageReceivedEvent event, String args, Trace trace) {
+        boolean accepted = isolation.get(registered.getOwner()).execute(() -> {
+            try {
+                ((LazyCommand) registered.getCommand()).activate();
+            } catch(RuntimeException e) {
+                finish(trace);
+                throw e;
+            }
+            RegisteredCommand activated = registry.get(key);
+            if(activated != null && !(activated.getCommand() instanceof LazyCommand))
+                route(activated, key, event, args, trace);
+            else
+                finish(trace);
+        });
+        if(!accepted) {
+            finish(trace);
+            dispatchMetrics.recordRejected(key);
+            FlightEvents.get().rejected(key, event.isPrivate() ? null : event.getTextChannel().getGuild().getId());
+            MessageUtil.sendMessage(event.isPrivate() ? event.getPrivateChannel() : event.getTextChannel(),
+                    "`" + key + "` is busy right now, please try again later.");
+        }
+    }
+
+    private void handleGuild(RegisteredCommand registered, String key, MessageReceivedEvent event, String args, Trace trace) {
+        Command command = registered.getCommand();
+        TextChannel channel = event.getTextChannel();
+        Requirement requirement = command.getRequirement();
+        if(requirement != null && !requirement.isMet(channel, event.getAuthor())) {
+            finish(trace);
+            return;
+        }
+        if(trace != null)
+            trace.mark(Trace.Stage.REQUIREMENT);
+        Object[] customArgs = null;
+        if(registered.getParser() != null) {
+            long start = System.nanoTime();
+            Object flight = FlightEvents.get().beginParse();
+            ArgParser.ParserResult result = registered.getParser().parseArgs(event.getJDA(), channel, args);
+            dispatchMetrics.recordParse(System.nanoTime() - start);
+            endParse(flight, key, args, result);
+            if(trace != null)
+                trace.mark(Trace.Stage.PARSE);
+            if(result.getError() != null) {
+                finish(trace);
+                sendUsage(channel, command, result.getError());
+                return;
+            }
+            customArgs = result.getArgs();
+        }
+        Object[] parsed = customArgs;
+        execute(registered, channel, trace, () -> command.handleGuild(channel, event.getAuthor(), event.getMessage(), args, parsed));
+    }
+
+    private void handlePrivate(RegisteredCommand registered, String key, MessageReceivedEvent event, String args, Trace trace) {
+        Command command = registered.getCommand();
+        if(!command.acceptsPM()) {
+            finish(trace);
+            return;
+        }
+        Object[] customArgs = null;
+        if(registered.getParser() != null) {
+            long start = System.nanoTime();
+            Object flight = FlightEvents.get().beginParse();
+            ArgParser.ParserResult result = registered.getParser().parseArgs(event.getJDA(), null, args);
+            dispatchMetrics.recordParse(System.nanoTime() - start);
+            endParse(flight, key, args, result);
+            if(trace != null)
+                trace.mark(Trace.Stage.PARSE);
+            if(result.getError() != null) {
+                finish(trace);
+                sendUsage(event.getPrivateChannel(), command, result.getError());
+                return;
+            }
+            customArgs = result.getArgs();
+        }
+        Object[] parsed = customArgs;
+        execute(registered, event.getPrivateChannel(), trace,
+                () -> command.handlePrivate(event.getPrivateChannel(), event.getAuthor(), event.getMessage(), args, parsed));
+    }
+
+    /**
+     * Runs the handler of a Command on the Bulkhead of the owning Addon, accounting its resource-usage to that Addon.
+     * If the Addon currently sheds its work, the user gets a short reply instead.
+     */
+    private void execute(RegisteredCommand registered, MessageChannel channel, Trace trace, BooleanSupplier handler) {
+        boolean accepted = isolation.get(registered.getOwner()).execute(() -> {
+            if(trace != null) {
+                trace.mark(Trace.Stage.QUEUE);
+                Tracer.setCurrent(trace);
+            }
+            AddonUsage.Sample sample = metrics.begin(registered.getOwner());
+            Object flight = FlightEvents.get().beginDispatch();
+            long start = System.nanoTime();
+            boolean failed = true;
+            boolean handled = false;
+            try {
+                handled = handler.getAsBoolean();
+                failed = false;
+            } finally {
+                dispatchMetrics.recordHandler(System.nanoTime() - start);
+                sample.finish(failed);
+                if(flight != null)
+                    FlightEvents.get().endDispatch(flight, registered.getCommand().getKey(), guildId(channel),
+                            failed ? FlightEvents.Outcome.FAILED : handled ? FlightEvents.Outcome.HANDLED : FlightEvents.Outcome.USAGE);
+                if(trace != null) {
+                    Tracer.setCurrent(null);
+                    trace.finish();
+                }
+            }
+            if(!handled)
+                sendUsage(channel, registered.getCommand(), null);
+        });
+        if(!accepted) {
+            finish(trace);
+            dispatchMetrics.recordRejected(registered.getCommand().getKey());
+            FlightEvents.get().rejected(registered.getCommand().getKey(), guildId(channel));
+            MessageUtil.sendMessage(channel, "`" + registered.getCommand().getKey() + "` is busy right now, please try again later.");
+        }
+    }
+
+    /**
+     * Finishes a trace that ends before the handler ran (unmet requirement, parse-error or rejection)
+     */
+    private static void finish(Trace trace) {
+        if(trace != null)
+            trace.finish();
+    }
+
+    private static void endParse(Object flight, String key, String args, ArgParser.ParserResult result) {
+        if(flight != null)
+            FlightEvents.get().endParse(flight, key, args.length(), result.getError() == null);
+    }
+
+    private static String guildId(MessageChannel channel) {
+        return channel instanceof TextChannel ? ((TextChannel) channel).getGuild().getId() : null;
+    }
+
+    private static void sendUsage(MessageChannel channel, Command command, String error) {
+        String usage = command.getHelp() + "\nUsage:\n" + command.getUsage();
+        MessageUtil.sendMessage(channel, error == null ? usage : error + "\n" + usage);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.command;
+
+import com.kantenkugel.kanzebot.api.command.ArgParser;
+import com.kantenkugel.kanzebot.api.command.Command;
+import com.kantenkugel.kanzebot.api.group.Group;
+
+import java.util.*;
+
+/**
+ * Holds all registered Commands and Groups (of all Addons) by their key/name.<br>
+ * Lookups are lock-free on an immutable table, changes copy the table and publish it in a single write,
+ * so all Commands and Groups of an Addon can be {@link #swap(String, Collection, Collection) swapped} atomically on reload.
+ * Groups are accessed through the {@link com.kantenkugel.kanzebot.core.group.GroupRegistry GroupRegistry}.
+ */
+public class CommandRegistry {
+    private volatile Table table = new Table(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+    /**
+     * Registers a Command for given owner
+     *
+     * @return
+     *      false if there already was a Command with the same key
+     */
+    public synchronized boolean register(Command command, String owner) {
+        if(table.commands.containsKey(command.getKey()))
+            return false;
+        Map<String, RegisteredCommand> copy = new HashMap<>(table.commands);
+        copy.put(command.getKey(), new RegisteredCommand(command, owner));
+        table = table.withCommands(copy);
+        return true;
+    }
+
+    /**
+     * Un-Registers a Command if it was registered by given owner
+     *
+     * @return
+     *      false if the Command wasn't registered or is owned by someone else
+     */
+    public synchronized boolean unregister(Command command, String owner) {
+        RegisteredCommand registered = table.commands.get(command.getKey());
+        if(registered == null || registered.getCommand() != command || !registered.getOwner().equals(owner))
+            return false;
+        Map<String, RegisteredCommand> copy = new HashMap<>(table.commands);
+        copy.remove(command.getKey());
+        table = table.withCommands(copy);
+        return true;
+    }
+
+    /**
+     * Replaces all Commands of given owner with the given ones in a single step.
+     * Commands whose key is taken by another owner are skipped.
+     *
+     * @return
+     *      The Commands that were skipped because of a name-conflict
+     */
+    public synchronized List<Command> swap(String owner, Collection<Command> replacements) {
+        List<Command> conflicts = new ArrayList<>();
+        table = table.withCommands(swapCommands(owner, replacements, conflicts));
+        return conflicts;
+    }
+
+    /**
+     * Replaces all Commands and Groups of given owner with the given ones in a single step,
+     * so no lookup ever sees the new Commands together with the old Groups (or the other way around).
+     * Commands and Groups whose key/name is taken by another owner are skipped.
+     *
+     * @return
+     *      The Commands that were skipped because of a name-conflict
+     */
+    public synchronized List<Command> swap(String owner, Collection<Command> commands, Collection<Group> groups) {
+        List<Command> conflicts = new ArrayList<>();
+        Map<String, RegisteredCommand> commandCopy = swapCommands(owner, commands, conflicts);
+        Map<String, Group> groupCopy = new HashMap<>(table.groups);
+        Map<String, String> ownerCopy = new HashMap<>(table.groupOwners);
+        for(Iterator<Map.Entry<String, String>> it = ownerCopy.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, String> entry = it.next();
+            if(entry.getValue().equals(owner)) {
+                groupCopy.remove(entry.getKey());
+                it.remove();
+            }
+        }
+        for(Group group : groups) {
+            if(ownerCopy.putIfAbsent(group.getName(), owner) == null)
+                groupCopy.put(group.getName(), group);
+        }
+        table = new Table(commandCopy, groupCopy, ownerCopy);
+        return conflicts;
+    }
+
+    /**
+     * Whether given key is free or already owned by given owner
+     */
+    public boolean isAvailable(String key, String owner) {
+        RegisteredCommand registered = table.commands.get(key);
+        return registered == null || registered.getOwner().equals(owner);
+    }
+
+    public RegisteredCommand get(String key) {
+        return table.commands.get(key);
+    }
+
+    public Collection<RegisteredCommand> getAll() {
+        return table.commands.values();
+    }
+
+    public Group getGroup(String name) {
+        return table.groups.get(name);
+    }
+
+    /**
+     * Whether given Group-name is free or already owned by given owner
+     */
+    public boolean isGroupAvailable(String name, String owner) {
+        String current = table.groupOwners.get(name);
+        return current == null || current.equals(owner);
+    }
+
+    public synchronized boolean registerGroup(Group group, String owner) {
+        if(table.groups.containsKey(group.getName()))
+            return false;
+        Map<String, Group> groupCopy = new HashMap<>(table.groups);
+        Map<String, String> ownerCopy = new HashMap<>(table.groupOwners);
+        groupCopy.put(group.getName(), group);
+        ownerCopy.put(group.getName(), owner);
+        table = new Table(table.commands, groupCopy, ownerCopy);
+        return true;
+    }
+
+    public synchronized boolean unregisterGroup(Group group, String owner) {
+        if(table.groups.get(group.getName()) != group || !owner.equals(table.groupOwners.get(group.getName())))
+            return false;
+        Map<String, Group> groupCopy = new HashMap<>(table.groups);
+        Map<String, String> ownerCopy = new HashMap<>(table.groupOwners);
+        groupCopy.remove(group.getName());
+        ownerCopy.remove(group.getName());
+        table = new Table(table.commands, groupCopy, ownerCopy);
+        return true;
+    }
+
+    private Map<String, RegisteredCommand> swapCommands(String owner, Collection<Command> replacements, List<Command> conflicts) {
+        Map<String, RegisteredCommand> copy = new HashMap<>(table.commands);
+        copy.values().removeIf(registered -> registered.getOwner().equals(owner));
+        for(Command command : replacements) {
+            if(copy.putIfAbsent(command.getKey(), new RegisteredCommand(command, owner)) != null)
+                conflicts.add(command);
+        }
+        return copy;
+    }
+
+    private static final class Table {
+        private final Map<String, RegisteredCommand> commands;
+        private final Map<String, Group> groups;
+        private final Map<String, String> groupOwners;
+
+        private Table(Map<String, RegisteredCommand> commands, Map<String, Group> groups, Map<String, String> groupOwners) {
+            this.commands = Collections.unmodifiableMap(commands);
+            this.groups = Collections.unmodifiableMap(groups);
+            this.groupOwners = Collections.unmodifiableMap(groupOwners);
+        }
+
+        private Table withCommands(Map<String, RegisteredCommand> commands) {
+            return new Table(commands, groups, groupOwners);
+        }
+    }
+
+    public static final class RegisteredCommand {
+        private final Command command;
+        private final ArgParser parser;
+        private final String owner;
+
+        RegisteredCommand(Command command, String owner) {
+            this.command = command;
+            this.parser = command.getCustomParser();
+            this.owner = owner;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+
+        /**
+         * The custom parser of the Command (only retrieved once on registration) or null
+         */
+        public ArgParser getParser() {
+            return parser;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.command;
+
+import com.kantenkugel.kanzebot.api.command.ArgParser;
+import com.kantenkugel.kanzebot.api.command.Command;
+import com.kantenkugel.kanzebot.api.command.Requirement;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.PrivateChannel;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.User;
+
+/**
+ * Stand-in for a command of a lazily activated Addon that wasn't loaded yet.<br>
+ * The {@link CommandDispatcher} never calls its handlers; it {@link #activate() activates} the Addon
+ * (which replaces this stub with the real command) and then routes the message to the real command.
+ */
+public final class LazyCommand implements Command {
+    private final String key;
+    private final Runnable activator;
+
+    public LazyCommand(String key, Runnable activator) {
+        this.key = key;
+        this.activator = activator;
+    }
+
+    /**
+     * Loads the Addon owning this command (if not done yet)
+     */
+    public void activate() {
+        activator.run();
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean isGlobal() {
+        return true;
+    }
+
+    @Override
+    public boolean acceptsPM() {
+        return true;
+    }
+
+    @Override
+    public Requirement getRequirement() {
+        return null;
+    }
+
+    @Override
+    public String getUsage() {
+        return key;
+    }
+
+    @Override
+    public String getHelp() {
+        return "(not loaded yet)";
+    }
+
+    @Override
+    public boolean handleGuild(TextChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+        return true;
+    }
+
+    @Override
+    public boolean handlePrivate(PrivateChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+        return true;
+    }
+
+    @Override
+    public ArgParser getCustomParser() {
+        return null;
+    }
+}
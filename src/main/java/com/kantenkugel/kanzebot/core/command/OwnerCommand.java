@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.command;
+
+import com.kantenkugel.kanzebot.api.command.ArgParser;
+import com.kantenkugel.kanzebot.api.command.Command;
+import com.kantenkugel.kanzebot.api.command.Requirement;
+import com.kantenkugel.kanzebot.api.config.GlobalConfig;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.MessageChannel;
+import net.dv8tion.jda.entities.PrivateChannel;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.User;
+
+/**
+ * Base of the bot's own maintenance-commands which may only be used by the bot-owner.
+ * Messages of everyone else are silently ignored.
+ */
+public abstract class OwnerCommand implements Command {
+    private final GlobalConfig config;
+
+    protected OwnerCommand(GlobalConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Handles the command once the author was verified to be the bot-owner
+     *
+     * @return
+     *      false if the usage should be shown
+     */
+    protected abstract boolean handle(MessageChannel channel, String args);
+
+    @Override
+    public boolean isGlobal() {
+        return true;
+    }
+
+    @Override
+    public boolean acceptsPM() {
+        return true;
+    }
+
+    @Override
+    public Requirement getRequirement() {
+        return null;
+    }
+
+    @Override
+    public boolean handleGuild(TextChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+        return !author.getId().equals(config.getBotOwner()) || handle(channel, args);
+    }
+
+    @Override
+    public boolean handlePrivate(PrivateChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+        return !author.getId().equals(config.getBotOwner()) || handle(channel, args);
+    }
+
+    @Override
+    public ArgParser getCustomParser() {
+        return null;
+    }
+}
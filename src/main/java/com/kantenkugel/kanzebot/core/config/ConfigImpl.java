@@ -17,6 +17,9 @@
 package com.kantenkugel.kanzebot.core.config;
 
 import com.kantenkugel.kanzebot.api.config.AddonConfig;
+import com.kantenkugel.kanzebot.api.config.ConfigSchema;
+import com.kantenkugel.kanzebot.api.config.SchemaConfig;
+import com.kantenkugel.kanzebot.core.jfr.FlightEvents;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.configuration.PropertiesConfigurationLayout;
@@ -69,6 +72,30 @@ public class ConfigImpl extends PropertiesConfiguration implements AddonConfig,
         layout.setHeaderComment(newHeader);
     }
 
+    @Override
+    public void load() throws ConfigurationException {
+        Object flight = FlightEvents.get().beginConfigIO();
+        boolean success = false;
+        try {
+            super.load();
+            success = true;
+        } finally {
+            endConfigIO(flight, FlightEvents.ConfigOperation.LOAD, success);
+        }
+    }
+
+    @Override
+    public void save() throws ConfigurationException {
+        Object flight = FlightEvents.get().beginConfigIO();
+        boolean success = false;
+        try {
+            super.save();
+            success = true;
+        } finally {
+            endConfigIO(flight, FlightEvents.ConfigOperation.SAVE, success);
+        }
+    }
+
     @Override
     public <T extends Enum<T>> T getEnum(String key, T defaultValue, String comment) {
         key = "E_" + key;
@@ -266,6 +293,11 @@ public class ConfigImpl extends PropertiesConfiguration implements AddonConfig,
         clearProperty("T_" + key);
     }
 
+    @Override
+    public SchemaConfig bind(ConfigSchema schema) {
+        return new SchemaConfigImpl(this, schema);
+    }
+
     @Override
     public void configurationChanged(ConfigurationEvent event) {
         hasChanged = true;
@@ -291,6 +323,13 @@ public class ConfigImpl extends PropertiesConfiguration implements AddonConfig,
         return versionChanged;
     }
 
+    private void endConfigIO(Object flight, FlightEvents.ConfigOperation operation, boolean success) {
+        if(flight == null)
+            return;
+        File file = getFile();
+        FlightEvents.get().endConfigIO(flight, operation, file == null ? null : file.getPath(), file == null ? 0 : file.length(), success);
+    }
+
     private void set(String key, Object value, String comment) {
         setProperty(key, value);
         if(comment != null) {
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.config;
+
+import com.kantenkugel.kanzebot.api.Services;
+import com.kantenkugel.kanzebot.api.config.GlobalConfig;
+import com.kantenkugel.kanzebot.api.config.GlobalConfigListener;
+import com.kantenkugel.kanzebot.core.util.FileWatcher;
+import org.apache.commons.configuration.ConfigurationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The GlobalConfig published as {@link GlobalConfig#getInstance()}.<br>
+ * Always delegates to the latest immutable {@link GlobalConfigImpl}, which gets swapped atomically once kanzebot.cfg changes on disk.
+ */
+public class GlobalConfigHolder implements GlobalConfig {
+    public static final File FILE = new File("kanzebot.cfg");
+    private static final long DEBOUNCE_MILLIS = 250;
+
+    private final File file;
+    private final AtomicReference<GlobalConfigImpl> current;
+    private final List<GlobalConfigListener> listeners = new CopyOnWriteArrayList<>();
+    private final FileWatcher watcher;
+
+    public GlobalConfigHolder() throws ConfigurationException {
+        this(FILE);
+    }
+
+    public GlobalConfigHolder(File file) throws ConfigurationException {
+        this.file = file;
+        this.current = new AtomicReference<>(GlobalConfigImpl.read(file));
+        this.watcher = new FileWatcher(file, DEBOUNCE_MILLIS, this::reload);
+    }
+
+    public void startWatching() throws IOException {
+        watcher.start();
+    }
+
+    public void stopWatching() {
+        watcher.stop();
+    }
+
+    public void addListener(GlobalConfigListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(GlobalConfigListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Re-reads the config-file and publishes the result. The file is never written by a reload.
+     * If the file could not be parsed or misses any key (eg. because it is still being written), the current config stays active.
+     *
+     * @return
+     *      The keys that changed (empty if nothing changed or the file could not be read)
+     */
+    public synchronized Set<String> reload() {
+        GlobalConfigImpl next;
+        try {
+            next = GlobalConfigImpl.reread(file);
+        } catch(ConfigurationException e) {
+            e.printStackTrace();
+            return Collections.emptySet();
+        }
+        GlobalConfigImpl old = current.getAndSet(next);
+        Set<String> changed = Collections.unmodifiableSet(old.getChangedKeys(next));
+        if(!changed.isEmpty()) {
+            for(GlobalConfigListener listener : listeners) {
+                try {
+                    listener.onChange(old, next, changed);
+                } catch(Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public GlobalConfig snapshot() {
+        return current.get();
+    }
+
+    @Override
+    public String getBotOwner() {
+        return current.get().getBotOwner();
+    }
+
+    @Override
+    public Set<String> getBotAdmins() {
+        return current.get().getBotAdmins();
+    }
+
+    @Override
+    public boolean inAuthMode() {
+        return current.get().inAuthMode();
+    }
+
+    @Override
+    public Set<String> getAuthedGuilds() {
+        return current.get().getAuthedGuilds();
+    }
+
+    /**
+     * Port of the Prometheus metrics-endpoint (0 if disabled)
+     */
+    public int getMetricsPort() {
+        return current.get().getMetricsPort();
+    }
+
+    public float getTraceSampleRate() {
+        return current.get().getTraceSampleRate();
+    }
+
+    public int getSlowTraceMillis() {
+        return current.get().getSlowTraceMillis();
+    }
+
+    /**
+     * File received messages are captured to (empty if disabled)
+     */
+    public String getCaptureFile() {
+        return current.get().getCaptureFile();
+    }
+
+    public static void main(String[] args) {
+        try {
+            GlobalConfigHolder holder = new GlobalConfigHolder();
+            Services.register(GlobalConfig.class, holder);
+            Services.freeze();
+            holder.addListener((oldConfig, newConfig, changedKeys) -> System.out.println("Changed: " + changedKeys));
+            holder.startWatching();
+            System.out.println(GlobalConfig.getInstance().inAuthMode());
+        } catch(ConfigurationException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -14,29 +14,92 @@
  * limitations under the License.
  */
 
+
 package com.kantenkugel.kanzebot.core.config;
 
+import com.kantenkugel.kanzebot.api.config.ConfigSchema;
+import com.kantenkugel.kanzebot.api.config.ConfigSnapshot;
 import com.kantenkugel.kanzebot.api.config.GlobalConfig;
-import com.kantenkugel.kanzebot.core.util.Injector;
 import org.apache.commons.configuration.ConfigurationException;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
-public class GlobalConfigImpl extends ConfigImpl implements GlobalConfig {
+/**
+ * Immutable state of kanzebot.cfg. A new instance is created on every (re-)load and published via {@link GlobalConfigHolder}.
+ */
+public final class GlobalConfigImpl implements GlobalConfig {
     private static final int VERSION = 1;
-    private static final File FILE = new File("kanzebot.cfg");
 
-    private String botOwner;
-    private Set<String> botAdmins;
-    private boolean authMode;
-    private Set<String> authedGuilds;
+    static final String KEY_METRICS_PORT = "MetricsPort";
+    static final String KEY_TRACE_SAMPLE_RATE = "TraceSampleRate";
+    static final String KEY_SLOW_TRACE_MILLIS = "SlowTraceMillis";
+    static final String KEY_CAPTURE_FILE = "CaptureFile";
+
+    private static final ConfigSchema SCHEMA = new ConfigSchema();
+    private static final ConfigSchema.StringKey BOT_OWNER = SCHEMA.addString(KEY_BOT_OWNER, "",
+            "The ID of the BotOwner (Access to all Commands)");
+    private static final ConfigSchema.SetKey BOT_ADMINS = SCHEMA.addSet(KEY_BOT_ADMINS, Collections.emptySet(),
+            "The Set of IDs of the BotAdmins (Access to (almost) all Commands)");
+    private static final ConfigSchema.BooleanKey AUTH_MODE = SCHEMA.addBoolean(KEY_AUTH_MODE, false,
+            "Determines whether or not the Bot runs in Auth-Mode (instantly leaves guilds not first accepted by a BotAdmin)");
+    private static final ConfigSchema.SetKey AUTHED_GUILDS = SCHEMA.addSet(KEY_AUTHED_GUILDS, Collections.emptySet(),
+            "The set of authed guilds (is ignored if not in auth-mode)");
+    private static final ConfigSchema.IntKey METRICS_PORT = SCHEMA.addInteger(KEY_METRICS_PORT, 0,
+            "Port of the Prometheus metrics-endpoint (0 to disable, changes need a restart)");
+    private static final ConfigSchema.FloatKey TRACE_SAMPLE_RATE = SCHEMA.addFloat(KEY_TRACE_SAMPLE_RATE, 0.01f,
+            "Fraction of command-messages traced per stage (0 to disable, 1 for all)");
+    private static final ConfigSchema.IntKey SLOW_TRACE_MILLIS = SCHEMA.addInteger(KEY_SLOW_TRACE_MILLIS, 500,
+            "Traced commands taking at least this many milliseconds are kept for the traces-command");
+    private static final ConfigSchema.StringKey CAPTURE_FILE = SCHEMA.addString(KEY_CAPTURE_FILE, "",
+            "File to record all received messages to, for offline replay (empty to disable, changes need a restart)");
+
+    private final String botOwner;
+    private final Set<String> botAdmins;
+    private final boolean authMode;
+    private final Set<String> authedGuilds;
+    private final int metricsPort;
+    private final float traceSampleRate;
+    private final int slowTraceMillis;
+    private final String captureFile;
 
+    private GlobalConfigImpl(ConfigSnapshot snapshot) {
+        this.botOwner = snapshot.getString(BOT_OWNER);
+        this.botAdmins = snapshot.getSet(BOT_ADMINS);
+        this.authMode = snapshot.getBoolean(AUTH_MODE);
+        this.authedGuilds = snapshot.getSet(AUTHED_GUILDS);
+        this.metricsPort = snapshot.getInteger(METRICS_PORT);
+        this.traceSampleRate = snapshot.getFloat(TRACE_SAMPLE_RATE);
+        this.slowTraceMillis = snapshot.getInteger(SLOW_TRACE_MILLIS);
+        this.captureFile = snapshot.getString(CAPTURE_FILE);
+    }
+
+    public static GlobalConfigImpl read(File file) throws ConfigurationException {
+        ConfigImpl config = new ConfigImpl(file, "This File contains the global configurations of KanzeBot", VERSION);
+        ConfigSnapshot snapshot = config.bind(SCHEMA).getSnapshot();
+        if(config.hasChanged()) {
+            config.save();
+        }
+        return new GlobalConfigImpl(snapshot);
+    }
 
-    public GlobalConfigImpl() throws ConfigurationException {
-        super(FILE, "This File contains the global configurations of KanzeBot", VERSION);
-        read();
+    /**
+     * Reads the config-file for a hot-reload. Unlike {@link #read(File)}, this never writes to the file.
+     *
+     * @throws ConfigurationException
+     *      If the file is missing, can't be parsed or any key is missing or invalid (eg. because it was only partially written)
+     */
+    static GlobalConfigImpl reread(File file) throws ConfigurationException {
+        if(!file.isFile())
+            throw new ConfigurationException("Config-file " + file + " does not exist");
+        ConfigImpl config = new ConfigImpl(file, "This File contains the global configurations of KanzeBot", VERSION);
+        ConfigSnapshot snapshot = config.bind(SCHEMA).getSnapshot();
+        if(config.isNew() || config.hasChanged())
+            throw new ConfigurationException("Config-file " + file + " is incomplete or has invalid values");
+        return new GlobalConfigImpl(snapshot);
     }
 
     @Override
@@ -59,26 +122,40 @@ public class GlobalConfigImpl extends ConfigImpl implements GlobalConfig {
         return authedGuilds;
     }
 
-    private void read() {
-        botOwner = getString("BotOwnerId", "", "The ID of the BotOwner (Access to all Commands)");
-        botAdmins = getSet("BotAdmins", new HashSet<>(0), "The Set of IDs of the BotAdmins (Access to (almost) all Commands)");
-        authMode = getBoolean("InAuthMode", false, "Determines whether or not the Bot runs in Auth-Mode (instantly leaves guilds not first accepted by a BotAdmin)");
-        authedGuilds = getSet("AuthedGuilds", new HashSet<>(0), "The set of authed guilds (is ignored if not in auth-mode)");
-        if(hasChanged()) {
-            try {
-                save();
-            } catch(ConfigurationException e) {
-                e.printStackTrace();
-            }
-        }
+    public int getMetricsPort() {
+        return metricsPort;
     }
 
-    public static void main(String[] args) {
-        try {
-            Injector.inject(GlobalConfig.class, "instance", new GlobalConfigImpl(), null);
-            System.out.println(GlobalConfig.getInstance().inAuthMode());
-        } catch(ConfigurationException e) {
-            e.printStackTrace();
-        }
+    public float getTraceSampleRate() {
+        return traceSampleRate;
+    }
+
+    public int getSlowTraceMillis() {
+        return slowTraceMillis;
+    }
+
+    public String getCaptureFile() {
+        return captureFile;
+    }
+
+    Set<String> getChangedKeys(GlobalConfigImpl other) {
+        Set<String> changed = new HashSet<>();
+        if(!Objects.equals(botOwner, other.botOwner))
+            changed.add(KEY_BOT_OWNER);
+        if(!botAdmins.equals(other.botAdmins))
+            changed.add(KEY_BOT_ADMINS);
+        if(authMode != other.authMode)
+            changed.add(KEY_AUTH_MODE);
+        if(!authedGuilds.equals(other.authedGuilds))
+            changed.add(KEY_AUTHED_GUILDS);
+        if(metricsPort != other.metricsPort)
+            changed.add(KEY_METRICS_PORT);
+        if(traceSampleRate != other.traceSampleRate)
+            changed.add(KEY_TRACE_SAMPLE_RATE);
+        if(slowTraceMillis != other.slowTraceMillis)
+            changed.add(KEY_SLOW_TRACE_MILLIS);
+        if(!captureFile.equals(other.captureFile))
+            changed.add(KEY_CAPTURE_FILE);
+        return changed;
     }
 }
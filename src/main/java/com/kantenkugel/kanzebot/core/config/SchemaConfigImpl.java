@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.config;
+
+import com.kantenkugel.kanzebot.api.config.ConfigSchema;
+import com.kantenkugel.kanzebot.api.config.ConfigSchema.*;
+import com.kantenkugel.kanzebot.api.config.ConfigSnapshot;
+import com.kantenkugel.kanzebot.api.config.SchemaConfig;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.ConversionException;
+import org.apache.commons.configuration.PropertiesConfigurationLayout;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class SchemaConfigImpl implements SchemaConfig {
+    private final ConfigImpl config;
+    private final ConfigSchema schema;
+
+    private volatile ConfigSnapshot snapshot;
+
+    public SchemaConfigImpl(ConfigImpl config, ConfigSchema schema) {
+        schema.freeze();
+        this.config = config;
+        this.schema = schema;
+        synchronized(this) {
+            snapshot = read();
+        }
+    }
+
+    @Override
+    public ConfigSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public synchronized void setInteger(IntKey key, int value) {
+        ConfigSnapshot next = snapshot.toBuilder().setInteger(key, value).build();
+        config.setProperty(key.getStoreKey(), value);
+        snapshot = next;
+    }
+
+    @Override
+    public synchronized void setFloat(FloatKey key, float value) {
+        ConfigSnapshot next = snapshot.toBuilder().setFloat(key, value).build();
+        config.setProperty(key.getStoreKey(), value);
+        snapshot = next;
+    }
+
+    @Override
+    public synchronized void setBoolean(BooleanKey key, boolean value) {
+        ConfigSnapshot next = snapshot.toBuilder().setBoolean(key, value).build();
+        config.setProperty(key.getStoreKey(), value);
+        snapshot = next;
+    }
+
+    @Override
+    public synchronized void setString(StringKey key, String value) {
+        ConfigSnapshot next = snapshot.toBuilder().setString(key, value).build();
+        config.setProperty(key.getStoreKey(), value);
+        snapshot = next;
+    }
+
+    @Override
+    public synchronized <T extends Enum<T>> void setEnum(EnumKey<T> key, T value) {
+        ConfigSnapshot next = snapshot.toBuilder().setEnum(key, value).build();
+        config.setProperty(key.getStoreKey(), value.toString());
+        snapshot = next;
+    }
+
+    @Override
+    public synchronized void setList(ListKey key, List<String> value) {
+        ConfigSnapshot next = snapshot.toBuilder().setList(key, value).build();
+        config.setProperty(key.getStoreKey(), value.isEmpty() ? "" : value);
+        snapshot = next;
+    }
+
+    @Override
+    public synchronized void setSet(SetKey key, Set<String> value) {
+        ConfigSnapshot next = snapshot.toBuilder().setSet(key, value).build();
+        config.setProperty(key.getStoreKey(), value.isEmpty() ? "" : value);
+        snapshot = next;
+    }
+
+    @Override
+    public synchronized void reload() throws ConfigurationException {
+        config.refresh();
+        snapshot = read();
+    }
+
+    private ConfigSnapshot read() {
+        ConfigSnapshot.Builder builder = ConfigSnapshot.builder(schema);
+        PropertiesConfigurationLayout layout = config.getLayout();
+        for(Key key : schema.getKeys()) {
+            boolean found;
+            try {
+                found = readInto(builder, key);
+            } catch(ConversionException | IllegalArgumentException ex) {
+                found = false;
+            }
+            if(!found)
+                writeDefault(key);
+            if(key.getComment() != null) {
+                layout.setComment(key.getStoreKey(), key.getComment());
+                layout.setBlancLinesBefore(key.getStoreKey(), 1);
+            }
+        }
+        return builder.build();
+    }
+
+    private boolean readInto(ConfigSnapshot.Builder builder, Key key) {
+        String storeKey = key.getStoreKey();
+        if(!config.containsKey(storeKey))
+            return false;
+        switch(key.getType()) {
+            case INTEGER:
+                builder.setInteger((IntKey) key, config.getInt(storeKey));
+                break;
+            case FLOAT:
+                builder.setFloat((FloatKey) key, config.getFloat(storeKey));
+                break;
+            case BOOLEAN:
+                builder.setBoolean((BooleanKey) key, config.getBoolean(storeKey));
+                break;
+            case STRING:
+                builder.setString((StringKey) key, config.getString(storeKey));
+                break;
+            case ENUM:
+                readEnum(builder, (EnumKey<?>) key);
+                break;
+            case LIST:
+                builder.setList((ListKey) key, readStrings(storeKey, new ArrayList<>()));
+                break;
+            case SET:
+                builder.setSet((SetKey) key, readStrings(storeKey, new LinkedHashSet<>()));
+                break;
+        }
+        return true;
+    }
+
+    private <T extends Enum<T>> void readEnum(ConfigSnapshot.Builder builder, EnumKey<T> key) {
+        builder.setEnum(key, Enum.valueOf(key.getEnumClass(), config.getString(key.getStoreKey())));
+    }
+
+    private <C extends Collection<String>> C readStrings(String storeKey, C target) {
+        for(Object o : config.getList(storeKey)) {
+            String s = String.valueOf(o);
+            if(!s.isEmpty())
+                target.add(s);
+        }
+        return target;
+    }
+
+    private void writeDefault(Key key) {
+        Object value;
+        switch(key.getType()) {
+            case INTEGER:
+                value = ((IntKey) key).getDefault();
+                break;
+            case FLOAT:
+                value = ((FloatKey) key).getDefault();
+                break;
+            case BOOLEAN:
+                value = ((BooleanKey) key).getDefault();
+                break;
+            case STRING:
+                value = ((StringKey) key).getDefault();
+                break;
+            case ENUM:
+                value = ((EnumKey<?>) key).getDefault().toString();
+                break;
+            case LIST:
+                List<String> list = ((ListKey) key).getDefault();
+                value = list.isEmpty() ? "" : list;
+                break;
+            case SET:
+                Set<String> set = ((SetKey) key).getDefault();
+                value = set.isEmpty() ? "" : set;
+                break;
+            default:
+                return;
+        }
+        config.setProperty(key.getStoreKey(), value);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.config.guild;
+
+import com.kantenkugel.kanzebot.api.config.GuildConfig;
+import com.kantenkugel.kanzebot.api.util.MessageUtil;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+public class GuildConfigImpl implements GuildConfig {
+    public static final String CORE_NAMESPACE = "KanzeBot";
+    public static final String DEFAULT_PREFIX = "!";
+    public static final Locale DEFAULT_LOCALE = Locale.ENGLISH;
+
+    static final String PREFIX_KEY = CORE_NAMESPACE + ".Prefix";
+    static final String ESCAPE_EVERYONE_KEY = CORE_NAMESPACE + ".EscapeEveryone";
+    //all escape-flags except everyone (which predates the policy)
+    static final String ESCAPE_POLICY_KEY = CORE_NAMESPACE + ".EscapePolicy";
+    static final String LOCALE_KEY = CORE_NAMESPACE + ".Locale";
+    static final String ANNOUNCE_CHANNEL_KEY = CORE_NAMESPACE + ".AnnounceChannel";
+
+    private final GuildSettings settings;
+    private final long guildId;
+    private final String namespace;
+
+    GuildConfigImpl(GuildSettings settings, long guildId, String namespace) {
+        this.settings = settings;
+        this.guildId = guildId;
+        this.namespace = namespace + '.';
+    }
+
+    public long getGuildId() {
+        return guildId;
+    }
+
+    @Override
+    public String getPrefix() {
+        return settings.getHotFields().get(guildId).getPrefix();
+    }
+
+    public void setPrefix(String prefix) {
+        settings.put(guildId, PREFIX_KEY, prefix);
+    }
+
+    @Override
+    public boolean isEveryoneEscaped() {
+        return settings.getHotFields().get(guildId).isEveryoneEscaped();
+    }
+
+    public void setEveryoneEscaped(boolean escaped) {
+        settings.put(guildId, ESCAPE_EVERYONE_KEY, escaped);
+    }
+
+    @Override
+    public int getEscapePolicy() {
+        return settings.getHotFields().get(guildId).getEscapePolicy();
+    }
+
+    public void setEscapePolicy(int policy) {
+        settings.put(guildId, ESCAPE_EVERYONE_KEY, (policy & MessageUtil.ESCAPE_EVERYONE) != 0);
+        settings.put(guildId, ESCAPE_POLICY_KEY, policy & ~MessageUtil.ESCAPE_EVERYONE);
+    }
+
+    @Override
+    public Locale getLocale() {
+        Object tag = settings.get(guildId, LOCALE_KEY);
+        return tag instanceof String ? Locale.forLanguageTag((String) tag) : DEFAULT_LOCALE;
+    }
+
+    public void setLocale(Locale locale) {
+        settings.put(guildId, LOCALE_KEY, locale.toLanguageTag());
+    }
+
+    /**
+     * Returns the id of the channel broadcasts of the bot-owner are sent to
+     *
+     * @return
+     *      The channel-id or null if none was configured (the public channel is used then)
+     */
+    public String getAnnounceChannel() {
+        Object channelId = settings.get(guildId, ANNOUNCE_CHANNEL_KEY);
+        return channelId instanceof String ? (String) channelId : null;
+    }
+
+    public void setAnnounceChannel(String channelId) {
+        if(channelId == null)
+            settings.remove(guildId, ANNOUNCE_CHANNEL_KEY);
+        else
+            settings.put(guildId, ANNOUNCE_CHANNEL_KEY, channelId);
+    }
+
+    @Override
+    public String getString(String key, String defaultValue) {
+        return get(key, String.class, defaultValue);
+    }
+
+    @Override
+    public void setString(String key, String value) {
+        settings.put(guildId, namespace + key, value);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return get(key, Boolean.class, defaultValue);
+    }
+
+    @Override
+    public void setBoolean(String key, boolean value) {
+        settings.put(guildId, namespace + key, value);
+    }
+
+    @Override
+    public int getInteger(String key, int defaultValue) {
+        return get(key, Integer.class, defaultValue);
+    }
+
+    @Override
+    public void setInteger(String key, int value) {
+        settings.put(guildId, namespace + key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> getList(String key, List<String> defaultValue) {
+        return get(key, List.class, defaultValue);
+    }
+
+    @Override
+    public void setList(String key, List<String> value) {
+        settings.put(guildId, namespace + key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getSet(String key, Set<String> defaultValue) {
+        return get(key, Set.class, defaultValue);
+    }
+
+    @Override
+    public void setSet(String key, Set<String> value) {
+        settings.put(guildId, namespace + key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getMap(String key, Map<String, String> defaultValue) {
+        return get(key, Map.class, defaultValue);
+    }
+
+    @Override
+    public void setMap(String key, Map<String, String> value) {
+        settings.put(guildId, namespace + key, value);
+    }
+
+    @Override
+    public void updateMapEntry(String mapStoreKey, String key, String value) {
+        if(value == null)
+            settings.removeMapEntry(guildId, namespace + mapStoreKey, key);
+        else
+            settings.putMapEntry(guildId, namespace + mapStoreKey, key, value);
+    }
+
+    @Override
+    public void addListEntry(String listStoreKey, String value) {
+        settings.addListEntry(guildId, namespace + listStoreKey, value);
+    }
+
+    @Override
+    public void removeListEntry(String listStoreKey, String value) {
+        settings.removeListEntry(guildId, namespace + listStoreKey, value);
+    }
+
+    @Override
+    public void addSetEntry(String setStoreKey, String value) {
+        settings.addSetEntry(guildId, namespace + setStoreKey, value);
+    }
+
+    @Override
+    public void removeSetEntry(String setStoreKey, String value) {
+        settings.removeSetEntry(guildId, namespace + setStoreKey, value);
+    }
+
+    @Override
+    public void remove(String key) {
+        settings.remove(guildId, namespace + key);
+    }
+
+    private <T> T get(String key, Class<T> type, T defaultValue) {
+        Object value = settings.get(guildId, namespace + key);
+        return type.isInstance(value) ? type.cast(value) : defaultValue;
+    }
+}
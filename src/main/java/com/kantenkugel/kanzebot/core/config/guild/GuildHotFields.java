@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.config.guild;
+
+import com.kantenkugel.kanzebot.api.util.MessageUtil;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the fields needed for every single message (prefix and escape-policy) of all guilds.<br>
+ * The fields are kept in an open-addressing table keyed by the primitive guild-id.
+ * The table is immutable and replaced as a whole on every change (which are rare),
+ * so reads need neither locking nor a trip through the {@link GuildSettings}.<br>
+ * Guilds that don't have any of these fields configured are not stored and get {@link #DEFAULT}.
+ */
+public final class GuildHotFields {
+    public static final Entry DEFAULT = new Entry(GuildConfigImpl.DEFAULT_PREFIX, MessageUtil.ESCAPE_EVERYONE);
+
+    private volatile Table table = new Table(new long[2], new Entry[2], 0);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder defaults = new LongAdder();
+
+    /**
+     * Returns the hot fields of given guild
+     *
+     * @param guildId
+     *      The id of the guild
+     * @return
+     *      The hot fields of the guild (never null)
+     */
+    public Entry get(long guildId) {
+        Table t = table;
+        long[] keys = t.keys;
+        int mask = keys.length - 1;
+        int i = mix(guildId) & mask;
+        long k;
+        while((k = keys[i]) != 0) {
+            if(k == guildId) {
+                hits.increment();
+                return t.values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        defaults.increment();
+        return DEFAULT;
+    }
+
+    public Entry get(String guildId) {
+        return get(Long.parseLong(guildId));
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    /**
+     * Number of lookups of guilds with own hot fields
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of lookups that returned {@link #DEFAULT}
+     */
+    public long getDefaults() {
+        return defaults.sum();
+    }
+
+    static boolean isHotKey(String key) {
+        return key.equals(GuildConfigImpl.PREFIX_KEY) || key.equals(GuildConfigImpl.ESCAPE_EVERYONE_KEY)
+                || key.equals(GuildConfigImpl.ESCAPE_POLICY_KEY);
+    }
+
+    /**
+     * Reads the hot fields of given guild from the settings and publishes them
+     */
+    synchronized void refresh(GuildSettings settings, long guildId) {
+        Entry entry = read(settings, guildId);
+        Table old = table;
+        Table next = new Table(old.size + 1);
+        for(int i = 0; i < old.keys.length; i++) {
+            if(old.keys[i] != 0 && old.keys[i] != guildId)
+                next.put(old.keys[i], old.values[i]);
+        }
+        if(!entry.equals(DEFAULT))
+            next.put(guildId, entry);
+        table = next;
+    }
+
+    /**
+     * Rebuilds the whole table for given guilds (used on startup)
+     */
+    synchronized void rebuild(GuildSettings settings, long[] guildIds) {
+        Table next = new Table(guildIds.length);
+        for(long guildId : guildIds) {
+            Entry entry = read(settings, guildId);
+            if(!entry.equals(DEFAULT))
+                next.put(guildId, entry);
+        }
+        table = next;
+    }
+
+    private static Entry read(GuildSettings settings, long guildId) {
+        Object prefix = settings.get(guildId, GuildConfigImpl.PREFIX_KEY);
+        Object escaped = settings.get(guildId, GuildConfigImpl.ESCAPE_EVERYONE_KEY);
+        Object policy = settings.get(guildId, GuildConfigImpl.ESCAPE_POLICY_KEY);
+        int flags = policy instanceof Integer ? (Integer) policy & ~MessageUtil.ESCAPE_EVERYONE : 0;
+        if(!(escaped instanceof Boolean) || (Boolean) escaped)
+            flags |= MessageUtil.ESCAPE_EVERYONE;
+        return new Entry(prefix instanceof String ? (String) prefix : DEFAULT.prefix, flags);
+    }
+
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Table {
+        private final long[] keys;
+        private final Entry[] values;
+        private int size;
+
+        private Table(int expected) {
+            int capacity = 2;
+            while(capacity < expected * 2)
+                capacity <<= 1;
+            this.keys = new long[capacity];
+            this.values = new Entry[capacity];
+        }
+
+        private Table(long[] keys, Entry[] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        //only used while building, before the table is published
+        private void put(long key, Entry value) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while(keys[i] != 0 && keys[i] != key)
+                i = (i + 1) & mask;
+            if(keys[i] == 0)
+                size++;
+            keys[i] = key;
+            values[i] = value;
+        }
+    }
+
+    /**
+     * Immutable hot fields of a single guild
+     */
+    public static final class Entry {
+        private final String prefix;
+        private final int escapePolicy;
+
+        public Entry(String prefix, int escapePolicy) {
+            this.prefix = prefix;
+            this.escapePolicy = escapePolicy;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public boolean isEveryoneEscaped() {
+            return (escapePolicy & MessageUtil.ESCAPE_EVERYONE) != 0;
+        }
+
+        public int getEscapePolicy() {
+            return escapePolicy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Entry))
+                return false;
+            Entry other = (Entry) o;
+            return escapePolicy == other.escapePolicy && prefix.equals(other.prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return prefix.hashCode() * 31 + escapePolicy;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.config.guild;
+
+import com.kantenkugel.kanzebot.api.config.GuildConfig;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettingsJournal.Record;
+import net.dv8tion.jda.entities.Guild;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Holds the settings of all guilds.<br>
+ * Reads are served from the memory-mapped {@link GuildSettingsStore} with all not yet merged changes on top.
+ * Writes are appended to a {@link GuildSettingsJournal} as small delta-records (single map/list/set entries),
+ * so they don't get more expensive the bigger the stored collections get.
+ * Once the journal grows too big, it is merged into a new store-file in the background.
+ * The old store is unmapped before the new file is moved into place, so store-reads are guarded by a read-write-lock.<br>
+ * The per-message fields (prefix, everyone-escaping) are additionally kept in {@link GuildHotFields}.
+ */
+public class GuildSettings implements Closeable {
+    public static final File FILE = new File("guilds.bin");
+    public static final long DEFAULT_COMPACT_THRESHOLD = 1 << 20;
+
+    private static final Object REMOVED = new Object();
+
+    private final File file;
+    private final long compactThreshold;
+    private final Map<Long, Map<String, Object>> changes = new ConcurrentHashMap<>();
+    private final GuildHotFields hotFields = new GuildHotFields();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "GuildSettings-Compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LongAdder overlayHits = new LongAdder();
+    private final LongAdder storeReads = new LongAdder();
+
+    private final ReadWriteLock storeLock = new ReentrantReadWriteLock();
+    private volatile GuildSettingsStore store;
+    private GuildSettingsJournal journal;
+    private boolean compacting = false;
+
+    public GuildSettings() throws IOException {
+        this(FILE, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    public GuildSettings(File file) throws IOException {
+        this(file, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    public GuildSettings(File file, long compactThreshold) throws IOException {
+        this.file = file;
+        this.compactThreshold = compactThreshold;
+        this.store = GuildSettingsStore.open(file);
+        long generation = store.getGeneration();
+        for(long journalGeneration : GuildSettingsJournal.findGenerations(file)) {
+            File journalFile = GuildSettingsJournal.fileFor(file, journalGeneration);
+            if(journalGeneration <= store.getGeneration()) {
+                //already merged, left over from a compaction that was interrupted before cleanup
+                Files.deleteIfExists(journalFile.toPath());
+                continue;
+            }
+            for(Record record : GuildSettingsJournal.read(journalFile))
+                apply(record);
+            generation = journalGeneration;
+        }
+        this.journal = GuildSettingsJournal.open(file, generation + 1);
+
+        Set<Long> guildIds = new HashSet<>(changes.keySet());
+        for(long guildId : store.getGuildIds())
+            guildIds.add(guildId);
+        hotFields.rebuild(this, guildIds.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    public GuildConfig getConfig(Guild guild, String namespace) {
+        return getConfig(Long.parseLong(guild.getId()), namespace);
+    }
+
+    public GuildConfig getConfig(long guildId, String namespace) {
+        return new GuildConfigImpl(this, guildId, namespace);
+    }
+
+    /**
+     * Returns the value stored for given guild and key.
+     * Lists, Sets and Maps are returned as mutable copies.
+     *
+     * @param guildId
+     *      The id of the guild
+     * @param key
+     *      The (namespaced) key
+     * @return
+     *      The value or null if it doesn't exist
+     */
+    public Object get(long guildId, String key) {
+        Map<String, Object> guildChanges = changes.get(guildId);
+        if(guildChanges != null) {
+            Object changed = guildChanges.get(key);
+            if(changed != null)
+                overlayHits.increment();
+            if(changed == REMOVED)
+                return null;
+            if(changed != null)
+                return GuildValueCodec.copy(changed);
+        }
+        storeReads.increment();
+        return readStore(guildId, key);
+    }
+
+    public void put(long guildId, String key, Object value) {
+        GuildValueCodec.typeOf(value);
+        write(Record.put(guildId, key, value));
+    }
+
+    public void remove(long guildId, String key) {
+        write(Record.remove(guildId, key));
+    }
+
+    public void putMapEntry(long guildId, String key, String member, String value) {
+        write(Record.mapPut(guildId, key, member, value));
+    }
+
+    public void removeMapEntry(long guildId, String key, String member) {
+        write(Record.entry(guildId, GuildSettingsJournal.OP_MAP_REMOVE, key, member));
+    }
+
+    public void addListEntry(long guildId, String key, String value) {
+        write(Record.entry(guildId, GuildSettingsJournal.OP_LIST_ADD, key, value));
+    }
+
+    public void removeListEntry(long guildId, String key, String value) {
+        write(Record.entry(guildId, GuildSettingsJournal.OP_LIST_REMOVE, key, value));
+    }
+
+    public void addSetEntry(long guildId, String key, String value) {
+        write(Record.entry(guildId, GuildSettingsJournal.OP_SET_ADD, key, value));
+    }
+
+    public void removeSetEntry(long guildId, String key, String value) {
+        write(Record.entry(guildId, GuildSettingsJournal.OP_SET_REMOVE, key, value));
+    }
+
+    /**
+     * Number of lookups answered by the in-memory changes (not yet compacted into the store)
+     */
+    public long getOverlayHits() {
+        return overlayHits.sum();
+    }
+
+    /**
+     * Number of lookups that had to read the store
+     */
+    public long getStoreReads() {
+        return storeReads.sum();
+    }
+
+    public GuildHotFields getHotFields() {
+        return hotFields;
+    }
+
+    /**
+     * Merges all outstanding changes into the store and closes the journal
+     *
+     * @throws IOException
+     *      If the journal could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            //queued behind a possibly running compaction, which might not contain the latest changes
+            compactor.submit(() -> {
+                synchronized(this) {
+                    if(journal.size() > 0)
+                        startCompaction();
+                }
+            }).get();
+            compactor.shutdown();
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException e) {
+            e.printStackTrace();
+        }
+        synchronized(this) {
+            journal.close();
+            storeLock.writeLock().lock();
+            try {
+                store.close();
+                store = GuildSettingsStore.EMPTY;
+            } finally {
+                storeLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private Object readStore(long guildId, String key) {
+        storeLock.readLock().lock();
+        try {
+            return store.get(guildId, key);
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    private synchronized void write(Record record) {
+        apply(record);
+        if(GuildHotFields.isHotKey(record.key))
+            hotFields.refresh(this, record.guildId);
+        try {
+            journal.append(record);
+        } catch(IOException e) {
+            //the change is still kept in memory and will be persisted by the next compaction
+            e.printStackTrace();
+        }
+        if(!compacting && journal.size() >= compactThreshold)
+            startCompaction();
+    }
+
+    /**
+     * Applies a record to the in-memory changes.
+     * Collections are kept as concurrent collections and changed in place, so readers copying them never see a broken state.
+     */
+    @SuppressWarnings("unchecked")
+    private void apply(Record record) {
+        Map<String, Object> guild = changes.computeIfAbsent(record.guildId, id -> new ConcurrentHashMap<>());
+        switch(record.op) {
+            case GuildSettingsJournal.OP_PUT:
+                guild.put(record.key, toConcurrent(record.fullValue));
+                break;
+            case GuildSettingsJournal.OP_REMOVE:
+                guild.put(record.key, REMOVED);
+                break;
+            case GuildSettingsJournal.OP_MAP_PUT:
+                changed(guild, record, Map.class, ConcurrentHashMap::new).put(record.member, record.value);
+                break;
+            case GuildSettingsJournal.OP_MAP_REMOVE:
+                changed(guild, record, Map.class, ConcurrentHashMap::new).remove(record.member);
+                break;
+            case GuildSettingsJournal.OP_LIST_ADD:
+                changed(guild, record, List.class, GuildSettings::newList).add(record.member);
+                break;
+            case GuildSettingsJournal.OP_LIST_REMOVE:
+                changed(guild, record, List.class, GuildSettings::newList).remove(record.member);
+                break;
+            case GuildSettingsJournal.OP_SET_ADD:
+                changed(guild, record, Set.class, ConcurrentHashMap::newKeySet).add(record.member);
+                break;
+            case GuildSettingsJournal.OP_SET_REMOVE:
+                changed(guild, record, Set.class, ConcurrentHashMap::newKeySet).remove(record.member);
+                break;
+        }
+    }
+
+    /**
+     * Returns the in-memory (concurrent) collection for the key of given record.
+     * If it wasn't changed before, the stored collection is copied once (or a new one is created if there was none).
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T changed(Map<String, Object> guild, Record record, Class<T> type, Supplier<? extends T> creator) {
+        Object current = guild.get(record.key);
+        if(type.isInstance(current))
+            return (T) current;
+        Object stored = current == REMOVED ? null : readStore(record.guildId, record.key);
+        T out = creator.get();
+        if(type.isInstance(stored)) {
+            if(out instanceof Map)
+                ((Map<String, String>) out).putAll((Map<String, String>) stored);
+            else
+                ((Collection<String>) out).addAll((Collection<String>) stored);
+        }
+        guild.put(record.key, out);
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toConcurrent(Object value) {
+        if(value instanceof List) {
+            List<String> list = newList();
+            list.addAll((List<String>) value);
+            return list;
+        }
+        if(value instanceof Set) {
+            Set<String> set = ConcurrentHashMap.newKeySet();
+            set.addAll((Set<String>) value);
+            return set;
+        }
+        if(value instanceof Map)
+            return new ConcurrentHashMap<>((Map<String, String>) value);
+        return value;
+    }
+
+    private static List<String> newList() {
+        return Collections.synchronizedList(new ArrayList<>());
+    }
+
+    /**
+     * Freezes the current changes, switches to a new journal and merges the frozen state into a new store in the background.
+     * Has to be called while holding the lock.
+     */
+    private void startCompaction() {
+        compacting = true;
+        Map<Long, Map<String, Object>> frozen = new HashMap<>();
+        for(Map.Entry<Long, Map<String, Object>> guild : changes.entrySet()) {
+            Map<String, Object> values = new HashMap<>();
+            for(Map.Entry<String, Object> entry : guild.getValue().entrySet())
+                values.put(entry.getKey(), entry.getValue() == REMOVED ? REMOVED : GuildValueCodec.copy(entry.getValue()));
+            frozen.put(guild.getKey(), values);
+        }
+        long covered = journal.getGeneration();
+        try {
+            journal.close();
+            journal = GuildSettingsJournal.open(file, covered + 1);
+        } catch(IOException e) {
+            e.printStackTrace();
+            compacting = false;
+            return;
+        }
+        compactor.execute(() -> compact(frozen, covered));
+    }
+
+    private void compact(Map<Long, Map<String, Object>> frozen, long covered) {
+        try {
+            //only this thread replaces the store, so it can be read without the lock
+            SortedMap<Long, Map<String, Object>> all = store.readAll();
+            for(Map.Entry<Long, Map<String, Object>> guild : frozen.entrySet()) {
+                Map<String, Object> values = all.computeIfAbsent(guild.getKey(), id -> new HashMap<>());
+                for(Map.Entry<String, Object> entry : guild.getValue().entrySet()) {
+                    if(entry.getValue() == REMOVED)
+                        values.remove(entry.getKey());
+                    else
+                        values.put(entry.getKey(), entry.getValue());
+                }
+            }
+            File tmp = GuildSettingsStore.writeTemp(file, all, covered);
+            synchronized(this) {
+                storeLock.writeLock().lock();
+                try {
+                    //the mapped file can't be replaced (on Windows), and a closed store must never be read
+                    store.close();
+                    store = GuildSettingsStore.EMPTY;
+                    try {
+                        GuildSettingsStore.replace(tmp, file);
+                    } finally {
+                        store = GuildSettingsStore.open(file);
+                    }
+                } finally {
+                    storeLock.writeLock().unlock();
+                }
+                //drop every change that is now part of the store and wasn't changed again in the meantime
+                for(Map.Entry<Long, Map<String, Object>> guild : frozen.entrySet()) {
+                    Map<String, Object> current = changes.get(guild.getKey());
+                    if(current == null)
+                        continue;
+                    for(Map.Entry<String, Object> entry : guild.getValue().entrySet())
+                        current.remove(entry.getKey(), entry.getValue());
+                    if(current.isEmpty())
+                        changes.remove(guild.getKey(), current);
+                }
+            }
+            for(long generation : GuildSettingsJournal.findGenerations(file)) {
+                if(generation <= covered)
+                    Files.deleteIfExists(GuildSettingsJournal.fileFor(file, generation).toPath());
+            }
+        } catch(IOException e) {
+            //journals are kept, the next compaction (or restart) will pick them up again
+            e.printStackTrace();
+        } finally {
+            synchronized(this) {
+                compacting = false;
+            }
+        }
+    }
+}
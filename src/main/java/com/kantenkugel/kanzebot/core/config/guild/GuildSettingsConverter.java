@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.config.guild;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Converts the binary guild-settings store from/to a human-readable properties file.<br>
+ * Every value is stored as <code>guildId.typePrefix_key</code>, the type-prefixes match the ones used by {@link com.kantenkugel.kanzebot.core.config.ConfigImpl}
+ * (plus <code>M_</code> for maps, whose entries are stored as <code>key=value</code>).
+ * Lists, Sets and Maps are written as repeated keys, so values may contain commas.
+ */
+public class GuildSettingsConverter {
+    private static final String STRING = "S_";
+    private static final String BOOLEAN = "B_";
+    private static final String INTEGER = "I_";
+    private static final String LIST = "L_";
+    private static final String SET = "T_";
+    private static final String MAP = "M_";
+
+    private GuildSettingsConverter() {}
+
+    public static void toProperties(File binFile, File propertiesFile) throws IOException, ConfigurationException {
+        PropertiesConfiguration properties = new PropertiesConfiguration();
+        properties.setDelimiterParsingDisabled(true);
+        properties.getLayout().setHeaderComment("KanzeBot guild-settings (converted from " + binFile.getName() + ")");
+        try(GuildSettingsStore store = GuildSettingsStore.open(binFile)) {
+            for(Map.Entry<Long, Map<String, Object>> guild : store.readAll().entrySet()) {
+                for(Map.Entry<String, Object> entry : new TreeMap<>(guild.getValue()).entrySet()) {
+                    properties.setProperty(guild.getKey() + "." + prefixed(entry.getKey(), entry.getValue()), toProperty(entry.getValue()));
+                }
+            }
+        }
+        properties.save(propertiesFile);
+    }
+
+    public static void fromProperties(File propertiesFile, File binFile) throws IOException, ConfigurationException {
+        PropertiesConfiguration properties = new PropertiesConfiguration();
+        properties.setDelimiterParsingDisabled(true);
+        properties.load(propertiesFile);
+        Map<Long, Map<String, Object>> settings = new TreeMap<>();
+        Iterator<String> keys = properties.getKeys();
+        while(keys.hasNext()) {
+            String fullKey = keys.next();
+            int dot = fullKey.indexOf('.');
+            if(dot < 0 || fullKey.length() < dot + 3)
+                throw new ConfigurationException("Invalid guild-settings key " + fullKey);
+            long guildId;
+            try {
+                guildId = Long.parseLong(fullKey.substring(0, dot));
+            } catch(NumberFormatException ex) {
+                throw new ConfigurationException("Invalid guild-id in key " + fullKey);
+            }
+            String type = fullKey.substring(dot + 1, dot + 3);
+            String key = fullKey.substring(dot + 3);
+            settings.computeIfAbsent(guildId, id -> new HashMap<>()).put(key, fromProperty(type, properties.getList(fullKey), fullKey));
+        }
+        GuildSettingsStore.write(binFile, settings, 0);
+    }
+
+    private static String prefixed(String key, Object value) {
+        switch(GuildValueCodec.typeOf(value)) {
+            case GuildValueCodec.TYPE_STRING:
+                return STRING + key;
+            case GuildValueCodec.TYPE_BOOLEAN:
+                return BOOLEAN + key;
+            case GuildValueCodec.TYPE_INTEGER:
+                return INTEGER + key;
+            case GuildValueCodec.TYPE_LIST:
+                return LIST + key;
+            case GuildValueCodec.TYPE_SET:
+                return SET + key;
+            default:
+                return MAP + key;
+        }
+    }
+
+    private static Object toProperty(Object value) {
+        if(value instanceof Map) {
+            List<String> entries = new ArrayList<>();
+            for(Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                entries.add(entry.getKey() + "=" + entry.getValue());
+            value = entries;
+        }
+        if(value instanceof Collection && ((Collection) value).isEmpty())
+            return "";
+        return value;
+    }
+
+    private static Object fromProperty(String type, List<Object> raw, String fullKey) throws ConfigurationException {
+        List<String> values = new ArrayList<>(raw.size());
+        for(Object o : raw) {
+            String s = String.valueOf(o);
+            if(!s.isEmpty())
+                values.add(s);
+        }
+        String single = raw.isEmpty() ? "" : String.valueOf(raw.get(0));
+        switch(type) {
+            case STRING:
+                return single;
+            case BOOLEAN:
+                return Boolean.parseBoolean(single);
+            case INTEGER:
+                try {
+                    return Integer.parseInt(single);
+                } catch(NumberFormatException ex) {
+                    throw new ConfigurationException("Invalid integer for key " + fullKey);
+                }
+            case LIST:
+                return values;
+            case SET:
+                return new HashSet<>(values);
+            case MAP:
+                Map<String, String> map = new HashMap<>();
+                for(String entry : values) {
+                    int split = entry.indexOf('=');
+                    if(split < 0)
+                        throw new ConfigurationException("Invalid map-entry for key " + fullKey + ": " + entry);
+                    map.put(entry.substring(0, split), entry.substring(split + 1));
+                }
+                return map;
+            default:
+                throw new ConfigurationException("Unknown type-prefix for key " + fullKey);
+        }
+    }
+
+    public static void main(String[] args) {
+        if(args.length != 3 || !(args[0].equals("toProperties") || args[0].equals("fromProperties"))) {
+            System.out.println("Usage: GuildSettingsConverter toProperties|fromProperties <input> <output>");
+            return;
+        }
+        try {
+            if(args[0].equals("toProperties"))
+                toProperties(new File(args[1]), new File(args[2]));
+            else
+                fromProperties(new File(args[1]), new File(args[2]));
+        } catch(IOException | ConfigurationException e) {
+            e.printStackTrace();
+        }
+    }
+}
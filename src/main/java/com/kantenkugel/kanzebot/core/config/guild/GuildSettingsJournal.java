@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.config.guild;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of guild-setting changes that were not yet merged into the {@link GuildSettingsStore}.<br>
+ * Every record is stored as <code>int length, int crc32, body</code>, so a partially written record (eg. on crash) is detected and ignored.
+ * Collection-changes are stored as single-entry deltas, so a change costs the same regardless of the size of the collection.<br><br>
+ *
+ * Journals are numbered by generation (<code>guilds.bin.&lt;generation&gt;.log</code>).
+ * The store remembers the last generation it contains, so journals are only replayed if they are newer than the store.
+ */
+final class GuildSettingsJournal implements Closeable {
+    static final byte OP_PUT = 1;
+    static final byte OP_REMOVE = 2;
+    static final byte OP_MAP_PUT = 3;
+    static final byte OP_MAP_REMOVE = 4;
+    static final byte OP_LIST_ADD = 5;
+    static final byte OP_LIST_REMOVE = 6;
+    static final byte OP_SET_ADD = 7;
+    static final byte OP_SET_REMOVE = 8;
+
+    private static final String SUFFIX = ".log";
+
+    private final long generation;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private long size;
+
+    private GuildSettingsJournal(File file, long generation) throws IOException {
+        this.generation = generation;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.size = channel.size();
+    }
+
+    static GuildSettingsJournal open(File storeFile, long generation) throws IOException {
+        return new GuildSettingsJournal(fileFor(storeFile, generation), generation);
+    }
+
+    static File fileFor(File storeFile, long generation) {
+        return new File(storeFile.getAbsoluteFile().getParentFile(), storeFile.getName() + '.' + generation + SUFFIX);
+    }
+
+    /**
+     * Finds the generations of all journals belonging to given store-file
+     *
+     * @return
+     *      The sorted generations
+     */
+    static long[] findGenerations(File storeFile) {
+        String prefix = storeFile.getName() + '.';
+        File[] files = storeFile.getAbsoluteFile().getParentFile().listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(SUFFIX));
+        if(files == null)
+            return new long[0];
+        long[] generations = new long[files.length];
+        int count = 0;
+        for(File f : files) {
+            String name = f.getName();
+            try {
+                generations[count] = Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+                count++;
+            } catch(NumberFormatException ignored) {
+            }
+        }
+        generations = Arrays.copyOf(generations, count);
+        Arrays.sort(generations);
+        return generations;
+    }
+
+    static List<Record> read(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        List<Record> records = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        while(buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if(length < 0 || length > buffer.remaining())
+                break;
+            byte[] body = new byte[length];
+            buffer.get(body);
+            crc.reset();
+            crc.update(body, 0, body.length);
+            if((int) crc.getValue() != checksum)
+                break;
+            records.add(Record.decode(ByteBuffer.wrap(body)));
+        }
+        return records;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    long size() {
+        return size;
+    }
+
+    synchronized void append(Record record) throws IOException {
+        byte[] body = record.encode();
+        crc.reset();
+        crc.update(body, 0, body.length);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + body.length);
+        buffer.putInt(body.length).putInt((int) crc.getValue()).put(body);
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        size += 8 + body.length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(true);
+        channel.close();
+    }
+
+    static final class Record {
+        final long guildId;
+        final byte op;
+        final String key;
+        final String member;
+        final String value;
+        final Object fullValue;
+
+        private Record(long guildId, byte op, String key, String member, String value, Object fullValue) {
+            this.guildId = guildId;
+            this.op = op;
+            this.key = key;
+            this.member = member;
+            this.value = value;
+            this.fullValue = fullValue;
+        }
+
+        static Record put(long guildId, String key, Object value) {
+            return new Record(guildId, OP_PUT, key, null, null, value);
+        }
+
+        static Record remove(long guildId, String key) {
+            return new Record(guildId, OP_REMOVE, key, null, null, null);
+        }
+
+        static Record mapPut(long guildId, String key, String member, String value) {
+            return new Record(guildId, OP_MAP_PUT, key, member, value, null);
+        }
+
+        static Record entry(long guildId, byte op, String key, String member) {
+            return new Record(guildId, op, key, member, null, null);
+        }
+
+        byte[] encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + key.length());
+            try(DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeLong(guildId);
+                out.writeByte(op);
+                GuildValueCodec.writeString(out, key);
+                switch(op) {
+                    case OP_PUT:
+                        byte[] encoded = GuildValueCodec.encode(fullValue);
+                        out.writeByte(GuildValueCodec.typeOf(fullValue));
+                        out.writeInt(encoded.length);
+                        out.write(encoded);
+                        break;
+                    case OP_REMOVE:
+                        break;
+                    case OP_MAP_PUT:
+                        GuildValueCodec.writeString(out, member);
+                        GuildValueCodec.writeString(out, value);
+                        break;
+                    default:
+                        GuildValueCodec.writeString(out, member);
+                        break;
+                }
+            } catch(IOException e) {
+                //can't happen on a ByteArrayOutputStream
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        static Record decode(ByteBuffer body) {
+            long guildId = body.getLong();
+            byte op = body.get();
+            String key = readString(body);
+            switch(op) {
+                case OP_PUT:
+                    byte type = body.get();
+                    int length = body.getInt();
+                    Object value = GuildValueCodec.decode(body, body.position(), length, type);
+                    return put(guildId, key, value);
+                case OP_REMOVE:
+                    return remove(guildId, key);
+                case OP_MAP_PUT:
+                    return mapPut(guildId, key, readString(body), readString(body));
+                default:
+                    return entry(guildId, op, key, readString(body));
+            }
+        }
+
+        private static String readString(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return s;
+        }
+    }
+}
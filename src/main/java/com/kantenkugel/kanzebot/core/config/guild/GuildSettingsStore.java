@@ -0,0 +1,318 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.config.guild;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only, memory-mapped store of all guild-settings.<br><br>
+ *
+ * File layout (big endian):
+ * <pre>
+ * header:  int magic, short version, short reserved, int guildCount, int dataOffset, long journalGeneration
+ * index:   guildCount * (long guildId, int offset, int length), sorted by guildId
+ * data:    per guild: int entryCount, entryCount * (short keyLength, key (UTF-8), byte type, int valueLength, value)
+ * </pre>
+ * A lookup binary-searches the index, skips over all entries of the guild by their length-prefixes
+ * and only decodes the value of the requested key.<br>
+ * The journal-generation is the last {@link GuildSettingsJournal} generation already merged into this file.<br>
+ * The mapping is released on {@link #close()}, after which the store must not be read anymore.
+ */
+public final class GuildSettingsStore implements Closeable {
+    static final int MAGIC = 0x4B475331; //KGS1
+    static final short VERSION = 2;
+    static final int HEADER_SIZE = 24;
+    static final int HEADER_SIZE_V1 = 16;
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    public static final GuildSettingsStore EMPTY = new GuildSettingsStore(emptyBuffer());
+
+    private final ByteBuffer buffer;
+    private final int guildCount;
+    private final int indexOffset;
+    private final long generation;
+
+    private GuildSettingsStore(ByteBuffer buffer) {
+        if(buffer.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not a guild-settings file");
+        short version = buffer.getShort(4);
+        if(version == 1) {
+            this.indexOffset = HEADER_SIZE_V1;
+            this.generation = 0;
+        } else if(version == VERSION) {
+            this.indexOffset = HEADER_SIZE;
+            this.generation = buffer.getLong(16);
+        } else {
+            throw new IllegalArgumentException("Unsupported guild-settings version " + version);
+        }
+        this.buffer = buffer;
+        this.guildCount = buffer.getInt(8);
+    }
+
+    public static GuildSettingsStore open(File file) throws IOException {
+        if(!file.exists())
+            return EMPTY;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new GuildSettingsStore(mapped);
+        }
+    }
+
+    /**
+     * Releases the memory-mapping right away instead of waiting for the garbage-collector,
+     * so the file can be replaced (mapped files can't be replaced on Windows).
+     * Reading from the store afterwards might crash the JVM, so all readers have to be done with it.
+     */
+    @Override
+    public void close() {
+        if(buffer instanceof MappedByteBuffer)
+            unmap((MappedByteBuffer) buffer);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public int getGuildCount() {
+        return guildCount;
+    }
+
+    public long[] getGuildIds() {
+        long[] ids = new long[guildCount];
+        for(int i = 0; i < guildCount; i++)
+            ids[i] = buffer.getLong(indexOffset + i * INDEX_ENTRY_SIZE);
+        return ids;
+    }
+
+    /**
+     * Looks up and decodes a single value
+     *
+     * @param guildId
+     *      The id of the guild
+     * @param key
+     *      The (namespaced) key
+     * @return
+     *      The decoded value or null if the guild or key doesn't exist
+     */
+    public Object get(long guildId, String key) {
+        int index = findGuild(guildId);
+        if(index < 0)
+            return null;
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int pos = buffer.getInt(indexOffset + index * INDEX_ENTRY_SIZE + 8);
+        int entries = buffer.getInt(pos);
+        pos += 4;
+        for(int i = 0; i < entries; i++) {
+            int keyLen = buffer.getShort(pos) & 0xFFFF;
+            int valuePos = pos + 2 + keyLen + 5;
+            int valueLen = buffer.getInt(valuePos - 4);
+            if(keyLen == keyBytes.length && keyEquals(pos + 2, keyBytes))
+                return GuildValueCodec.decode(buffer, valuePos, valueLen, buffer.get(valuePos - 5));
+            pos = valuePos + valueLen;
+        }
+        return null;
+    }
+
+    /**
+     * Decodes all values of a guild (used for conversion and rewriting)
+     *
+     * @param guildId
+     *      The id of the guild
+     * @return
+     *      Map of all keys/values of the guild (empty if the guild doesn't exist)
+     */
+    public Map<String, Object> getAll(long guildId) {
+        int index = findGuild(guildId);
+        if(index < 0)
+            return new HashMap<>();
+        int pos = buffer.getInt(indexOffset + index * INDEX_ENTRY_SIZE + 8);
+        int entries = buffer.getInt(pos);
+        Map<String, Object> out = new HashMap<>(entries * 2);
+        pos += 4;
+        for(int i = 0; i < entries; i++) {
+            int keyLen = buffer.getShort(pos) & 0xFFFF;
+            String key = GuildValueCodec.readUtf8(buffer, pos + 2, keyLen);
+            int valuePos = pos + 2 + keyLen + 5;
+            int valueLen = buffer.getInt(valuePos - 4);
+            out.put(key, GuildValueCodec.decode(buffer, valuePos, valueLen, buffer.get(valuePos - 5)));
+            pos = valuePos + valueLen;
+        }
+        return out;
+    }
+
+    /**
+     * Decodes the whole store
+     *
+     * @return
+     *      Map of guild-id to all keys/values of that guild, sorted by guild-id
+     */
+    public SortedMap<Long, Map<String, Object>> readAll() {
+        SortedMap<Long, Map<String, Object>> out = new TreeMap<>();
+        for(long id : getGuildIds())
+            out.put(id, getAll(id));
+        return out;
+    }
+
+    /**
+     * Writes a new store-file. The file is first written to a temporary file and then moved into place,
+     * so readers of the old file (or a crash while writing) never see a partial file.
+     *
+     * @param file
+     *      The target file
+     * @param settings
+     *      The settings of all guilds
+     * @param generation
+     *      The last journal-generation merged into the settings
+     * @throws IOException
+     *      If writing failed
+     */
+    public static void write(File file, Map<Long, Map<String, Object>> settings, long generation) throws IOException {
+        replace(writeTemp(file, settings, generation), file);
+    }
+
+    /**
+     * Writes a new store-file next to the target, to be moved into place with {@link #replace(File, File)}
+     * once the store currently mapping the target was closed.
+     *
+     * @param file
+     *      The target file
+     * @param settings
+     *      The settings of all guilds
+     * @param generation
+     *      The last journal-generation merged into the settings
+     * @return
+     *      The temporary file
+     * @throws IOException
+     *      If writing failed
+     */
+    public static File writeTemp(File file, Map<Long, Map<String, Object>> settings, long generation) throws IOException {
+        SortedMap<Long, Map<String, Object>> sorted = new TreeMap<>(settings);
+        sorted.values().removeIf(Map::isEmpty);
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(data);
+        ByteBuffer index = ByteBuffer.allocate(sorted.size() * INDEX_ENTRY_SIZE);
+        int dataOffset = HEADER_SIZE + sorted.size() * INDEX_ENTRY_SIZE;
+        for(Map.Entry<Long, Map<String, Object>> guild : sorted.entrySet()) {
+            int start = dataOut.size();
+            dataOut.writeInt(guild.getValue().size());
+            for(Map.Entry<String, Object> entry : guild.getValue().entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                if(key.length > 0xFFFF)
+                    throw new IllegalArgumentException("Key too long: " + entry.getKey());
+                byte[] value = GuildValueCodec.encode(entry.getValue());
+                dataOut.writeShort(key.length);
+                dataOut.write(key);
+                dataOut.writeByte(GuildValueCodec.typeOf(entry.getValue()));
+                dataOut.writeInt(value.length);
+                dataOut.write(value);
+            }
+            index.putLong(guild.getKey()).putInt(dataOffset + start).putInt(dataOut.size() - start);
+        }
+        dataOut.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(sorted.size()).putInt(dataOffset).putLong(generation);
+        header.flip();
+        index.flip();
+
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(new ByteBuffer[] {header, index, ByteBuffer.wrap(data.toByteArray())});
+            channel.force(true);
+        }
+        return tmp;
+    }
+
+    /**
+     * Atomically moves a file written by {@link #writeTemp(File, Map, long)} into place
+     */
+    public static void replace(File tmp, File file) throws IOException {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int findGuild(long guildId) {
+        int low = 0;
+        int high = guildCount - 1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = buffer.getLong(indexOffset + mid * INDEX_ENTRY_SIZE);
+            if(midId < guildId)
+                low = mid + 1;
+            else if(midId > guildId)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int pos, byte[] key) {
+        for(int i = 0; i < key.length; i++) {
+            if(buffer.get(pos + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Unmaps a buffer via the JDK-internal cleaner (Unsafe.invokeCleaner since Java 9, the buffer's own cleaner before).
+     * If neither is accessible, the mapping is left to the garbage-collector.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch(NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if(cleaner != null)
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch(ReflectiveOperationException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static ByteBuffer emptyBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(0).putInt(HEADER_SIZE).putLong(0);
+        return buffer;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.config.guild;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Binary encoding of single guild-setting values.<br>
+ * Every value is stored as a type-tag followed by a length-prefixed payload:
+ * <ul>
+ *     <li>String: UTF-8 bytes</li>
+ *     <li>Boolean: 1 byte</li>
+ *     <li>Integer: 4 bytes</li>
+ *     <li>List/Set: int count, then count length-prefixed UTF-8 strings</li>
+ *     <li>Map: int count, then count pairs of length-prefixed UTF-8 strings</li>
+ * </ul>
+ */
+final class GuildValueCodec {
+    static final byte TYPE_STRING = 1;
+    static final byte TYPE_BOOLEAN = 2;
+    static final byte TYPE_INTEGER = 3;
+    static final byte TYPE_LIST = 4;
+    static final byte TYPE_SET = 5;
+    static final byte TYPE_MAP = 6;
+
+    private GuildValueCodec() {}
+
+    static byte typeOf(Object value) {
+        if(value instanceof String)
+            return TYPE_STRING;
+        if(value instanceof Boolean)
+            return TYPE_BOOLEAN;
+        if(value instanceof Integer)
+            return TYPE_INTEGER;
+        if(value instanceof List)
+            return TYPE_LIST;
+        if(value instanceof Set)
+            return TYPE_SET;
+        if(value instanceof Map)
+            return TYPE_MAP;
+        throw new IllegalArgumentException("Unsupported value type " + (value == null ? "null" : value.getClass().getName()));
+    }
+
+    static byte[] encode(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream out = new DataOutputStream(bytes)) {
+            switch(typeOf(value)) {
+                case TYPE_STRING:
+                    out.write(((String) value).getBytes(StandardCharsets.UTF_8));
+                    break;
+                case TYPE_BOOLEAN:
+                    out.writeBoolean((Boolean) value);
+                    break;
+                case TYPE_INTEGER:
+                    out.writeInt((Integer) value);
+                    break;
+                case TYPE_LIST:
+                case TYPE_SET:
+                    Collection<?> collection = (Collection<?>) value;
+                    out.writeInt(collection.size());
+                    for(Object o : collection)
+                        writeString(out, (String) o);
+                    break;
+                case TYPE_MAP:
+                    Map<?, ?> map = (Map<?, ?>) value;
+                    out.writeInt(map.size());
+                    for(Map.Entry<?, ?> entry : map.entrySet()) {
+                        writeString(out, (String) entry.getKey());
+                        writeString(out, (String) entry.getValue());
+                    }
+                    break;
+            }
+        } catch(IOException e) {
+            //can't happen on a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /**
+     * Decodes a value using absolute reads only, so the buffer can be shared between threads
+     */
+    static Object decode(ByteBuffer buffer, int offset, int length, byte type) {
+        switch(type) {
+            case TYPE_STRING:
+                return readUtf8(buffer, offset, length);
+            case TYPE_BOOLEAN:
+                return buffer.get(offset) != 0;
+            case TYPE_INTEGER:
+                return buffer.getInt(offset);
+            case TYPE_LIST:
+            case TYPE_SET: {
+                int count = buffer.getInt(offset);
+                Collection<String> out = type == TYPE_LIST ? new ArrayList<>(count) : new HashSet<>(count * 2);
+                int pos = offset + 4;
+                for(int i = 0; i < count; i++) {
+                    int len = buffer.getInt(pos);
+                    out.add(readUtf8(buffer, pos + 4, len));
+                    pos += 4 + len;
+                }
+                return out;
+            }
+            case TYPE_MAP: {
+                int count = buffer.getInt(offset);
+                Map<String, String> out = new HashMap<>(count * 2);
+                int pos = offset + 4;
+                for(int i = 0; i < count; i++) {
+                    int keyLen = buffer.getInt(pos);
+                    String key = readUtf8(buffer, pos + 4, keyLen);
+                    pos += 4 + keyLen;
+                    int valLen = buffer.getInt(pos);
+                    out.put(key, readUtf8(buffer, pos + 4, valLen));
+                    pos += 4 + valLen;
+                }
+                return out;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown value type " + type);
+        }
+    }
+
+    static String readUtf8(ByteBuffer buffer, int offset, int length) {
+        byte[] b = new byte[length];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(offset);
+        dup.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a mutable copy of a decoded value (Strings, Booleans and Integers are returned as is)
+     */
+    @SuppressWarnings("unchecked")
+    static Object copy(Object value) {
+        if(value instanceof List)
+            return new ArrayList<>((List<String>) value);
+        if(value instanceof Set)
+            return new HashSet<>((Set<String>) value);
+        if(value instanceof Map)
+            return new HashMap<>((Map<String, String>) value);
+        return value;
+    }
+}
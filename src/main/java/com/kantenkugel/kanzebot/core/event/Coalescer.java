@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.event;
+
+import com.kantenkugel.kanzebot.core.metrics.AddonUsage;
+import net.dv8tion.jda.events.Event;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Collapses the Events of a coalesced subscription by key. Only the latest Event per key is kept,
+ * and all of them are flushed as a single batch once the window after the first Event elapsed.
+ * Offering runs on the dispatching thread and only touches a small map, so no task is queued per Event.
+ * Events the key-extractor fails on are counted as errors of the owning Addon and dropped.
+ */
+class Coalescer {
+    private final Function<Event, Object> keyExtractor;
+    private final long windowNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<List<Event>> sink;
+    private final AddonUsage usage;
+
+    private final Object lock = new Object();
+    private Map<Object, Event> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduled = null;
+    private boolean discarded = false;
+
+    Coalescer(Function<Event, Object> keyExtractor, long windowNanos, ScheduledExecutorService scheduler,
+              Consumer<List<Event>> sink, AddonUsage usage) {
+        this.keyExtractor = keyExtractor;
+        this.windowNanos = windowNanos;
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.usage = usage;
+    }
+
+    void offer(Event event) {
+        Object key;
+        try {
+            key = keyExtractor.apply(event);
+        } catch(RuntimeException e) {
+            usage.recordError();
+            e.printStackTrace();
+            return;
+        }
+        synchronized(lock) {
+            if(discarded)
+                return;
+            pending.put(key, event);
+            if(scheduled == null)
+                scheduled = scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Drops the pending batch and ignores all further Events. Called once the subscription was removed or swapped out.
+     */
+    void discard() {
+        synchronized(lock) {
+            discarded = true;
+            pending.clear();
+            if(scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+        }
+    }
+
+    private void flush() {
+        Map<Object, Event> batch;
+        synchronized(lock) {
+            if(discarded)
+                return;
+            batch = pending;
+            pending = new LinkedHashMap<>(Math.max(16, batch.size() * 2));
+            scheduled = null;
+        }
+        if(!batch.isEmpty())
+            sink.accept(new ArrayList<>(batch.values()));
+    }
+}
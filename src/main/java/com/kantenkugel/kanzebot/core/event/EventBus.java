@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.event;
+
+import com.kantenkugel.kanzebot.api.event.BatchHandler;
+import com.kantenkugel.kanzebot.api.event.EventHandler;
+import com.kantenkugel.kanzebot.api.event.EventKeys;
+import com.kantenkugel.kanzebot.core.isolation.AddonIsolation;
+import com.kantenkugel.kanzebot.core.metrics.AddonMetrics;
+import com.kantenkugel.kanzebot.core.metrics.AddonUsage;
+import net.dv8tion.jda.events.Event;
+import net.dv8tion.jda.hooks.EventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The single JDA-listener forwarding Events to the typed subscriptions of Addons.
+ * Raw JDA-listeners are simply subscriptions to {@link Event}.<br><br>
+ *
+ * Dispatch is a single lookup of the Event's concrete class in a table of the subscriptions to that class and all of
+ * its superclasses. The table is filled lazily per concrete class, so Events nobody subscribed to only cost that lookup.
+ * Subscriptions are kept in an immutable table that is replaced on every change,
+ * so all subscriptions of an Addon can be {@link #swap(String, Collection) swapped} atomically on reload.<br>
+ * Each handler runs on the ordered event-lane of its Addon's {@link com.kantenkugel.kanzebot.core.isolation.Bulkhead Bulkhead}
+ * (a single thread per Addon), so an Addon sees its Events one at a time and in the order JDA fired them.
+ * Coalesced subscriptions run only once per batch.
+ */
+public class EventBus implements EventListener {
+    private static final Subscription[] NONE = new Subscription[0];
+
+    private final AddonMetrics metrics;
+    private final AddonIsolation isolation;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "EventBus-Coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Table table = new Table(Collections.emptyList());
+
+    public EventBus(AddonMetrics metrics, AddonIsolation isolation) {
+        this.metrics = metrics;
+        this.isolation = isolation;
+    }
+
+    public synchronized void add(Subscription subscription) {
+        List<Subscription> copy = new ArrayList<>(table.subscriptions);
+        copy.add(subscription);
+        table = new Table(copy);
+    }
+
+    /**
+     * Removes all subscriptions of given owner registered with given handle (the handler or raw listener)
+     */
+    public synchronized boolean remove(Object handle, String owner) {
+        List<Subscription> removed = new ArrayList<>();
+        List<Subscription> copy = new ArrayList<>(table.subscriptions);
+        copy.removeIf(subscription -> subscription.handle == handle && subscription.owner.equals(owner) && removed.add(subscription));
+        if(removed.isEmpty())
+            return false;
+        table = new Table(copy);
+        discard(removed);
+        return true;
+    }
+
+    /**
+     * Replaces all subscriptions of given owner with the given ones in a single step.
+     * Pending batches of the replaced coalesced subscriptions are dropped.
+     */
+    public synchronized void swap(String owner, Collection<Subscription> replacements) {
+        List<Subscription> removed = new ArrayList<>();
+        List<Subscription> copy = new ArrayList<>(table.subscriptions);
+        copy.removeIf(subscription -> subscription.owner.equals(owner) && removed.add(subscription));
+        copy.addAll(replacements);
+        table = new Table(copy);
+        discard(removed);
+    }
+
+    private static void discard(List<Subscription> removed) {
+        for(Subscription subscription : removed) {
+            if(subscription.coalescer != null)
+                subscription.coalescer.discard();
+        }
+    }
+
+    /**
+     * Creates a coalesced subscription. Its Events are collapsed by key on the dispatching thread
+     * and delivered as a single batch per window on the owner's Bulkhead.
+     * Exceptions of the key-extractor are counted as errors of the owner and drop the Event.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Event> Subscription coalesced(String owner, Class<T> eventType, Function<? super T, ?> keyExtractor,
+                                                    long window, TimeUnit unit, BatchHandler<T> handler, String... guildIds) {
+        BatchHandler<Event> batchHandler = (BatchHandler<Event>) handler;
+        Coalescer coalescer = new Coalescer((Function<Event, Object>) keyExtractor, unit.toNanos(window), scheduler,
+                batch -> run(owner, () -> batchHandler.handle(batch)), metrics.get(owner));
+        return new Subscription(owner, eventType, coalescer::offer, handler, guildIds, coalescer);
+    }
+
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        dispatch(event, null);
+    }
+
+    /**
+     * Delivers an Event only to the subscriptions of given owner.
+     * Used to hand the Event that triggered the activation of a lazy Addon to the freshly loaded Addon.
+     */
+    public void redeliver(Event event, String owner) {
+        dispatch(event, owner);
+    }
+
+    private void dispatch(Event event, String onlyOwner) {
+        Subscription[] subscriptions = table.resolve(event.getClass());
+        if(subscriptions.length == 0)
+            return;
+        String guildId = null;
+        boolean guildResolved = false;
+        for(Subscription subscription : subscriptions) {
+            if(onlyOwner != null && !onlyOwner.equals(subscription.owner))
+                continue;
+            if(subscription.guildIds != null) {
+                if(!guildResolved) {
+                    guildId = EventKeys.getGuildId(event);
+                    guildResolved = true;
+                }
+                if(guildId == null || !subscription.guildIds.contains(guildId))
+                    continue;
+            }
+            if(subscription.coalescer != null)
+                subscription.deliver(event);
+            else
+                run(subscription.owner, () -> subscription.deliver(event));
+        }
+    }
+
+    /**
+     * Runs a handler on the event-lane of its owner's Bulkhead. Shed work is dropped, the Bulkhead counts it.
+     */
+    private void run(String owner, Runnable handler) {
+        isolation.get(owner).executeOrdered(() -> {
+            AddonUsage.Sample sample = metrics.begin(owner);
+            boolean failed = true;
+            try {
+                handler.run();
+                failed = false;
+            } finally {
+                sample.finish(failed);
+            }
+        });
+    }
+
+    /**
+     * A single subscription of an Addon
+     */
+    public static final class Subscription {
+        private final String owner;
+        private final Class<? extends Event> eventType;
+        private final EventHandler<Event> handler;
+        private final Object handle;
+        private final Set<String> guildIds;
+        private final Coalescer coalescer;
+
+        @SuppressWarnings("unchecked")
+        private Subscription(String owner, Class<? extends Event> eventType, EventHandler<?> handler, Object handle, String[] guildIds,
+                             Coalescer coalescer) {
+            this.owner = owner;
+            this.coalescer = coalescer;
+            this.eventType = eventType;
+            this.handler = (EventHandler<Event>) handler;
+            this.handle = handle;
+            this.guildIds = guildIds == null || guildIds.length == 0
+                    ? null : Collections.unmodifiableSet(new HashSet<>(Arrays.asList(guildIds)));
+            //such a filter would silently drop every Event
+            if(this.guildIds != null && !EventKeys.isGuildResolvable(eventType))
+                throw new IllegalArgumentException("Events of type " + eventType.getName() + " never belong to a Guild, they can't be filtered by Guild");
+        }
+
+        public static <T extends Event> Subscription of(String owner, Class<T> eventType, EventHandler<? super T> handler, String... guildIds) {
+            return new Subscription(owner, eventType, handler, handler, guildIds, null);
+        }
+
+        /**
+         * Creates a subscription to all Events for a raw JDA-listener
+         */
+        public static Subscription of(String owner, EventListener listener) {
+            return new Subscription(owner, Event.class, (EventHandler<Event>) listener::onEvent, listener, null, null);
+        }
+
+        public Object getHandle() {
+            return handle;
+        }
+
+        private void deliver(Event event) {
+            handler.handle(event);
+        }
+    }
+
+    private static final class Table {
+        private final List<Subscription> subscriptions;
+        private final Map<Class<?>, List<Subscription>> byType = new HashMap<>();
+        private final Map<Class<?>, Subscription[]> resolved = new ConcurrentHashMap<>();
+
+        private Table(List<Subscription> subscriptions) {
+            this.subscriptions = Collections.unmodifiableList(subscriptions);
+            for(Subscription subscription : subscriptions)
+                byType.computeIfAbsent(subscription.eventType, k -> new ArrayList<>()).add(subscription);
+        }
+
+        private Subscription[] resolve(Class<?> eventClass) {
+            Subscription[] result = resolved.get(eventClass);
+            if(result == null) {
+                List<Subscription> matching = new ArrayList<>();
+                for(Class<?> type = eventClass; type != null && type != Object.class; type = type.getSuperclass())
+                    matching.addAll(byType.getOrDefault(type, Collections.emptyList()));
+                result = matching.isEmpty() ? NONE : matching.toArray(new Subscription[matching.size()]);
+                resolved.put(eventClass, result);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.group;
+
+import com.kantenkugel.kanzebot.api.group.Group;
+import com.kantenkugel.kanzebot.core.command.CommandRegistry;
+
+/**
+ * Holds all registered Groups (of all Addons) by their name.<br>
+ * The Groups are stored in the same table as the Commands of the {@link CommandRegistry},
+ * so an Addon's Commands and Groups are replaced together in a single step
+ * (see {@link CommandRegistry#swap(String, java.util.Collection, java.util.Collection)}).
+ */
+public class GroupRegistry {
+    private final CommandRegistry registry;
+
+    public GroupRegistry(CommandRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Group get(String name) {
+        return registry.getGroup(name);
+    }
+
+    public boolean register(Group group, String owner) {
+        return registry.registerGroup(group, owner);
+    }
+
+    public boolean unregister(Group group, String owner) {
+        return registry.unregisterGroup(group, owner);
+    }
+
+    /**
+     * Whether given name is free or already owned by given owner
+     */
+    public boolean isAvailable(String name, String owner) {
+        return registry.isGroupAvailable(name, owner);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.isolation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link Bulkhead} of every Addon (and of the bot's own commands)
+ */
+public class AddonIsolation {
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the Bulkhead of given Addon, creating one with {@link IsolationSettings#DEFAULT default settings} if needed
+     */
+    public Bulkhead get(String identifier) {
+        return bulkheads.computeIfAbsent(identifier, id -> new Bulkhead(id, IsolationSettings.DEFAULT));
+    }
+
+    /**
+     * (Re-)Creates the Bulkhead of given Addon. A previous Bulkhead finishes its queued work and is then discarded.
+     */
+    public void configure(String identifier, IsolationSettings settings) {
+        Bulkhead previous = bulkheads.put(identifier, new Bulkhead(identifier, settings));
+        if(previous != null)
+            previous.shutdown();
+    }
+
+    public void remove(String identifier) {
+        Bulkhead previous = bulkheads.remove(identifier);
+        if(previous != null)
+            previous.shutdown();
+    }
+
+    public Collection<Bulkhead> getAll() {
+        return Collections.unmodifiableCollection(bulkheads.values());
+    }
+
+    public void shutdown() {
+        bulkheads.values().forEach(Bulkhead::shutdown);
+        bulkheads.clear();
+    }
+}
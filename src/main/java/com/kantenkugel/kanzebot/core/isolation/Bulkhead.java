@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.isolation;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded executors of a single Addon. All command-handlers and JDA-listeners of the Addon run here,
+ * so a blocking Addon can only exhaust its own threads and queue instead of everyone's.<br>
+ * Commands run on a pool of {@link IsolationSettings#getMaxConcurrency() maxConcurrency} threads,
+ * Events on a single thread per Addon ({@link #executeOrdered(Runnable)}), so listeners see them in the order JDA fired them.
+ * Work is shed (rejected) once the queue is full or the {@link CircuitBreaker} is open.
+ */
+public class Bulkhead {
+    /**
+     * Minimum queue-size of the event-lane, Events come in bursts (eg. on startup) that should not be shed right away
+     */
+    private static final int MIN_EVENT_QUEUE = 256;
+
+    private final String identifier;
+    private final IsolationSettings settings;
+    private final CircuitBreaker breaker;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor events;
+    private final LongAdder shed = new LongAdder();
+
+    public Bulkhead(String identifier, IsolationSettings settings) {
+        this.identifier = identifier;
+        this.settings = settings;
+        this.breaker = new CircuitBreaker(settings);
+        AtomicInteger threadCount = new AtomicInteger();
+        BlockingQueue<Runnable> queue = settings.getMaxQueued() == 0
+                ? new SynchronousQueue<>() : new LinkedBlockingQueue<>(settings.getMaxQueued());
+        this.executor = new ThreadPoolExecutor(settings.getMaxConcurrency(), settings.getMaxConcurrency(),
+                60, TimeUnit.SECONDS, queue, r -> {
+            Thread thread = new Thread(r, "Addon-" + identifier + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.events = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(MIN_EVENT_QUEUE, settings.getMaxQueued())), r -> {
+            Thread thread = new Thread(r, "Addon-" + identifier + "-Events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.events.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs given task on this Addon's threads.
+     * Exceptions thrown by the task are logged and count as failure for the circuit-breaker.
+     *
+     * @return
+     *      false if the task was shed because the breaker is open or the queue is full
+     */
+    public boolean execute(Runnable task) {
+        return submit(executor, task);
+    }
+
+    /**
+     * Runs given task on this Addon's single event-thread, after all tasks submitted this way before.
+     * Otherwise behaves like {@link #execute(Runnable)}.
+     *
+     * @return
+     *      false if the task was shed because the breaker is open or the queue is full
+     */
+    public boolean executeOrdered(Runnable task) {
+        return submit(events, task);
+    }
+
+    private boolean submit(ThreadPoolExecutor target, Runnable task) {
+        long permit = breaker.tryAcquire();
+        if(permit == CircuitBreaker.DENIED) {
+            shed.increment();
+            return false;
+        }
+        try {
+            target.execute(() -> {
+                long start = System.nanoTime();
+                boolean failed = true;
+                try {
+                    task.run();
+                    failed = false;
+                } catch(Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    breaker.record(permit, failed, System.nanoTime() - start);
+                }
+            });
+            return true;
+        } catch(RejectedExecutionException e) {
+            breaker.cancel(permit);
+            shed.increment();
+            return false;
+        }
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public IsolationSettings getSettings() {
+        return settings;
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount() + events.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size() + events.getQueue().size();
+    }
+
+    /**
+     * Number of tasks rejected so far
+     */
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    /**
+     * Stops accepting new tasks, already queued ones are still executed
+     */
+    public void shutdown() {
+        executor.shutdown();
+        events.shutdown();
+    }
+}
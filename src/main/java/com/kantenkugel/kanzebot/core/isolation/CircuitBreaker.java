@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.isolation;
+
+/**
+ * Circuit-breaker over the last {@link IsolationSettings#getWindowSize() n} calls of an Addon.<br>
+ * Opens once the share of failed or slow calls crosses its threshold. While open, all calls are rejected;
+ * after the open-duration a single trial call is let through, which either closes or re-opens the breaker.<br>
+ * Every permitted call gets a permit from {@link #tryAcquire()}. Only the permit of the trial decides the half-open state,
+ * calls that were started before the breaker opened can't close or re-open it when they finish late.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Returned by {@link #tryAcquire()} if the call is not permitted
+     */
+    public static final long DENIED = -1;
+    /**
+     * Permit of a call started while the breaker was closed
+     */
+    public static final long REGULAR = 0;
+
+    private final IsolationSettings settings;
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int index = 0;
+    private int count = 0;
+    private int failedCount = 0;
+    private int slowCount = 0;
+
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private long trial = REGULAR;
+    private long trialCount = 0;
+
+    public CircuitBreaker(IsolationSettings settings) {
+        this.settings = settings;
+        this.failed = new boolean[settings.getWindowSize()];
+        this.slow = new boolean[settings.getWindowSize()];
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Checks whether a call may be started. Every permitted call has to be followed
+     * by either {@link #record(long, boolean, long)} or {@link #cancel(long)} with the returned permit.
+     *
+     * @return
+     *      {@link #DENIED} if the call may not be started, otherwise its permit
+     */
+    public synchronized long tryAcquire() {
+        switch(state) {
+            case CLOSED:
+                return REGULAR;
+            case OPEN:
+                if(System.nanoTime() - openedAt < settings.getOpenNanos())
+                    return DENIED;
+                state = State.HALF_OPEN;
+                return trial = ++trialCount;
+            default:
+                if(trial != REGULAR)
+                    return DENIED;
+                return trial = ++trialCount;
+        }
+    }
+
+    /**
+     * Records the outcome of a permitted call
+     *
+     * @param permit
+     *      The permit returned by {@link #tryAcquire()} when the call was started
+     */
+    public synchronized void record(long permit, boolean failure, long durationNanos) {
+        boolean slowCall = durationNanos >= settings.getSlowCallNanos();
+        if(state == State.HALF_OPEN) {
+            //only the trial decides, late calls from before the breaker opened don't count
+            if(permit != trial)
+                return;
+            trial = REGULAR;
+            if(failure || slowCall) {
+                open();
+            } else {
+                reset();
+                state = State.CLOSED;
+            }
+            return;
+        }
+        if(count == failed.length) {
+            if(failed[index])
+                failedCount--;
+            if(slow[index])
+                slowCount--;
+        } else {
+            count++;
+        }
+        failed[index] = failure;
+        slow[index] = slowCall;
+        if(failure)
+            failedCount++;
+        if(slowCall)
+            slowCount++;
+        index = (index + 1) % failed.length;
+
+        if(state == State.CLOSED && count >= settings.getMinimumCalls()
+                && (failedCount >= settings.getErrorRate() * count || slowCount >= settings.getSlowCallRate() * count))
+            open();
+    }
+
+    /**
+     * Releases a permitted call that was never started (e.g. because the queue was full)
+     */
+    public synchronized void cancel(long permit) {
+        if(state == State.HALF_OPEN && permit == trial)
+            trial = REGULAR;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        reset();
+    }
+
+    private void reset() {
+        index = count = failedCount = slowCount = 0;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.isolation;
+
+import com.kantenkugel.kanzebot.api.config.AddonConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits of the {@link Bulkhead} and {@link CircuitBreaker} of a single Addon.
+ * They are stored in the Addon's own config-file, so they can be tuned per Addon.
+ */
+public final class IsolationSettings {
+    public static final IsolationSettings DEFAULT = new IsolationSettings(4, 32, 20, 10, 0.5f, 5000, 0.5f, 30);
+
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final float errorRate;
+    private final long slowCallNanos;
+    private final float slowCallRate;
+    private final long openNanos;
+
+    public IsolationSettings(int maxConcurrency, int maxQueued, int windowSize, int minimumCalls, float errorRate,
+                             long slowCallMillis, float slowCallRate, int openSeconds) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.errorRate = errorRate;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.slowCallRate = slowCallRate;
+        this.openNanos = TimeUnit.SECONDS.toNanos(openSeconds);
+    }
+
+    /**
+     * Reads the settings from an Addon's config, writing the defaults for all missing values
+     */
+    public static IsolationSettings read(AddonConfig config) {
+        return new IsolationSettings(
+                config.getInteger("KanzeBot.MaxConcurrency", DEFAULT.maxConcurrency,
+                        "Maximum number of commands/events of this Addon handled at the same time"),
+                config.getInteger("KanzeBot.MaxQueued", DEFAULT.maxQueued,
+                        "Maximum number of commands/events waiting for a free slot before new ones are rejected"),
+                config.getInteger("KanzeBot.BreakerWindow", DEFAULT.windowSize,
+                        "Number of recent calls the circuit-breaker looks at"),
+                config.getInteger("KanzeBot.BreakerMinimumCalls", DEFAULT.minimumCalls,
+                        "Minimum number of recent calls before the circuit-breaker may open"),
+                config.getFloat("KanzeBot.BreakerErrorRate", DEFAULT.errorRate,
+                        "Share of failed calls (0-1) that opens the circuit-breaker"),
+                config.getInteger("KanzeBot.BreakerSlowCallMillis", (int) TimeUnit.NANOSECONDS.toMillis(DEFAULT.slowCallNanos),
+                        "Calls taking longer than this many milliseconds count as slow"),
+                config.getFloat("KanzeBot.BreakerSlowCallRate", DEFAULT.slowCallRate,
+                        "Share of slow calls (0-1) that opens the circuit-breaker"),
+                config.getInteger("KanzeBot.BreakerOpenSeconds", (int) TimeUnit.NANOSECONDS.toSeconds(DEFAULT.openNanos),
+                        "Seconds the circuit-breaker stays open before a trial call is let through")
+        );
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public float getErrorRate() {
+        return errorRate;
+    }
+
+    public long getSlowCallNanos() {
+        return slowCallNanos;
+    }
+
+    public float getSlowCallRate() {
+        return slowCallRate;
+    }
+
+    public long getOpenNanos() {
+        return openNanos;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kantenkugel.kanzebot.core.jfr;
+
+/**
+ * Emits the custom Java Flight Recorder events of the bot (dispatch, argument-parsing, config-I/O and Addon-lifecycle).<br>
+ * The events themselves need the {@code jdk.jfr} API, which the Java 8 target doesn't guarantee.
+ * They are therefore built from a separate source-set (see build.gradle) and only loaded if the running VM supports JFR.
+ * Otherwise a no-op implementation is used.
+ * <p>
+ * All {@code begin*} methods return a token which has to be passed to the matching {@code end*} method.
+ * The token is null whenever the event is not recorded, so call-sites should only compute
+ * expensive event-fields if it is non-null. With recording off, an event costs one virtual call and one null-check.
+ */
+public abstract class FlightEvents {
+    private static final String IMPLEMENTATION = "com.kantenkugel.kanzebot.core.jfr.JfrEvents";
+
+    public enum Outcome {
+        HANDLED, USAGE, FAILED, REJECTED
+    }
+
+    public enum ConfigOperation {
+        LOAD, SAVE
+    }
+
+    public enum AddonPhase {
+        INIT, LOAD, UNLOAD, DESTROY
+    }
+
+    private static final FlightEvents INSTANCE = create();
+
+    public static FlightEvents get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Whether the events are backed by Java Flight Recorder, or the no-op fallback is used
+     */
+    public abstract boolean isAvailable();
+
+    public abstract Object beginDispatch();
+
+    /**
+     * @param guildId
+     *      The id of the Guild the command was used in, or null for private messages
+     */
+    public abstract void endDispatch(Object token, String key, String guildId, Outcome outcome);
+
+    /**
+     * Records a dispatch that was rejected without ever running its handler
+     */
+    public abstract void rejected(String key, String guildId);
+
+    public abstract Object beginParse();
+
+    /**
+     * @param grammar
+     *      Identifies the ArgParser used (the key of the command it belongs to)
+     */
+    public abstract void endParse(Object token, String grammar, int inputLength, boolean success);
+
+    public abstract Object beginConfigIO();
+
+    /**
+     * @param bytes
+     *      The size of the file after the operation
+     */
+    public abstract void endConfigIO(Object token, ConfigOperation operation, String file, long bytes, boolean success);
+
+    public abstract Object beginAddonPhase();
+
+    public abstract void endAddonPhase(Object token, String addon, AddonPhase phase, boolean success);
+
+    private static FlightEvents create() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            FlightEvents events = (FlightEvents) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+            if(events.isAvailable())
+                return events;
+        } catch(ReflectiveOperationException | LinkageError | RuntimeException ignored) {
+            //Java 8 before 8u262, or built without the jfr source-set
+        }
+        return new NoOp();
+    }
+
+    private static final class NoOp extends FlightEvents {
+        @Override
+        public boolean isAvailable() {
+            return false;
+        }
+
+        @Override
+        public Object beginDispatch() {
+            return null;
+        }
+
+        @Override
+        public void endDispatch(Object token, String key, String guildId, Outcome outcome) {}
+
+        @Override
+        public void rejected(String key, String guildId) {}
+
+        @Override
+        public Object beginParse() {
+            return null;
+        }
+
+        @Override
+        public void endParse(Object token, String grammar, int inputLength, boolean success) {}
+
+        @Override
+        public Object beginConfigIO() {
+            return null;
+        }
+
+        @Override
+        public void endConfigIO(Object token, ConfigOperation operation, String file, long bytes, boolean success) {}
+
+        @Override
+        public Object beginAddonPhase() {
+            return null;
+        }
+
+        @Override
+        public void endAddonPhase(Object token, String addon, AddonPhase phase, boolean success) {}
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.message;
+
+import com.kantenkugel.kanzebot.api.config.GlobalConfig;
+import com.kantenkugel.kanzebot.api.util.MessageUtil;
+import com.kantenkugel.kanzebot.core.command.OwnerCommand;
+import net.dv8tion.jda.entities.MessageChannel;
+
+import java.io.IOException;
+
+/**
+ * Owner-command to announce a message in every guild and to control/monitor the broadcast
+ */
+public class BroadcastCommand extends OwnerCommand {
+    private final Broadcaster broadcaster;
+
+    public BroadcastCommand(GlobalConfig config, Broadcaster broadcaster) {
+        super(config);
+        this.broadcaster = broadcaster;
+    }
+
+    @Override
+    public String getKey() {
+        return "broadcast";
+    }
+
+    @Override
+    public String getUsage() {
+        return "broadcast send <message>\nbroadcast status|resume|cancel|discard";
+    }
+
+    @Override
+    public String getHelp() {
+        return "Sends a message to the announce-channel of every guild";
+    }
+
+    @Override
+    protected boolean handle(MessageChannel channel, String args) {
+        String[] split = args.split("\\s+", 2);
+        //only the message of send may follow the subcommand
+        if(split.length > 1 && !split[0].equals("send"))
+            return false;
+        try {
+            switch(split[0]) {
+                case "send":
+                    if(split.length < 2)
+                        return false;
+                    MessageUtil.sendMessage(channel, "Started: " + broadcaster.start(channel.getJDA(), split[1]));
+                    break;
+                case "status":
+                    Broadcaster.Progress progress = broadcaster.getProgress();
+                    MessageUtil.sendMessage(channel, progress == null ? "No broadcast yet" : progress.toString());
+                    break;
+                case "resume":
+                    Broadcaster.Progress resumed = broadcaster.resume(channel.getJDA());
+                    MessageUtil.sendMessage(channel, resumed == null ? "Nothing to resume" : "Resumed: " + resumed);
+                    break;
+                case "cancel":
+                    broadcaster.cancel();
+                    MessageUtil.sendMessage(channel, "Cancelling, use `broadcast resume` to continue later");
+                    break;
+                case "discard":
+                    MessageUtil.sendMessage(channel, broadcaster.discard() ? "Discarded interrupted broadcast" : "Nothing to discard");
+                    break;
+                default:
+                    return false;
+            }
+        } catch(IllegalStateException e) {
+            MessageUtil.sendMessage(channel, e.getMessage());
+        } catch(IOException e) {
+            e.printStackTrace();
+            MessageUtil.sendMessage(channel, "Could not access the broadcast checkpoint: " + e.getMessage());
+        }
+        return true;
+    }
+}
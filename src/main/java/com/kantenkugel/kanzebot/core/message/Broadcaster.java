@@ -0,0 +1,377 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.message;
+
+import com.kantenkugel.kanzebot.core.config.guild.GuildConfigImpl;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettings;
+import net.dv8tion.jda.JDA;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.TextChannel;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends an announcement to the announce-channel (or else the public channel) of every guild.<br>
+ * Messages are handed to the {@link MessagePipeline} with up to {@value #MAX_IN_FLIGHT} guilds in flight,
+ * so they are sent in parallel while each channel's own rate-limit is still respected.
+ * A global bucket ({@value #GLOBAL_RATE} per second, below Discord's global limit to leave room for regular traffic)
+ * paces the fan-out.<br>
+ * Every delivered guild is appended to a checkpoint-file, so an interrupted broadcast can be {@link #resume(JDA) resumed}
+ * without announcing twice. Guilds without any channel to announce in are marked as done as well (as unreachable).
+ * The checkpoint is removed once all guilds were done. If sends stop completing for {@value #SEND_TIMEOUT_MINUTES} minutes,
+ * the broadcast gives up and keeps its checkpoint.
+ */
+public class Broadcaster {
+    public static final File CHECKPOINT_FILE = new File("broadcast.chk");
+    private static final int MAGIC = 0x4B424331;
+    private static final int MAX_IN_FLIGHT = 32;
+    private static final int GLOBAL_RATE = 40;
+    private static final long SEND_TIMEOUT_MINUTES = 5;
+
+    private final MessagePipeline pipeline;
+    private final GuildSettings settings;
+    private final File checkpointFile;
+    private volatile Run current;
+
+    public Broadcaster(MessagePipeline pipeline, GuildSettings settings) {
+        this(pipeline, settings, CHECKPOINT_FILE);
+    }
+
+    public Broadcaster(MessagePipeline pipeline, GuildSettings settings, File checkpointFile) {
+        this.pipeline = pipeline;
+        this.settings = settings;
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Starts a new broadcast to all guilds of given JDA instance
+     *
+     * @throws IllegalStateException
+     *      If a broadcast is still running or an interrupted one is waiting to be resumed
+     * @throws IOException
+     *      If the checkpoint could not be written
+     */
+    public synchronized Progress start(JDA jda, String message) throws IOException {
+        if(isRunning())
+            throw new IllegalStateException("A broadcast is still running");
+        if(checkpointFile.exists())
+            throw new IllegalStateException("An interrupted broadcast is waiting to be resumed (or cancelled)");
+        try(DataOutputStream out = new DataOutputStream(new FileOutputStream(checkpointFile))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(message);
+        }
+        return launch(jda, message, Collections.emptySet());
+    }
+
+    /**
+     * Resumes an interrupted broadcast, skipping all guilds it was already delivered to
+     *
+     * @return
+     *      The progress of the resumed broadcast or null if there is nothing to resume
+     * @throws IllegalStateException
+     *      If a broadcast is still running
+     * @throws IOException
+     *      If the checkpoint could not be read
+     */
+    public synchronized Progress resume(JDA jda) throws IOException {
+        if(isRunning())
+            throw new IllegalStateException("A broadcast is still running");
+        if(!checkpointFile.exists())
+            return null;
+        Set<Long> delivered = new HashSet<>();
+        String message;
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+            if(in.readInt() != MAGIC)
+                throw new IOException("Not a broadcast checkpoint: " + checkpointFile);
+            message = in.readUTF();
+            try {
+                while(true)
+                    delivered.add(in.readLong());
+            } catch(EOFException ignored) {
+                //end of checkpoint (a partially written last entry is ignored as well)
+            }
+        }
+        return launch(jda, message, delivered);
+    }
+
+    /**
+     * Stops the current broadcast. Its checkpoint is kept, so it can still be resumed.
+     */
+    public void cancel() {
+        Run run = current;
+        if(run != null)
+            run.cancelled = true;
+    }
+
+    /**
+     * Removes the checkpoint of an interrupted broadcast, so it can't be resumed anymore
+     *
+     * @return
+     *      false if there was no checkpoint or a broadcast is still running
+     */
+    public synchronized boolean discard() {
+        return !isRunning() && checkpointFile.delete();
+    }
+
+    public boolean isRunning() {
+        Run run = current;
+        return run != null && run.thread.isAlive();
+    }
+
+    /**
+     * Returns the progress of the current (or last) broadcast
+     *
+     * @return
+     *      The progress or null if there was no broadcast yet
+     */
+    public Progress getProgress() {
+        Run run = current;
+        return run == null ? null : run.progress();
+    }
+
+    /**
+     * Blocks until the current broadcast is finished
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        Run run = current;
+        if(run == null)
+            return true;
+        run.thread.join(unit.toMillis(timeout));
+        return !run.thread.isAlive();
+    }
+
+    private Progress launch(JDA jda, String message, Set<Long> delivered) throws IOException {
+        List<Guild> guilds = new ArrayList<>();
+        for(Guild guild : jda.getGuilds()) {
+            if(!delivered.contains(Long.parseLong(guild.getId())))
+                guilds.add(guild);
+        }
+        Run run = new Run(jda, message, guilds, delivered.size());
+        current = run;
+        run.thread.start();
+        return run.progress();
+    }
+
+    private TextChannel resolveChannel(JDA jda, Guild guild) {
+        String channelId = ((GuildConfigImpl) settings.getConfig(Long.parseLong(guild.getId()), GuildConfigImpl.CORE_NAMESPACE)).getAnnounceChannel();
+        TextChannel channel = channelId == null ? null : jda.getTextChannelById(channelId);
+        return channel == null ? guild.getPublicChannel() : channel;
+    }
+
+    private class Run implements Runnable {
+        private final JDA jda;
+        private final String message;
+        private final List<Guild> guilds;
+        private final int total;
+        private final AtomicInteger delivered;
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger unreachable = new AtomicInteger();
+        private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        private final TokenBucket global = new TokenBucket(GLOBAL_RATE, 1, TimeUnit.SECONDS);
+        private final DataOutputStream checkpoint;
+        private final Thread thread;
+        private final long start = System.nanoTime();
+        private final int skipped;
+        private volatile long end = 0;
+        private volatile boolean cancelled = false;
+        private boolean closed = false;
+
+        private Run(JDA jda, String message, List<Guild> guilds, int skipped) throws IOException {
+            this.jda = jda;
+            this.message = message;
+            this.guilds = guilds;
+            this.skipped = skipped;
+            this.total = guilds.size() + skipped;
+            this.delivered = new AtomicInteger(skipped);
+            this.checkpoint = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(checkpointFile, true)));
+            this.thread = new Thread(this, "Broadcaster");
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                for(Guild guild : guilds) {
+                    if(cancelled)
+                        break;
+                    if(!inFlight.tryAcquire(SEND_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                        timedOut();
+                        break;
+                    }
+                    long wait;
+                    while((wait = global.tryAcquire(System.nanoTime())) > 0)
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    TextChannel channel = resolveChannel(jda, guild);
+                    long guildId = Long.parseLong(guild.getId());
+                    if(channel == null) {
+                        //retrying won't help, so this guild is done
+                        unreachable.incrementAndGet();
+                        checkpoint(guildId);
+                        inFlight.release();
+                        continue;
+                    }
+                    pipeline.sendAsync(channel, message).whenComplete((sent, error) -> {
+                        if(error == null) {
+                            delivered.incrementAndGet();
+                            checkpoint(guildId);
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                        inFlight.release();
+                    });
+                }
+                if(!inFlight.tryAcquire(MAX_IN_FLIGHT, SEND_TIMEOUT_MINUTES, TimeUnit.MINUTES))
+                    timedOut();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                end = System.nanoTime();
+                synchronized(checkpoint) {
+                    closed = true;
+                    try {
+                        checkpoint.close();
+                    } catch(IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                if(!cancelled && failed.get() == 0 && delivered.get() + unreachable.get() == total && !checkpointFile.delete())
+                    System.err.println("Could not remove broadcast checkpoint " + checkpointFile);
+            }
+        }
+
+        private void timedOut() {
+            System.err.println("Broadcast gave up after sends did not complete for " + SEND_TIMEOUT_MINUTES
+                    + " minutes, it can be resumed later");
+            cancelled = true;
+        }
+
+        /**
+         * Appends a done guild to the checkpoint. Sends still completing after the run gave up reopen the file,
+         * unless the checkpoint was discarded meanwhile.
+         */
+        private void checkpoint(long guildId) {
+            synchronized(checkpoint) {
+                if(closed) {
+                    if(!checkpointFile.exists())
+                        return;
+                    try(DataOutputStream out = new DataOutputStream(new FileOutputStream(checkpointFile, true))) {
+                        out.writeLong(guildId);
+                    } catch(IOException e) {
+                        e.printStackTrace();
+                    }
+                    return;
+                }
+                try {
+                    checkpoint.writeLong(guildId);
+                    checkpoint.flush();
+                } catch(IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private Progress progress() {
+            long until = end == 0 ? System.nanoTime() : end;
+            return new Progress(total, skipped, delivered.get(), failed.get(), unreachable.get(), until - start, thread.isAlive(), cancelled);
+        }
+    }
+
+    /**
+     * Snapshot of the progress of a broadcast
+     */
+    public static final class Progress {
+        private final int total;
+        private final int skipped;
+        private final int delivered;
+        private final int failed;
+        private final int unreachable;
+        private final long elapsedNanos;
+        private final boolean running;
+        private final boolean cancelled;
+
+        private Progress(int total, int skipped, int delivered, int failed, int unreachable, long elapsedNanos, boolean running, boolean cancelled) {
+            this.total = total;
+            this.skipped = skipped;
+            this.delivered = delivered;
+            this.failed = failed;
+            this.unreachable = unreachable;
+            this.elapsedNanos = elapsedNanos;
+            this.running = running;
+            this.cancelled = cancelled;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Guilds delivered (including the ones skipped because an earlier run already was done with them)
+         */
+        public int getDelivered() {
+            return delivered;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Guilds without a channel to announce in (these are not retried on resume)
+         */
+        public int getUnreachable() {
+            return unreachable;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Guilds delivered per second by this run
+         */
+        public double getThroughput() {
+            return elapsedNanos <= 0 ? 0 : (delivered - skipped) / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Estimated seconds until all guilds are delivered, -1 if unknown
+         */
+        public long getEtaSeconds() {
+            double throughput = getThroughput();
+            int remaining = total - delivered - failed - unreachable;
+            if(remaining <= 0)
+                return 0;
+            return throughput <= 0 ? -1 : (long) Math.ceil(remaining / throughput);
+        }
+
+        @Override
+        public String toString() {
+            long eta = getEtaSeconds();
+            return String.format("%d/%d guilds (%d failed, %d unreachable), %.1f/s, %s", delivered, total, failed, unreachable, getThroughput(),
+                    running ? "ETA " + (eta < 0 ? "unknown" : eta + "s") : cancelled ? "cancelled" : "done");
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.message;
+
+import com.kantenkugel.kanzebot.core.metrics.LatencyHistogram;
+import com.kantenkugel.kanzebot.core.trace.Trace;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.MessageChannel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outgoing messages of a single channel together with its rate-limit bucket and statistics.
+ * At most one thread drains a queue at a time (guarded by {@link #scheduled}).
+ */
+public final class ChannelQueue {
+    private final String channelId;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    final TokenBucket bucket;
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+    volatile MessageChannel channel;
+    private long lastActive = System.nanoTime();
+    private boolean retired = false;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    ChannelQueue(MessageChannel channel, TokenBucket bucket) {
+        this.channelId = channel.getId();
+        this.channel = channel;
+        this.bucket = bucket;
+    }
+
+    /**
+     * Queues a message unless this queue was {@link #retireIfIdle(long, long) retired}
+     *
+     * @return
+     *      false if the queue was retired and a new one has to be used
+     */
+    synchronized boolean offer(Pending message) {
+        if(retired)
+            return false;
+        pending.addLast(message);
+        lastActive = message.enqueued;
+        return true;
+    }
+
+    /**
+     * Retires this queue if nothing was queued for given time and it isn't being drained.
+     * A retired queue doesn't accept messages anymore.
+     */
+    synchronized boolean retireIfIdle(long now, long idleNanos) {
+        if(!retired && pending.isEmpty() && !scheduled.get() && now - lastActive >= idleNanos)
+            retired = true;
+        return retired;
+    }
+
+    synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Takes the next message and as many of the following ones that fit into a single message of given length.
+     * Messages someone waits for (with a future) are never merged.
+     */
+    synchronized List<Pending> poll(int maxLength) {
+        List<Pending> batch = new ArrayList<>();
+        Pending first = pending.pollFirst();
+        if(first == null)
+            return batch;
+        batch.add(first);
+        if(first.future != null)
+            return batch;
+        int length = first.content.length();
+        Pending next;
+        while((next = pending.peekFirst()) != null && next.future == null && length + 1 + next.content.length() <= maxLength) {
+            batch.add(pending.pollFirst());
+            length += 1 + next.content.length();
+        }
+        return batch;
+    }
+
+    /**
+     * Puts a batch that couldn't be sent back to the front of the queue
+     */
+    synchronized void requeue(List<Pending> batch) {
+        for(int i = batch.size() - 1; i >= 0; i--)
+            pending.addFirst(batch.get(i));
+    }
+
+    /**
+     * Removes all messages still queued
+     */
+    synchronized List<Pending> clear() {
+        List<Pending> all = new ArrayList<>(pending);
+        pending.clear();
+        return all;
+    }
+
+    void recordSent(List<Pending> batch, Message sentMessage, long now) {
+        sent.increment();
+        merged.add(batch.size() - 1);
+        for(Pending message : batch) {
+            latency.record(now - message.enqueued, TimeUnit.NANOSECONDS);
+            if(message.trace != null)
+                message.trace.markSent();
+            if(message.future != null)
+                message.future.complete(sentMessage);
+        }
+    }
+
+    void recordRateLimited() {
+        rateLimited.increment();
+    }
+
+    void recordFailed(List<Pending> batch, Throwable cause) {
+        failed.add(batch.size());
+        for(Pending message : batch) {
+            if(message.future != null)
+                message.future.completeExceptionally(cause);
+        }
+    }
+
+    public String getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Number of messages currently waiting to be sent
+     */
+    public synchronized int getDepth() {
+        return pending.size();
+    }
+
+    /**
+     * Time from queueing a message until it was sent (including the request itself)
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Number of requests made to Discord
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * Number of messages that were merged into a previous one instead of sent by themselves
+     */
+    public long getMergedCount() {
+        return merged.sum();
+    }
+
+    /**
+     * Number of requests that were still rejected by Discord due to rate-limits
+     */
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * Number of messages that could not be sent
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    static final class Pending {
+        final String content;
+        final long enqueued;
+        final CompletableFuture<Message> future;
+        //trace of the command-handler that sent this message (if sampled)
+        final Trace trace;
+
+        Pending(String content, long enqueued, CompletableFuture<Message> future, Trace trace) {
+            this.content = content;
+            this.enqueued = enqueued;
+            this.future = future;
+            this.trace = trace;
+        }
+    }
+}
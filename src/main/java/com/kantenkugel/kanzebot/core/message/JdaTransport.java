@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kantenkugel.kanzebot.core.message;
+
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.MessageChannel;
+
+/**
+ * Sends via the blocking requests of JDA
+ */
+final class JdaTransport implements MessageTransport {
+    @Override
+    public Message send(MessageChannel channel, String content) {
+        return channel.sendMessage(content);
+    }
+
+    @Override
+    public Message edit(Message message, String content) {
+        return message.updateMessage(content);
+    }
+
+    @Override
+    public void delete(Message message) {
+        message.deleteMessage();
+    }
+}
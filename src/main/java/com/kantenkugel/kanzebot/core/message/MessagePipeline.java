@@ -0,0 +1,294 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.message;
+
+import com.kantenkugel.kanzebot.api.util.MessageSender;
+import com.kantenkugel.kanzebot.api.util.MessageUtil;
+import com.kantenkugel.kanzebot.core.config.guild.GuildHotFields;
+import com.kantenkugel.kanzebot.core.trace.Trace;
+import com.kantenkugel.kanzebot.core.trace.Tracer;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.MessageChannel;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.exceptions.RateLimitedException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends all outgoing messages of the bot through one {@link ChannelQueue} per channel.<br>
+ * Each queue models Discord's per-channel rate-limit locally (5 messages per 5 seconds by default)
+ * and waits for its bucket instead of running into 429-responses.
+ * While a channel is waiting, short messages queued for it are merged (joined by newlines) into
+ * messages of up to {@value #MAX_LENGTH} characters. Longer messages are split (at a line-break or space if possible).<br>
+ * Edits and deletes are not queued but retried after the reported timeout if Discord rate-limits them.<br>
+ * The requests themselves are made by a {@link MessageTransport} (JDA unless another one is given). They block, so they run
+ * on a pool that grows with the number of channels sending at the same time (up to {@value #MAX_SENDERS} threads),
+ * while all waiting is done by a single scheduler-thread. Queues of channels that were idle for a while are evicted.
+ */
+public class MessagePipeline implements MessageSender {
+    public static final int MAX_LENGTH = 2000;
+    private static final int MAX_SENDERS = 64;
+    private static final long IDLE_EVICT_MINUTES = 5;
+
+    private final GuildHotFields hotFields;
+    private final MessageTransport transport;
+    private final int burst;
+    private final long period;
+    private final TimeUnit unit;
+    private final ConcurrentMap<String, ChannelQueue> queues = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ThreadPoolExecutor senders;
+
+    public MessagePipeline(GuildHotFields hotFields) {
+        this(hotFields, 5, 5, TimeUnit.SECONDS);
+    }
+
+    public MessagePipeline(GuildHotFields hotFields, int burst, long period, TimeUnit unit) {
+        this(hotFields, MessageTransport.DEFAULT, burst, period, unit);
+    }
+
+    /**
+     * @param transport
+     *      Makes the actual requests
+     * @param burst
+     *      Messages allowed per channel and period by the local rate-limit model
+     */
+    public MessagePipeline(GuildHotFields hotFields, MessageTransport transport, int burst, long period, TimeUnit unit) {
+        this.hotFields = hotFields;
+        this.transport = transport;
+        this.burst = burst;
+        this.period = period;
+        this.unit = unit;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "MessagePipeline-Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(MAX_SENDERS, MAX_SENDERS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "MessagePipeline-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.senders.allowCoreThreadTimeOut(true);
+        long idle = Math.max(TimeUnit.MINUTES.toNanos(IDLE_EVICT_MINUTES), unit.toNanos(period));
+        scheduler.scheduleWithFixedDelay(() -> evictIdle(idle, TimeUnit.NANOSECONDS), idle, idle, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void send(MessageChannel channel, String message) {
+        if(message == null || message.isEmpty())
+            return;
+        enqueue(channel, message, null);
+    }
+
+    @Override
+    public CompletableFuture<Message> sendAsync(MessageChannel channel, String message) {
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        if(message == null || message.isEmpty())
+            future.completeExceptionally(new IllegalArgumentException("Message must not be empty"));
+        else
+            enqueue(channel, message, future);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Message> editAsync(Message message, String newContent) {
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        String content = escape(message.isPrivate() ? null : message.getJDA().getTextChannelById(message.getChannelId()), newContent);
+        //escaping can push content over the limit and an edit can't be split
+        if(content.length() > MAX_LENGTH)
+            future.completeExceptionally(new IllegalArgumentException("Message is longer than " + MAX_LENGTH + " characters after escaping"));
+        else
+            senders.execute(() -> retry(future, () -> transport.edit(message, content)));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(Message message, long delay, TimeUnit unit) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        schedule(() -> retry(future, () -> {
+            transport.delete(message);
+            return null;
+        }), unit.toNanos(delay));
+        return future;
+    }
+
+    /**
+     * Queues a message, split into parts of at most {@value #MAX_LENGTH} characters. The future completes with the last part.
+     */
+    private void enqueue(MessageChannel channel, String message, CompletableFuture<Message> future) {
+        List<String> parts = split(escape(channel, message), MAX_LENGTH);
+        Trace trace = Tracer.current();
+        long now = System.nanoTime();
+        ChannelQueue queue = null;
+        for(int i = 0; i < parts.size(); i++) {
+            ChannelQueue.Pending pending = new ChannelQueue.Pending(parts.get(i), now, i == parts.size() - 1 ? future : null, trace);
+            while(queue == null || !queue.offer(pending))
+                queue = queues.computeIfAbsent(channel.getId(), id -> new ChannelQueue(channel, new TokenBucket(burst, period, unit)));
+        }
+        queue.channel = channel;
+        if(queue.scheduled.compareAndSet(false, true)) {
+            ChannelQueue scheduled = queue;
+            senders.execute(() -> drain(scheduled));
+        }
+    }
+
+    /**
+     * Splits a message into parts of at most given length, preferably at the last line-break (or else space)
+     * in the second half of a part. Surrogate-pairs are never split.
+     */
+    static List<String> split(String message, int maxLength) {
+        if(message.length() <= maxLength)
+            return Collections.singletonList(message);
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while(message.length() - start > maxLength) {
+            int end = start + maxLength;
+            int cut = message.lastIndexOf('\n', end);
+            if(cut <= start + maxLength / 2)
+                cut = message.lastIndexOf(' ', end);
+            int next;
+            if(cut > start + maxLength / 2 && cut < end) {
+                next = cut + 1;
+            } else {
+                cut = Character.isHighSurrogate(message.charAt(end - 1)) ? end - 1 : end;
+                next = cut;
+            }
+            parts.add(message.substring(start, cut));
+            start = next;
+        }
+        parts.add(message.substring(start));
+        return parts;
+    }
+
+    /**
+     * Removes the queues of all channels nothing was sent to for given time (and drops their statistics)
+     *
+     * @return
+     *      The number of evicted queues
+     */
+    public int evictIdle(long idle, TimeUnit unit) {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for(ChannelQueue queue : queues.values()) {
+            if(queue.retireIfIdle(now, unit.toNanos(idle)) && queues.remove(queue.getChannelId(), queue))
+                evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Runs a (blocking) task on the sender-pool after given delay
+     */
+    private void schedule(Runnable task, long delayNanos) {
+        scheduler.schedule(() -> senders.execute(task), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private <T> void retry(CompletableFuture<T> future, Supplier<T> request) {
+        try {
+            future.complete(request.get());
+        } catch(RateLimitedException e) {
+            schedule(() -> retry(future, request), TimeUnit.MILLISECONDS.toNanos(e.getTimeout()));
+        } catch(Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Sends the next (merged) message of the queue if its bucket allows it, otherwise reschedules once it does.
+     * Only ever runs on one thread per queue at a time.
+     */
+    private void drain(ChannelQueue queue) {
+        if(queue.isEmpty()) {
+            queue.scheduled.set(false);
+            //something might have been queued after the check but before resetting the flag
+            if(queue.isEmpty() || !queue.scheduled.compareAndSet(false, true))
+                return;
+        }
+        long wait = queue.bucket.tryAcquire(System.nanoTime());
+        if(wait > 0) {
+            schedule(() -> drain(queue), wait);
+            return;
+        }
+        List<ChannelQueue.Pending> batch = queue.poll(MAX_LENGTH);
+        StringBuilder content = new StringBuilder(batch.get(0).content);
+        for(int i = 1; i < batch.size(); i++)
+            content.append('\n').append(batch.get(i).content);
+        try {
+            Message sent = transport.send(queue.channel, content.toString());
+            queue.recordSent(batch, sent, System.nanoTime());
+        } catch(RateLimitedException e) {
+            queue.recordRateLimited();
+            queue.requeue(batch);
+            queue.bucket.blockUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(e.getTimeout()));
+        } catch(Exception e) {
+            queue.recordFailed(batch, e);
+            e.printStackTrace();
+        }
+        //resubmit instead of looping so busy channels don't starve the others
+        senders.execute(() -> drain(queue));
+    }
+
+    private String escape(MessageChannel channel, String message) {
+        if(!(channel instanceof TextChannel))
+            return message;
+        int policy = hotFields.get(((TextChannel) channel).getGuild().getId()).getEscapePolicy();
+        return MessageUtil.sanitize(message, policy & ~MessageUtil.ESCAPE_MARKDOWN);
+    }
+
+    public ChannelQueue getQueue(String channelId) {
+        return queues.get(channelId);
+    }
+
+    /**
+     * Returns the queues of all channels messages were sent to, the deepest ones first
+     */
+    public List<ChannelQueue> getQueues() {
+        List<ChannelQueue> list = new ArrayList<>(queues.values());
+        list.sort(Comparator.comparingInt(ChannelQueue::getDepth).thenComparingLong(ChannelQueue::getSentCount).reversed());
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Total number of messages waiting to be sent
+     */
+    public int getDepth() {
+        int depth = 0;
+        for(ChannelQueue queue : queues.values())
+            depth += queue.getDepth();
+        return depth;
+    }
+
+    /**
+     * Stops sending messages, messages still queued are dropped (and their futures failed)
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        senders.shutdownNow();
+        CancellationException cause = new CancellationException("MessagePipeline was shut down");
+        for(ChannelQueue queue : queues.values())
+            queue.recordFailed(queue.clear(), cause);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kantenkugel.kanzebot.core.message;
+
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.MessageChannel;
+import net.dv8tion.jda.exceptions.RateLimitedException;
+
+/**
+ * Performs the actual requests of the {@link MessagePipeline}.<br>
+ * By default they go through JDA ({@link #DEFAULT}), benchmarks can plug in a local stand-in for Discord's REST-api instead.
+ * Implementations report a 429-response by throwing a {@link RateLimitedException}, which the pipeline waits out and retries.
+ */
+public interface MessageTransport {
+    MessageTransport DEFAULT = new JdaTransport();
+
+    /**
+     * @throws RateLimitedException
+     *      If the channel is rate-limited
+     */
+    Message send(MessageChannel channel, String content);
+
+    /**
+     * @throws RateLimitedException
+     *      If the channel is rate-limited
+     */
+    Message edit(Message message, String content);
+
+    /**
+     * @throws RateLimitedException
+     *      If the channel is rate-limited
+     */
+    void delete(Message message);
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.message;
+
+import com.kantenkugel.kanzebot.api.config.GlobalConfig;
+import com.kantenkugel.kanzebot.api.util.MessageWriter;
+import com.kantenkugel.kanzebot.core.command.OwnerCommand;
+import net.dv8tion.jda.entities.MessageChannel;
+
+import java.util.List;
+
+/**
+ * Owner-command showing the outgoing message-queues
+ */
+public class QueueCommand extends OwnerCommand {
+    private static final int MAX_ROWS = 15;
+
+    private final MessagePipeline pipeline;
+
+    public QueueCommand(GlobalConfig config, MessagePipeline pipeline) {
+        super(config);
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public String getKey() {
+        return "queues";
+    }
+
+    @Override
+    public String getUsage() {
+        return "queues";
+    }
+
+    @Override
+    public String getHelp() {
+        return "Shows depth and send-latency of the outgoing message-queues per channel";
+    }
+
+    @Override
+    protected boolean handle(MessageChannel channel, String args) {
+        List<ChannelQueue> queues = pipeline.getQueues();
+        try(MessageWriter writer = new MessageWriter(channel)) {
+            writer.append("```\n").append(String.format("%-20s %5s %7s %7s %5s %5s %7s %7s%n", "Channel", "depth", "sent", "merged",
+                    "429", "err", "p50 ms", "p99 ms"));
+            for(ChannelQueue queue : queues.subList(0, Math.min(MAX_ROWS, queues.size()))) {
+                writer.append(String.format("%-20s %5d %7d %7d %5d %5d %7.1f %7.1f%n", queue.getChannelId(), queue.getDepth(),
+                        queue.getSentCount(), queue.getMergedCount(), queue.getRateLimitedCount(), queue.getFailedCount(),
+                        queue.getLatency().getPercentileMicros(0.5) / 1e3, queue.getLatency().getPercentileMicros(0.99) / 1e3));
+            }
+            writer.append(String.format("%d channels, %d messages queued%n", queues.size(), pipeline.getDepth())).append("```");
+        }
+        return true;
+    }
+}
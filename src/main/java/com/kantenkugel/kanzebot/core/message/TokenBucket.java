@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.message;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local model of a rate-limit bucket (allowing {@code capacity} requests per period), implemented as
+ * generic cell rate algorithm: instead of counting tokens, only the theoretical time at which the bucket
+ * is full again is stored.<br>
+ * Not thread-safe, a bucket is only ever used by the thread currently draining its {@link ChannelQueue}.
+ */
+final class TokenBucket {
+    private final long interval;
+    private final long tolerance;
+    private long fullAt = Long.MIN_VALUE;
+
+    TokenBucket(int capacity, long period, TimeUnit unit) {
+        this.interval = unit.toNanos(period) / capacity;
+        this.tolerance = unit.toNanos(period) - interval;
+    }
+
+    /**
+     * Tries to take a token
+     *
+     * @param now
+     *      The current {@link System#nanoTime()}
+     * @return
+     *      0 if a token was taken, otherwise the nanos until the next one is available
+     */
+    long tryAcquire(long now) {
+        long at = fullAt == Long.MIN_VALUE || fullAt - now < 0 ? now : fullAt;
+        long wait = at - now - tolerance;
+        if(wait > 0)
+            return wait;
+        fullAt = at + interval;
+        return 0;
+    }
+
+    /**
+     * Empties the bucket until given time (used when Discord reports a rate-limit we didn't predict)
+     */
+    void blockUntil(long nanos) {
+        long at = nanos + tolerance;
+        if(fullAt == Long.MIN_VALUE || at - fullAt > 0)
+            fullAt = at;
+    }
+}
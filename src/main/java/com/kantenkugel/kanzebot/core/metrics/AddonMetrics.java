@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-Addon resource accounting of all command-handlers and JDA-listeners
+ */
+public class AddonMetrics {
+    private final Map<String, AddonUsage> usages = new ConcurrentHashMap<>();
+
+    public AddonUsage get(String identifier) {
+        return usages.computeIfAbsent(identifier, AddonUsage::new);
+    }
+
+    /**
+     * Shorthand for {@code get(identifier).begin()}
+     */
+    public AddonUsage.Sample begin(String identifier) {
+        return get(identifier).begin();
+    }
+
+    /**
+     * Returns snapshots of all Addons, the most CPU-hungry first
+     */
+    public List<AddonUsage.Snapshot> snapshot() {
+        List<AddonUsage.Snapshot> snapshots = new ArrayList<>(usages.size());
+        for(AddonUsage usage : usages.values())
+            snapshots.add(usage.snapshot());
+        snapshots.sort(Comparator.comparingLong(AddonUsage.Snapshot::getCpuNanos).reversed());
+        return snapshots;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resource-usage of a single Addon: invocations, errors, thread CPU-time, allocated bytes and handler latency
+ */
+public class AddonUsage {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean SUN_THREADS;
+    private static final boolean CPU_SUPPORTED;
+
+    static {
+        boolean cpu = false;
+        try {
+            if(THREADS.isCurrentThreadCpuTimeSupported()) {
+                if(!THREADS.isThreadCpuTimeEnabled())
+                    THREADS.setThreadCpuTimeEnabled(true);
+                cpu = true;
+            }
+        } catch(UnsupportedOperationException | SecurityException e) {
+            e.printStackTrace();
+        }
+        CPU_SUPPORTED = cpu;
+
+        com.sun.management.ThreadMXBean sun = null;
+        try {
+            if(THREADS instanceof com.sun.management.ThreadMXBean) {
+                sun = (com.sun.management.ThreadMXBean) THREADS;
+                if(!sun.isThreadAllocatedMemorySupported())
+                    sun = null;
+                else if(!sun.isThreadAllocatedMemoryEnabled())
+                    sun.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch(NoClassDefFoundError | UnsupportedOperationException | SecurityException e) {
+            sun = null;
+        }
+        SUN_THREADS = sun;
+    }
+
+    private final String identifier;
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    AddonUsage(String identifier) {
+        this.identifier = identifier;
+    }
+
+    /**
+     * Starts measuring a single handler-invocation on the current thread.
+     * {@link Sample#finish(boolean)} has to be called on the same thread.
+     */
+    public Sample begin() {
+        return new Sample();
+    }
+
+    /**
+     * Counts an error of the Addon's code that happened outside of a measured handler-invocation
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Number of handler-invocations so far (cheaper than a full {@link #snapshot()})
+     */
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    private static long currentCpu() {
+        return CPU_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long currentAllocated() {
+        return SUN_THREADS == null ? 0 : SUN_THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public final class Sample {
+        private final long startNanos = System.nanoTime();
+        private final long startCpu = currentCpu();
+        private final long startAllocated = currentAllocated();
+
+        private Sample() {
+        }
+
+        public void finish(boolean failed) {
+            long duration = System.nanoTime() - startNanos;
+            cpuNanos.add(currentCpu() - startCpu);
+            allocatedBytes.add(currentAllocated() - startAllocated);
+            invocations.increment();
+            if(failed)
+                errors.increment();
+            latency.record(duration, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Immutable view of an AddonUsage at a single point in time
+     */
+    public static final class Snapshot {
+        private final String identifier;
+        private final long invocations, errors, cpuNanos, allocatedBytes;
+        private final long p50Micros, p95Micros, p99Micros, maxMicros;
+
+        private Snapshot(AddonUsage usage) {
+            this.identifier = usage.identifier;
+            this.invocations = usage.invocations.sum();
+            this.errors = usage.errors.sum();
+            this.cpuNanos = usage.cpuNanos.sum();
+            this.allocatedBytes = usage.allocatedBytes.sum();
+            this.p50Micros = usage.latency.getPercentileMicros(0.5);
+            this.p95Micros = usage.latency.getPercentileMicros(0.95);
+            this.p99Micros = usage.latency.getPercentileMicros(0.99);
+            this.maxMicros = usage.latency.getMaxMicros();
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public long getInvocations() {
+            return invocations;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP95Micros() {
+            return p95Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+}
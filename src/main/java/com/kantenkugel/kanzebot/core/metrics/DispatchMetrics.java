@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies of the {@link com.kantenkugel.kanzebot.core.command.CommandDispatcher CommandDispatcher}.
+ * Recording only touches {@link LongAdder LongAdders} and lock-free histograms, they are summed up when read.
+ */
+public class DispatchMetrics {
+    private final Map<String, LongAdder> dispatched = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> rejected = new ConcurrentHashMap<>();
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram handlerLatency = new LatencyHistogram();
+
+    /**
+     * Counts a message routed to given command
+     */
+    public void recordDispatch(String key) {
+        dispatched.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Counts a message that was shed because the Addon owning the command was busy
+     */
+    public void recordRejected(String key) {
+        rejected.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    public void recordParse(long nanos) {
+        parseLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordHandler(long nanos) {
+        handlerLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of dispatched messages per command-key
+     */
+    public Map<String, Long> getDispatchCounts() {
+        return sum(dispatched);
+    }
+
+    /**
+     * Returns the number of rejected messages per command-key
+     */
+    public Map<String, Long> getRejectedCounts() {
+        return sum(rejected);
+    }
+
+    /**
+     * Time spent in the {@link com.kantenkugel.kanzebot.api.command.ArgParser ArgParsers}
+     */
+    public LatencyHistogram getParseLatency() {
+        return parseLatency;
+    }
+
+    /**
+     * Time spent in the command-handlers (excluding the time waiting for the Addon's Bulkhead)
+     */
+    public LatencyHistogram getHandlerLatency() {
+        return handlerLatency;
+    }
+
+    private static Map<String, Long> sum(Map<String, LongAdder> counters) {
+        Map<String, Long> sums = new TreeMap<>();
+        for(Map.Entry<String, LongAdder> entry : counters.entrySet())
+            sums.put(entry.getKey(), entry.getValue().sum());
+        return sums;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (8 linear sub-buckets per power of two),
+ * giving percentiles within ~12.5% of the real value. Values are recorded in microseconds.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long duration, TimeUnit unit) {
+        long micros = Math.max(0, unit.toMicros(duration));
+        counts.incrementAndGet(indexOf(micros));
+        count.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMicros() {
+        return sum.sum();
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+
+    /**
+     * Returns the (upper bound of the bucket of the) given percentile in microseconds
+     *
+     * @param percentile
+     *      The percentile between 0 and 1 (e.g. 0.99)
+     */
+    public long getPercentileMicros(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++)
+            total += snapshot[i] = counts.get(i);
+        if(total == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if(seen >= target)
+                return Math.min(upperBound(i), getMaxMicros());
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * Returns the number of recorded values at or below each of given bounds (e.g. for Prometheus-histograms).
+     * Values are attributed by the upper bound of their bucket, so counts are exact only at bucket-boundaries.
+     *
+     * @param boundsMicros
+     *      Ascending upper bounds in microseconds
+     * @return
+     *      The cumulative count per bound
+     */
+    public long[] getCumulativeCounts(long[] boundsMicros) {
+        long[] cumulative = new long[boundsMicros.length];
+        int bound = 0;
+        long seen = 0;
+        for(int i = 0; i < BUCKETS && bound < boundsMicros.length; i++) {
+            while(bound < boundsMicros.length && upperBound(i) > boundsMicros[bound])
+                cumulative[bound++] = seen;
+            seen += counts.get(i);
+        }
+        while(bound < boundsMicros.length)
+            cumulative[bound++] = seen;
+        return cumulative;
+    }
+
+    static int indexOf(long value) {
+        if(value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int index) {
+        if(index < SUB_BUCKETS)
+            return index;
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    static long upperBound(int index) {
+        return index + 1 < BUCKETS ? lowerBound(index + 1) - 1 : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.metrics;
+
+import com.kantenkugel.kanzebot.core.trace.Trace;
+import com.kantenkugel.kanzebot.core.trace.Tracer;
+import spark.Service;
+
+/**
+ * Embedded HTTP-server (Spark) serving the {@link PrometheusExporter} on <code>/metrics</code>
+ * and the slow traces of the {@link Tracer} on <code>/traces</code>
+ */
+public class MetricsServer {
+    private final PrometheusExporter exporter;
+    private final Tracer tracer;
+    private Service service;
+
+    public MetricsServer(PrometheusExporter exporter, Tracer tracer) {
+        this.exporter = exporter;
+        this.tracer = tracer;
+    }
+
+    /**
+     * Starts the server on given port
+     */
+    public synchronized void start(int port) {
+        if(service != null)
+            throw new IllegalStateException("Metrics-server already running");
+        service = Service.ignite().port(port);
+        service.get("/metrics", (request, response) -> {
+            response.type(PrometheusExporter.CONTENT_TYPE);
+            return exporter.scrape();
+        });
+        service.get("/traces", (request, response) -> {
+            response.type("text/plain; charset=utf-8");
+            StringBuilder b = new StringBuilder();
+            for(Trace trace : tracer.getSlowTraces())
+                b.append(trace.getTimestamp()).append(' ').append(trace).append('\n');
+            return b.toString();
+        });
+        service.init();
+    }
+
+    public synchronized void stop() {
+        if(service != null) {
+            service.stop();
+            service = null;
+        }
+    }
+}
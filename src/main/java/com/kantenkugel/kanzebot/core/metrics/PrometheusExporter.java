@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.metrics;
+
+import com.kantenkugel.kanzebot.core.KanzeCore;
+import com.kantenkugel.kanzebot.core.config.guild.GuildHotFields;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettings;
+import com.kantenkugel.kanzebot.core.isolation.Bulkhead;
+import com.kantenkugel.kanzebot.core.message.MessagePipeline;
+
+import java.lang.management.*;
+import java.util.Map;
+
+/**
+ * Renders the bot's metrics in the Prometheus text-format (version 0.0.4).<br>
+ * Everything is read from counters the hot paths only increment ({@link java.util.concurrent.atomic.LongAdder LongAdders},
+ * lock-free histograms), so a scrape never blocks message-handling.
+ */
+public class PrometheusExporter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    //histogram-buckets in microseconds (100us to 10s)
+    private static final long[] BUCKETS = {100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000,
+            250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000};
+
+    private final KanzeCore core;
+
+    public PrometheusExporter(KanzeCore core) {
+        this.core = core;
+    }
+
+    public String scrape() {
+        StringBuilder b = new StringBuilder(8192);
+        writeDispatch(b, core.getDispatchMetrics());
+        writeAddons(b, core.getMetrics());
+        writeExecutors(b);
+        writeConfig(b, core.getGuildSettings());
+        writeJvm(b);
+        return b.toString();
+    }
+
+    private static void writeDispatch(StringBuilder b, DispatchMetrics metrics) {
+        header(b, "kanzebot_commands_dispatched_total", "counter", "Messages routed to a command");
+        for(Map.Entry<String, Long> entry : metrics.getDispatchCounts().entrySet())
+            sample(b, "kanzebot_commands_dispatched_total", "command", entry.getKey(), entry.getValue());
+        header(b, "kanzebot_commands_rejected_total", "counter", "Messages shed because the owning Addon was busy");
+        for(Map.Entry<String, Long> entry : metrics.getRejectedCounts().entrySet())
+            sample(b, "kanzebot_commands_rejected_total", "command", entry.getKey(), entry.getValue());
+        header(b, "kanzebot_command_parse_seconds", "histogram", "Time spent parsing command-arguments");
+        histogram(b, "kanzebot_command_parse_seconds", null, null, metrics.getParseLatency());
+        header(b, "kanzebot_command_handler_seconds", "histogram", "Time spent in command-handlers");
+        histogram(b, "kanzebot_command_handler_seconds", null, null, metrics.getHandlerLatency());
+    }
+
+    private static void writeAddons(StringBuilder b, AddonMetrics metrics) {
+        header(b, "kanzebot_addon_invocations_total", "counter", "Handler-invocations per Addon");
+        StringBuilder errors = new StringBuilder();
+        StringBuilder cpu = new StringBuilder();
+        StringBuilder allocated = new StringBuilder();
+        for(AddonUsage.Snapshot usage : metrics.snapshot()) {
+            sample(b, "kanzebot_addon_invocations_total", "addon", usage.getIdentifier(), usage.getInvocations());
+            sample(errors, "kanzebot_addon_errors_total", "addon", usage.getIdentifier(), usage.getErrors());
+            sample(cpu, "kanzebot_addon_cpu_seconds_total", "addon", usage.getIdentifier(), usage.getCpuNanos() / 1e9);
+            sample(allocated, "kanzebot_addon_allocated_bytes_total", "addon", usage.getIdentifier(), usage.getAllocatedBytes());
+        }
+        header(b, "kanzebot_addon_errors_total", "counter", "Failed handler-invocations per Addon");
+        b.append(errors);
+        header(b, "kanzebot_addon_cpu_seconds_total", "counter", "CPU-time of the handlers per Addon");
+        b.append(cpu);
+        header(b, "kanzebot_addon_allocated_bytes_total", "counter", "Memory allocated by the handlers per Addon");
+        b.append(allocated);
+    }
+
+    private void writeExecutors(StringBuilder b) {
+        header(b, "kanzebot_addon_queue_depth", "gauge", "Tasks waiting on the Bulkhead of an Addon");
+        StringBuilder active = new StringBuilder();
+        StringBuilder shed = new StringBuilder();
+        for(Bulkhead bulkhead : core.getIsolation().getAll()) {
+            sample(b, "kanzebot_addon_queue_depth", "addon", bulkhead.getIdentifier(), bulkhead.getQueueSize());
+            sample(active, "kanzebot_addon_active_threads", "addon", bulkhead.getIdentifier(), bulkhead.getActiveCount());
+            sample(shed, "kanzebot_addon_shed_total", "addon", bulkhead.getIdentifier(), bulkhead.getShedCount());
+        }
+        header(b, "kanzebot_addon_active_threads", "gauge", "Busy threads of the Bulkhead of an Addon");
+        b.append(active);
+        header(b, "kanzebot_addon_shed_total", "counter", "Tasks rejected by the Bulkhead of an Addon");
+        b.append(shed);
+
+        MessagePipeline pipeline = core.getMessagePipeline();
+        header(b, "kanzebot_outgoing_queue_depth", "gauge", "Messages waiting to be sent");
+        sample(b, "kanzebot_outgoing_queue_depth", null, null, pipeline.getDepth());
+        header(b, "kanzebot_outgoing_channels", "gauge", "Channels with an outgoing message-queue");
+        sample(b, "kanzebot_outgoing_channels", null, null, pipeline.getQueues().size());
+    }
+
+    private static void writeConfig(StringBuilder b, GuildSettings settings) {
+        header(b, "kanzebot_guild_config_lookups_total", "counter", "Guild-config lookups by where they were answered");
+        sample(b, "kanzebot_guild_config_lookups_total", "source", "memory", settings.getOverlayHits());
+        sample(b, "kanzebot_guild_config_lookups_total", "source", "store", settings.getStoreReads());
+        GuildHotFields hotFields = settings.getHotFields();
+        header(b, "kanzebot_guild_hotfield_lookups_total", "counter", "Hot-field lookups by whether the guild had own values");
+        sample(b, "kanzebot_guild_hotfield_lookups_total", "result", "hit", hotFields.getHits());
+        sample(b, "kanzebot_guild_hotfield_lookups_total", "result", "default", hotFields.getDefaults());
+    }
+
+    private static void writeJvm(StringBuilder b) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        header(b, "jvm_memory_bytes_used", "gauge", "Used bytes of a memory area");
+        sample(b, "jvm_memory_bytes_used", "area", "heap", memory.getHeapMemoryUsage().getUsed());
+        sample(b, "jvm_memory_bytes_used", "area", "nonheap", memory.getNonHeapMemoryUsage().getUsed());
+        header(b, "jvm_memory_bytes_committed", "gauge", "Committed bytes of a memory area");
+        sample(b, "jvm_memory_bytes_committed", "area", "heap", memory.getHeapMemoryUsage().getCommitted());
+        sample(b, "jvm_memory_bytes_committed", "area", "nonheap", memory.getNonHeapMemoryUsage().getCommitted());
+        header(b, "jvm_memory_bytes_max", "gauge", "Max bytes of a memory area (-1 if undefined)");
+        sample(b, "jvm_memory_bytes_max", "area", "heap", memory.getHeapMemoryUsage().getMax());
+        sample(b, "jvm_memory_bytes_max", "area", "nonheap", memory.getNonHeapMemoryUsage().getMax());
+
+        header(b, "jvm_memory_pool_bytes_used", "gauge", "Used bytes of a memory pool");
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            sample(b, "jvm_memory_pool_bytes_used", "pool", pool.getName(), pool.getUsage().getUsed());
+
+        header(b, "jvm_gc_collections_total", "counter", "Collections of a garbage collector");
+        StringBuilder time = new StringBuilder();
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(b, "jvm_gc_collections_total", "gc", gc.getName(), gc.getCollectionCount());
+            sample(time, "jvm_gc_collection_seconds_total", "gc", gc.getName(), gc.getCollectionTime() / 1e3);
+        }
+        header(b, "jvm_gc_collection_seconds_total", "counter", "Time spent in a garbage collector");
+        b.append(time);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        header(b, "jvm_threads", "gauge", "Live threads");
+        sample(b, "jvm_threads", null, null, threads.getThreadCount());
+    }
+
+    private static void histogram(StringBuilder b, String name, String label, String value, LatencyHistogram histogram) {
+        long[] cumulative = histogram.getCumulativeCounts(BUCKETS);
+        String prefix = label == null ? "" : label + "=\"" + escape(value) + "\",";
+        for(int i = 0; i < BUCKETS.length; i++)
+            b.append(name).append("_bucket{").append(prefix).append("le=\"").append(BUCKETS[i] / 1e6).append("\"} ").append(cumulative[i]).append('\n');
+        long count = histogram.getCount();
+        b.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(count).append('\n');
+        sample(b, name + "_sum", label, value, histogram.getSumMicros() / 1e6);
+        sample(b, name + "_count", label, value, count);
+    }
+
+    private static void header(StringBuilder b, String name, String type, String help) {
+        b.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        b.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder b, String name, String label, String value, long sample) {
+        labels(b, name, label, value).append(sample).append('\n');
+    }
+
+    private static void sample(StringBuilder b, String name, String label, String value, double sample) {
+        labels(b, name, label, value).append(sample).append('\n');
+    }
+
+    private static StringBuilder labels(StringBuilder b, String name, String label, String value) {
+        b.append(name);
+        if(label != null)
+            b.append('{').append(label).append("=\"").append(escape(value)).append("\"}");
+        return b.append(' ');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
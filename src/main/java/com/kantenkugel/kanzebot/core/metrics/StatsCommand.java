@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.metrics;
+
+import com.kantenkugel.kanzebot.api.config.GlobalConfig;
+import com.kantenkugel.kanzebot.api.util.MessageWriter;
+import com.kantenkugel.kanzebot.core.command.OwnerCommand;
+import net.dv8tion.jda.entities.MessageChannel;
+
+/**
+ * Owner-command showing the per-Addon resource usage
+ */
+public class StatsCommand extends OwnerCommand {
+    private final AddonMetrics metrics;
+
+    public StatsCommand(GlobalConfig config, AddonMetrics metrics) {
+        super(config);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String getKey() {
+        return "addonstats";
+    }
+
+    @Override
+    public String getUsage() {
+        return "addonstats";
+    }
+
+    @Override
+    public String getHelp() {
+        return "Shows CPU-time, allocations and handler-latency per Addon";
+    }
+
+    @Override
+    protected boolean handle(MessageChannel channel, String args) {
+        try(MessageWriter writer = new MessageWriter(channel)) {
+            writer.append("```\n").append(String.format("%-16s %7s %5s %9s %9s %7s %7s %7s%n", "Addon", "calls", "err", "cpu ms",
+                    "alloc KB", "p50 ms", "p99 ms", "max ms"));
+            for(AddonUsage.Snapshot usage : metrics.snapshot()) {
+                writer.append(String.format("%-16.16s %7d %5d %9.1f %9d %7.1f %7.1f %7.1f%n", usage.getIdentifier(), usage.getInvocations(),
+                        usage.getErrors(), usage.getCpuNanos() / 1e6, usage.getAllocatedBytes() / 1024,
+                        usage.getP50Micros() / 1e3, usage.getP99Micros() / 1e3, usage.getMaxMicros() / 1e3));
+            }
+            writer.append("```");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kantenkugel.kanzebot.core.replay;
+
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.events.Event;
+import net.dv8tion.jda.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.hooks.EventListener;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records all received messages (except the bot's own) in the {@link ReplayRecord replay-format},
+ * so real traffic can later be replayed offline against the dispatch-pipeline.<br>
+ * Records are handed to a background-thread which appends them to the file and flushes at least every
+ * {@value #FLUSH_MILLIS}ms, so the event-thread never waits for the disk. If the writer falls behind by more than
+ * {@value #QUEUE_CAPACITY} records, new ones are dropped.<br>
+ * Once the file reaches its size-limit it is rotated to {@code <file>.1} (replacing an older one),
+ * so the capture never takes more than twice the limit. If writing fails, capturing stops.
+ */
+public class MessageCapture implements EventListener, Closeable {
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final long FLUSH_MILLIS = 1000;
+
+    private final File file;
+    private final long maxBytes;
+    private final BlockingQueue<ReplayRecord> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread thread;
+    private OutputStream out;
+    private long size;
+    private volatile boolean closed = false;
+
+    public MessageCapture(File file) throws IOException {
+        this(file, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a new capture appending to given file
+     *
+     * @param file
+     *      The file to append the records to
+     * @param maxBytes
+     *      The size at which the file is rotated
+     */
+    public MessageCapture(File file, long maxBytes) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.out = open();
+        this.thread = new Thread(this::run, "MessageCapture");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        if(closed || !(event instanceof MessageReceivedEvent))
+            return;
+        MessageReceivedEvent received = (MessageReceivedEvent) event;
+        Message message = received.getMessage();
+        if(message.getAuthor().getId().equals(event.getJDA().getSelfInfo().getId()))
+            return;
+        String guildId = received.isPrivate() ? null : received.getTextChannel().getGuild().getId();
+        ReplayRecord record = new ReplayRecord(System.currentTimeMillis(), guildId, message.getChannelId(),
+                message.getAuthor().getId(), message.getRawContent());
+        if(queue.offer(record))
+            count.increment();
+        else
+            dropped.increment();
+    }
+
+    private void run() {
+        long lastFlush = System.nanoTime();
+        try {
+            while(!closed || !queue.isEmpty()) {
+                ReplayRecord record;
+                try {
+                    record = queue.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                } catch(InterruptedException e) {
+                    //interrupted by close, write what is left
+                    record = null;
+                }
+                if(record != null)
+                    write(record);
+                if(record == null || System.nanoTime() - lastFlush >= TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS)) {
+                    out.flush();
+                    lastFlush = System.nanoTime();
+                }
+            }
+        } catch(IOException e) {
+            System.err.println("Capturing messages to " + file + " failed, stopping capture");
+            e.printStackTrace();
+            closed = true;
+            queue.clear();
+        } finally {
+            try {
+                out.close();
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void write(ReplayRecord record) throws IOException {
+        byte[] line = (record.toLine() + '\n').getBytes(StandardCharsets.UTF_8);
+        if(size > 0 && size + line.length > maxBytes)
+            rotate();
+        out.write(line);
+        size += line.length;
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        File rotated = new File(file.getPath() + ".1");
+        if(rotated.exists() && !rotated.delete() || !file.renameTo(rotated))
+            throw new IOException("Could not rotate " + file + " to " + rotated);
+        out = open();
+    }
+
+    private OutputStream open() throws IOException {
+        size = file.length();
+        return new BufferedOutputStream(new FileOutputStream(file, true));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The number of messages captured so far (some of them may not be written yet)
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * The number of messages dropped because the writer fell behind
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops capturing and waits until all captured messages are written
+     */
+    @Override
+    public synchronized void close() {
+        if(closed && !thread.isAlive())
+            return;
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
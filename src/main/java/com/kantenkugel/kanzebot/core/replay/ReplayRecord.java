@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kantenkugel.kanzebot.core.replay;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single received message as written by {@link MessageCapture} and read by the replay-harness of the tests.<br>
+ * Records are stored one per line as tab-separated {@code timestamp guild channel author content},
+ * where timestamp is in epoch-millis, guild is {@value #PRIVATE} for private messages
+ * and tabs, line-breaks and backslashes of the content are escaped with a backslash.
+ * Empty lines and lines starting with {@code #} are ignored, so synthetic streams can be commented.
+ */
+public final class ReplayRecord {
+    public static final String PRIVATE = "-";
+
+    private final long timestamp;
+    private final String guildId;
+    private final String channelId;
+    private final String authorId;
+    private final String content;
+
+    /**
+     * @param guildId
+     *      The id of the Guild, or null for private messages
+     */
+    public ReplayRecord(long timestamp, String guildId, String channelId, String authorId, String content) {
+        this.timestamp = timestamp;
+        this.guildId = guildId;
+        this.channelId = channelId;
+        this.authorId = authorId;
+        this.content = content;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The id of the Guild, or null for private messages
+     */
+    public String getGuildId() {
+        return guildId;
+    }
+
+    public String getChannelId() {
+        return channelId;
+    }
+
+    public String getAuthorId() {
+        return authorId;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public boolean isPrivate() {
+        return guildId == null;
+    }
+
+    public String toLine() {
+        StringBuilder builder = new StringBuilder(content.length() + 64);
+        builder.append(timestamp).append('\t')
+                .append(guildId == null ? PRIVATE : guildId).append('\t')
+                .append(channelId).append('\t')
+                .append(authorId).append('\t');
+        for(int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            switch(c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Parses a single line of the replay-format
+     *
+     * @throws IllegalArgumentException
+     *      If the line is malformed
+     */
+    public static ReplayRecord parse(String line) {
+        String[] split = line.split("\t", 5);
+        if(split.length != 5)
+            throw new IllegalArgumentException("Expected 5 tab-separated fields: " + line);
+        long timestamp;
+        try {
+            timestamp = Long.parseLong(split[0]);
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid timestamp: " + line);
+        }
+        String guildId = split[1].equals(PRIVATE) ? null : split[1];
+        return new ReplayRecord(timestamp, guildId, split[2], split[3], unescape(split[4]));
+    }
+
+    /**
+     * Reads all records of a stream, skipping empty and comment-lines
+     *
+     * @throws IllegalArgumentException
+     *      If a line is malformed
+     */
+    public static List<ReplayRecord> read(Reader reader) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        List<ReplayRecord> records = new ArrayList<>();
+        String line;
+        while((line = in.readLine()) != null) {
+            if(line.isEmpty() || line.startsWith("#"))
+                continue;
+            records.add(parse(line));
+        }
+        return records;
+    }
+
+    private static String unescape(String escaped) {
+        if(escaped.indexOf('\\') < 0)
+            return escaped;
+        StringBuilder builder = new StringBuilder(escaped.length());
+        for(int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if(c != '\\' || i + 1 == escaped.length()) {
+                builder.append(c);
+                continue;
+            }
+            char next = escaped.charAt(++i);
+            switch(next) {
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                default:
+                    builder.append(next);
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toLine();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.trace;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timestamps of the stages a single (sampled) command-message went through.
+ * Stages are marked by the handling thread, except for SEND, which is marked by the sender-thread,
+ * and read by whoever shows the trace, so the marks are kept in an AtomicLongArray.
+ */
+public final class Trace {
+    /**
+     * The stages of command-handling, in order. The duration of a stage is the time since the previous reached stage
+     * (except for SEND).
+     */
+    public enum Stage {
+        /** Prefix matched and command looked up */
+        PREFIX,
+        /** Requirement of the command */
+        REQUIREMENT,
+        /** ArgParser of the command */
+        PARSE,
+        /** Waiting for a thread of the owning Addon's Bulkhead */
+        QUEUE,
+        /** The command-handler itself */
+        HANDLER,
+        /** From the start of the handler until the first message it sent left the outgoing queue (overlaps HANDLER) */
+        SEND
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final Tracer tracer;
+    private final String key;
+    private final String guildId;
+    private final long wallClock = System.currentTimeMillis();
+    private final long start;
+    private final AtomicLongArray marks = new AtomicLongArray(STAGES.length);
+    private final AtomicBoolean sent = new AtomicBoolean(false);
+    private final AtomicBoolean recorded = new AtomicBoolean(false);
+
+    Trace(Tracer tracer, String key, String guildId, long start) {
+        this.tracer = tracer;
+        this.key = key;
+        this.guildId = guildId;
+        this.start = start;
+    }
+
+    /**
+     * Marks the end of given stage
+     */
+    public void mark(Stage stage) {
+        marks.set(stage.ordinal(), System.nanoTime());
+    }
+
+    /**
+     * Marks the end of handling, the trace is offered to the slow-trace buffer
+     */
+    public void finish() {
+        mark(Stage.HANDLER);
+        tracer.offer(this);
+    }
+
+    /**
+     * Called by the outgoing queue once a message sent while handling this trace was sent.
+     * Only the first one counts.
+     */
+    public void markSent() {
+        if(sent.compareAndSet(false, true)) {
+            mark(Stage.SEND);
+            tracer.offer(this);
+        }
+    }
+
+    boolean markRecorded() {
+        return recorded.compareAndSet(false, true);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * The id of the guild or null for private messages
+     */
+    public String getGuildId() {
+        return guildId;
+    }
+
+    public long getTimestamp() {
+        return wallClock;
+    }
+
+    /**
+     * Nanos from receiving the message to the last reached stage
+     */
+    public long getTotalNanos() {
+        long last = start;
+        for(int i = 0; i < marks.length(); i++) {
+            long mark = marks.get(i);
+            if(mark != 0 && mark - last > 0)
+                last = mark;
+        }
+        return last - start;
+    }
+
+    /**
+     * Nanos spent in given stage or -1 if it wasn't reached (yet)
+     */
+    public long getStageNanos(Stage stage) {
+        long mark = marks.get(stage.ordinal());
+        if(mark == 0)
+            return -1;
+        long previous = start;
+        int from = stage == Stage.SEND ? Stage.QUEUE.ordinal() : stage.ordinal() - 1;
+        for(int i = from; i >= 0; i--) {
+            long earlier = marks.get(i);
+            if(earlier != 0) {
+                previous = earlier;
+                break;
+            }
+        }
+        return mark - previous;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder(key).append(" (").append(guildId == null ? "PM" : guildId).append(") ")
+                .append(String.format("%.2fms:", getTotalNanos() / 1e6));
+        for(Stage stage : STAGES) {
+            long nanos = getStageNanos(stage);
+            if(nanos >= 0)
+                b.append(' ').append(stage.name().toLowerCase()).append(String.format("=%.2f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+        return b.toString();
+    }
+}
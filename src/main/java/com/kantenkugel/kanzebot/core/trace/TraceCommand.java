@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.trace;
+
+import com.kantenkugel.kanzebot.api.config.GlobalConfig;
+import com.kantenkugel.kanzebot.api.util.MessageWriter;
+import com.kantenkugel.kanzebot.core.command.OwnerCommand;
+import net.dv8tion.jda.entities.MessageChannel;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Owner-command listing the slowest recently traced commands with their per-stage latencies
+ */
+public class TraceCommand extends OwnerCommand {
+    private final Tracer tracer;
+
+    public TraceCommand(GlobalConfig config, Tracer tracer) {
+        super(config);
+        this.tracer = tracer;
+    }
+
+    @Override
+    public String getKey() {
+        return "traces";
+    }
+
+    @Override
+    public String getUsage() {
+        return "traces [count]";
+    }
+
+    @Override
+    public String getHelp() {
+        return "Shows the latest traced commands that took longer than the SlowTraceMillis";
+    }
+
+    @Override
+    protected boolean handle(MessageChannel channel, String args) {
+        int count = 10;
+        if(!args.isEmpty()) {
+            try {
+                count = Integer.parseInt(args);
+            } catch(NumberFormatException e) {
+                return false;
+            }
+            if(count < 1)
+                return false;
+        }
+        List<Trace> traces = tracer.getSlowTraces();
+        try(MessageWriter writer = new MessageWriter(channel)) {
+            writer.append(String.format("Sampling %.1f%%, slow above %dms%n", tracer.getSampleRate() * 100, tracer.getSlowMillis()));
+            writer.append("```\n");
+            for(Trace trace : traces.subList(0, Math.min(count, traces.size())))
+                writer.append(Instant.ofEpochMilli(trace.getTimestamp()).toString()).append(' ').appendLine(trace.toString());
+            if(traces.isEmpty())
+                writer.appendLine("No slow traces");
+            writer.append("```");
+        }
+        return true;
+    }
+}
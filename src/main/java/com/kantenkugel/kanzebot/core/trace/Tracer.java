@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Samples command-messages for per-stage {@link Trace Traces} and keeps the slowest ones in a ring-buffer.<br>
+ * Messages that are not sampled don't get a trace at all (all marks are skipped by null-checks),
+ * so tracing costs nothing beyond one random number per command-message.
+ */
+public class Tracer {
+    public static final int BUFFER_SIZE = 64;
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    private final AtomicReferenceArray<Trace> slow = new AtomicReferenceArray<>(BUFFER_SIZE);
+    private final AtomicLong next = new AtomicLong();
+    private volatile double sampleRate;
+    private volatile long slowNanos;
+
+    /**
+     * @param sampleRate
+     *      Fraction of command-messages to trace (0 to disable, 1 for all)
+     * @param slowMillis
+     *      Traces taking at least this long are kept in the slow-trace buffer
+     */
+    public Tracer(double sampleRate, long slowMillis) {
+        configure(sampleRate, slowMillis);
+    }
+
+    public void configure(double sampleRate, long slowMillis) {
+        this.sampleRate = sampleRate;
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+    }
+
+    /**
+     * Starts a trace for a command-message if it is sampled
+     *
+     * @param key
+     *      The command-key
+     * @param guildId
+     *      The guild-id or null for private messages
+     * @param start
+     *      The {@link System#nanoTime()} the message was received at
+     * @return
+     *      The trace or null if the message was not sampled
+     */
+    public Trace begin(String key, String guildId, long start) {
+        double rate = sampleRate;
+        if(rate <= 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate))
+            return null;
+        return new Trace(this, key, guildId, start);
+    }
+
+    /**
+     * Sets the trace of the command-handler running on this thread, so messages it sends can be attributed to it
+     */
+    public static void setCurrent(Trace trace) {
+        if(trace == null)
+            CURRENT.remove();
+        else
+            CURRENT.set(trace);
+    }
+
+    /**
+     * Returns the trace of the command-handler running on this thread or null
+     */
+    public static Trace current() {
+        return CURRENT.get();
+    }
+
+    void offer(Trace trace) {
+        if(trace.getTotalNanos() >= slowNanos && trace.markRecorded())
+            slow.set((int) (next.getAndIncrement() % BUFFER_SIZE), trace);
+    }
+
+    /**
+     * Returns the slow traces, newest first.
+     * A trace may still receive its send-stage after it was recorded.
+     */
+    public List<Trace> getSlowTraces() {
+        long end = next.get();
+        List<Trace> traces = new ArrayList<>(BUFFER_SIZE);
+        for(long i = end - 1; i >= 0 && i >= end - BUFFER_SIZE; i--) {
+            Trace trace = slow.get((int) (i % BUFFER_SIZE));
+            if(trace != null)
+                traces.add(trace);
+        }
+        return traces;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getSlowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowNanos);
+    }
+}
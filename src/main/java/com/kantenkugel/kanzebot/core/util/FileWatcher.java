@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.kantenkugel.kanzebot.core.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches a single file for changes and runs a callback on its own daemon thread.
+ * Bursts of events (editors often write a file in multiple steps) are collapsed into a single callback.
+ */
+public class FileWatcher implements Runnable {
+    private final Path file;
+    private final Path directory;
+    private final long debounceMillis;
+    private final Runnable onChange;
+
+    private volatile boolean running = false;
+    private WatchService watchService;
+    private Thread thread;
+
+    public FileWatcher(File file, long debounceMillis, Runnable onChange) {
+        Path path = file.getAbsoluteFile().toPath();
+        this.file = path.getFileName();
+        this.directory = path.getParent();
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+    }
+
+    public synchronized void start() throws IOException {
+        if(running)
+            return;
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        running = true;
+        thread = new Thread(this, "FileWatcher-" + file);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if(!running)
+            return;
+        running = false;
+        try {
+            watchService.close();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+        thread.interrupt();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while(running) {
+                if(!isRelevant(watchService.take()))
+                    continue;
+                //wait for the writer to finish and swallow the rest of the burst
+                Thread.sleep(debounceMillis);
+                WatchKey key;
+                while((key = watchService.poll()) != null)
+                    isRelevant(key);
+                try {
+                    onChange.run();
+                } catch(Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch(InterruptedException | ClosedWatchServiceException ignored) {
+        } finally {
+            running = false;
+        }
+    }
+
+    private boolean isRelevant(WatchKey key) {
+        boolean relevant = false;
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(file.equals(event.context()))
+                relevant = true;
+        }
+        key.reset();
+        return relevant;
+    }
+}
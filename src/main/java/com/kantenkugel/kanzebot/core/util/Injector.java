@@ -1,45 +0,0 @@
-/*
- * Copyright 2016 Michael Ritter (Kantenkugel)
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.kantenkugel.kanzebot.core.util;
-
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-
-public class Injector {
-    public static void inject(Class<?> target, String varName, Object varToInject, Object targetInstance) {
-        try {
-            Field field = target.getDeclaredField(varName);
-            if(field.getType().isAssignableFrom(varToInject.getClass())) {
-                boolean wasAccessible = field.isAccessible();
-                if(!wasAccessible)
-                    field.setAccessible(true);
-
-                Field modifiersField = Field.class.getDeclaredField("modifiers");
-                modifiersField.setAccessible(true);
-                modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
-
-                field.set(targetInstance, varToInject);
-                if(!wasAccessible)
-                    field.setAccessible(false);
-            } else {
-                throw new NoSuchFieldException("Field-Type mismatch");
-            }
-        } catch(NoSuchFieldException | IllegalAccessException e) {
-            e.printStackTrace();
-        }
-    }
-}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.core.addon.AddonIndex;
+import com.kantenkugel.kanzebot.core.addon.AddonIndex.AddonInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AddonIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLookup() throws Exception {
+        File indexFile = new File(folder.getRoot(), "addons.idx");
+        File jar = new File(folder.getRoot(), "test.jar");
+        Files.write(jar.toPath(), new byte[] {1, 2, 3});
+
+        AddonIndex index = AddonIndex.read(indexFile);
+        assertNull(index.lookup(jar));
+        index.update(jar, Collections.singletonList(new AddonInfo("test.TestAddon", "test", 3)));
+        index.write();
+
+        index = AddonIndex.read(indexFile);
+        List<AddonInfo> addons = index.lookup(jar);
+        assertNotNull(addons);
+        assertEquals("test.TestAddon", addons.get(0).getClassName());
+        assertEquals("test", addons.get(0).getIdentifier());
+        assertEquals(3, addons.get(0).getConfigVersion());
+
+        //only touched -> same hash
+        assertTrue(jar.setLastModified(jar.lastModified() - 10000));
+        assertNotNull(index.lookup(jar));
+
+        Files.write(jar.toPath(), new byte[] {1, 2, 4});
+        assertTrue(jar.setLastModified(jar.lastModified() + 20000));
+        assertNull(index.lookup(jar));
+
+        index.retain(Collections.emptyList());
+        index.write();
+        assertNull(AddonIndex.read(indexFile).lookup(jar));
+    }
+}
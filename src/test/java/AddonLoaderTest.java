@@ -0,0 +1,426 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.Addon;
+import com.kantenkugel.kanzebot.api.KanzeHook;
+import com.kantenkugel.kanzebot.api.command.ArgParser;
+import com.kantenkugel.kanzebot.api.command.Command;
+import com.kantenkugel.kanzebot.api.command.Requirement;
+import com.kantenkugel.kanzebot.api.config.AddonConfig;
+import com.kantenkugel.kanzebot.api.group.Group;
+import com.kantenkugel.kanzebot.core.KanzeCore;
+import com.kantenkugel.kanzebot.core.addon.AddonContainer;
+import com.kantenkugel.kanzebot.core.addon.AddonLoader;
+import com.kantenkugel.kanzebot.core.addon.ClassLoaderLeakDetector;
+import com.kantenkugel.kanzebot.core.addon.LazyAddon;
+import com.kantenkugel.kanzebot.core.command.LazyCommand;
+import com.kantenkugel.kanzebot.core.addon.StartupReport;
+import com.kantenkugel.kanzebot.core.config.GlobalConfigHolder;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettings;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.PrivateChannel;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AddonLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GuildSettings settings;
+    private KanzeCore core;
+    private AddonLoader loader;
+    private final List<String> loaded = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        settings = new GuildSettings(new File(folder.getRoot(), "guilds.bin"));
+        core = new KanzeCore(new GlobalConfigHolder(new File(folder.getRoot(), "kanzebot.cfg")), settings);
+        loader = new AddonLoader(core, new File(folder.getRoot(), "addons"), 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        loader.destroyAll();
+        settings.close();
+    }
+
+    @Test
+    public void testDependencyOrder() {
+        StartupReport report = loader.loadAll(Arrays.asList(
+                new TestAddon("c", "a", "b"), new TestAddon("b", "a"), new TestAddon("a"), new TestAddon("d")));
+
+        assertEquals(4, loaded.size());
+        assertTrue(loaded.indexOf("a") < loaded.indexOf("b"));
+        assertTrue(loaded.indexOf("b") < loaded.indexOf("c"));
+        for(StartupReport.Entry entry : report.getEntries())
+            assertNull(entry.getFailure());
+        assertEquals(AddonContainer.State.LOADED, loader.getContainer("c").getState());
+        assertTrue(new File(folder.getRoot(), "addons/c.cfg").exists());
+    }
+
+    @Test
+    public void testFailedDependencies() {
+        loader.loadAll(Arrays.asList(new TestAddon("a", "missing"), new TestAddon("b", "a"),
+                new TestAddon("x", "y"), new TestAddon("y", "x"), new TestAddon("ok")));
+
+        assertEquals(Collections.singletonList("ok"), loaded);
+        for(String identifier : Arrays.asList("a", "b", "x", "y"))
+            assertEquals(AddonContainer.State.FAILED, loader.getContainer(identifier).getState());
+        assertTrue(loader.getContainer("a").getFailure().contains("missing"));
+    }
+
+    @Test
+    public void testReload() {
+        TestAddon first = new TestAddon("r");
+        loader.loadAll(Collections.singletonList(first));
+        assertSame(first.command, core.getCommandRegistry().get("r").getCommand());
+
+        TestAddon second = new TestAddon("r");
+        loader.reload(Collections.singletonList(second));
+        assertSame(second.command, core.getCommandRegistry().get("r").getCommand());
+        assertTrue(first.destroyed);
+        assertFalse(second.destroyed);
+        assertEquals(AddonContainer.State.LOADED, loader.getContainer("r").getState());
+        assertSame(second, loader.getContainer("r").getAddon());
+
+        loader.destroyAll();
+        assertTrue(second.destroyed);
+        assertNull(core.getCommandRegistry().get("r"));
+    }
+
+    @Test
+    public void testReloadRelinksDependents() {
+        GroupAddon provider = new GroupAddon();
+        loader.loadAll(Arrays.asList(provider, new DependentAddon()));
+        DependentAddon dependent = (DependentAddon) loader.getContainer("dependent").getAddon();
+        assertSame(provider.group, dependent.group);
+
+        GroupAddon next = new GroupAddon();
+        StartupReport report = loader.reload(Collections.singletonList(next));
+        for(StartupReport.Entry entry : report.getEntries())
+            assertNull(entry.getFailure());
+        assertEquals(2, report.getEntries().size());
+        assertSame(next.group, core.getGroupRegistry().get("shared"));
+
+        DependentAddon relinked = (DependentAddon) loader.getContainer("dependent").getAddon();
+        assertNotSame(dependent, relinked);
+        assertTrue(dependent.destroyed);
+        assertSame(next.group, relinked.group);
+        assertSame(relinked.command, core.getCommandRegistry().get("dependent").getCommand());
+    }
+
+    @Test
+    public void testLazyActivation() {
+        TestAddon addon = new TestAddon("lazy");
+        loader.registerLazy(Collections.singletonList(
+                new LazyAddon("lazy", Collections.singletonList("lazy"), Collections.emptyList(), 0, () -> addon)));
+
+        assertTrue(loaded.isEmpty());
+        assertTrue(core.getCommandRegistry().get("lazy").getCommand() instanceof LazyCommand);
+        assertFalse(new File(folder.getRoot(), "addons/lazy.cfg").exists());
+
+        ((LazyCommand) core.getCommandRegistry().get("lazy").getCommand()).activate();
+        assertEquals(Collections.singletonList("lazy"), loaded);
+        assertSame(addon.command, core.getCommandRegistry().get("lazy").getCommand());
+        assertEquals(AddonContainer.State.LOADED, loader.getContainer("lazy").getState());
+
+        //activating again is a no-op
+        assertNull(loader.activate("lazy"));
+        assertEquals(1, loaded.size());
+    }
+
+    @Test
+    public void testLazyDependencies() {
+        TestAddon base = new TestAddon("base");
+        TestAddon middle = new TestAddon("middle", "base");
+        loader.registerLazy(Arrays.asList(
+                new LazyAddon("middle", Collections.singletonList("middle"), Collections.emptyList(), 0, () -> middle),
+                new LazyAddon("base", Collections.singletonList("base"), Collections.emptyList(), 0, () -> base)));
+
+        //an eager Addon activates the lazy chain it depends on
+        StartupReport report = loader.loadAll(Collections.singletonList(new TestAddon("top", "middle")));
+        for(StartupReport.Entry entry : report.getEntries())
+            assertNull(entry.getFailure());
+        assertEquals(Arrays.asList("base", "middle", "top"), loaded);
+        for(String identifier : Arrays.asList("base", "middle", "top"))
+            assertEquals(AddonContainer.State.LOADED, loader.getContainer(identifier).getState());
+    }
+
+    @Test
+    public void testLazyDependencyCycle() {
+        loader.registerLazy(Arrays.asList(
+                new LazyAddon("x", Collections.singletonList("x"), Collections.emptyList(), 0, () -> new TestAddon("x", "y")),
+                new LazyAddon("y", Collections.singletonList("y"), Collections.emptyList(), 0, () -> new TestAddon("y", "x"))));
+
+        try {
+            loader.activate("x");
+            fail("Activated an Addon with cyclic dependencies");
+        } catch(IllegalStateException expected) {
+        }
+        assertTrue(loaded.isEmpty());
+        assertNull(loader.getContainer("x"));
+        assertNull(loader.getContainer("y"));
+    }
+
+    @Test
+    public void testConcurrentActivation() {
+        AtomicReference<StartupReport> nested = new AtomicReference<>();
+        TestAddon slow = new TestAddon("slow") {
+            @Override
+            public void load(KanzeHook hook) {
+                super.load(hook);
+                //activating another Addon must not wait for this one to finish
+                Thread thread = new Thread(() -> nested.set(loader.activate("other")));
+                thread.start();
+                try {
+                    thread.join(5000);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        TestAddon other = new TestAddon("other");
+        loader.registerLazy(Arrays.asList(
+                new LazyAddon("slow", Collections.singletonList("slow"), Collections.emptyList(), 0, () -> slow),
+                new LazyAddon("other", Collections.singletonList("other"), Collections.emptyList(), 0, () -> other)));
+
+        StartupReport report = loader.activate("slow");
+        assertNotNull(report);
+        assertNull(report.getEntries().get(0).getFailure());
+        assertNotNull(nested.get());
+        assertEquals(Arrays.asList("slow", "other"), loaded);
+        assertEquals(AddonContainer.State.LOADED, loader.getContainer("other").getState());
+        assertEquals(AddonContainer.State.LOADED, loader.getContainer("slow").getState());
+    }
+
+    @Test
+    public void testLeakDetection() {
+        ClassLoaderLeakDetector detector = new ClassLoaderLeakDetector(0);
+        ClassLoader leaked = new URLClassLoader(new URL[0]);
+        detector.track("leaky", leaked);
+        List<String> leaks = detector.getLeaks();
+        assertEquals(1, leaks.size());
+        assertTrue(leaks.get(0).contains("leaky"));
+        detector.shutdown();
+    }
+
+    private class TestAddon implements Addon {
+        private final String identifier;
+        private final String[] dependencies;
+        private final Command command;
+        private volatile boolean destroyed = false;
+
+        private TestAddon(String identifier, String... dependencies) {
+            this.identifier = identifier;
+            this.dependencies = dependencies;
+            this.command = new TestCommand(identifier);
+        }
+
+        @Override
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public int getConfigVersion() {
+            return 1;
+        }
+
+        @Override
+        public String[] getDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public void init(AddonConfig config) {
+            config.getInteger("Delay", 5, "Startup delay");
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+        }
+
+        @Override
+        public void load(KanzeHook hook) {
+            hook.registerCommand(command);
+            loaded.add(identifier);
+        }
+
+        @Override
+        public void unload() {
+        }
+    }
+
+    private static class GroupAddon implements Addon {
+        private final Group group = (Group) Proxy.newProxyInstance(Group.class.getClassLoader(), new Class[] {Group.class},
+                (proxy, method, args) -> {
+                    switch(method.getName()) {
+                        case "getName":
+                            return "shared";
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+
+        @Override
+        public String getIdentifier() {
+            return "provider";
+        }
+
+        @Override
+        public int getConfigVersion() {
+            return 1;
+        }
+
+        @Override
+        public void init(AddonConfig config) {
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public void load(KanzeHook hook) {
+            hook.registerGroup(group);
+        }
+
+        @Override
+        public void unload() {
+        }
+    }
+
+    /**
+     * Re-instantiated by the loader when the provider is reloaded, hence public with a no-arg constructor
+     */
+    public static class DependentAddon implements Addon {
+        private final Command command = new TestCommand("dependent");
+        private volatile Group group;
+        private volatile boolean destroyed = false;
+
+        public DependentAddon() {
+        }
+
+        @Override
+        public String getIdentifier() {
+            return "dependent";
+        }
+
+        @Override
+        public int getConfigVersion() {
+            return 1;
+        }
+
+        @Override
+        public String[] getDependencies() {
+            return new String[] {"provider"};
+        }
+
+        @Override
+        public void init(AddonConfig config) {
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+        }
+
+        @Override
+        public void load(KanzeHook hook) {
+            group = hook.getGroup("shared");
+            hook.registerCommand(command);
+        }
+
+        @Override
+        public void unload() {
+        }
+    }
+
+    private static class TestCommand implements Command {
+        private final String key;
+
+        private TestCommand(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public boolean isGlobal() {
+            return true;
+        }
+
+        @Override
+        public boolean acceptsPM() {
+            return false;
+        }
+
+        @Override
+        public Requirement getRequirement() {
+            return null;
+        }
+
+        @Override
+        public String getUsage() {
+            return key;
+        }
+
+        @Override
+        public String getHelp() {
+            return key;
+        }
+
+        @Override
+        public boolean handleGuild(TextChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+            return true;
+        }
+
+        @Override
+        public boolean handlePrivate(PrivateChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+            return true;
+        }
+
+        @Override
+        public ArgParser getCustomParser() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.core.metrics.AddonMetrics;
+import com.kantenkugel.kanzebot.core.metrics.AddonUsage;
+import com.kantenkugel.kanzebot.core.metrics.LatencyHistogram;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AddonMetricsTest {
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 1; i <= 1000; i++)
+            histogram.record(i, TimeUnit.MILLISECONDS);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxMicros());
+        assertEquals(500_000, histogram.getPercentileMicros(0.5), 500_000 * 0.125);
+        assertEquals(990_000, histogram.getPercentileMicros(0.99), 990_000 * 0.125);
+        assertEquals(1_000_000, histogram.getPercentileMicros(1));
+        assertEquals(0, new LatencyHistogram().getPercentileMicros(0.5));
+    }
+
+    @Test
+    public void testAccounting() {
+        AddonMetrics metrics = new AddonMetrics();
+        for(int i = 0; i < 10; i++) {
+            AddonUsage.Sample sample = metrics.begin("busy");
+            long[] garbage = new long[100_000];
+            assertEquals(0, garbage[i]);
+            sample.finish(i == 0);
+        }
+        metrics.begin("idle").finish(false);
+
+        List<AddonUsage.Snapshot> snapshots = metrics.snapshot();
+        assertEquals(2, snapshots.size());
+        AddonUsage.Snapshot busy = metrics.get("busy").snapshot();
+        assertEquals(10, busy.getInvocations());
+        assertEquals(1, busy.getErrors());
+        assertTrue(busy.getAllocatedBytes() == 0 || busy.getAllocatedBytes() >= 10 * 800_000);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.core.config.guild.GuildConfigImpl;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettings;
+import com.kantenkugel.kanzebot.core.message.Broadcaster;
+import com.kantenkugel.kanzebot.core.message.MessagePipeline;
+import net.dv8tion.jda.JDA;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.impl.GuildImpl;
+import net.dv8tion.jda.entities.impl.TextChannelImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BroadcasterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Set<String> noChannel = new HashSet<>();
+    private final RecordingTransport transport = new RecordingTransport();
+    private GuildSettings settings;
+    private MessagePipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        settings = new GuildSettings(new File(folder.getRoot(), "guilds.bin"));
+        pipeline = new MessagePipeline(settings.getHotFields(), transport, 5, 5, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pipeline.shutdown();
+        settings.close();
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        File checkpoint = new File(folder.getRoot(), "broadcast.chk");
+        Broadcaster broadcaster = new Broadcaster(pipeline, settings, checkpoint);
+        JDA jda = jda(50);
+        transport.breakChannel("107");
+
+        broadcaster.start(jda, "Hello");
+        assertTrue(broadcaster.awaitCompletion(10, TimeUnit.SECONDS));
+        Broadcaster.Progress progress = broadcaster.getProgress();
+        assertEquals(49, progress.getDelivered());
+        assertEquals(1, progress.getFailed());
+        assertEquals(49, transport.getSent().size());
+        assertTrue("Checkpoint removed despite failure", checkpoint.exists());
+        try {
+            broadcaster.start(jda, "Other");
+            fail("Started while a broadcast can be resumed");
+        } catch(IllegalStateException ignored) {
+        }
+
+        transport.repair("107");
+        transport.getSent().clear();
+        broadcaster.resume(jda);
+        assertTrue(broadcaster.awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals(50, broadcaster.getProgress().getDelivered());
+        assertEquals(0, broadcaster.getProgress().getFailed());
+        assertEquals(Collections.singletonList("Hello"), transport.getSent());
+        assertEquals(1, pipeline.getQueue("107").getSentCount());
+        assertFalse(checkpoint.exists());
+        assertNull(broadcaster.resume(jda));
+    }
+
+    @Test
+    public void testUnreachableGuild() throws Exception {
+        File checkpoint = new File(folder.getRoot(), "broadcast.chk");
+        Broadcaster broadcaster = new Broadcaster(pipeline, settings, checkpoint);
+        noChannel.add("3");
+
+        broadcaster.start(jda(10), "Hello");
+        assertTrue(broadcaster.awaitCompletion(10, TimeUnit.SECONDS));
+        Broadcaster.Progress progress = broadcaster.getProgress();
+        assertEquals(9, progress.getDelivered());
+        assertEquals(1, progress.getUnreachable());
+        assertEquals(0, progress.getFailed());
+        assertEquals(0, progress.getEtaSeconds());
+        assertFalse("Checkpoint kept for a guild that can't be reached", checkpoint.exists());
+    }
+
+    /**
+     * Guilds 1 to guildCount, each announcing in channel 100 + its id unless it has no channel
+     */
+    private JDA jda(int guildCount) {
+        JDAHull jda = new JDAHull();
+        for(int i = 1; i <= guildCount; i++) {
+            Guild guild = new GuildImpl(jda, String.valueOf(i));
+            jda.addGuild(guild);
+            if(noChannel.contains(guild.getId()))
+                continue;
+            TextChannel channel = new TextChannelImpl(String.valueOf(100 + i), guild);
+            jda.addTextChannel(channel);
+            ((GuildConfigImpl) settings.getConfig(i, GuildConfigImpl.CORE_NAMESPACE)).setAnnounceChannel(channel.getId());
+        }
+        return jda;
+    }
+}
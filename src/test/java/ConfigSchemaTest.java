@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.config.ConfigSchema;
+import com.kantenkugel.kanzebot.api.config.ConfigSnapshot;
+import com.kantenkugel.kanzebot.api.config.SchemaConfig;
+import com.kantenkugel.kanzebot.core.config.ConfigImpl;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class ConfigSchemaTest {
+
+    private enum Mode {
+        FAST, SLOW
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDefaults() throws ConfigurationException {
+        ConfigSchema schema = new ConfigSchema();
+        ConfigSchema.IntKey count = schema.addInteger("Count", 5, "Some count");
+        ConfigSchema.BooleanKey enabled = schema.addBoolean("Enabled", true, null);
+        ConfigSchema.StringKey name = schema.addString("Name", "Kanze", null);
+        ConfigSchema.EnumKey<Mode> mode = schema.addEnum("Mode", Mode.SLOW, null);
+        ConfigSchema.ListKey list = schema.addList("List", Arrays.asList("a", "b"), null);
+
+        ConfigImpl config = new ConfigImpl(new File(folder.getRoot(), "defaults.cfg"), null, 1);
+        ConfigSnapshot snapshot = config.bind(schema).getSnapshot();
+
+        assertEquals(5, snapshot.getInteger(count));
+        assertTrue(snapshot.getBoolean(enabled));
+        assertEquals("Kanze", snapshot.getString(name));
+        assertEquals(Mode.SLOW, snapshot.getEnum(mode));
+        assertEquals(Arrays.asList("a", "b"), snapshot.getList(list));
+
+        //defaults are written with the same keys the legacy getters use
+        assertEquals(5, config.getInteger("Count", 0, null));
+        assertEquals(Mode.SLOW, config.getEnum("Mode", Mode.FAST, null));
+        assertTrue(schema.isFrozen());
+    }
+
+    @Test
+    public void testWriteAndReload() throws ConfigurationException {
+        File file = new File(folder.getRoot(), "reload.cfg");
+        ConfigSchema schema = new ConfigSchema();
+        ConfigSchema.IntKey count = schema.addInteger("Count", 5, null);
+        ConfigSchema.SetKey set = schema.addSet("Set", Collections.emptySet(), null);
+
+        ConfigImpl config = new ConfigImpl(file, null, 1);
+        SchemaConfig bound = config.bind(schema);
+        ConfigSnapshot before = bound.getSnapshot();
+
+        bound.setInteger(count, 10);
+        bound.setSet(set, new HashSet<>(Arrays.asList("x", "y")));
+        config.save();
+
+        //old snapshots are never modified
+        assertEquals(5, before.getInteger(count));
+        assertTrue(before.getSet(set).isEmpty());
+        assertEquals(10, bound.getSnapshot().getInteger(count));
+
+        ConfigImpl other = new ConfigImpl(file, null, 1);
+        other.setInteger("Count", 20, null);
+        other.save();
+
+        bound.reload();
+        assertEquals(20, bound.getSnapshot().getInteger(count));
+        assertEquals(new HashSet<>(Arrays.asList("x", "y")), bound.getSnapshot().getSet(set));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFrozen() throws ConfigurationException {
+        ConfigSchema schema = new ConfigSchema();
+        schema.addInteger("Count", 5, null);
+        new ConfigImpl(new File(folder.getRoot(), "frozen.cfg"), null, 1).bind(schema);
+        schema.addInteger("Other", 1, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForeignKey() throws ConfigurationException {
+        ConfigSchema schema = new ConfigSchema();
+        ConfigSchema other = new ConfigSchema();
+        ConfigSchema.IntKey foreign = other.addInteger("Count", 5, null);
+        new ConfigImpl(new File(folder.getRoot(), "foreign.cfg"), null, 1).bind(schema).getSnapshot().getInteger(foreign);
+    }
+}
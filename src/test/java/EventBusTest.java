@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.event.EventHandler;
+import com.kantenkugel.kanzebot.api.event.EventKeys;
+import com.kantenkugel.kanzebot.core.event.EventBus;
+import com.kantenkugel.kanzebot.core.isolation.AddonIsolation;
+import com.kantenkugel.kanzebot.core.metrics.AddonMetrics;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.impl.GuildImpl;
+import net.dv8tion.jda.entities.impl.TextChannelImpl;
+import net.dv8tion.jda.events.Event;
+import net.dv8tion.jda.events.ReadyEvent;
+import net.dv8tion.jda.events.channel.text.GenericTextChannelEvent;
+import net.dv8tion.jda.events.channel.text.TextChannelCreateEvent;
+import net.dv8tion.jda.events.guild.GenericGuildEvent;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventBusTest {
+    private static final JDAHull JDA = new JDAHull();
+    private final AddonIsolation isolation = new AddonIsolation();
+    private final AddonMetrics metrics = new AddonMetrics();
+    private final EventBus bus = new EventBus(metrics, isolation);
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        isolation.shutdown();
+        bus.shutdown();
+    }
+
+    @Test
+    public void testTypedDispatch() throws Exception {
+        bus.add(EventBus.Subscription.of("a", TestGuildEvent.class, event -> received.add("a:" + event.getGuild().getId())));
+        bus.add(EventBus.Subscription.of("b", GenericGuildEvent.class, event -> received.add("b:" + event.getGuild().getId()), "2"));
+        bus.add(EventBus.Subscription.of("c", ReadyEvent.class, event -> received.add("c")));
+
+        bus.onEvent(new TestGuildEvent("1"));
+        bus.onEvent(new TestGuildEvent("2"));
+        bus.onEvent(new OtherEvent());
+        awaitCount(3);
+
+        assertTrue(received.contains("a:1"));
+        assertTrue(received.contains("a:2"));
+        assertTrue(received.contains("b:2"));
+        assertFalse(received.contains("c"));
+        assertEquals(0, metrics.get("c").snapshot().getInvocations());
+    }
+
+    @Test
+    public void testChannelGuildFilter() throws Exception {
+        bus.add(EventBus.Subscription.of("a", GenericTextChannelEvent.class,
+                event -> received.add("a:" + event.getChannel().getId()), "2"));
+        bus.onEvent(new TextChannelCreateEvent(JDA, 0, new TextChannelImpl("10", new GuildImpl(JDA, "1"))));
+        bus.onEvent(new TextChannelCreateEvent(JDA, 0, new TextChannelImpl("20", new GuildImpl(JDA, "2"))));
+        awaitCount(1);
+        Thread.sleep(50);
+        assertEquals(Collections.singletonList("a:20"), received);
+    }
+
+    @Test
+    public void testUnresolvableGuildFilter() {
+        try {
+            EventBus.Subscription.of("a", ReadyEvent.class, event -> received.add("a"), "1");
+            fail("Guild filter on an Event without Guild was accepted");
+        } catch(IllegalArgumentException ignored) {
+        }
+        //supertypes of guild-events may be filtered
+        EventBus.Subscription.of("a", Event.class, event -> received.add("a"), "1");
+    }
+
+    @Test
+    public void testSwap() throws Exception {
+        EventHandler<Event> first = event -> received.add("first");
+        bus.add(EventBus.Subscription.of("a", Event.class, first));
+        bus.onEvent(new OtherEvent());
+        awaitCount(1);
+
+        bus.swap("a", Collections.singletonList(EventBus.Subscription.of("a", Event.class, event -> received.add("second"))));
+        bus.onEvent(new OtherEvent());
+        awaitCount(2);
+        assertEquals("second", received.get(1));
+
+        assertFalse(bus.remove(first, "a"));
+    }
+
+    @Test
+    public void testOrderedPerAddon() throws Exception {
+        bus.add(EventBus.Subscription.of("a", TestGuildEvent.class, event -> {
+            if(event.sequence % 10 == 0)
+                Thread.yield();
+            received.add(String.valueOf(event.sequence));
+        }));
+        for(int i = 0; i < 200; i++)
+            bus.onEvent(new TestGuildEvent("1", i));
+        awaitCount(200);
+        for(int i = 0; i < 200; i++)
+            assertEquals(String.valueOf(i), received.get(i));
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        List<List<TestGuildEvent>> batches = new CopyOnWriteArrayList<>();
+        bus.add(bus.coalesced("a", TestGuildEvent.class, EventKeys.byGuild(), 100, TimeUnit.MILLISECONDS, batches::add));
+        for(int i = 0; i < 100; i++)
+            bus.onEvent(new TestGuildEvent(String.valueOf(i % 2), i));
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(batches.isEmpty() && System.nanoTime() < end)
+            Thread.sleep(5);
+        assertEquals(1, batches.size());
+        List<TestGuildEvent> batch = batches.get(0);
+        assertEquals(2, batch.size());
+        assertEquals("0", batch.get(0).getGuild().getId());
+        assertEquals(98, batch.get(0).sequence);
+        assertEquals(99, batch.get(1).sequence);
+        //the sample is finished right after the handler returned
+        while(metrics.get("a").snapshot().getInvocations() == 0 && System.nanoTime() < end)
+            Thread.sleep(5);
+        assertEquals(1, metrics.get("a").snapshot().getInvocations());
+    }
+
+    @Test
+    public void testCoalescingKeyFailure() throws Exception {
+        List<List<TestGuildEvent>> batches = new CopyOnWriteArrayList<>();
+        bus.add(bus.coalesced("a", TestGuildEvent.class, event -> {
+            if(event.sequence == 1)
+                throw new IllegalStateException("no key");
+            return event.sequence;
+        }, 50, TimeUnit.MILLISECONDS, batches::add));
+        bus.onEvent(new TestGuildEvent("1", 0));
+        bus.onEvent(new TestGuildEvent("1", 1));
+        bus.onEvent(new TestGuildEvent("1", 2));
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(batches.isEmpty() && System.nanoTime() < end)
+            Thread.sleep(5);
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals(1, metrics.get("a").snapshot().getErrors());
+    }
+
+    @Test
+    public void testSwapDiscardsPendingBatch() throws Exception {
+        List<List<TestGuildEvent>> batches = new CopyOnWriteArrayList<>();
+        bus.add(bus.coalesced("a", TestGuildEvent.class, EventKeys.byGuild(), 50, TimeUnit.MILLISECONDS, batches::add));
+        bus.onEvent(new TestGuildEvent("1"));
+        bus.swap("a", Collections.emptyList());
+
+        Thread.sleep(150);
+        assertTrue(batches.isEmpty());
+        assertEquals(0, metrics.get("a").snapshot().getInvocations());
+    }
+
+    private void awaitCount(int count) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(received.size() < count && System.nanoTime() < end)
+            Thread.sleep(5);
+        Thread.sleep(20);
+        assertEquals(count, received.size());
+    }
+
+    private static class TestGuildEvent extends GenericGuildEvent {
+        private final Guild guild;
+        private final int sequence;
+
+        private TestGuildEvent(String guildId) {
+            this(guildId, 0);
+        }
+
+        private TestGuildEvent(String guildId, int sequence) {
+            super(JDA, 0, null);
+            this.guild = new GuildImpl(JDA, guildId);
+            this.sequence = sequence;
+        }
+
+        @Override
+        public Guild getGuild() {
+            return guild;
+        }
+    }
+
+    private static class OtherEvent extends Event {
+        private OtherEvent() {
+            super(null, 0);
+        }
+    }
+}
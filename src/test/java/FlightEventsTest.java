@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.core.config.ConfigImpl;
+import com.kantenkugel.kanzebot.core.jfr.FlightEvents;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class FlightEventsTest {
+    @Test
+    public void testNotRecording() {
+        FlightEvents events = FlightEvents.get();
+        assertNotNull(events);
+        assertNull(events.beginDispatch());
+        assertNull(events.beginParse());
+        assertNull(events.beginConfigIO());
+        assertNull(events.beginAddonPhase());
+        events.endDispatch(null, "key", null, FlightEvents.Outcome.HANDLED);
+        events.endParse(null, "grammar", 0, true);
+        events.endConfigIO(null, FlightEvents.ConfigOperation.SAVE, null, 0, true);
+        events.endAddonPhase(null, "addon", FlightEvents.AddonPhase.INIT, true);
+        events.rejected("key", null);
+    }
+
+    @Test
+    public void testConfigIO() throws Exception {
+        File file = File.createTempFile("flight", ".cfg");
+        file.delete();
+        try {
+            ConfigImpl config = new ConfigImpl(file, null, 1);
+            assertTrue(config.isNew());
+            config.getInteger("Value", 5, null);
+            config.save();
+            assertTrue(file.length() > 0);
+
+            ConfigImpl reloaded = new ConfigImpl(file, null, 1);
+            assertFalse(reloaded.isNew());
+            assertEquals(5, reloaded.getInteger("Value", 0, null));
+        } finally {
+            file.delete();
+        }
+    }
+}
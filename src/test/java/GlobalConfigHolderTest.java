@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.kantenkugel.kanzebot.api.config.GlobalConfig;
+import com.kantenkugel.kanzebot.core.config.GlobalConfigHolder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class GlobalConfigHolderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReload() throws Exception {
+        File file = new File(folder.getRoot(), "kanzebot.cfg");
+        GlobalConfigHolder holder = new GlobalConfigHolder(file);
+        List<GlobalConfig> changes = new CopyOnWriteArrayList<>();
+        holder.addListener((oldConfig, newConfig, changedKeys) -> changes.add(newConfig));
+        assertEquals(500, holder.getSlowTraceMillis());
+
+        String content = read(file);
+        write(file, content.replaceAll("SlowTraceMillis\\s*=\\s*500", "SlowTraceMillis = 250"));
+        assertEquals(Collections.singleton("SlowTraceMillis"), holder.reload());
+        assertEquals(250, holder.getSlowTraceMillis());
+        assertEquals(1, changes.size());
+        //nothing changed
+        assertTrue(holder.reload().isEmpty());
+    }
+
+    @Test
+    public void testReloadCorruptFile() throws Exception {
+        File file = new File(folder.getRoot(), "kanzebot.cfg");
+        GlobalConfigHolder holder = new GlobalConfigHolder(file);
+        write(file, read(file).replaceAll("SlowTraceMillis\\s*=\\s*500", "SlowTraceMillis = 250"));
+        holder.reload();
+        GlobalConfig previous = holder.snapshot();
+
+        //partially written file
+        String content = read(file);
+        String truncated = content.substring(0, content.indexOf("SlowTraceMillis"));
+        write(file, truncated);
+        assertTrue(holder.reload().isEmpty());
+        assertSame(previous, holder.snapshot());
+        assertEquals(250, holder.getSlowTraceMillis());
+        assertEquals(truncated, read(file));
+
+        //invalid value
+        write(file, content.replaceAll("SlowTraceMillis\\s*=\\s*250", "SlowTraceMillis = many"));
+        assertTrue(holder.reload().isEmpty());
+        assertEquals(250, holder.getSlowTraceMillis());
+
+        assertTrue(file.delete());
+        assertTrue(holder.reload().isEmpty());
+        assertSame(previous, holder.snapshot());
+        assertFalse(file.exists());
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File file, String content) throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.config.GuildConfig;
+import com.kantenkugel.kanzebot.core.config.guild.GuildConfigImpl;
+import com.kantenkugel.kanzebot.core.config.guild.GuildHotFields;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettings;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettingsConverter;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettingsStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class GuildSettingsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<Long, Map<String, Object>> sample() {
+        Map<Long, Map<String, Object>> settings = new HashMap<>();
+        for(long id = 100; id > 0; id -= 7) {
+            Map<String, Object> values = new HashMap<>();
+            values.put("KanzeBot.Prefix", "!" + id);
+            values.put("Addon.Flag", id % 2 == 0);
+            values.put("Addon.Count", (int) id);
+            values.put("Addon.List", Arrays.asList("a", "b, c", "\u00fc"));
+            values.put("Addon.Set", new HashSet<>(Collections.singletonList("x")));
+            values.put("Addon.Map", Collections.singletonMap("key", "value=1"));
+            settings.put(id, values);
+        }
+        return settings;
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        File file = new File(folder.getRoot(), "guilds.bin");
+        GuildSettingsStore.write(file, sample(), 0);
+        GuildSettingsStore store = GuildSettingsStore.open(file);
+
+        assertEquals(15, store.getGuildCount());
+        assertEquals("!100", store.get(100, "KanzeBot.Prefix"));
+        assertEquals("!2", store.get(2, "KanzeBot.Prefix"));
+        assertEquals(Boolean.TRUE, store.get(58, "Addon.Flag"));
+        assertEquals(65, store.get(65, "Addon.Count"));
+        assertEquals(Arrays.asList("a", "b, c", "\u00fc"), store.get(44, "Addon.List"));
+        assertEquals(Collections.singleton("x"), store.get(44, "Addon.Set"));
+        assertEquals(Collections.singletonMap("key", "value=1"), store.get(44, "Addon.Map"));
+
+        assertNull(store.get(3, "KanzeBot.Prefix"));
+        assertNull(store.get(100, "Addon.Missing"));
+        assertArrayEquals(new long[] {2, 9, 16}, Arrays.copyOf(store.getGuildIds(), 3));
+    }
+
+    @Test
+    public void testPropertiesRoundTrip() throws Exception {
+        File bin = new File(folder.getRoot(), "guilds.bin");
+        File properties = new File(folder.getRoot(), "guilds.properties");
+        File converted = new File(folder.getRoot(), "converted.bin");
+        GuildSettingsStore.write(bin, sample(), 0);
+
+        GuildSettingsConverter.toProperties(bin, properties);
+        GuildSettingsConverter.fromProperties(properties, converted);
+
+        assertEquals(GuildSettingsStore.open(bin).readAll(), GuildSettingsStore.open(converted).readAll());
+    }
+
+    @Test
+    public void testGuildConfig() throws Exception {
+        File file = new File(folder.getRoot(), "guilds.bin");
+        GuildSettings settings = new GuildSettings(file);
+        GuildConfig config = settings.getConfig(5, "Addon");
+
+        assertEquals("!", config.getPrefix());
+        assertTrue(config.isEveryoneEscaped());
+        assertEquals(3, config.getInteger("Count", 3));
+        config.setString("Name", "Kanze");
+        config.updateMapEntry("Tags", "hello", "world");
+        config.updateMapEntry("Tags", "foo", "bar");
+        config.updateMapEntry("Tags", "foo", null);
+
+        GuildConfig reopened = new GuildSettings(file).getConfig(5, "Addon");
+        //lookups with a default don't store it
+        assertEquals(7, reopened.getInteger("Count", 7));
+        assertEquals("Kanze", reopened.getString("Name", null));
+        assertEquals(Collections.singletonMap("hello", "world"), reopened.getMap("Tags", null));
+        assertEquals("fallback", new GuildSettings(file).getConfig(5, "Other").getString("Name", "fallback"));
+
+        reopened.remove("Name");
+        assertNull(new GuildSettings(file).getConfig(5, "Addon").getString("Name", null));
+    }
+
+    @Test
+    public void testJournal() throws Exception {
+        File file = new File(folder.getRoot(), "guilds.bin");
+        GuildSettings settings = new GuildSettings(file);
+        GuildConfig config = settings.getConfig(7, "Addon");
+        for(int i = 0; i < 100; i++)
+            config.updateMapEntry("Tags", "tag" + i, "value" + i);
+        config.updateMapEntry("Tags", "tag0", null);
+        config.addListEntry("List", "a");
+        config.addListEntry("List", "b");
+        config.addListEntry("List", "a");
+        config.removeListEntry("List", "a");
+        config.addSetEntry("Set", "x");
+        config.removeSetEntry("Set", "y");
+
+        //not closed: everything has to be replayed from the journal
+        GuildConfig replayed = new GuildSettings(file).getConfig(7, "Addon");
+        assertEquals(99, replayed.getMap("Tags", null).size());
+        assertEquals("value99", replayed.getMap("Tags", null).get("tag99"));
+        assertEquals(Arrays.asList("b", "a"), replayed.getList("List", null));
+        assertEquals(Collections.singleton("x"), replayed.getSet("Set", null));
+
+        settings.close();
+        assertTrue(GuildSettingsStore.open(file).getGeneration() > 0);
+        assertEquals(Arrays.asList("b", "a"), GuildSettingsStore.open(file).get(7, "Addon.List"));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        File file = new File(folder.getRoot(), "guilds.bin");
+        GuildSettings settings = new GuildSettings(file, 256);
+        GuildConfig config = settings.getConfig(9, "Addon");
+        for(int i = 0; i < 500; i++)
+            config.addSetEntry("Set", "entry" + i);
+        settings.close();
+
+        assertEquals(500, ((Set<?>) GuildSettingsStore.open(file).get(9, "Addon.Set")).size());
+        //only the (empty) journal of the last generation is left
+        assertEquals(1, folder.getRoot().list((dir, name) -> name.endsWith(".log")).length);
+        assertEquals(500, new GuildSettings(file).getConfig(9, "Addon").getSet("Set", null).size());
+    }
+
+    @Test
+    public void testReadsDuringCompaction() throws Exception {
+        File file = new File(folder.getRoot(), "guilds.bin");
+        GuildSettings settings = new GuildSettings(file, 256);
+        GuildConfig config = settings.getConfig(9, "Addon");
+        config.setString("Name", "Kanze");
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicInteger misses = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            //every compaction unmaps the previous store, reads have to keep working throughout
+            while(!done.get()) {
+                if(!"Kanze".equals(settings.getConfig(9, "Addon").getString("Name", null)))
+                    misses.incrementAndGet();
+            }
+        });
+        reader.start();
+        for(int i = 0; i < 500; i++)
+            config.addSetEntry("Set", "entry" + i);
+        done.set(true);
+        reader.join();
+        settings.close();
+
+        assertEquals(0, misses.get());
+        assertTrue(GuildSettingsStore.open(file).getGeneration() > 0);
+    }
+
+    @Test
+    public void testHotFields() throws Exception {
+        File file = new File(folder.getRoot(), "guilds.bin");
+        GuildSettingsStore.write(file, sample(), 0);
+        GuildSettings settings = new GuildSettings(file);
+        GuildHotFields hotFields = settings.getHotFields();
+
+        assertEquals(15, hotFields.size());
+        assertEquals("!100", hotFields.get(100).getPrefix());
+        assertEquals("!2", hotFields.get("2").getPrefix());
+        assertSame(GuildHotFields.DEFAULT, hotFields.get(3));
+
+        GuildConfigImpl config = (GuildConfigImpl) settings.getConfig(3, "Addon");
+        config.setPrefix("?");
+        config.setEveryoneEscaped(false);
+        assertEquals("?", hotFields.get(3).getPrefix());
+        assertFalse(hotFields.get(3).isEveryoneEscaped());
+        assertEquals("?", config.getPrefix());
+        assertEquals("!100", hotFields.get(100).getPrefix());
+
+        assertEquals("?", new GuildSettings(file).getHotFields().get(3).getPrefix());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.core.isolation.Bulkhead;
+import com.kantenkugel.kanzebot.core.isolation.CircuitBreaker;
+import com.kantenkugel.kanzebot.core.isolation.IsolationSettings;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IsolationTest {
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        IsolationSettings settings = new IsolationSettings(1, 1, 10, 4, 0.5f, 1000, 0.5f, 0);
+        CircuitBreaker breaker = new CircuitBreaker(settings);
+        for(int i = 0; i < 3; i++) {
+            long permit = breaker.tryAcquire();
+            assertEquals(CircuitBreaker.REGULAR, permit);
+            breaker.record(permit, i == 0, 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        long late = breaker.tryAcquire();
+        long permit = breaker.tryAcquire();
+        breaker.record(permit, true, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        //open-duration of 0 -> next call is the trial, a second one has to wait for it
+        long trial = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.DENIED, trial);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.DENIED, breaker.tryAcquire());
+        //a call started before the breaker opened doesn't decide the trial
+        breaker.record(late, false, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.record(trial, false, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        //slow calls open it as well
+        for(int i = 0; i < 4; i++) {
+            permit = breaker.tryAcquire();
+            assertEquals(CircuitBreaker.REGULAR, permit);
+            breaker.record(permit, false, TimeUnit.SECONDS.toNanos(2));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        //a cancelled trial frees the half-open state for the next one
+        trial = breaker.tryAcquire();
+        breaker.cancel(trial);
+        assertNotEquals(CircuitBreaker.DENIED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void testBulkheadSheds() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", new IsolationSettings(1, 1, 10, 10, 1f, 10000, 1f, 30));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        assertTrue(bulkhead.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch(InterruptedException ignored) {
+            }
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(bulkhead.execute(() -> {}));
+        assertFalse(bulkhead.execute(() -> {}));
+        assertEquals(1, bulkhead.getShedCount());
+        release.countDown();
+        bulkhead.shutdown();
+    }
+}
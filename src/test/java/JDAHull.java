@@ -14,6 +14,7 @@
  * limitations under the License.
  */
 
+import net.dv8tion.jda.entities.Guild;
 import net.dv8tion.jda.entities.TextChannel;
 import net.dv8tion.jda.entities.User;
 import net.dv8tion.jda.entities.VoiceChannel;
@@ -40,8 +41,14 @@ public class JDAHull extends JDAImpl {
         return this;
     }
 
+    public JDAHull addGuild(Guild guild) {
+        guildMap.put(guild.getId(), guild);
+        return this;
+    }
+
     public void clear() {
         userMap.clear();
+        guildMap.clear();
         textChannelMap.clear();
         voiceChannelMap.clear();
     }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.TestServices;
+import com.kantenkugel.kanzebot.core.KanzeCore;
+import com.kantenkugel.kanzebot.core.addon.AddonDiscovery;
+import com.kantenkugel.kanzebot.core.addon.AddonLoader;
+import com.kantenkugel.kanzebot.core.command.CommandRegistry;
+import com.kantenkugel.kanzebot.core.config.GlobalConfigHolder;
+import com.kantenkugel.kanzebot.core.config.guild.GuildConfigImpl;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class KanzeCoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GuildSettings settings;
+    private KanzeCore core;
+
+    @Before
+    public void setUp() throws Exception {
+        TestServices.reset();
+        settings = new GuildSettings(new File(folder.getRoot(), "guilds.bin"));
+        core = new KanzeCore(new GlobalConfigHolder(new File(folder.getRoot(), "kanzebot.cfg")), settings);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        core.shutdown();
+        settings.close();
+        TestServices.reset();
+    }
+
+    @Test
+    public void testConfigWatchedAfterStart() throws Exception {
+        File addonDir = new File(folder.getRoot(), "addons");
+        core.start(new JDAHull(), new AddonLoader(core, addonDir, 1), new AddonDiscovery(addonDir));
+        CountDownLatch changed = new CountDownLatch(1);
+        core.getGlobalConfig().addListener((oldConfig, newConfig, changedKeys) -> {
+            if(changedKeys.contains("SlowTraceMillis"))
+                changed.countDown();
+        });
+
+        Path file = new File(folder.getRoot(), "kanzebot.cfg").toPath();
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        Files.write(file, content.replaceAll("SlowTraceMillis\\s*=\\s*500", "SlowTraceMillis = 250").getBytes(StandardCharsets.UTF_8));
+        assertTrue("Change of the config-file was not picked up", changed.await(15, TimeUnit.SECONDS));
+        assertEquals(250, core.getGlobalConfig().getSlowTraceMillis());
+    }
+
+    @Test
+    public void testMetricsServerDisabled() {
+        //MetricsPort defaults to 0
+        assertEquals(0, core.getGlobalConfig().getMetricsPort());
+        assertFalse(core.startMetricsServer());
+    }
+
+    @Test
+    public void testCoreCommands() {
+        File addonDir = new File(folder.getRoot(), "addons");
+        AddonLoader loader = new AddonLoader(core, addonDir, 1);
+        assertTrue(core.registerCoreCommands(loader, new AddonDiscovery(addonDir)));
+
+        CommandRegistry registry = core.getCommandRegistry();
+        for(String key : new String[] {"addonstats", "reload", "queues", "broadcast", "traces"}) {
+            assertNotNull(key, registry.get(key));
+            assertEquals(GuildConfigImpl.CORE_NAMESPACE, registry.get(key).getOwner());
+        }
+        //a second registration conflicts with the first one
+        assertFalse(core.registerCoreCommands(loader, new AddonDiscovery(addonDir)));
+    }
+}
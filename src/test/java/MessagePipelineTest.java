@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.util.MessageWriter;
+import com.kantenkugel.kanzebot.core.config.guild.GuildHotFields;
+import com.kantenkugel.kanzebot.core.message.ChannelQueue;
+import com.kantenkugel.kanzebot.core.message.MessagePipeline;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.impl.GuildImpl;
+import net.dv8tion.jda.entities.impl.MessageImpl;
+import net.dv8tion.jda.entities.impl.TextChannelImpl;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class MessagePipelineTest {
+    private final JDAHull jda = new JDAHull();
+    private final Guild guild = new GuildImpl(jda, "10");
+    private final RecordingTransport transport = new RecordingTransport();
+    private final MessagePipeline pipeline = new MessagePipeline(new GuildHotFields(), transport, 2, 200, TimeUnit.MILLISECONDS);
+    private final List<String> sent = transport.getSent();
+
+    @After
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void testMergeInOrder() throws Exception {
+        TextChannel channel = channel("1");
+        for(int i = 0; i < 20; i++)
+            pipeline.send(channel, "message " + i);
+        ChannelQueue queue = await("1", 20);
+
+        assertTrue("Messages were not merged", sent.size() < 20);
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 20; i++)
+            expected.append(i == 0 ? "" : "\n").append("message ").append(i);
+        assertEquals(expected.toString(), String.join("\n", sent));
+        assertEquals(sent.size(), queue.getSentCount());
+        assertEquals(0, queue.getDepth());
+        assertEquals(20, queue.getLatency().getCount());
+    }
+
+    @Test
+    public void testSplitAtMaxLength() throws Exception {
+        TextChannel channel = channel("2");
+        String chunk = new String(new char[1200]).replace('\0', 'x');
+        for(int i = 0; i < 3; i++)
+            pipeline.send(channel, chunk);
+        await("2", 3);
+        assertEquals(3, sent.size());
+        for(String message : sent)
+            assertTrue(message.length() <= MessagePipeline.MAX_LENGTH);
+    }
+
+    @Test
+    public void testSplitLongMessage() throws Exception {
+        TextChannel channel = channel("6");
+        StringBuilder words = new StringBuilder();
+        for(int i = 0; i < 1000; i++)
+            words.append(i == 0 ? "" : " ").append("word");
+        CompletableFuture<Message> last = pipeline.sendAsync(channel, words.toString());
+        //no space or line-break to split at, must not cut the surrogate-pair in half
+        String emoji = new String(new char[MessagePipeline.MAX_LENGTH - 1]).replace('\0', 'x') + "\uD83D\uDE00" + "x";
+        pipeline.send(channel, emoji);
+        await("6", 5);
+
+        assertEquals(words.substring(words.length() - last.get(5, TimeUnit.SECONDS).getContent().length()),
+                last.get().getContent());
+        for(String message : sent)
+            assertTrue(message.length() <= MessagePipeline.MAX_LENGTH);
+        assertEquals(words.toString(), String.join(" ", sent.subList(0, 3)));
+        assertEquals(emoji, String.join("", sent.subList(3, 5)));
+        assertEquals(MessagePipeline.MAX_LENGTH - 1, sent.get(3).length());
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception {
+        TextChannel channel = channel("7");
+        pipeline.send(channel, "first");
+        ChannelQueue queue = await("7", 1);
+        assertEquals(0, pipeline.evictIdle(1, TimeUnit.MINUTES));
+        assertSame(queue, pipeline.getQueue("7"));
+
+        assertEquals(1, pipeline.evictIdle(0, TimeUnit.NANOSECONDS));
+        assertNull(pipeline.getQueue("7"));
+        pipeline.send(channel, "second");
+        assertNotSame(queue, await("7", 1));
+        assertEquals(Arrays.asList("first", "second"), sent);
+    }
+
+    @Test
+    public void testRateLimitRetry() throws Exception {
+        transport.rateLimit("3", 1);
+        pipeline.send(channel("3"), "hello");
+        ChannelQueue queue = await("3", 1);
+        assertEquals(1, queue.getRateLimitedCount());
+        assertEquals("hello", sent.get(0));
+    }
+
+    @Test
+    public void testEscapeEveryone() throws Exception {
+        pipeline.send(channel("4"), "hi @everyone");
+        await("4", 1);
+        assertEquals("hi @\u200Beveryone", sent.get(0));
+    }
+
+    @Test
+    public void testEscapedChunksStayInLimit() throws Exception {
+        TextChannel channel = channel("8");
+        int lines = 0;
+        try(MessageWriter writer = new MessageWriter(chunk -> pipeline.send(channel, chunk))) {
+            for(; lines < 600; lines++)
+                writer.appendLine("@everyone");
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while(String.join("\n", sent).split("@\u200Beveryone", -1).length - 1 < lines && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        for(String message : sent)
+            assertTrue(message.length() <= MessagePipeline.MAX_LENGTH);
+        String all = String.join("\n", sent);
+        assertEquals(lines, all.split("@\u200Beveryone", -1).length - 1);
+        assertFalse(all.replace("@\u200Beveryone", "").contains("@"));
+    }
+
+    @Test
+    public void testEditTooLongAfterEscaping() throws Exception {
+        Message message = new MessageImpl("11", jda).setChannelId(channel("9").getId()).setIsPrivate(false);
+        String content = new String(new char[MessagePipeline.MAX_LENGTH - 9]).replace('\0', 'x') + "@everyone";
+        try {
+            pipeline.editAsync(message, content).get(5, TimeUnit.SECONDS);
+            fail("Edit longer than the limit after escaping was not rejected");
+        } catch(ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testAsyncSendEditDelete() throws Exception {
+        TextChannel channel = channel("5");
+        pipeline.send(channel, "first");
+        CompletableFuture<Message> edited = pipeline.sendAsync(channel, "working")
+                .thenCompose(message -> pipeline.editAsync(message, "done"));
+        pipeline.send(channel, "last");
+        assertEquals("done", edited.get(5, TimeUnit.SECONDS).getContent());
+        pipeline.sendAsync(channel, "temporary")
+                .thenCompose(message -> pipeline.deleteAsync(message, 50, TimeUnit.MILLISECONDS))
+                .get(5, TimeUnit.SECONDS);
+
+        await("5", 4);
+        //messages with a future are never merged with others, edits and deletes are not queued
+        assertEquals(Arrays.asList("first", "working", "last", "temporary"),
+                sent.stream().filter(message -> !message.contains(":")).collect(Collectors.toList()));
+        assertTrue(sent.indexOf("edit:done") > sent.indexOf("working"));
+        assertEquals("delete:temporary", sent.get(sent.size() - 1));
+    }
+
+    private ChannelQueue await(String channelId, int messages) throws InterruptedException {
+        ChannelQueue queue = pipeline.getQueue(channelId);
+        long end = System.currentTimeMillis() + 10000;
+        while(queue.getLatency().getCount() + queue.getFailedCount() < messages && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        assertEquals(messages, queue.getLatency().getCount());
+        return queue;
+    }
+
+    private TextChannel channel(String id) {
+        TextChannel channel = new TextChannelImpl(id, guild);
+        jda.addTextChannel(channel);
+        return channel;
+    }
+}
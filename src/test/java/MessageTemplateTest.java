@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.util.MessageTemplate;
+import com.kantenkugel.kanzebot.api.util.MessageTemplates;
+import net.dv8tion.jda.entities.User;
+import net.dv8tion.jda.entities.impl.UserImpl;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.MissingResourceException;
+
+import static org.junit.Assert.*;
+
+public class MessageTemplateTest {
+    @Test
+    public void testRender() {
+        MessageTemplate template = MessageTemplate.compile("Welcome {user}, you are member #{count} of {guild}! {{literal}} {user}");
+        assertEquals(Arrays.asList("user", "count", "guild"), template.getPlaceholders());
+        User user = new UserImpl("42", new JDAHull());
+        assertEquals("Welcome <@42>, you are member #1,234,567 of Test! {literal} <@42>", template.render(user, 1234567, "Test"));
+        assertEquals("Welcome , you are member #-1,000 of ! {literal} ", template.render(Collections.singletonMap("count", -1000L)));
+        assertEquals("#999", MessageTemplate.compile("#{n}").render(999));
+        assertEquals("1.234", MessageTemplate.compile("{n}", Locale.GERMAN).render(1234));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnclosed() {
+        MessageTemplate.compile("Hello {user");
+    }
+
+    @Test
+    public void testLocales() {
+        MessageTemplates templates = new MessageTemplates(Locale.ENGLISH)
+                .add(Locale.ENGLISH, "hi", "Hello {name}")
+                .add(Locale.ENGLISH, "bye", "Bye {name}")
+                .add(Locale.GERMAN, "hi", "Hallo {name}");
+        assertEquals("Hallo Kante", templates.get("hi", Locale.GERMANY).render("Kante"));
+        assertEquals("Bye Kante", templates.get("bye", Locale.GERMAN).render("Kante"));
+        assertEquals("Hello Kante", templates.get("hi", Locale.FRENCH).render("Kante"));
+        assertSame(templates.get("hi", Locale.GERMAN), templates.get("hi", Locale.GERMAN));
+        try {
+            templates.get("missing", Locale.ENGLISH);
+            fail("Found missing template");
+        } catch(MissingResourceException ignored) {
+        }
+    }
+}
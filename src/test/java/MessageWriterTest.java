@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.util.MessageWriter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MessageWriterTest {
+    private final List<String> chunks = new ArrayList<>();
+
+    @Test
+    public void testSplitOnLines() {
+        StringBuilder expected = new StringBuilder();
+        try(MessageWriter writer = new MessageWriter(chunks::add)) {
+            for(int i = 0; i < 500; i++) {
+                String line = "Member #" + i + " with some padding";
+                writer.appendLine(line);
+                expected.append(i == 0 ? "" : "\n").append(line);
+                if(i == 0)
+                    //first chunk is only sent once full
+                    assertTrue(chunks.isEmpty());
+            }
+        }
+        assertTrue(chunks.size() > 1);
+        for(String chunk : chunks) {
+            assertTrue(chunk.length() <= MessageWriter.LIMIT);
+            assertTrue(chunk.endsWith("padding"));
+        }
+        assertEquals(expected.toString(), String.join("\n", chunks));
+    }
+
+    @Test
+    public void testSplitWithoutBoundaries() {
+        String text = new String(new char[4500]).replace('\0', 'x');
+        try(MessageWriter writer = new MessageWriter(chunks::add)) {
+            writer.append(text);
+        }
+        assertEquals(3, chunks.size());
+        assertEquals(text, String.join("", chunks));
+    }
+
+    @Test
+    public void testSurrogatePairsStayTogether() {
+        //a single char in front, so the hard cut would fall in the middle of a pair
+        StringBuilder text = new StringBuilder("x");
+        for(int i = 0; i < 150; i++)
+            text.append("\uD83D\uDE00");
+        try(MessageWriter writer = new MessageWriter(chunks::add, 100)) {
+            writer.append(text);
+        }
+        assertTrue(chunks.size() > 1);
+        for(String chunk : chunks) {
+            assertTrue(chunk.length() <= 100);
+            assertFalse(Character.isHighSurrogate(chunk.charAt(chunk.length() - 1)));
+            assertFalse(Character.isLowSurrogate(chunk.charAt(0)));
+        }
+        assertEquals(text.toString(), String.join("", chunks));
+    }
+
+    @Test
+    public void testCodeBlocks() {
+        try(MessageWriter writer = new MessageWriter(chunks::add, 100)) {
+            writer.appendLine("```");
+            for(int i = 0; i < 30; i++)
+                writer.appendLine("row " + i);
+            writer.append("```");
+        }
+        assertTrue(chunks.size() > 1);
+        for(String chunk : chunks) {
+            assertTrue(chunk.length() <= 100);
+            assertTrue(chunk, chunk.startsWith("```\n") && chunk.endsWith("\n```"));
+        }
+    }
+}
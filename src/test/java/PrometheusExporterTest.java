@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.core.KanzeCore;
+import com.kantenkugel.kanzebot.core.config.GlobalConfigHolder;
+import com.kantenkugel.kanzebot.core.config.guild.GuildSettings;
+import com.kantenkugel.kanzebot.core.metrics.DispatchMetrics;
+import com.kantenkugel.kanzebot.core.metrics.PrometheusExporter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PrometheusExporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GuildSettings settings;
+    private KanzeCore core;
+
+    @Before
+    public void setUp() throws Exception {
+        settings = new GuildSettings(new File(folder.getRoot(), "guilds.bin"));
+        core = new KanzeCore(new GlobalConfigHolder(new File(folder.getRoot(), "kanzebot.cfg")), settings);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        core.getMessagePipeline().shutdown();
+        settings.close();
+    }
+
+    @Test
+    public void testScrape() {
+        DispatchMetrics metrics = core.getDispatchMetrics();
+        for(int i = 0; i < 3; i++)
+            metrics.recordDispatch("ping");
+        metrics.recordRejected("ping");
+        metrics.recordHandler(TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.recordHandler(TimeUnit.MILLISECONDS.toNanos(40));
+        settings.getHotFields().get(1);
+
+        String text = new PrometheusExporter(core).scrape();
+        assertTrue(text.contains("# TYPE kanzebot_commands_dispatched_total counter\n"));
+        assertTrue(text.contains("kanzebot_commands_dispatched_total{command=\"ping\"} 3\n"));
+        assertTrue(text.contains("kanzebot_commands_rejected_total{command=\"ping\"} 1\n"));
+        assertTrue(text.contains("kanzebot_command_handler_seconds_bucket{le=\"0.001\"} 0\n"));
+        assertTrue(text.contains("kanzebot_command_handler_seconds_bucket{le=\"0.0025\"} 1\n"));
+        assertTrue(text.contains("kanzebot_command_handler_seconds_bucket{le=\"0.05\"} 2\n"));
+        assertTrue(text.contains("kanzebot_command_handler_seconds_bucket{le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("kanzebot_command_handler_seconds_count 2\n"));
+        assertTrue(text.contains("kanzebot_guild_hotfield_lookups_total{result=\"default\"} 1\n"));
+        assertTrue(text.contains("jvm_memory_bytes_used{area=\"heap\"} "));
+        for(String line : text.split("\n"))
+            assertTrue(line, line.startsWith("#") || line.matches("[a-z_]+(\\{.*\\})? -?[0-9.E+-]+"));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.kantenkugel.kanzebot.core.message.MessageTransport;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.MessageChannel;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.entities.impl.MessageImpl;
+import net.dv8tion.jda.exceptions.RateLimitedException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link MessageTransport} for the tests of the outgoing path. Instead of sending anything it records the requests,
+ * so the channels can be plain JDA-entities (eg. {@link net.dv8tion.jda.entities.impl.TextChannelImpl} on top of {@link JDAHull}).<br>
+ * Sent contents are recorded as is, edits as {@code edit:<content>} and deletes as {@code delete:<content>}.
+ */
+public class RecordingTransport implements MessageTransport {
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final Map<String, AtomicInteger> rateLimits = new ConcurrentHashMap<>();
+    private final Set<String> broken = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Lets the next sends to given channel run into a rate-limit of 50ms
+     */
+    public RecordingTransport rateLimit(String channelId, int times) {
+        rateLimits.put(channelId, new AtomicInteger(times));
+        return this;
+    }
+
+    /**
+     * Lets all sends to given channel fail (until {@link #repair(String) repaired})
+     */
+    public RecordingTransport breakChannel(String channelId) {
+        broken.add(channelId);
+        return this;
+    }
+
+    public RecordingTransport repair(String channelId) {
+        broken.remove(channelId);
+        return this;
+    }
+
+    public List<String> getSent() {
+        return sent;
+    }
+
+    @Override
+    public Message send(MessageChannel channel, String content) {
+        AtomicInteger remaining = rateLimits.get(channel.getId());
+        if(remaining != null && remaining.getAndDecrement() > 0)
+            throw new RateLimitedException(System.currentTimeMillis() + 50);
+        if(broken.contains(channel.getId()))
+            throw new IllegalStateException("Missing permission");
+        sent.add(content);
+        return new MessageImpl(String.valueOf(nextId.incrementAndGet()), (JDAImpl) channel.getJDA()).setContent(content)
+                .setChannelId(channel.getId()).setIsPrivate(!(channel instanceof TextChannel));
+    }
+
+    @Override
+    public Message edit(Message message, String content) {
+        sent.add("edit:" + content);
+        return new MessageImpl(message.getId(), (JDAImpl) message.getJDA()).setContent(content)
+                .setChannelId(message.getChannelId()).setIsPrivate(message.isPrivate());
+    }
+
+    @Override
+    public void delete(Message message) {
+        sent.add("delete:" + message.getContent());
+    }
+}
@@ -0,0 +1,589 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.Services;
+import com.kantenkugel.kanzebot.api.TestServices;
+import com.kantenkugel.kanzebot.api.command.ArgParser;
+import com.kantenkugel.kanzebot.api.command.Command;
+import com.kantenkugel.kanzebot.api.command.CommandGroup;
+import com.kantenkugel.kanzebot.api.command.ParserBuilder;
+import com.kantenkugel.kanzebot.api.command.Requirement;
+import com.kantenkugel.kanzebot.api.util.MessageSender;
+import com.kantenkugel.kanzebot.api.util.MessageUtil;
+import com.kantenkugel.kanzebot.core.command.CommandDispatcher;
+import com.kantenkugel.kanzebot.core.command.CommandRegistry;
+import com.kantenkugel.kanzebot.core.config.guild.GuildHotFields;
+import com.kantenkugel.kanzebot.core.isolation.AddonIsolation;
+import com.kantenkugel.kanzebot.core.isolation.Bulkhead;
+import com.kantenkugel.kanzebot.core.isolation.IsolationSettings;
+import com.kantenkugel.kanzebot.core.metrics.AddonMetrics;
+import com.kantenkugel.kanzebot.core.metrics.DispatchMetrics;
+import com.kantenkugel.kanzebot.core.metrics.LatencyHistogram;
+import com.kantenkugel.kanzebot.core.replay.ReplayRecord;
+import com.kantenkugel.kanzebot.core.trace.Tracer;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.MessageChannel;
+import net.dv8tion.jda.entities.PrivateChannel;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.User;
+import net.dv8tion.jda.entities.impl.GuildImpl;
+import net.dv8tion.jda.entities.impl.MessageImpl;
+import net.dv8tion.jda.entities.impl.SelfInfoImpl;
+import net.dv8tion.jda.entities.impl.TextChannelImpl;
+import net.dv8tion.jda.entities.impl.UserImpl;
+import net.dv8tion.jda.events.message.MessageReceivedEvent;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays a stream of {@link ReplayRecord ReplayRecords} (recorded by {@link com.kantenkugel.kanzebot.core.replay.MessageCapture
+ * MessageCapture} or {@link #synthetic(int, int, int, long, String...) synthetic}) through the real {@link CommandDispatcher}
+ * on top of {@link JDAHull}, so prefix-matching, {@link CommandGroup} routing, parsing and the handlers can be load-tested offline.
+ * <p>
+ * Messages are injected at their recorded pace divided by the speedup (or as fast as possible for a speedup of 0).
+ * Latency is measured from the time a message was due until its handler returned, so a backlog caused by slow handlers
+ * shows up in the percentiles instead of just slowing down the injection.
+ * Replies sent via {@link MessageUtil} are counted and, if a sender to {@link #forwardReplies(MessageSender) forward} to
+ * is set, passed on. Private messages are skipped, as JDAHull has no private channels.
+ */
+public class ReplayHarness {
+    public static final String OWNER = "replay";
+    private static final String SELF_ID = "1";
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    private final JDAHull jda = new JDAHull();
+    private final CommandRegistry registry = new CommandRegistry();
+    private final AddonIsolation isolation = new AddonIsolation();
+    private final DispatchMetrics dispatchMetrics = new DispatchMetrics();
+    private final CommandDispatcher dispatcher;
+    private final LongAdder handled = new LongAdder();
+    private volatile LatencyHistogram latency = new LatencyHistogram();
+    private double speedup = 1;
+    private long nextId = 0;
+
+    public ReplayHarness() {
+        dispatcher = new CommandDispatcher(registry, new GuildHotFields(), new AddonMetrics(), isolation, dispatchMetrics,
+                new Tracer(0, 0));
+        jda.setSelfInfo(new SelfInfoImpl(SELF_ID, null, jda));
+        ReplySink.install(null);
+    }
+
+    /**
+     * Passes all replies of the handlers on to given sender (in addition to counting them).<br>
+     * As the MessageSender is process-wide, this affects all ReplayHarnesses until the next one is created.
+     *
+     * @param sender
+     *      The sender to forward to, or null to only count the replies
+     */
+    public ReplayHarness forwardReplies(MessageSender sender) {
+        ReplySink.install(sender);
+        return this;
+    }
+
+    /**
+     * The JDA-instance the replayed guilds, channels and users are created on
+     */
+    public JDAHull getJDA() {
+        return jda;
+    }
+
+    public ReplayHarness register(Command command) {
+        return register(command, OWNER);
+    }
+
+    /**
+     * Registers a command, which is run on the Bulkhead of given owner
+     *
+     * @throws IllegalArgumentException
+     *      If the key of the command is already taken
+     */
+    public ReplayHarness register(Command command, String owner) {
+        if(!registry.register(new Timed(command), owner))
+            throw new IllegalArgumentException("Command " + command.getKey() + " is already registered");
+        return this;
+    }
+
+    public ReplayHarness configure(String owner, IsolationSettings settings) {
+        isolation.configure(owner, settings);
+        return this;
+    }
+
+    /**
+     * @param speedup
+     *      Factor the recorded pace is sped up by, 0 (or less) to inject as fast as possible
+     */
+    public ReplayHarness setSpeedup(double speedup) {
+        this.speedup = speedup;
+        return this;
+    }
+
+    /**
+     * Replays given records and waits until all dispatched commands were handled
+     */
+    public Report run(List<ReplayRecord> records) throws InterruptedException {
+        latency = new LatencyHistogram();
+        long handledBefore = handled.sum();
+        long dispatchedBefore = sum(dispatchMetrics.getDispatchCounts());
+        long rejectedBefore = sum(dispatchMetrics.getRejectedCounts());
+        long repliesBefore = ReplySink.REPLIES.sum();
+        int skipped = 0;
+
+        long start = System.nanoTime();
+        long first = records.isEmpty() ? 0 : records.get(0).getTimestamp();
+        for(ReplayRecord record : records) {
+            long due = System.nanoTime();
+            if(speedup > 0) {
+                due = start + (long) (TimeUnit.MILLISECONDS.toNanos(record.getTimestamp() - first) / speedup);
+                long wait = due - System.nanoTime();
+                if(wait > 0)
+                    TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if(record.isPrivate()) {
+                skipped++;
+                continue;
+            }
+            dispatcher.onEvent(new MessageReceivedEvent(jda, 0, message(record, due)));
+        }
+        awaitIdle();
+        long elapsed = System.nanoTime() - start;
+
+        return new Report(records.size(), skipped, sum(dispatchMetrics.getDispatchCounts()) - dispatchedBefore,
+                handled.sum() - handledBefore, sum(dispatchMetrics.getRejectedCounts()) - rejectedBefore,
+                ReplySink.REPLIES.sum() - repliesBefore, elapsed, latency);
+    }
+
+    public void shutdown() {
+        isolation.shutdown();
+    }
+
+    public DispatchMetrics getDispatchMetrics() {
+        return dispatchMetrics;
+    }
+
+    /**
+     * Generates a stream at a constant rate, spread randomly over guilds, channels and authors
+     *
+     * @param perSecond
+     *      The number of messages per (recorded) second
+     * @param contents
+     *      The contents to pick from
+     */
+    public static List<ReplayRecord> synthetic(int count, int guilds, int perSecond, long seed, String... contents) {
+        Random random = new Random(seed);
+        List<ReplayRecord> records = new ArrayList<>(count);
+        long start = System.currentTimeMillis();
+        for(int i = 0; i < count; i++) {
+            int guild = random.nextInt(guilds);
+            records.add(new ReplayRecord(start + i * 1000L / perSecond, String.valueOf(1000 + guild),
+                    String.valueOf(100000 + guild * 4 + random.nextInt(4)), String.valueOf(10000 + random.nextInt(500)),
+                    contents[random.nextInt(contents.length)]));
+        }
+        return records;
+    }
+
+    private Message message(ReplayRecord record, long due) {
+        TextChannel channel = jda.getTextChannelById(record.getChannelId());
+        if(channel == null) {
+            Guild guild = jda.getGuildById(record.getGuildId());
+            if(guild == null) {
+                guild = new GuildImpl(jda, record.getGuildId()).setName("Guild " + record.getGuildId());
+                jda.addGuild(guild);
+            }
+            channel = new TextChannelImpl(record.getChannelId(), guild).setName("channel-" + record.getChannelId());
+            jda.addTextChannel(channel);
+        }
+        User author = jda.getUserById(record.getAuthorId());
+        if(author == null) {
+            author = new UserImpl(record.getAuthorId(), jda).setUserName("User " + record.getAuthorId());
+            jda.addUser(author);
+        }
+        return new ReplayMessage(String.valueOf(++nextId), jda, due)
+                .setContent(record.getContent())
+                .setAuthor(author)
+                .setChannelId(channel.getId())
+                .setIsPrivate(false)
+                .setTime(OffsetDateTime.ofInstant(Instant.ofEpochMilli(record.getTimestamp()), ZoneOffset.UTC));
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + IDLE_TIMEOUT;
+        while(System.nanoTime() < deadline) {
+            boolean idle = true;
+            for(Bulkhead bulkhead : isolation.getAll()) {
+                if(bulkhead.getActiveCount() > 0 || bulkhead.getQueueSize() > 0) {
+                    idle = false;
+                    break;
+                }
+            }
+            if(idle)
+                return;
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        System.err.println("Replay did not become idle within " + TimeUnit.NANOSECONDS.toSeconds(IDLE_TIMEOUT) + "s");
+    }
+
+    private static long sum(Map<String, Long> counts) {
+        long sum = 0;
+        for(long count : counts.values())
+            sum += count;
+        return sum;
+    }
+
+    public static final class Report {
+        private final int messages;
+        private final int skipped;
+        private final long dispatched;
+        private final long handled;
+        private final long rejected;
+        private final long replies;
+        private final long elapsedNanos;
+        private final LatencyHistogram latency;
+
+        Report(int messages, int skipped, long dispatched, long handled, long rejected, long replies, long elapsedNanos,
+               LatencyHistogram latency) {
+            this.messages = messages;
+            this.skipped = skipped;
+            this.dispatched = dispatched;
+            this.handled = handled;
+            this.rejected = rejected;
+            this.replies = replies;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+
+        public int getMessages() {
+            return messages;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Messages that matched a prefix and command
+         */
+        public long getDispatched() {
+            return dispatched;
+        }
+
+        /**
+         * Messages whose handler ran (dispatched minus rejected, unmet requirements and parse-errors)
+         */
+        public long getHandled() {
+            return handled;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getReplies() {
+            return replies;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Replayed messages per second
+         */
+        public double getThroughput() {
+            return messages * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        /**
+         * Latency from the time a message was due until its handler returned
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Replayed %d messages (%d skipped) in %.2fs, %.0f msg/s%n"
+                            + "dispatched %d, handled %d, rejected %d, replies %d%n"
+                            + "latency p50 %.2fms, p90 %.2fms, p99 %.2fms, max %.2fms",
+                    messages, skipped, elapsedNanos / 1e9, getThroughput(), dispatched, handled, rejected, replies,
+                    latency.getPercentileMicros(0.5) / 1000.0, latency.getPercentileMicros(0.9) / 1000.0,
+                    latency.getPercentileMicros(0.99) / 1000.0, latency.getMaxMicros() / 1000.0);
+        }
+    }
+
+    /**
+     * Replays a recorded stream against a small set of sample commands (a plain command and a group with parsed
+     * sub-commands)
+     *
+     * Usage: {@code ReplayHarness <file> [speedup]}
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length == 0) {
+            System.err.println("Usage: ReplayHarness <file> [speedup]");
+            return;
+        }
+        List<ReplayRecord> records;
+        try(Reader reader = new FileReader(args[0])) {
+            records = ReplayRecord.read(reader);
+        }
+        ReplayHarness harness = new ReplayHarness()
+                .setSpeedup(args.length > 1 ? Double.parseDouble(args[1]) : 1)
+                .register(new SampleCommand("ping", null))
+                .register(new SampleGroup());
+        System.out.println(harness.run(records));
+        harness.shutdown();
+    }
+
+    static class ReplayMessage extends MessageImpl {
+        private final long due;
+
+        ReplayMessage(String id, JDAHull jda, long due) {
+            super(id, jda);
+            this.due = due;
+        }
+
+        /**
+         * The time (in {@link System#nanoTime()}) this message was due to be injected
+         */
+        long getDue() {
+            return due;
+        }
+    }
+
+    /**
+     * Decorates a registered command to record the latency of its messages
+     */
+    private class Timed implements Command {
+        private final Command command;
+
+        private Timed(Command command) {
+            this.command = command;
+        }
+
+        @Override
+        public String getKey() {
+            return command.getKey();
+        }
+
+        @Override
+        public boolean isGlobal() {
+            return command.isGlobal();
+        }
+
+        @Override
+        public boolean acceptsPM() {
+            return command.acceptsPM();
+        }
+
+        @Override
+        public Requirement getRequirement() {
+            return command.getRequirement();
+        }
+
+        @Override
+        public String getUsage() {
+            return command.getUsage();
+        }
+
+        @Override
+        public String getHelp() {
+            return command.getHelp();
+        }
+
+        @Override
+        public boolean handleGuild(TextChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+            try {
+                return command.handleGuild(channel, author, fullMessage, args, customArgs);
+            } finally {
+                record(fullMessage);
+            }
+        }
+
+        @Override
+        public boolean handlePrivate(PrivateChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+            try {
+                return command.handlePrivate(channel, author, fullMessage, args, customArgs);
+            } finally {
+                record(fullMessage);
+            }
+        }
+
+        @Override
+        public ArgParser getCustomParser() {
+            return command.getCustomParser();
+        }
+
+        private void record(Message message) {
+            handled.increment();
+            if(message instanceof ReplayMessage)
+                latency.record(System.nanoTime() - ((ReplayMessage) message).due, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Counts the replies of the commands and passes them on to the sender to forward to (if any).
+     * Installing it resets the (process-wide) {@link Services} and registers it as the only service.
+     */
+    static class ReplySink implements MessageSender {
+        static final LongAdder REPLIES = new LongAdder();
+        private final MessageSender forward;
+
+        private ReplySink(MessageSender forward) {
+            this.forward = forward;
+        }
+
+        static synchronized void install(MessageSender forward) {
+            if(Services.isFrozen()) {
+                MessageSender current = Services.get(MessageSender.class);
+                if(current instanceof ReplySink && ((ReplySink) current).forward == forward)
+                    return;
+            }
+            TestServices.reset();
+            Services.register(MessageSender.class, new ReplySink(forward));
+            Services.freeze();
+        }
+
+        @Override
+        public void send(MessageChannel channel, String message) {
+            REPLIES.increment();
+            if(forward != null)
+                forward.send(channel, message);
+        }
+
+        @Override
+        public CompletableFuture<Message> sendAsync(MessageChannel channel, String message) {
+            REPLIES.increment();
+            return forward == null ? CompletableFuture.completedFuture(null) : forward.sendAsync(channel, message);
+        }
+
+        @Override
+        public CompletableFuture<Message> editAsync(Message message, String newContent) {
+            return forward == null ? CompletableFuture.completedFuture(message) : forward.editAsync(message, newContent);
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteAsync(Message message, long delay, TimeUnit unit) {
+            return forward == null ? CompletableFuture.completedFuture(null) : forward.deleteAsync(message, delay, unit);
+        }
+    }
+
+    static class SampleCommand implements Command {
+        private final String key;
+        private final ArgParser parser;
+
+        SampleCommand(String key, ArgParser parser) {
+            this.key = key;
+            this.parser = parser;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public boolean isGlobal() {
+            return true;
+        }
+
+        @Override
+        public boolean acceptsPM() {
+            return true;
+        }
+
+        @Override
+        public Requirement getRequirement() {
+            return null;
+        }
+
+        @Override
+        public String getUsage() {
+            return key;
+        }
+
+        @Override
+        public String getHelp() {
+            return "Sample-command of the replay-harness";
+        }
+
+        @Override
+        public boolean handleGuild(TextChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+            MessageUtil.sendMessage(channel, key + " " + args);
+            return true;
+        }
+
+        @Override
+        public boolean handlePrivate(PrivateChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+            MessageUtil.sendMessage(channel, key + " " + args);
+            return true;
+        }
+
+        @Override
+        public ArgParser getCustomParser() {
+            return parser;
+        }
+    }
+
+    /**
+     * {@code cfg get <name>} and {@code cfg set <name> <value>}
+     */
+    static class SampleGroup extends CommandGroup {
+        SampleGroup() {
+            super(new SampleCommand("get", new ParserBuilder().addLiteral("get").addString().build()),
+                    new SampleCommand("set", new ParserBuilder().addLiteral("set").addString().addInteger().build()));
+        }
+
+        @Override
+        public String getKey() {
+            return "cfg";
+        }
+
+        @Override
+        public boolean isGlobal() {
+            return true;
+        }
+
+        @Override
+        public boolean acceptsPM() {
+            return true;
+        }
+
+        @Override
+        public Requirement getRequirement() {
+            return null;
+        }
+
+        @Override
+        public String getUsage() {
+            return "cfg get <name>\ncfg set <name> <value>";
+        }
+
+        @Override
+        public String getHelp() {
+            return "Sample command-group of the replay-harness";
+        }
+    }
+}
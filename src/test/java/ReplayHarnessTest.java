@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.core.isolation.IsolationSettings;
+import com.kantenkugel.kanzebot.core.replay.MessageCapture;
+import com.kantenkugel.kanzebot.core.replay.ReplayRecord;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.User;
+import net.dv8tion.jda.entities.impl.GuildImpl;
+import net.dv8tion.jda.entities.impl.MessageImpl;
+import net.dv8tion.jda.entities.impl.SelfInfoImpl;
+import net.dv8tion.jda.entities.impl.TextChannelImpl;
+import net.dv8tion.jda.entities.impl.UserImpl;
+import net.dv8tion.jda.events.message.MessageReceivedEvent;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReplayHarnessTest {
+    @Test
+    public void testRecordFormat() throws Exception {
+        ReplayRecord record = new ReplayRecord(42, "1000", "2000", "3000", "!say a\tb\nc \\n");
+        ReplayRecord parsed = ReplayRecord.parse(record.toLine());
+        assertEquals(42, parsed.getTimestamp());
+        assertEquals("1000", parsed.getGuildId());
+        assertEquals(record.getContent(), parsed.getContent());
+        assertTrue(ReplayRecord.parse(new ReplayRecord(1, null, "2", "3", "hi").toLine()).isPrivate());
+
+        List<ReplayRecord> records = ReplayRecord.read(new StringReader("# comment\n\n" + record.toLine() + "\n"));
+        assertEquals(1, records.size());
+        try {
+            ReplayRecord.parse("1\t2\t3");
+            fail("Malformed line was parsed");
+        } catch(IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        ReplayHarness harness = new ReplayHarness()
+                .setSpeedup(0)
+                .configure(ReplayHarness.OWNER, new IsolationSettings(4, 1000, 20, 10, 0.5f, 5000, 0.5f, 30))
+                .register(new ReplayHarness.SampleCommand("ping", null))
+                .register(new ReplayHarness.SampleGroup());
+        try {
+            List<ReplayRecord> records = ReplayHarness.synthetic(500, 20, 1000, 1L,
+                    "!ping", "!cfg get name", "!cfg set name 5", "!cfg set name x", "!unknown", "hello");
+            records.add(new ReplayRecord(records.get(records.size() - 1).getTimestamp(), null, "1", "2", "!ping"));
+            ReplayHarness.Report report = harness.run(records);
+
+            long expected = records.stream().filter(r -> !r.isPrivate())
+                    .filter(r -> r.getContent().startsWith("!ping") || r.getContent().startsWith("!cfg")).count();
+            assertEquals(501, report.getMessages());
+            assertEquals(1, report.getSkipped());
+            assertEquals(expected, report.getDispatched());
+            assertEquals(0, report.getRejected());
+            //parse-errors of sub-commands are handled (and replied to) by the group itself
+            assertEquals(expected, report.getHandled());
+            assertEquals(expected, report.getLatency().getCount());
+            assertEquals(expected, report.getReplies());
+            assertTrue(report.getThroughput() > 0);
+        } finally {
+            harness.shutdown();
+        }
+    }
+
+    @Test
+    public void testCapture() throws Exception {
+        File file = File.createTempFile("capture", ".txt");
+        try {
+            JDAHull jda = new JDAHull();
+            jda.setSelfInfo(new SelfInfoImpl("1", null, jda));
+            TextChannel channel = new TextChannelImpl("20", new GuildImpl(jda, "10"));
+            User user = new UserImpl("30", jda);
+            jda.addTextChannel(channel).addUser(user);
+
+            try(MessageCapture capture = new MessageCapture(file)) {
+                for(String content : Arrays.asList("!ping", "multi\nline")) {
+                    MessageImpl message = new MessageImpl(content, jda).setContent(content).setAuthor(user)
+                            .setChannelId("20").setIsPrivate(false);
+                    capture.onEvent(new MessageReceivedEvent(jda, 0, message));
+                }
+                assertEquals(2, capture.getCount());
+            }
+
+            List<ReplayRecord> records;
+            try(Reader reader = new FileReader(file)) {
+                records = ReplayRecord.read(reader);
+            }
+            assertEquals(2, records.size());
+            assertEquals("10", records.get(0).getGuildId());
+            assertEquals("20", records.get(0).getChannelId());
+            assertEquals("30", records.get(0).getAuthorId());
+            assertEquals("multi\nline", records.get(1).getContent());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCaptureRotates() throws Exception {
+        File file = File.createTempFile("capture", ".txt");
+        File rotated = new File(file.getPath() + ".1");
+        try {
+            JDAHull jda = new JDAHull();
+            jda.setSelfInfo(new SelfInfoImpl("1", null, jda));
+            TextChannel channel = new TextChannelImpl("20", new GuildImpl(jda, "10"));
+            User user = new UserImpl("30", jda);
+            jda.addTextChannel(channel).addUser(user);
+
+            try(MessageCapture capture = new MessageCapture(file, 200)) {
+                for(int i = 0; i < 20; i++) {
+                    MessageImpl message = new MessageImpl(String.valueOf(i), jda).setContent("message " + i).setAuthor(user)
+                            .setChannelId("20").setIsPrivate(false);
+                    capture.onEvent(new MessageReceivedEvent(jda, 0, message));
+                }
+                assertEquals(20, capture.getCount());
+                assertEquals(0, capture.getDropped());
+            }
+
+            assertTrue("Capture was not rotated", rotated.exists());
+            assertTrue(file.length() <= 200);
+            assertTrue(rotated.length() <= 200);
+            List<ReplayRecord> records;
+            try(Reader reader = new FileReader(file)) {
+                records = ReplayRecord.read(reader);
+            }
+            assertEquals("message 19", records.get(records.size() - 1).getContent());
+        } finally {
+            file.delete();
+            rotated.delete();
+        }
+    }
+}
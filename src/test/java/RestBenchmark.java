@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.util.MessageUtil;
+import com.kantenkugel.kanzebot.core.config.guild.GuildHotFields;
+import com.kantenkugel.kanzebot.core.message.ChannelQueue;
+import com.kantenkugel.kanzebot.core.message.MessagePipeline;
+import com.kantenkugel.kanzebot.core.message.MessageTransport;
+import com.kantenkugel.kanzebot.core.metrics.LatencyHistogram;
+import com.kantenkugel.kanzebot.core.replay.ReplayRecord;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * End-to-end benchmark of the whole loop: a synthetic load of commands is replayed through the {@link ReplayHarness}
+ * (and thereby the real CommandDispatcher), whose handler replies via {@link MessageUtil}.
+ * The replies go through the {@link MessagePipeline} (including its rate-limit handling) to a {@link RestStandIn}
+ * instead of Discord.<br>
+ * Round-trip latency is measured from the time a command was due until the stand-in's response completed the future
+ * of its reply.<br>
+ * As MessageUtil uses the process-wide MessageSender-service, only one benchmark (or replay-harness) may run at a time.
+ */
+public class RestBenchmark {
+    private static final String COMMAND = "bench";
+
+    private final ReplayHarness harness = new ReplayHarness();
+    private final MessagePipeline pipeline;
+    private final int channelCount;
+    private final List<CompletableFuture<?>> replies = new CopyOnWriteArrayList<>();
+    private final LongAdder failed = new LongAdder();
+    private volatile LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param transportFactory
+     *      Creates the transport to the stand-in for the JDA instance of the benchmark
+     * @param channelCount
+     *      The number of channels the load is spread over
+     * @param burst
+     *      Messages per channel and period of the pipeline's local rate-limit model
+     */
+    public RestBenchmark(Function<JDAHull, MessageTransport> transportFactory, int channelCount,
+                         int burst, long period, TimeUnit unit) {
+        this.pipeline = new MessagePipeline(new GuildHotFields(), transportFactory.apply(harness.getJDA()), burst, period, unit);
+        this.channelCount = channelCount;
+        harness.setSpeedup(1).register(new Reply()).forwardReplies(pipeline);
+    }
+
+    /**
+     * Sends commands at a constant rate, round-robin over the channels, and waits until all replies completed
+     *
+     * @param perSecond
+     *      Commands sent per second
+     * @param timeout
+     *      How long to wait for the backlog after the load stopped
+     */
+    public Report run(int perSecond, long duration, long timeout, TimeUnit unit) throws InterruptedException {
+        latency = new LatencyHistogram();
+        replies.clear();
+        failed.reset();
+        long rateLimitedBefore = getRateLimitedCount();
+
+        int count = (int) (unit.toNanos(duration) * perSecond / TimeUnit.SECONDS.toNanos(1));
+        List<ReplayRecord> records = new ArrayList<>(count);
+        long first = System.currentTimeMillis();
+        for(int i = 0; i < count; i++) {
+            records.add(new ReplayRecord(first + i * 1000L / perSecond, "1000", String.valueOf(100000 + i % channelCount),
+                    "10000", "!" + COMMAND + " " + i));
+        }
+
+        long start = System.nanoTime();
+        harness.run(records);
+        try {
+            CompletableFuture.allOf(replies.toArray(new CompletableFuture[replies.size()])).get(timeout, unit);
+        } catch(ExecutionException ignored) {
+            //counted as failed
+        } catch(TimeoutException e) {
+            System.err.println("Not all replies were sent within the timeout");
+        }
+        return new Report(replies.size(), latency.getCount(), failed.sum(), getRateLimitedCount() - rateLimitedBefore,
+                System.nanoTime() - start, latency);
+    }
+
+    public void shutdown() {
+        harness.shutdown();
+        pipeline.shutdown();
+    }
+
+    private long getRateLimitedCount() {
+        long count = 0;
+        for(ChannelQueue queue : pipeline.getQueues())
+            count += queue.getRateLimitedCount();
+        return count;
+    }
+
+    /**
+     * Replies to each command via MessageUtil and records the round-trip of the reply
+     */
+    private class Reply extends ReplayHarness.SampleCommand {
+        private Reply() {
+            super(COMMAND, null);
+        }
+
+        @Override
+        public boolean handleGuild(TextChannel channel, User author, Message fullMessage, String args, Object[] customArgs) {
+            long due = fullMessage instanceof ReplayHarness.ReplayMessage
+                    ? ((ReplayHarness.ReplayMessage) fullMessage).getDue() : System.nanoTime();
+            LatencyHistogram histogram = latency;
+            replies.add(MessageUtil.sendMessageAsync(channel, "benchmark " + args).whenComplete((message, error) -> {
+                if(error == null)
+                    histogram.record(System.nanoTime() - due, TimeUnit.NANOSECONDS);
+                else
+                    failed.increment();
+            }));
+            return true;
+        }
+    }
+
+    public static final class Report {
+        private final int sent;
+        private final long completed;
+        private final long failed;
+        private final long rateLimited;
+        private final long elapsedNanos;
+        private final LatencyHistogram latency;
+
+        Report(int sent, long completed, long failed, long rateLimited, long elapsedNanos, LatencyHistogram latency) {
+            this.sent = sent;
+            this.completed = completed;
+            this.failed = failed;
+            this.rateLimited = rateLimited;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+
+        public int getSent() {
+            return sent;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * 429-responses the pipeline ran into (its local model didn't predict)
+         */
+        public long getRateLimited() {
+            return rateLimited;
+        }
+
+        /**
+         * Completed messages per second
+         */
+        public double getThroughput() {
+            return completed * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Sent %d replies in %.2fs, %.1f msg/s%n"
+                            + "completed %d, failed %d, rate-limited %d%n"
+                            + "round-trip p50 %.2fms, p90 %.2fms, p99 %.2fms, max %.2fms",
+                    sent, elapsedNanos / 1e9, getThroughput(), completed, failed, rateLimited,
+                    latency.getPercentileMicros(0.5) / 1000.0, latency.getPercentileMicros(0.9) / 1000.0,
+                    latency.getPercentileMicros(0.99) / 1000.0, latency.getMaxMicros() / 1000.0);
+        }
+    }
+
+    /**
+     * Starts a {@link RestStandIn} with Discord's limits and benchmarks the bot against it over HTTP
+     *
+     * Usage: {@code RestBenchmark [port] [channels] [messagesPerSecond] [seconds] [latencyMillis]}
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        int channels = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int perSecond = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        long latency = args.length > 4 ? Long.parseLong(args[4]) : 20;
+
+        RestStandIn standIn = new RestStandIn(5, 5000, 50, latency);
+        standIn.start(port);
+        RestBenchmark benchmark = new RestBenchmark(jda -> new RestStandIn.HttpTransport("http://localhost:" + port + "/api", jda),
+                channels, 5, 5, TimeUnit.SECONDS);
+        try {
+            System.out.println(benchmark.run(perSecond, seconds, 60, TimeUnit.SECONDS));
+            System.out.println("Stand-in: " + standIn.getRequestCount() + " requests, " + standIn.getRateLimitedCount() + " answered with 429");
+        } finally {
+            benchmark.shutdown();
+            standIn.stop();
+        }
+    }
+}
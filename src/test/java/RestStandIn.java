@@ -0,0 +1,434 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.core.message.MessageTransport;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.MessageChannel;
+import net.dv8tion.jda.entities.PrivateChannel;
+import net.dv8tion.jda.entities.impl.JDAImpl;
+import net.dv8tion.jda.entities.impl.MessageImpl;
+import net.dv8tion.jda.exceptions.RateLimitedException;
+import spark.Service;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the message-endpoints of Discord's REST-api, so the outgoing path can be benchmarked without network.<br>
+ * Each channel has a fixed-window bucket (like Discord: {@code limit} requests per window, starting with the first request)
+ * shared by sends and edits, and all channels together share a global bucket.
+ * Responses carry the {@code X-RateLimit-Limit/Remaining/Reset} headers. Exhausted buckets answer with a 429,
+ * a {@code Retry-After} header and Discord's {@code retry_after} body ({@code X-RateLimit-Global} for the global bucket).
+ * <p>
+ * The rate-limit model can be used in-process via {@link #send(String, String, long)} etc.,
+ * {@link #start(int)} serves it over HTTP (on Spark) for the {@link HttpTransport}.
+ */
+public class RestStandIn {
+    private static final Pattern CONTENT = Pattern.compile("\"content\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"(\\d+)\"");
+
+    private final int limit;
+    private final long windowMillis;
+    private final long latencyMillis;
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket global;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private Service service;
+
+    /**
+     * Discord's limits for sending messages: 5 per 5 seconds per channel, 50 per second globally
+     */
+    public RestStandIn() {
+        this(5, 5000, 50, 0);
+    }
+
+    /**
+     * @param limit
+     *      Requests allowed per channel and window
+     * @param globalLimit
+     *      Requests allowed per second over all channels
+     * @param latencyMillis
+     *      Artificial delay of every HTTP response, to imitate the network
+     */
+    public RestStandIn(int limit, long windowMillis, int globalLimit, long latencyMillis) {
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+        this.latencyMillis = latencyMillis;
+        this.global = new Bucket(globalLimit, 1000);
+    }
+
+    public Response send(String channelId, String content, long now) {
+        Response limited = acquire(channelId, now);
+        if(limited != null)
+            return limited;
+        return ok(channelId, now, message(nextId.getAndIncrement(), channelId, content));
+    }
+
+    public Response edit(String channelId, String messageId, String content, long now) {
+        Response limited = acquire(channelId, now);
+        if(limited != null)
+            return limited;
+        return ok(channelId, now, message(Long.parseLong(messageId), channelId, content));
+    }
+
+    public Response delete(String channelId, String messageId, long now) {
+        requests.increment();
+        return new Response(204, new LinkedHashMap<>(), "");
+    }
+
+    /**
+     * Total number of requests received
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Number of requests answered with a 429
+     */
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * {@link MessageTransport} calling the stand-in in-process, to measure the pipeline without any HTTP overhead
+     *
+     * @param jda
+     *      The JDA instance the returned messages belong to
+     */
+    public MessageTransport directTransport(JDAImpl jda) {
+        return new MessageTransport() {
+            @Override
+            public Message send(MessageChannel channel, String content) {
+                String id = messageId(checked(RestStandIn.this.send(channel.getId(), content, System.currentTimeMillis())).getBody());
+                return new MessageImpl(id, jda).setContent(content).setChannelId(channel.getId())
+                        .setIsPrivate(channel instanceof PrivateChannel);
+            }
+
+            @Override
+            public Message edit(Message message, String content) {
+                checked(RestStandIn.this.edit(message.getChannelId(), message.getId(), content, System.currentTimeMillis()));
+                return new MessageImpl(message.getId(), jda).setContent(content).setChannelId(message.getChannelId())
+                        .setIsPrivate(message.isPrivate());
+            }
+
+            @Override
+            public void delete(Message message) {
+                checked(RestStandIn.this.delete(message.getChannelId(), message.getId(), System.currentTimeMillis()));
+            }
+        };
+    }
+
+    /**
+     * Serves the stand-in on {@code http://localhost:<port>/api}
+     */
+    public synchronized void start(int port) {
+        if(service != null)
+            throw new IllegalStateException("Stand-in already running");
+        service = Service.ignite().port(port);
+        service.post("/api/channels/:channel/messages", (request, response) ->
+                respond(response, send(request.params(":channel"), content(request.body()), System.currentTimeMillis())));
+        service.patch("/api/channels/:channel/messages/:message", (request, response) ->
+                respond(response, edit(request.params(":channel"), request.params(":message"), content(request.body()),
+                        System.currentTimeMillis())));
+        service.post("/api/channels/:channel/messages/:message", (request, response) ->
+                respond(response, edit(request.params(":channel"), request.params(":message"), content(request.body()),
+                        System.currentTimeMillis())));
+        service.delete("/api/channels/:channel/messages/:message", (request, response) ->
+                respond(response, delete(request.params(":channel"), request.params(":message"), System.currentTimeMillis())));
+        service.init();
+        service.awaitInitialization();
+    }
+
+    public synchronized void stop() {
+        if(service != null) {
+            service.stop();
+            service = null;
+        }
+    }
+
+    private Object respond(spark.Response response, Response result) throws InterruptedException {
+        if(latencyMillis > 0)
+            TimeUnit.MILLISECONDS.sleep(latencyMillis);
+        response.status(result.getStatus());
+        response.type("application/json");
+        for(Map.Entry<String, String> header : result.getHeaders().entrySet())
+            response.header(header.getKey(), header.getValue());
+        return result.getBody();
+    }
+
+    private Response acquire(String channelId, long now) {
+        requests.increment();
+        long retryAfter = global.tryAcquire(now);
+        if(retryAfter > 0)
+            return tooManyRequests(global, now, retryAfter, true);
+        Bucket bucket = buckets.computeIfAbsent(channelId, id -> new Bucket(limit, windowMillis));
+        retryAfter = bucket.tryAcquire(now);
+        if(retryAfter > 0)
+            return tooManyRequests(bucket, now, retryAfter, false);
+        return null;
+    }
+
+    private Response tooManyRequests(Bucket bucket, long now, long retryAfter, boolean isGlobal) {
+        rateLimited.increment();
+        Map<String, String> headers = headers(bucket, now);
+        headers.put("Retry-After", String.valueOf(retryAfter));
+        if(isGlobal)
+            headers.put("X-RateLimit-Global", "true");
+        return new Response(429, headers, "{\"message\": \"You are being rate limited.\", \"retry_after\": " + retryAfter
+                + ", \"global\": " + isGlobal + "}");
+    }
+
+    private Response ok(String channelId, long now, String body) {
+        return new Response(200, headers(buckets.get(channelId), now), body);
+    }
+
+    private static Response checked(Response response) {
+        if(response.getStatus() == 429)
+            throw new RateLimitedException(System.currentTimeMillis() + Long.parseLong(response.getHeaders().get("Retry-After")));
+        if(response.getStatus() >= 400)
+            throw new IllegalStateException("Request failed with " + response.getStatus() + ": " + response.getBody());
+        return response;
+    }
+
+    private static String messageId(String body) {
+        Matcher matcher = ID.matcher(body);
+        if(!matcher.find())
+            throw new IllegalStateException("Response without message-id: " + body);
+        return matcher.group(1);
+    }
+
+    private static Map<String, String> headers(Bucket bucket, long now) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        synchronized(bucket) {
+            headers.put("X-RateLimit-Limit", String.valueOf(bucket.limit));
+            headers.put("X-RateLimit-Remaining", String.valueOf(bucket.remaining(now)));
+            headers.put("X-RateLimit-Reset", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(bucket.resetAt + 999)));
+        }
+        return headers;
+    }
+
+    private static String message(long id, String channelId, String content) {
+        return "{\"id\": \"" + id + "\", \"channel_id\": \"" + channelId + "\", \"content\": \"" + escape(content) + "\"}";
+    }
+
+    static String escape(String text) {
+        StringBuilder builder = new StringBuilder(text.length() + 16);
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch(c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                default:
+                    if(c < 0x20)
+                        builder.append(String.format("\\u%04x", (int) c));
+                    else
+                        builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    static String content(String json) {
+        Matcher matcher = CONTENT.matcher(json);
+        if(!matcher.find())
+            return "";
+        String escaped = matcher.group(1);
+        StringBuilder builder = new StringBuilder(escaped.length());
+        for(int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if(c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            char next = escaped.charAt(++i);
+            switch(next) {
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'u':
+                    builder.append((char) Integer.parseInt(escaped.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    builder.append(next);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Fixed-window bucket, the window starts with its first request
+     */
+    private static final class Bucket {
+        private final int limit;
+        private final long window;
+        private long resetAt = Long.MIN_VALUE;
+        private int used;
+
+        private Bucket(int limit, long window) {
+            this.limit = limit;
+            this.window = window;
+        }
+
+        /**
+         * @return
+         *      0 if the request is allowed, otherwise the millis until the bucket resets
+         */
+        synchronized long tryAcquire(long now) {
+            if(now >= resetAt) {
+                resetAt = now + window;
+                used = 0;
+            }
+            if(used >= limit)
+                return resetAt - now;
+            used++;
+            return 0;
+        }
+
+        synchronized int remaining(long now) {
+            return now >= resetAt ? limit : limit - used;
+        }
+    }
+
+    public static final class Response {
+        private final int status;
+        private final Map<String, String> headers;
+        private final String body;
+
+        Response(int status, Map<String, String> headers, String body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * {@link MessageTransport} sending to a stand-in over HTTP, translating 429-responses to {@link RateLimitedException}
+     */
+    public static class HttpTransport implements MessageTransport {
+        private final String baseUrl;
+        private final JDAImpl jda;
+
+        /**
+         * @param baseUrl
+         *      e.g. {@code http://localhost:8080/api}
+         * @param jda
+         *      The JDA instance the returned messages belong to
+         */
+        public HttpTransport(String baseUrl, JDAImpl jda) {
+            this.baseUrl = baseUrl;
+            this.jda = jda;
+        }
+
+        @Override
+        public Message send(MessageChannel channel, String content) {
+            String body = request("POST", "/channels/" + channel.getId() + "/messages", content);
+            return new MessageImpl(messageId(body), jda)
+                    .setContent(content)
+                    .setChannelId(channel.getId())
+                    .setIsPrivate(channel instanceof PrivateChannel);
+        }
+
+        @Override
+        public Message edit(Message message, String content) {
+            request("PATCH", "/channels/" + message.getChannelId() + "/messages/" + message.getId(), content);
+            return new MessageImpl(message.getId(), jda)
+                    .setContent(content)
+                    .setChannelId(message.getChannelId())
+                    .setIsPrivate(message.isPrivate());
+        }
+
+        @Override
+        public void delete(Message message) {
+            request("DELETE", "/channels/" + message.getChannelId() + "/messages/" + message.getId(), null);
+        }
+
+        private String request(String method, String path, String content) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+                //HttpURLConnection doesn't support PATCH, the stand-in accepts edits POSTed to the message as well
+                connection.setRequestMethod(method.equals("PATCH") ? "POST" : method);
+                if(content != null) {
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", "application/json");
+                    try(OutputStream out = connection.getOutputStream()) {
+                        out.write(("{\"content\": \"" + escape(content) + "\"}").getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                int status = connection.getResponseCode();
+                if(status == 429) {
+                    long retryAfter = Long.parseLong(connection.getHeaderField("Retry-After"));
+                    connection.getErrorStream().close();
+                    throw new RateLimitedException(System.currentTimeMillis() + retryAfter);
+                }
+                InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+                String body = read(in);
+                if(status >= 400)
+                    throw new IllegalStateException(method + " " + path + " failed with " + status + ": " + body);
+                return body;
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static String read(InputStream in) throws IOException {
+            if(in == null)
+                return "";
+            try(Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                StringBuilder builder = new StringBuilder();
+                char[] buffer = new char[1024];
+                int read;
+                while((read = reader.read(buffer)) != -1)
+                    builder.append(buffer, 0, read);
+                return builder.toString();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RestStandInTest {
+    @Test
+    public void testChannelLimit() {
+        RestStandIn standIn = new RestStandIn(2, 1000, 50, 0);
+        RestStandIn.Response response = standIn.send("1", "a", 0);
+        assertEquals(200, response.getStatus());
+        assertEquals("2", response.getHeaders().get("X-RateLimit-Limit"));
+        assertEquals("1", response.getHeaders().get("X-RateLimit-Remaining"));
+        assertEquals("1", response.getHeaders().get("X-RateLimit-Reset"));
+        assertEquals("0", standIn.send("1", "b", 100).getHeaders().get("X-RateLimit-Remaining"));
+
+        response = standIn.send("1", "c", 400);
+        assertEquals(429, response.getStatus());
+        assertEquals("600", response.getHeaders().get("Retry-After"));
+        assertTrue(response.getBody().contains("\"retry_after\": 600"));
+        assertNull(response.getHeaders().get("X-RateLimit-Global"));
+        //other channels have their own bucket
+        assertEquals(200, standIn.send("2", "d", 400).getStatus());
+        //window is over
+        assertEquals(200, standIn.send("1", "e", 1000).getStatus());
+        assertEquals(5, standIn.getRequestCount());
+        assertEquals(1, standIn.getRateLimitedCount());
+    }
+
+    @Test
+    public void testGlobalLimit() {
+        RestStandIn standIn = new RestStandIn(5, 5000, 3, 0);
+        for(int i = 0; i < 3; i++)
+            assertEquals(200, standIn.send(String.valueOf(i), "a", 0).getStatus());
+        RestStandIn.Response response = standIn.send("4", "a", 10);
+        assertEquals(429, response.getStatus());
+        assertEquals("true", response.getHeaders().get("X-RateLimit-Global"));
+        assertEquals("990", response.getHeaders().get("Retry-After"));
+    }
+
+    @Test
+    public void testJson() {
+        String content = "quote \" backslash \\ newline \n tab \t";
+        String body = new RestStandIn().send("1", content, 0).getBody();
+        assertTrue(body.startsWith("{\"id\": \"1\""));
+        assertEquals(content, RestStandIn.content(body));
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        RestStandIn standIn = new RestStandIn(2, 100, 1000, 0);
+        //the pipeline's model allows more than the stand-in, so it has to recover from 429s
+        RestBenchmark benchmark = new RestBenchmark(standIn::directTransport, 4, 4, 100, TimeUnit.MILLISECONDS);
+        try {
+            RestBenchmark.Report report = benchmark.run(200, 300, 10000, TimeUnit.MILLISECONDS);
+            assertTrue(report.getSent() > 0);
+            assertEquals(0, report.getFailed());
+            assertEquals(report.getSent(), report.getCompleted());
+            assertTrue(report.getRateLimited() > 0);
+            assertEquals(report.getRateLimited(), standIn.getRateLimitedCount());
+            assertTrue(report.getThroughput() > 0);
+        } finally {
+            benchmark.shutdown();
+        }
+    }
+}
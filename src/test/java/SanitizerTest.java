@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.util.MessageUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SanitizerTest {
+    private static final int ALL = MessageUtil.ESCAPE_EVERYONE | MessageUtil.ESCAPE_ROLES | MessageUtil.ESCAPE_USERS | MessageUtil.ESCAPE_MARKDOWN;
+
+    @Test
+    public void testUnchanged() {
+        String text = "Nothing @ all <to> escape here, mail me @ home <@ >";
+        assertSame(text, MessageUtil.sanitize(text, ALL));
+        String markdown = "*bold* and <@123>";
+        assertSame(markdown, MessageUtil.sanitize(markdown, 0));
+        assertSame(markdown, MessageUtil.sanitize(markdown, MessageUtil.ESCAPE_EVERYONE | MessageUtil.ESCAPE_ROLES));
+    }
+
+    @Test
+    public void testMentions() {
+        assertEquals("hi @\u200Beveryone and @\u200Bhere", MessageUtil.sanitize("hi @everyone and @here", MessageUtil.ESCAPE_EVERYONE));
+        assertEquals("<\u200B@123> <\u200B@!456> <@&789>",
+                MessageUtil.sanitize("<@123> <@!456> <@&789>", MessageUtil.ESCAPE_USERS));
+        assertEquals("<@123> <@!456> <\u200B@&789>",
+                MessageUtil.sanitize("<@123> <@!456> <@&789>", MessageUtil.ESCAPE_ROLES));
+    }
+
+    @Test
+    public void testMarkdown() {
+        assertEquals("\\*bold\\* \\_it\\_ \\~\\~x\\~\\~ \\`code\\` \\\\", MessageUtil.sanitize("*bold* _it_ ~~x~~ `code` \\", MessageUtil.ESCAPE_MARKDOWN));
+        assertEquals("\\*@\u200Beveryone\\*", MessageUtil.sanitize("*@everyone*", ALL));
+    }
+}
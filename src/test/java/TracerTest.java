@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.kantenkugel.kanzebot.api.command.Command;
+import com.kantenkugel.kanzebot.core.command.CommandDispatcher;
+import com.kantenkugel.kanzebot.core.command.CommandRegistry;
+import com.kantenkugel.kanzebot.core.config.guild.GuildHotFields;
+import com.kantenkugel.kanzebot.core.isolation.AddonIsolation;
+import com.kantenkugel.kanzebot.core.metrics.AddonMetrics;
+import com.kantenkugel.kanzebot.core.metrics.DispatchMetrics;
+import com.kantenkugel.kanzebot.core.message.MessagePipeline;
+import com.kantenkugel.kanzebot.core.trace.Trace;
+import com.kantenkugel.kanzebot.core.trace.Tracer;
+import net.dv8tion.jda.entities.TextChannel;
+import net.dv8tion.jda.entities.User;
+import net.dv8tion.jda.entities.impl.GuildImpl;
+import net.dv8tion.jda.entities.impl.MessageImpl;
+import net.dv8tion.jda.entities.impl.SelfInfoImpl;
+import net.dv8tion.jda.entities.impl.TextChannelImpl;
+import net.dv8tion.jda.entities.impl.UserImpl;
+import net.dv8tion.jda.events.message.MessageReceivedEvent;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TracerTest {
+    @Test
+    public void testSampling() {
+        assertNull(new Tracer(0, 0).begin("key", null, System.nanoTime()));
+        assertNotNull(new Tracer(1, 0).begin("key", null, System.nanoTime()));
+    }
+
+    @Test
+    public void testSlowBuffer() throws Exception {
+        Tracer tracer = new Tracer(1, 5);
+        Trace fast = tracer.begin("fast", "1", System.nanoTime());
+        fast.mark(Trace.Stage.PREFIX);
+        fast.finish();
+        assertTrue(tracer.getSlowTraces().isEmpty());
+
+        for(int i = 0; i < Tracer.BUFFER_SIZE + 10; i++) {
+            Trace slow = tracer.begin("slow" + i, "1", System.nanoTime() - 10_000_000);
+            slow.mark(Trace.Stage.PREFIX);
+            slow.finish();
+        }
+        List<Trace> traces = tracer.getSlowTraces();
+        assertEquals(Tracer.BUFFER_SIZE, traces.size());
+        assertEquals("slow" + (Tracer.BUFFER_SIZE + 9), traces.get(0).getKey());
+        Trace trace = traces.get(0);
+        assertTrue(trace.getStageNanos(Trace.Stage.PREFIX) >= 10_000_000);
+        assertEquals(-1, trace.getStageNanos(Trace.Stage.PARSE));
+        assertTrue(trace.getTotalNanos() >= 10_000_000);
+    }
+
+    @Test
+    public void testEarlyReturnFinishes() {
+        JDAHull jda = new JDAHull();
+        jda.setSelfInfo(new SelfInfoImpl("1", null, jda));
+        User author = new UserImpl("2", jda);
+        jda.addUser(author);
+        //a guild-only command, so the private message ends the dispatch before the handler
+        Command command = (Command) Proxy.newProxyInstance(Command.class.getClassLoader(), new Class[] {Command.class},
+                (proxy, method, args) -> {
+                    switch(method.getName()) {
+                        case "getKey":
+                            return "guildonly";
+                        case "acceptsPM":
+                        case "isGlobal":
+                            return false;
+                        default:
+                            return null;
+                    }
+                });
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(command, "owner");
+        Tracer tracer = new Tracer(1, 0);
+        AddonIsolation isolation = new AddonIsolation();
+        try {
+            CommandDispatcher dispatcher = new CommandDispatcher(registry, new GuildHotFields(), new AddonMetrics(), isolation,
+                    new DispatchMetrics(), tracer);
+            dispatcher.onEvent(new MessageReceivedEvent(jda, 0, new MessageImpl("3", jda)
+                    .setContent("!guildonly").setAuthor(author).setIsPrivate(true)));
+            assertEquals(1, tracer.getSlowTraces().size());
+            assertEquals("guildonly", tracer.getSlowTraces().get(0).getKey());
+        } finally {
+            isolation.shutdown();
+        }
+    }
+
+    @Test
+    public void testSendStage() throws Exception {
+        MessagePipeline pipeline = new MessagePipeline(new GuildHotFields(), new RecordingTransport(), 5, 5, TimeUnit.SECONDS);
+        JDAHull jda = new JDAHull();
+        TextChannel channel = new TextChannelImpl("1", new GuildImpl(jda, "10"));
+        jda.addTextChannel(channel);
+        Tracer tracer = new Tracer(1, 0);
+        Trace trace = tracer.begin("key", null, System.nanoTime());
+        try {
+            Tracer.setCurrent(trace);
+            pipeline.send(channel, "traced");
+            Tracer.setCurrent(null);
+            trace.finish();
+            pipeline.send(channel, "untraced");
+            long end = System.currentTimeMillis() + 5000;
+            while(trace.getStageNanos(Trace.Stage.SEND) < 0 && System.currentTimeMillis() < end)
+                Thread.sleep(10);
+            assertTrue(trace.getStageNanos(Trace.Stage.SEND) >= 0);
+            assertSame(trace, tracer.getSlowTraces().get(0));
+            assertEquals(1, tracer.getSlowTraces().size());
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Michael Ritter (Kantenkugel)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kantenkugel.kanzebot.api;
+
+import com.kantenkugel.kanzebot.api.config.GlobalConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.*;
+
+public class ServicesTest {
+    private interface Greeter {
+        String greet();
+    }
+
+    @Before
+    @After
+    public void reset() {
+        Services.reset();
+    }
+
+    @Test
+    public void testRegisterOnce() {
+        assertNull(Services.get(Greeter.class));
+        Greeter greeter = () -> "hi";
+        Services.register(Greeter.class, greeter);
+        assertSame(greeter, Services.get(Greeter.class));
+        assertSame(greeter, Services.require(Greeter.class));
+        try {
+            Services.register(Greeter.class, () -> "other");
+            fail("Registered service twice");
+        } catch(IllegalStateException ignored) {
+        }
+        assertSame(greeter, Services.get(Greeter.class));
+    }
+
+    @Test
+    public void testAccessor() {
+        //a failed lookup must not poison the accessor for later calls
+        for(int i = 0; i < 2; i++) {
+            try {
+                GlobalConfig.getInstance();
+                fail("Returned unregistered service");
+            } catch(IllegalStateException ignored) {
+            }
+        }
+        GlobalConfig config = (GlobalConfig) Proxy.newProxyInstance(GlobalConfig.class.getClassLoader(),
+                new Class[] {GlobalConfig.class}, (proxy, method, args) -> null);
+        Services.register(GlobalConfig.class, config);
+        try {
+            GlobalConfig.getInstance();
+            fail("Returned service before the registry was frozen");
+        } catch(IllegalStateException ignored) {
+        }
+        Services.freeze();
+        assertSame(config, GlobalConfig.getInstance());
+
+        Services.reset();
+        try {
+            GlobalConfig.getInstance();
+            fail("Returned service after reset");
+        } catch(IllegalStateException ignored) {
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRequireMissing() {
+        Services.require(Runnable.class);
+    }
+}